@@ -4,12 +4,13 @@
 package io.leitstand.security.accesskeys.auth;
 
 import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
@@ -20,6 +21,7 @@ import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.model.Service;
 import io.leitstand.security.auth.accesskey.AccessKeyId;
 import io.leitstand.security.auth.accesskey.ApiAccessKey;
+import io.leitstand.security.auth.cache.SegmentedLruCache;
 
 /**
  * The <code>AccessKeyAuthenticator</code> verifies whether a valid {@link ApiAccessKey} has not been revoked 
@@ -35,15 +37,24 @@ import io.leitstand.security.auth.accesskey.ApiAccessKey;
  * 	<li>The access key is granted to execute the specified HTTP method</li>
  *  <li>The access key is granted to access the resource path</li>
  * </ol>
- * The <code>AccessKeyValidator</code> runs a cache of valid access keys.
- * The <code>AccessKeyValidator</code> subscribes for {@link AccessKeyEvent} to update the cache instantly if a new 
- * key was added or a key has been revoked. Moreover, it refreshes the cache periodically (every 5 minutes) to add an 
- * additional level of robustness.
+ * The <code>AccessKeyAuthenticator</code> checks whether a key has been revoked by means of the 
+ * {@link ActiveAccessKeys} snapshot, which is refreshed in the background.
+ * Access keys created after the snapshot was loaded are checked against the database.
+ * The outcome of this check is retained for 60 seconds to reduce the database load.
+ * <p>
+ * The access key states are kept in a bounded {@link SegmentedLruCache}. 
+ * The maximum number of states is configured by the <code>rbms.accesskey.state.cache.size</code> system property
+ * and defaults to {@value #DEFAULT_STATE_CACHE_SIZE} states.
+ * A state expires if the access key was not used for the time configured by the
+ * <code>rbms.accesskey.state.cache.ttl</code> system property in seconds, 
+ * which defaults to {@value #DEFAULT_STATE_CACHE_TTL_SECONDS} seconds.
  */
 @Service
 public class AccessKeyAuthenticator {
 	
 	private static final Logger LOG = Logger.getLogger(AccessKeyAuthenticator.class.getName());
+	static final int DEFAULT_STATE_CACHE_SIZE = 10000;
+	static final long DEFAULT_STATE_CACHE_TTL_SECONDS = 3600;
 
 	static final class AccessKeyState {
 		
@@ -63,7 +74,7 @@ public class AccessKeyAuthenticator {
 		}
 		
 		public void nextCheck() {
-			nextCheck = currentTimeMillis() + SECONDS.toSeconds(60);
+			nextCheck = currentTimeMillis() + SECONDS.toMillis(60);
 		}
 	}
 	
@@ -71,11 +82,18 @@ public class AccessKeyAuthenticator {
 	@AccessKeys
 	private DatabaseService db;
 	
-	private ConcurrentMap<AccessKeyId,AccessKeyState> states;
+	@Inject
+	private ActiveAccessKeys activeKeys;
+	
+	private SegmentedLruCache<AccessKeyId,AccessKeyState> states;
 	
 	@PostConstruct
 	protected void initStateCheckCache() {
-		this.states = new ConcurrentHashMap<>();
+		this.states = new SegmentedLruCache<>(parseInt(getSystemProperty("rbms.accesskey.state.cache.size",
+																		 String.valueOf(DEFAULT_STATE_CACHE_SIZE))),
+											  parseLong(getSystemProperty("rbms.accesskey.state.cache.ttl",
+													  					  String.valueOf(DEFAULT_STATE_CACHE_TTL_SECONDS))),
+											  SECONDS);
 	}
 	
 	/**
@@ -113,7 +131,22 @@ public class AccessKeyAuthenticator {
 			// Key is known to be revoked.
 			return true;
 		}
+		
+		// Check the snapshot of active keys first, to avoid database queries on the request thread.
+		ActiveAccessKeys.Snapshot snapshot = activeKeys.getSnapshot();
+		if(snapshot.isActive(key.getId())) {
+			return false;
+		}
+		if(snapshot.isConclusive(key.getDateCreated())) {
+			// Key existed when the snapshot was loaded but is not active.
+			state.revoked();
+			LOG.warning(() -> format("Access attempt with revoked key %s (%s).", 
+								 	 key.getUserId(), 
+								 	 key.getId()));
+			return true;
+		}
 
+		// The key is younger than the snapshot or no snapshot is available.
 		// The access key state is evaluated every 60 seconds. 
 		// The idea of this cache is to reduce the database queries.
 		if(state.evaluateState()) {
@@ -137,19 +170,32 @@ public class AccessKeyAuthenticator {
 	}
 
 	protected AccessKeyState getKeyState(AccessKeyId keyId) {
-		AccessKeyState state = states.get(keyId);
-		if(state == null) {
-			AccessKeyState newState = new AccessKeyState();
-			state = states.putIfAbsent(keyId, newState);
-			if(state == null) {
-				return newState;
-			}
-		}
-		return state;
+		// An evicted state is recreated and evaluated again by means of the snapshot or the database.
+		return states.computeIfAbsent(keyId, id -> new AccessKeyState());
 	}
 	
+	/**
+	 * Returns the number of cached access key states.
+	 * @return the number of cached access key states.
+	 */
+	public int getStateCacheSize() {
+		return states.getSize();
+	}
 	
+	/**
+	 * Returns the number of access key states evicted from the cache.
+	 * @return the number of evicted access key states.
+	 */
+	public long getStateCacheEvictionCount() {
+		return states.getEvictionCount();
+	}
 	
-
+	/**
+	 * Returns the hit rate of the access key state cache.
+	 * @return the hit rate of the access key state cache.
+	 */
+	public double getStateCacheHitRate() {
+		return states.getHitRate();
+	}
 	
 }
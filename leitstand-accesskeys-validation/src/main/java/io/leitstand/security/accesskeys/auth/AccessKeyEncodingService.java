@@ -5,18 +5,17 @@ package io.leitstand.security.accesskeys.auth;
 
 import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
 import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
-import static io.leitstand.commons.model.ObjectUtil.isDifferent;
-import static io.leitstand.commons.model.StringUtil.fromUtf8Bytes;
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
 import static io.leitstand.security.auth.accesskey.ApiAccessKey.newApiAccessKey;
 import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
-import static java.lang.Boolean.parseBoolean;
-import static java.lang.Long.parseLong;
-import static java.util.Arrays.stream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toSet;
 
+import java.nio.ByteBuffer;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Set;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -30,9 +29,24 @@ import io.leitstand.security.auth.accesskey.ApiAccessKeyEncoder;
 import io.leitstand.security.auth.jwt.JsonWebTokenConfig;
 import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
 
+/**
+ * The <code>AccessKeyEncodingService</code> encodes and decodes compact API access keys.
+ * <p>
+ * A compact access key consists of the access key ID, the user ID, the allowed methods, the allowed paths,
+ * the temporary access flag, the creation timestamp and the HMAC-SHA256 signature of all preceding segments, 
+ * separated by colons and encoded in Base64.
+ * The decoder verifies the signature over the decoded bytes in constant time before parsing any segment.
+ * The segments are located in a single pass over the signed bytes.
+ * The parsed method and path sets are interned by the {@link ApiAccessKey} builder,
+ * such that all access keys with the same methods or paths share the same set.
+ */
 @ApplicationScoped
 public class AccessKeyEncodingService implements ApiAccessKeyDecoder, ApiAccessKeyEncoder {
 
+	private static final int SEGMENT_COUNT = 6;
+	private static final byte COLON = ':';
+	private static final byte COMMA = ',';
+	
 	@Inject
 	private JsonWebTokenConfig config;
 	
@@ -76,34 +90,101 @@ public class AccessKeyEncodingService implements ApiAccessKeyDecoder, ApiAccessK
 	 */
 	@Override
 	public ApiAccessKey decode(String encodedToken) {
-		String token = fromUtf8Bytes(decodeBase64String(encodedToken));
-		int    lastColon  = token.lastIndexOf(':');
-		String tokenData  = token.substring(0, lastColon);
-		String signature  = token.substring(lastColon+1);
-		if(isDifferent(signature, sign64(tokenData))) {
+		byte[] token = decodeBase64String(encodedToken);
+		int signed = lastIndexOf(token, COLON);
+		if(signed < 0) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
+		if(!isValidSignature(token, signed)) {
 			throw new JsonWebTokenSignatureException("Signature mismatch!");
 		}
-		String[] segments = tokenData.split(":");
- 		AccessKeyId id = AccessKeyId.valueOf(segments[0]);
-		UserId userId = UserId.valueOf(segments[1]); 
-		Set<String> methods = stream(segments[2].split(","))
-							  .filter(s -> s.length() > 0)
-			    			  .collect(toSet());
-		Set<String> paths = stream(segments[3].split(","))
-							.filter(s -> s.length() > 0)
-			    			.collect(toSet());
-		boolean temporary = parseBoolean(segments[4]);
-		Date dateCreated = new Date(parseLong(segments[5]));
+		
+		// Locate the segment boundaries in a single pass.
+		int[] ends = new int[SEGMENT_COUNT];
+		int segment = 0;
+		for(int i=0; i < signed && segment < SEGMENT_COUNT-1; i++) {
+			if(token[i] == COLON) {
+				ends[segment++] = i;
+			}
+		}
+		if(segment != SEGMENT_COUNT-1) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
+		ends[segment] = signed;
 		
 		return newApiAccessKey()
-			   .withId(id)
-			   .withUserId(userId)
-			   .withMethods(methods)
-			   .withPaths(paths)
-			   .withTemporaryAccess(temporary)
-			   .withDateCreated(dateCreated)
+			   .withId(AccessKeyId.valueOf(string(token, 0, ends[0])))
+			   .withUserId(UserId.valueOf(string(token, ends[0]+1, ends[1])))
+			   .withMethods(set(token, ends[1]+1, ends[2]))
+			   .withPaths(set(token, ends[2]+1, ends[3]))
+			   .withTemporaryAccess(isTrue(token, ends[3]+1, ends[4]))
+			   .withDateCreated(new Date(parseLong(token, ends[4]+1, ends[5])))
 			   .build();
 		
 	}
 	
+	private boolean isValidSignature(byte[] token, int signed) {
+		try {
+			ByteBuffer signature = Base64.getDecoder().decode(ByteBuffer.wrap(token, signed+1, token.length-signed-1));
+			byte[] mac = new byte[signature.remaining()];
+			signature.get(mac);
+			return hmacSha256(config.getSecret()).isValid(token, 0, signed, mac);
+		} catch (IllegalArgumentException e) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
+	}
+	
+	private static int lastIndexOf(byte[] token, byte b) {
+		for(int i=token.length-1; i >= 0; i--) {
+			if(token[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private static String string(byte[] token, int begin, int end) {
+		return new String(token, begin, end-begin, UTF_8);
+	}
+	
+	private static Set<String> set(byte[] token, int begin, int end) {
+		if(begin == end) {
+			return emptySet();
+		}
+		Set<String> elements = new HashSet<>();
+		int from = begin;
+		for(int i=begin; i <= end; i++) {
+			if(i == end || token[i] == COMMA) {
+				if(i > from) {
+					elements.add(string(token, from, i));
+				}
+				from = i+1;
+			}
+		}
+		return elements;
+	}
+	
+	private static boolean isTrue(byte[] token, int begin, int end) {
+		return end - begin == 4 
+			   && (token[begin]   | 0x20) == 't' 
+			   && (token[begin+1] | 0x20) == 'r'
+			   && (token[begin+2] | 0x20) == 'u'
+			   && (token[begin+3] | 0x20) == 'e';
+	}
+	
+	private static long parseLong(byte[] token, int begin, int end) {
+		if(begin == end) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
+		long value = 0;
+		for(int i=begin; i < end; i++) {
+			int digit = token[i] - '0';
+			if(digit < 0 || digit > 9) {
+				throw new JsonWebTokenSignatureException("Malformed token");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+	
 }
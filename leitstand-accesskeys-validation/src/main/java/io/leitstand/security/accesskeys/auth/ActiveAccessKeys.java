@@ -0,0 +1,413 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.auth;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+
+/**
+ * The <code>ActiveAccessKeys</code> maintains a snapshot of the IDs of all active, i.e. not revoked, access keys.
+ * <p>
+ * The snapshot is loaded with a single query and refreshed periodically in the background.
+ * A refreshed snapshot replaces the previous snapshot atomically.
+ * Hence access key lookups neither block nor run database queries.
+ * <p>
+ * A snapshot is only conclusive for access keys created a grace period of
+ * {@value #GRACE_PERIOD_SECONDS} seconds before the snapshot was loaded.
+ * Younger access keys might not have been committed when the snapshot was loaded.
+ * <p>
+ * In addition, the snapshot is updated incrementally.
+ * Access keys created or revoked on this node are applied to the snapshot as soon as the transaction has been committed.
+ * Access keys created or revoked on other nodes are read from the <code>auth.accesskey_event</code> change log,
+ * which is polled by sequence number.
+ * <p>
+ * The refresh interval is configured by the <code>rbms.accesskey.snapshot.interval</code> system property
+ * in seconds and defaults to {@value #DEFAULT_REFRESH_INTERVAL_SECONDS} seconds.
+ * The change log polling interval is configured by the <code>rbms.accesskey.event.interval</code> system property
+ * in seconds and defaults to {@value #DEFAULT_POLLING_INTERVAL_SECONDS} seconds.
+ * <p>
+ * A gap in the change log sequence numbers is either caused by a change that has not been committed yet or by a change that will never be committed.
+ * The changes after the gap are applied, but the change log position is not advanced past the gap,
+ * such that the missing change is applied once it has been committed.
+ * A snapshot refresh retains the change log position for the same reason.
+ * The snapshot is refreshed and the gap is skipped if the gap persists for longer than the commit timeout.
+ * The commit timeout is configured by the <code>rbms.accesskey.event.commit.timeout</code> system property
+ * in seconds and defaults to {@value #DEFAULT_COMMIT_TIMEOUT_SECONDS} seconds.
+ * <p>
+ * A snapshot that could not be refreshed for the maximum snapshot age is considered stale and is not used anymore.
+ * All access keys are then checked against the database until the snapshot has been refreshed successfully.
+ * The maximum snapshot age is configured by the <code>rbms.accesskey.snapshot.maxage</code> system property
+ * in seconds and defaults to {@value #DEFAULT_MAX_SNAPSHOT_AGE_SECONDS} seconds.
+ */
+@ApplicationScoped
+public class ActiveAccessKeys {
+
+	private static final Logger LOG = Logger.getLogger(ActiveAccessKeys.class.getName());
+	static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 30;
+	static final long DEFAULT_POLLING_INTERVAL_SECONDS = 5;
+	static final long GRACE_PERIOD_SECONDS = 60;
+	static final long DEFAULT_MAX_SNAPSHOT_AGE_SECONDS = 120;
+	static final long DEFAULT_COMMIT_TIMEOUT_SECONDS = 300;
+
+	/**
+	 * An immutable snapshot of active access key IDs.
+	 */
+	static final class Snapshot {
+
+		private final Set<String> keys;
+		private final long dateLoaded;
+
+		Snapshot(Set<String> keys, long dateLoaded){
+			this.keys = keys;
+			this.dateLoaded = dateLoaded;
+		}
+
+		boolean isActive(AccessKeyId keyId) {
+			return keys.contains(keyId.toString());
+		}
+
+		boolean isOlderThan(long maxAge, long now) {
+			return now - dateLoaded > maxAge;
+		}
+
+		boolean isConclusive(Date dateCreated) {
+			return dateCreated != null && dateCreated.getTime() < dateLoaded - SECONDS.toMillis(GRACE_PERIOD_SECONDS);
+		}
+		
+		Snapshot withActiveKey(String keyId) {
+			if(keys.contains(keyId)) {
+				return this;
+			}
+			Set<String> active = new HashSet<>(keys);
+			active.add(keyId);
+			return new Snapshot(unmodifiableSet(active), dateLoaded);
+		}
+		
+		Snapshot withRevokedKey(String keyId) {
+			if(!keys.contains(keyId)) {
+				return this;
+			}
+			Set<String> active = new HashSet<>(keys);
+			active.remove(keyId);
+			return new Snapshot(unmodifiableSet(active), dateLoaded);
+		}
+
+	}
+
+	/**
+	 * An access key change read from the change log.
+	 */
+	static final class AccessKeyChange {
+		
+		private final long seq;
+		private final String keyId;
+		private final String type;
+		
+		AccessKeyChange(long seq, String keyId, String type){
+			this.seq = seq;
+			this.keyId = keyId;
+			this.type = type;
+		}
+		
+		boolean isRevoked() {
+			return "REVOKED".equals(type);
+		}
+		
+	}
+
+	private static final Snapshot EMPTY = new Snapshot(emptySet(), 0L);
+
+	@Inject
+	@AccessKeys
+	private DatabaseService db;
+
+	@Inject
+	private DecodedAccessKeyCache decodedKeys;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private volatile Snapshot snapshot = EMPTY;
+	private long lastEvent;
+	private long gapSince;
+	private long maxSnapshotAge;
+	private long commitTimeout;
+	private ScheduledFuture<?> refresh;
+	private ScheduledFuture<?> polling;
+
+	public ActiveAccessKeys() {
+		// CDI constructor
+	}
+
+	protected ActiveAccessKeys(DatabaseService db, DecodedAccessKeyCache decodedKeys) {
+		this(db, decodedKeys, DEFAULT_MAX_SNAPSHOT_AGE_SECONDS, SECONDS);
+	}
+	
+	protected ActiveAccessKeys(DatabaseService db, 
+							   DecodedAccessKeyCache decodedKeys, 
+							   long maxSnapshotAge, 
+							   TimeUnit unit) {
+		this(db, 
+			 decodedKeys, 
+			 maxSnapshotAge, 
+			 unit.convert(DEFAULT_COMMIT_TIMEOUT_SECONDS, SECONDS), 
+			 unit);
+	}
+	
+	protected ActiveAccessKeys(DatabaseService db, 
+							   DecodedAccessKeyCache decodedKeys, 
+							   long maxSnapshotAge,
+							   long commitTimeout,
+							   TimeUnit unit) {
+		this.db = db;
+		this.decodedKeys = decodedKeys;
+		this.maxSnapshotAge = unit.toMillis(maxSnapshotAge);
+		this.commitTimeout = unit.toMillis(commitTimeout);
+	}
+
+	/**
+	 * Loads the initial snapshot and schedules the periodic snapshot refresh and change log polling.
+	 */
+	@PostConstruct
+	protected void scheduleRefresh() {
+		maxSnapshotAge = SECONDS.toMillis(parseLong(getSystemProperty("rbms.accesskey.snapshot.maxage",
+																	  String.valueOf(DEFAULT_MAX_SNAPSHOT_AGE_SECONDS))));
+		commitTimeout = SECONDS.toMillis(parseLong(getSystemProperty("rbms.accesskey.event.commit.timeout",
+																	 String.valueOf(DEFAULT_COMMIT_TIMEOUT_SECONDS))));
+		long interval = parseLong(getSystemProperty("rbms.accesskey.snapshot.interval",
+													String.valueOf(DEFAULT_REFRESH_INTERVAL_SECONDS)));
+		refresh = scheduler.scheduleWithFixedDelay(this::refreshSnapshot,
+												   0,
+												   interval,
+												   SECONDS);
+		long pollingInterval = parseLong(getSystemProperty("rbms.accesskey.event.interval",
+														   String.valueOf(DEFAULT_POLLING_INTERVAL_SECONDS)));
+		polling = scheduler.scheduleWithFixedDelay(this::pollEvents,
+												   pollingInterval,
+												   pollingInterval,
+												   SECONDS);
+	}
+
+	/**
+	 * Cancels the periodic snapshot refresh and change log polling.
+	 */
+	@PreDestroy
+	protected void cancelRefresh() {
+		if(refresh != null) {
+			refresh.cancel(false);
+		}
+		if(polling != null) {
+			polling.cancel(false);
+		}
+	}
+
+	/**
+	 * Loads all active access key IDs and replaces the current snapshot.
+	 * The current snapshot is retained if the access keys cannot be loaded.
+	 * The change log position is only initialized by the first snapshot.
+	 */
+	protected void refreshSnapshot() {
+		refreshSnapshot(false);
+	}
+	
+	private void refreshSnapshot(boolean skipGap) {
+		try {
+			long dateLoaded = currentTimeMillis();
+			// Read the change log position first. 
+			// All subsequent changes are applied again when the change log is polled next time.
+			List<Long> last = db.executeQuery(prepare("SELECT COALESCE(MAX(seq),0) FROM auth.accesskey_event"),
+											  rs -> rs.getLong(1));
+			Set<String> keys = new HashSet<>(db.executeQuery(prepare("SELECT uuid FROM auth.accesskey"),
+															 rs -> rs.getString(1)));
+			Snapshot previous;
+			synchronized(this) {
+				previous = snapshot;
+				snapshot = new Snapshot(unmodifiableSet(keys),
+										dateLoaded);
+				if(previous.dateLoaded == 0 || skipGap) {
+					lastEvent = last.isEmpty() ? 0L : last.get(0);
+					gapSince = 0;
+				}
+				// Otherwise retain the change log position. 
+				// The changes after the position are applied again, 
+				// whereas a change that was not committed when the snapshot was loaded would be lost.
+			}
+			for(String keyId : previous.keys) {
+				if(!keys.contains(keyId)) {
+					decodedKeys.evict(AccessKeyId.valueOf(keyId));
+				}
+			}
+			LOG.fine(() -> format("Loaded %d active access keys.", keys.size()));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Cannot refresh active access keys: %s", e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads all access key changes from the <code>auth.accesskey_event</code> change log 
+	 * that have not been processed yet and applies them to the current snapshot.
+	 * The change log position is not advanced past a gap in the sequence numbers, 
+	 * because the missing changes might not have been committed yet.
+	 * The snapshot is refreshed if the gap persists for longer than the commit timeout,
+	 * because the missing changes have then either been deleted from the change log or rolled back.
+	 */
+	protected void pollEvents() {
+		try {
+			long from;
+			long loaded;
+			synchronized(this) {
+				from = lastEvent;
+				loaded = snapshot.dateLoaded;
+			}
+			if(loaded == 0) {
+				// The first snapshot initializes the change log position.
+				return;
+			}
+			List<AccessKeyChange> changes = db.executeQuery(prepare("SELECT seq, uuid, type FROM auth.accesskey_event WHERE seq > ? ORDER BY seq",
+																	from),
+															rs -> new AccessKeyChange(rs.getLong(1),
+																					  rs.getString(2),
+																					  rs.getString(3)));
+			long position = lastContiguousEvent(from, changes);
+			boolean gap = !changes.isEmpty() && position != changes.get(changes.size()-1).seq;
+			if(gap && isGapExpired(position > from)) {
+				LOG.fine(() -> format("Access key change log has a gap after sequence number %d for more than %d seconds. Refresh active access keys.", 
+									  position,
+									  MILLISECONDS.toSeconds(commitTimeout)));
+				refreshSnapshot(true);
+				return;
+			}
+			synchronized(this) {
+				if(lastEvent != from || snapshot.dateLoaded != loaded) {
+					// Snapshot refreshed in the meantime
+					return;
+				}
+				for(AccessKeyChange change : changes) {
+					if(change.isRevoked()) {
+						snapshot = snapshot.withRevokedKey(change.keyId);
+					} else {
+						snapshot = snapshot.withActiveKey(change.keyId);
+					}
+				}
+				lastEvent = position;
+				if(!gap) {
+					gapSince = 0;
+				}
+			}
+			if(gap) {
+				LOG.fine(() -> format("Access key change log has a gap after sequence number %d. Wait for the missing changes to be committed.", position));
+			}
+			for(AccessKeyChange change : changes) {
+				if(change.isRevoked()) {
+					decodedKeys.evict(AccessKeyId.valueOf(change.keyId));
+				}
+			}
+			LOG.fine(() -> format("Applied %d access key changes.", changes.size()));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Cannot read access key changes: %s", e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+	
+	private synchronized boolean isGapExpired(boolean progress) {
+		long now = currentTimeMillis();
+		if(gapSince == 0 || progress) {
+			// A new gap or the remainder of a partially filled gap.
+			gapSince = now;
+		}
+		return now - gapSince >= commitTimeout;
+	}
+	
+	private static long lastContiguousEvent(long from, List<AccessKeyChange> changes) {
+		long position = from;
+		for(AccessKeyChange change : changes) {
+			if(change.seq != position + 1) {
+				break;
+			}
+			position = change.seq;
+		}
+		return position;
+	}
+	
+	/**
+	 * Adds a created access key to the current snapshot.
+	 * @param keyId - the access key ID
+	 */
+	public synchronized void activated(AccessKeyId keyId) {
+		snapshot = snapshot.withActiveKey(keyId.toString());
+	}
+	
+	/**
+	 * Removes a revoked access key from the current snapshot and evicts the decoded access key from the cache.
+	 * @param keyId - the access key ID
+	 */
+	public void revoked(AccessKeyId keyId) {
+		synchronized(this) {
+			snapshot = snapshot.withRevokedKey(keyId.toString());
+		}
+		decodedKeys.evict(keyId);
+	}
+
+	/**
+	 * Returns the current snapshot or an empty, inconclusive snapshot if the current snapshot is stale.
+	 * The empty snapshot forces the access key to be checked against the database.
+	 * @return the current snapshot.
+	 */
+	Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if(current != EMPTY && current.isOlderThan(maxSnapshotAge, currentTimeMillis())) {
+			LOG.fine("Active access keys snapshot is stale. Check access keys against the database.");
+			return EMPTY;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the age of the current snapshot in milliseconds.
+	 * @return the age of the current snapshot in milliseconds or <code>-1</code> if no snapshot has been loaded yet.
+	 */
+	public long getSnapshotAge() {
+		Snapshot current = snapshot;
+		if(current == EMPTY) {
+			return -1;
+		}
+		return currentTimeMillis() - current.dateLoaded;
+	}
+
+	/**
+	 * Returns the number of active access keys in the current snapshot.
+	 * @return the number of active access keys in the current snapshot.
+	 */
+	public int getSnapshotSize() {
+		return snapshot.keys.size();
+	}
+
+}
@@ -5,10 +5,13 @@ package io.leitstand.security.accesskeys.auth;
 
 import static io.leitstand.commons.model.ObjectUtil.asSet;
 import static io.leitstand.security.auth.Role.SYSTEM;
+import static io.leitstand.security.auth.http.CredentialType.BEARER_ACCESS_KEY;
 import static java.util.logging.Level.FINE;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.Dependent;
@@ -21,6 +24,7 @@ import io.leitstand.security.auth.accesskey.ApiAccessKey;
 import io.leitstand.security.auth.accesskey.ApiAccessKeyDecoder;
 import io.leitstand.security.auth.http.AccessTokenManager;
 import io.leitstand.security.auth.http.Authorization;
+import io.leitstand.security.auth.http.CredentialType;
 import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
 
 /**
@@ -29,7 +33,7 @@ import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
  * restoring the {@link ApiAccessKey} from the bearer token,
  * checking whether the API access key is still valid and
  * allowed to perform the requested operation.
- *
+ * Decoded access keys are retained in the {@link DecodedAccessKeyCache}.
  */
 @Dependent
 public class ApiAccessKeyManager implements AccessTokenManager {
@@ -41,8 +45,19 @@ public class ApiAccessKeyManager implements AccessTokenManager {
 	
 	@Inject
 	private AccessKeyAuthenticator authenticator;
+	
+	@Inject
+	private DecodedAccessKeyCache decodedKeys;
 
 	
+	/**
+	 * Returns the credential types processed by this manager.
+	 * @return <code>BEARER_ACCESS_KEY</code>
+	 */
+	@Override
+	public Set<CredentialType> getCredentialTypes() {
+		return EnumSet.of(BEARER_ACCESS_KEY);
+	}
 	
 	/**
 	 * Decodes and validates a bearer token authorization
@@ -63,7 +78,11 @@ public class ApiAccessKeyManager implements AccessTokenManager {
 				if(bearerToken.contains(".")) {
 					return NOT_VALIDATED_RESULT;
 				}
-				ApiAccessKey accessKey = accesskeys.decode(auth.getCredentials());
+				ApiAccessKey accessKey = decodedKeys.get(bearerToken);
+				if(accessKey == null) {
+					accessKey = accesskeys.decode(bearerToken);
+					decodedKeys.put(bearerToken, accessKey);
+				}
 				if(authenticator.isAllowed(request,accessKey)) {
 					return new CredentialValidationResult(accessKey.getUserId().toString(),
 														  asSet(SYSTEM));
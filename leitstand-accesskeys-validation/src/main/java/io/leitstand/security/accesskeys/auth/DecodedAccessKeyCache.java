@@ -0,0 +1,163 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.auth;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+import io.leitstand.security.auth.accesskey.ApiAccessKey;
+import io.leitstand.security.auth.cache.SegmentedLruCache;
+
+/**
+ * The <code>DecodedAccessKeyCache</code> retains decoded and verified {@link ApiAccessKey}s by their bearer token,
+ * to avoid decoding and verifying the same bearer token for every request.
+ * <p>
+ * The cache only skips the decoding of the bearer token. 
+ * The {@link AccessKeyAuthenticator} still checks for every request whether the access key has been revoked
+ * and grants access to the requested resource.
+ * A temporary access key expires from the cache when its lifetime of {@value #TEMPORARY_KEY_LIFETIME_SECONDS} seconds ends.
+ * A revoked access key is evicted as soon as the {@link ActiveAccessKeys} learn about the revocation.
+ * <p>
+ * The maximum number of cached access keys is configured by the <code>rbms.accesskey.decoded.cache.size</code>
+ * system property and defaults to {@value #DEFAULT_MAX_SIZE} access keys.
+ * An access key expires if it was not used for the time configured by the <code>rbms.accesskey.decoded.cache.ttl</code>
+ * system property in seconds, which defaults to {@value #DEFAULT_TTL_SECONDS} seconds.
+ */
+@ApplicationScoped
+public class DecodedAccessKeyCache {
+
+	private static final Logger LOG = Logger.getLogger(DecodedAccessKeyCache.class.getName());
+	static final int DEFAULT_MAX_SIZE = 4096;
+	static final long DEFAULT_TTL_SECONDS = 3600;
+	static final long TEMPORARY_KEY_LIFETIME_SECONDS = 60;
+	
+	private static final class Entry {
+		
+		private final ApiAccessKey key;
+		private final long expiry;
+		
+		Entry(ApiAccessKey key, long expiry){
+			this.key = key;
+			this.expiry = expiry;
+		}
+		
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+		
+		boolean isKey(AccessKeyId keyId) {
+			return key.getId().equals(keyId);
+		}
+		
+	}
+	
+	private final SegmentedLruCache<String,Entry> keys;
+	
+	/**
+	 * Creates a <code>DecodedAccessKeyCache</code> configured by system properties.
+	 */
+	public DecodedAccessKeyCache() {
+		this(parseInt(getSystemProperty("rbms.accesskey.decoded.cache.size",
+										String.valueOf(DEFAULT_MAX_SIZE))),
+			 parseLong(getSystemProperty("rbms.accesskey.decoded.cache.ttl",
+					 					 String.valueOf(DEFAULT_TTL_SECONDS))),
+			 SECONDS);
+	}
+	
+	/**
+	 * Creates a <code>DecodedAccessKeyCache</code>.
+	 * @param maxSize - the maximum number of cached access keys
+	 * @param ttl - the time after which an unused access key expires
+	 * @param unit - the time-to-live unit
+	 */
+	protected DecodedAccessKeyCache(int maxSize, long ttl, TimeUnit unit) {
+		this.keys = new SegmentedLruCache<>(maxSize, ttl, unit);
+	}
+	
+	/**
+	 * Returns the cached access key of the given bearer token.
+	 * @param bearerToken - the bearer token
+	 * @return the decoded access key or <code>null</code> if the bearer token is not cached.
+	 */
+	public ApiAccessKey get(String bearerToken) {
+		Entry entry = keys.get(bearerToken);
+		if(entry == null) {
+			return null;
+		}
+		if(entry.isExpired(currentTimeMillis())) {
+			keys.remove(bearerToken);
+			return null;
+		}
+		return entry.key;
+	}
+	
+	/**
+	 * Adds a decoded and verified access key to the cache.
+	 * @param bearerToken - the bearer token
+	 * @param key - the decoded access key
+	 */
+	public void put(String bearerToken, ApiAccessKey key) {
+		long expiry = Long.MAX_VALUE;
+		if(key.isTemporary()) {
+			expiry = key.getDateCreated().getTime() + SECONDS.toMillis(TEMPORARY_KEY_LIFETIME_SECONDS);
+			if(expiry <= currentTimeMillis()) {
+				return;
+			}
+		}
+		keys.putIfAbsent(bearerToken, new Entry(key, expiry));
+	}
+	
+	/**
+	 * Evicts a revoked access key from the cache.
+	 * @param keyId - the ID of the revoked access key
+	 */
+	public void evict(AccessKeyId keyId) {
+		if(keys.removeIf(entry -> entry.isKey(keyId)) > 0) {
+			LOG.fine(() -> format("Evicted revoked access key %s from cache.", keyId));
+		}
+	}
+	
+	/**
+	 * Returns the number of cached access keys.
+	 * @return the number of cached access keys.
+	 */
+	public int getSize() {
+		return keys.getSize();
+	}
+	
+	/**
+	 * Returns the number of cache hits.
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount() {
+		return keys.getHitCount();
+	}
+	
+	/**
+	 * Returns the number of cache misses.
+	 * @return the number of cache misses.
+	 */
+	public long getMissCount() {
+		return keys.getMissCount();
+	}
+	
+	/**
+	 * Returns the number of access keys evicted to make room for new access keys.
+	 * @return the number of evicted access keys.
+	 */
+	public long getEvictionCount() {
+		return keys.getEvictionCount();
+	}
+	
+}
@@ -6,7 +6,12 @@ package io.leitstand.security.accesskeys.auth;
 import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
@@ -14,6 +19,9 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Date;
@@ -37,6 +45,8 @@ public class AccessKeyAuthenticatorTest {
 	
 	@Mock
 	private DatabaseService db;
+	@Mock
+	private ActiveAccessKeys activeKeys;
 	@InjectMocks
 	private AccessKeyAuthenticator validator = new AccessKeyAuthenticator();
 	private HttpServletRequest request;
@@ -46,6 +56,7 @@ public class AccessKeyAuthenticatorTest {
 	@Before
 	public void initValidator() {
 		validator.initStateCheckCache();
+		when(activeKeys.getSnapshot()).thenReturn(new ActiveAccessKeys.Snapshot(emptySet(),0L));
 		keyId = randomAccessKeyId();
 		key = mock(ApiAccessKey.class);
 		when(key.getId()).thenReturn(keyId);
@@ -112,4 +123,44 @@ public class AccessKeyAuthenticatorTest {
 		
 	}
 	
+	@Test
+	public void report_access_key_state_cache_metrics() {
+		validator.getKeyState(keyId);
+		validator.getKeyState(keyId);
+		assertEquals(1,validator.getStateCacheSize());
+		assertEquals(0L,validator.getStateCacheEvictionCount());
+		assertEquals(0.5,validator.getStateCacheHitRate(),0.001);
+	}
+	
+	@Test
+	public void accept_active_access_key_without_database_query() {
+		when(activeKeys.getSnapshot()).thenReturn(new ActiveAccessKeys.Snapshot(singleton(keyId.toString()),currentTimeMillis()));
+		when(key.isPathAllowed(request.getRequestURI())).thenReturn(TRUE);
+		when(key.isMethodAllowed(request.getMethod())).thenReturn(TRUE);
+		assertTrue(validator.isAllowed(request, key));
+		verifyZeroInteractions(db);
+	}
+	
+	@Test
+	public void reject_revoked_access_key_without_database_query() {
+		when(activeKeys.getSnapshot()).thenReturn(new ActiveAccessKeys.Snapshot(emptySet(),currentTimeMillis()));
+		when(key.getDateCreated()).thenReturn(new Date(currentTimeMillis()-MINUTES.toMillis(5)));
+		when(key.isPathAllowed(request.getRequestURI())).thenReturn(TRUE);
+		when(key.isMethodAllowed(request.getMethod())).thenReturn(TRUE);
+		assertFalse(validator.isAllowed(request, key));
+		verifyZeroInteractions(db);
+	}
+	
+	@Test
+	public void query_database_for_access_key_younger_than_snapshot() {
+		when(activeKeys.getSnapshot()).thenReturn(new ActiveAccessKeys.Snapshot(emptySet(),currentTimeMillis()));
+		when(key.getDateCreated()).thenReturn(new Date());
+		when(db.getSingleResult(any(), any())).thenReturn(keyId.toString());
+		when(key.isPathAllowed(request.getRequestURI())).thenReturn(TRUE);
+		when(key.isMethodAllowed(request.getMethod())).thenReturn(TRUE);
+		assertTrue(validator.isAllowed(request, key));
+		assertTrue(validator.isAllowed(request, key));
+		verify(db,times(1)).getSingleResult(any(), any());
+	}
+	
 }
@@ -6,11 +6,14 @@ package io.leitstand.security.accesskeys.auth;
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
 import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
 import static io.leitstand.security.auth.accesskey.ApiAccessKey.newApiAccessKey;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
+import java.util.Base64;
 import java.util.Date;
 
 import org.junit.Before;
@@ -23,6 +26,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import io.leitstand.security.auth.UserId;
 import io.leitstand.security.auth.accesskey.ApiAccessKey;
 import io.leitstand.security.auth.jwt.JsonWebTokenConfig;
+import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
 import io.leitstand.security.crypto.Secret;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -153,4 +157,32 @@ public class AccessKeyEncodingServiceTest {
 		assertFalse(decoded.isTemporary());
 	}
 	
+	@Test
+	public void reject_tampered_access_key() {
+		ApiAccessKey accessKey = newApiAccessKey()
+								 .withId(randomAccessKeyId())
+								 .withUserId(USER_ID)
+								 .withPaths("/api/v1/elements")
+								 .withDateCreated(new Date())
+								 .build();
+		String token = new String(Base64.getDecoder().decode(service.encode(accessKey)),UTF_8);
+		String tampered = token.replace("/api/v1/elements", "/api/v1/.*");
+		try {
+			service.decode(Base64.getEncoder().encodeToString(tampered.getBytes(UTF_8)));
+			fail("Exception expected");
+		} catch (JsonWebTokenSignatureException e) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void reject_malformed_access_key() {
+		try {
+			service.decode(Base64.getEncoder().encodeToString("malformed".getBytes(UTF_8)));
+			fail("Exception expected");
+		} catch (JsonWebTokenSignatureException e) {
+			// Expected
+		}
+	}
+	
 }
@@ -0,0 +1,174 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.auth;
+
+import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.accesskeys.auth.ActiveAccessKeys.AccessKeyChange;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+
+public class ActiveAccessKeysTest {
+
+	private DatabaseService db;
+	private DecodedAccessKeyCache decodedKeys;
+	private ActiveAccessKeys keys;
+	
+	@Before
+	public void initActiveKeys() {
+		db = mock(DatabaseService.class);
+		decodedKeys = mock(DecodedAccessKeyCache.class);
+		keys = new ActiveAccessKeys(db, decodedKeys);
+	}
+	
+	@Test
+	public void snapshot_is_inconclusive_before_first_refresh() {
+		assertEquals(-1L,keys.getSnapshotAge());
+		assertFalse(keys.getSnapshot().isConclusive(new Date(0)));
+	}
+	
+	@Test
+	public void refresh_snapshot() {
+		AccessKeyId active = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(0L))
+										   .thenReturn(asList(active.toString()));
+		keys.refreshSnapshot();
+		assertEquals(1,keys.getSnapshotSize());
+		assertTrue(keys.getSnapshotAge() >= 0);
+		assertTrue(keys.getSnapshot().isActive(active));
+		assertFalse(keys.getSnapshot().isActive(randomAccessKeyId()));
+	}
+	
+	@Test
+	public void snapshot_is_conclusive_for_keys_created_before_grace_period() {
+		when(db.executeQuery(any(), any())).thenReturn(asList(0L))
+										   .thenReturn(asList());
+		keys.refreshSnapshot();
+		assertTrue(keys.getSnapshot().isConclusive(new Date(currentTimeMillis()-MINUTES.toMillis(5))));
+		assertFalse(keys.getSnapshot().isConclusive(new Date()));
+		assertFalse(keys.getSnapshot().isConclusive(null));
+	}
+	
+	@Test
+	public void retain_snapshot_if_refresh_fails() {
+		AccessKeyId active = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(0L))
+										   .thenReturn(asList(active.toString()))
+										   .thenThrow(new IllegalStateException("Database not available"));
+		keys.refreshSnapshot();
+		keys.refreshSnapshot();
+		assertTrue(keys.getSnapshot().isActive(active));
+	}
+	
+	@Test
+	public void stale_snapshot_is_inconclusive() throws Exception {
+		keys = new ActiveAccessKeys(db, decodedKeys, 1, MILLISECONDS);
+		AccessKeyId active = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(0L))
+										   .thenReturn(asList(active.toString()))
+										   .thenThrow(new IllegalStateException("Database not available"));
+		keys.refreshSnapshot();
+		Thread.sleep(10);
+		keys.refreshSnapshot();
+		assertFalse(keys.getSnapshot().isActive(active));
+		assertFalse(keys.getSnapshot().isConclusive(new Date(currentTimeMillis()-MINUTES.toMillis(5))));
+	}
+	
+	@Test
+	public void apply_local_access_key_changes() {
+		AccessKeyId created = randomAccessKeyId();
+		keys.activated(created);
+		assertTrue(keys.getSnapshot().isActive(created));
+		keys.revoked(created);
+		assertFalse(keys.getSnapshot().isActive(created));
+		verify(decodedKeys).evict(created);
+	}
+	
+	@Test
+	public void apply_access_key_changes_from_change_log() {
+		AccessKeyId revoked = randomAccessKeyId();
+		AccessKeyId created = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(10L))
+										   .thenReturn(asList(revoked.toString()))
+										   .thenReturn(asList(new AccessKeyChange(11L, revoked.toString(), "REVOKED"),
+												   			  new AccessKeyChange(12L, created.toString(), "CREATED")));
+		keys.refreshSnapshot();
+		assertTrue(keys.getSnapshot().isActive(revoked));
+		keys.pollEvents();
+		assertFalse(keys.getSnapshot().isActive(revoked));
+		assertTrue(keys.getSnapshot().isActive(created));
+		verify(decodedKeys).evict(revoked);
+		verify(decodedKeys,never()).evict(created);
+	}
+	
+	@Test
+	public void wait_for_missing_change_on_change_log_gap() {
+		AccessKeyId revoked = randomAccessKeyId();
+		AccessKeyId created = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(10L))
+										   .thenReturn(asList(revoked.toString()))
+										   .thenReturn(asList(new AccessKeyChange(12L, created.toString(), "CREATED")))
+										   .thenReturn(asList(new AccessKeyChange(11L, revoked.toString(), "REVOKED"),
+												   			  new AccessKeyChange(12L, created.toString(), "CREATED")));
+		keys.refreshSnapshot();
+		keys.pollEvents();
+		assertTrue(keys.getSnapshot().isActive(revoked));
+		assertTrue(keys.getSnapshot().isActive(created));
+		keys.pollEvents();
+		assertFalse(keys.getSnapshot().isActive(revoked));
+		assertTrue(keys.getSnapshot().isActive(created));
+		verify(decodedKeys).evict(revoked);
+		verify(db,times(4)).executeQuery(any(), any());
+	}
+	
+	@Test
+	public void refresh_snapshot_if_change_log_gap_exceeds_commit_timeout() {
+		keys = new ActiveAccessKeys(db, decodedKeys, 2, 0, MINUTES);
+		AccessKeyId revoked = randomAccessKeyId();
+		AccessKeyId created = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(10L))
+										   .thenReturn(asList(revoked.toString()))
+										   .thenReturn(asList(new AccessKeyChange(12L, created.toString(), "CREATED")))
+										   .thenReturn(asList(12L))
+										   .thenReturn(asList(created.toString()));
+		keys.refreshSnapshot();
+		keys.pollEvents();
+		assertFalse(keys.getSnapshot().isActive(revoked));
+		assertTrue(keys.getSnapshot().isActive(created));
+		verify(decodedKeys).evict(revoked);
+	}
+	
+	@Test
+	public void evict_decoded_keys_missing_in_refreshed_snapshot() {
+		AccessKeyId revoked = randomAccessKeyId();
+		AccessKeyId active = randomAccessKeyId();
+		when(db.executeQuery(any(), any())).thenReturn(asList(0L))
+										   .thenReturn(asList(revoked.toString(), active.toString()))
+										   .thenReturn(asList(0L))
+										   .thenReturn(asList(active.toString()));
+		keys.refreshSnapshot();
+		keys.refreshSnapshot();
+		verify(decodedKeys).evict(revoked);
+		verify(decodedKeys,never()).evict(active);
+	}
+	
+}
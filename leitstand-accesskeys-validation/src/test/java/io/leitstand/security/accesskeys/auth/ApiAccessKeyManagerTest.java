@@ -12,6 +12,7 @@ import static javax.security.enterprise.identitystore.CredentialValidationResult
 import static javax.security.enterprise.identitystore.CredentialValidationResult.Status.VALID;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -40,6 +41,9 @@ public class ApiAccessKeyManagerTest {
 	@Mock
 	private AccessKeyAuthenticator authenticator;
 	
+	@Mock
+	private DecodedAccessKeyCache decodedKeys;
+	
 	@InjectMocks
 	private ApiAccessKeyManager manager = new ApiAccessKeyManager();
 	
@@ -125,4 +129,37 @@ public class ApiAccessKeyManagerTest {
 		assertEquals(VALID,result.getStatus());
 		assertEquals("unittest", result.getCallerPrincipal().getName());
 	}
+	
+	@Test
+	public void cache_decoded_accesskey() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader(HTTP_AUTHORIZATION_HEADER)).thenReturn("Bearer ACCESSKEY");
+
+		ApiAccessKey token = mock(ApiAccessKey.class);
+		when(token.getUserId()).thenReturn(UserId.valueOf("unittest"));
+		when(keyDecoder.decode("ACCESSKEY")).thenReturn(token);
+		when(authenticator.isAllowed(request, token)).thenReturn(TRUE);
+		
+		manager.validateAccessToken(request,
+									mock(HttpServletResponse.class));
+		
+		verify(decodedKeys).put("ACCESSKEY", token);
+	}
+	
+	@Test
+	public void do_not_decode_cached_accesskey() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader(HTTP_AUTHORIZATION_HEADER)).thenReturn("Bearer ACCESSKEY");
+
+		ApiAccessKey token = mock(ApiAccessKey.class);
+		when(token.getUserId()).thenReturn(UserId.valueOf("unittest"));
+		when(decodedKeys.get("ACCESSKEY")).thenReturn(token);
+		when(authenticator.isAllowed(request, token)).thenReturn(TRUE);
+		
+		CredentialValidationResult result = manager.validateAccessToken(request,
+																		mock(HttpServletResponse.class));
+		
+		assertEquals(VALID,result.getStatus());
+		verifyZeroInteractions(keyDecoder);
+	}
 }
@@ -0,0 +1,83 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.auth;
+
+import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static io.leitstand.security.auth.accesskey.ApiAccessKey.newApiAccessKey;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.accesskey.ApiAccessKey;
+
+public class DecodedAccessKeyCacheTest {
+
+	private static final UserId USER_ID = UserId.valueOf("junit");
+	
+	private DecodedAccessKeyCache cache;
+	
+	@Before
+	public void initCache() {
+		cache = new DecodedAccessKeyCache(10, 1, MINUTES);
+	}
+	
+	@Test
+	public void cache_access_key() {
+		ApiAccessKey key = newApiAccessKey()
+						   .withId(randomAccessKeyId())
+						   .withUserId(USER_ID)
+						   .build();
+		cache.put("token", key);
+		assertSame(key,cache.get("token"));
+		assertEquals(1L,cache.getHitCount());
+	}
+	
+	@Test
+	public void evict_revoked_access_key() {
+		ApiAccessKey key = newApiAccessKey()
+						   .withId(randomAccessKeyId())
+						   .withUserId(USER_ID)
+						   .build();
+		ApiAccessKey other = newApiAccessKey()
+							 .withId(randomAccessKeyId())
+							 .withUserId(USER_ID)
+							 .build();
+		cache.put("token", key);
+		cache.put("other", other);
+		cache.evict(key.getId());
+		assertNull(cache.get("token"));
+		assertSame(other,cache.get("other"));
+	}
+	
+	@Test
+	public void expire_temporary_access_key_after_lifetime() {
+		ApiAccessKey key = newApiAccessKey()
+						   .withId(randomAccessKeyId())
+						   .withUserId(USER_ID)
+						   .withTemporaryAccess(true)
+						   .withDateCreated(new Date(currentTimeMillis() - SECONDS.toMillis(59)))
+						   .build();
+		cache.put("token", key);
+		assertSame(key,cache.get("token"));
+		
+		ApiAccessKey expired = newApiAccessKey()
+							   .withId(randomAccessKeyId())
+							   .withUserId(USER_ID)
+							   .withTemporaryAccess(true)
+							   .withDateCreated(new Date(currentTimeMillis() - SECONDS.toMillis(61)))
+							   .build();
+		cache.put("expired", expired);
+		assertNull(cache.get("expired"));
+	}
+	
+}
@@ -6,6 +6,8 @@ package io.leitstand.security.accesskeys.flow;
 import static io.leitstand.commons.messages.MessageFactory.createMessage;
 import static io.leitstand.security.accesskeys.service.ReasonCode.AKY0005E_DUPLICATE_KEY_NAME;
 import static io.leitstand.security.accesskeys.service.ReasonCode.AKY0006E_DATABASE_ERROR;
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
+import static io.leitstand.security.auth.search.SearchFilter.MatchMode.PREFIX;
 
 import io.leitstand.commons.messages.Messages;
 import io.leitstand.security.accesskeys.service.AccessKeyData;
@@ -27,7 +29,10 @@ public class CreateAccessKeyFlow {
 		try {
 			return service.createAccessKey(accessKey);
 		} catch(Exception e) {
-			if(!service.findAccessKeys(accessKey.getAccessKeyName().getValue()).isEmpty()) {
+			String name = accessKey.getAccessKeyName().getValue();
+			if(service.findAccessKeys(searchFilter(name,PREFIX))
+					  .stream()
+					  .anyMatch(key -> name.equals(key.getAccessKeyName().getValue()))) {
 				messages.add(createMessage(AKY0005E_DUPLICATE_KEY_NAME, 
 										   "key_name",
 										   accessKey.getAccessKeyName()));
@@ -24,6 +24,7 @@ import io.leitstand.security.accesskeys.jpa.AccessKeyIdConverter;
 import io.leitstand.security.accesskeys.jpa.AccessKeyNameConverter;
 import io.leitstand.security.accesskeys.service.AccessKeyName;
 import io.leitstand.security.auth.accesskey.AccessKeyId;
+import io.leitstand.security.auth.search.SearchFilter;
 
 @Entity
 @Table(schema="auth", name="accesskey")
@@ -55,6 +56,17 @@ public class AccessKey extends AbstractEntity{
 					   .getResultList();
 	}
 	
+	@SuppressWarnings("unchecked")
+	public static Query<List<AccessKey>> findByName(SearchFilter filter){
+		if(filter.isRegex()) {
+			return findByNamePattern(filter.getFilter());
+		}
+		// Native query to match the lower(name) index expression.
+		return em -> em.createNativeQuery("SELECT k.* FROM auth.accesskey k WHERE "+filter.toSqlPredicate("k.name")+" ORDER BY k.name",AccessKey.class)
+					   .setParameter(1,filter.toSqlArgument())
+					   .getResultList();
+	}
+	
 	@Convert(converter=AccessKeyIdConverter.class)
 	private AccessKeyId uuid;
 	@Convert(converter=AccessKeyNameConverter.class)
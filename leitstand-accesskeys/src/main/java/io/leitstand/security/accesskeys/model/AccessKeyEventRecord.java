@@ -0,0 +1,102 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.model;
+
+import static javax.persistence.EnumType.STRING;
+import static javax.persistence.GenerationType.IDENTITY;
+import static javax.persistence.TemporalType.TIMESTAMP;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+
+import io.leitstand.security.accesskeys.event.AccessKeyEvent;
+import io.leitstand.security.accesskeys.jpa.AccessKeyIdConverter;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+
+/**
+ * An access key change log record entity.
+ * <p>
+ * The change log records all created and revoked access keys in commit order.
+ * Other nodes poll the change log by sequence number to update their snapshot of active access keys.
+ */
+@Entity
+@Table(schema="auth", name="accesskey_event")
+public class AccessKeyEventRecord {
+
+	@Id
+	@GeneratedValue(strategy=IDENTITY)
+	@Column(name="seq")
+	private Long seq;
+	
+	@Convert(converter=AccessKeyIdConverter.class)
+	@Column(name="uuid")
+	private AccessKeyId uuid;
+	
+	@Enumerated(STRING)
+	@Column(name="type")
+	private AccessKeyEvent.Type type;
+	
+	@Temporal(TIMESTAMP)
+	@Column(name="tsevent")
+	private Date dateCreated;
+	
+	/**
+	 * JPA constructor
+	 */
+	protected AccessKeyEventRecord() {
+		// JPA constructor
+	}
+	
+	/**
+	 * Creates an <code>AccessKeyEventRecord</code>.
+	 * @param accessKeyId the access key ID
+	 * @param type the access key change
+	 */
+	protected AccessKeyEventRecord(AccessKeyId accessKeyId, AccessKeyEvent.Type type) {
+		this.uuid = accessKeyId;
+		this.type = type;
+		this.dateCreated = new Date();
+	}
+	
+	/**
+	 * Returns the change log sequence number.
+	 * @return the change log sequence number.
+	 */
+	public Long getSequence() {
+		return seq;
+	}
+	
+	/**
+	 * Returns the access key ID.
+	 * @return the access key ID.
+	 */
+	public AccessKeyId getAccessKeyId() {
+		return uuid;
+	}
+	
+	/**
+	 * Returns the access key change.
+	 * @return the access key change.
+	 */
+	public AccessKeyEvent.Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the timestamp of the access key change.
+	 * @return the timestamp of the access key change.
+	 */
+	public Date getDateCreated() {
+		return new Date(dateCreated.getTime());
+	}
+	
+}
@@ -0,0 +1,120 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.accesskeys.auth.AccessKeys;
+import io.leitstand.security.accesskeys.auth.ActiveAccessKeys;
+import io.leitstand.security.accesskeys.event.AccessKeyEvent;
+
+/**
+ * Applies created and revoked access keys to the {@link ActiveAccessKeys} snapshot of this node,
+ * as soon as the transaction has been committed.
+ * Changes of rolled back transactions are not applied.
+ * <p>
+ * In addition, the <code>ActiveAccessKeysUpdater</code> periodically deletes records from the <code>auth.accesskey_event</code> change log
+ * that are older than the retention period. The most recent record is always retained to preserve the change log position.
+ * The retention period is configured by the <code>rbms.accesskey.event.retention</code> system property in seconds
+ * and defaults to {@value #DEFAULT_RETENTION_SECONDS} seconds.
+ */
+@ApplicationScoped
+public class ActiveAccessKeysUpdater {
+
+	private static final Logger LOG = Logger.getLogger(ActiveAccessKeysUpdater.class.getName());
+	static final long DEFAULT_RETENTION_SECONDS = 3600;
+
+	@Inject
+	private ActiveAccessKeys activeKeys;
+
+	@Inject
+	@AccessKeys
+	private DatabaseService db;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private long retention = SECONDS.toMillis(DEFAULT_RETENTION_SECONDS);
+	private ScheduledFuture<?> purge;
+
+	public ActiveAccessKeysUpdater() {
+		// CDI constructor
+	}
+
+	protected ActiveAccessKeysUpdater(ActiveAccessKeys activeKeys) {
+		this.activeKeys = activeKeys;
+	}
+
+	protected ActiveAccessKeysUpdater(ActiveAccessKeys activeKeys, DatabaseService db) {
+		this.activeKeys = activeKeys;
+		this.db = db;
+	}
+
+	/**
+	 * Schedules the periodic removal of expired change log records.
+	 */
+	@PostConstruct
+	protected void schedulePurge() {
+		long retentionSeconds = parseLong(getSystemProperty("rbms.accesskey.event.retention",
+															String.valueOf(DEFAULT_RETENTION_SECONDS)));
+		retention = SECONDS.toMillis(retentionSeconds);
+		purge = scheduler.scheduleWithFixedDelay(this::purgeExpiredEvents,
+												 retentionSeconds,
+												 retentionSeconds,
+												 SECONDS);
+	}
+
+	/**
+	 * Cancels the periodic removal of expired change log records.
+	 */
+	@PreDestroy
+	protected void cancelPurge() {
+		if(purge != null) {
+			purge.cancel(false);
+		}
+	}
+
+	void onAccessKeyEvent(@Observes(during=AFTER_SUCCESS) AccessKeyEvent event) {
+		if(event.isRevoked()) {
+			activeKeys.revoked(event.getAccessKeyId());
+			return;
+		}
+		activeKeys.activated(event.getAccessKeyId());
+	}
+
+	/**
+	 * Deletes all change log records older than the retention period, except for the most recent record.
+	 */
+	protected void purgeExpiredEvents() {
+		try {
+			int purged = db.executeUpdate(prepare("DELETE FROM auth.accesskey_event WHERE tsevent < ? AND seq < (SELECT MAX(seq) FROM auth.accesskey_event)",
+												  new Timestamp(currentTimeMillis() - retention)));
+			LOG.fine(() -> format("Removed %d expired access key change log records.", purged));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Cannot remove expired access key change log records: %s", e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+}
@@ -4,13 +4,12 @@
 package io.leitstand.security.accesskeys.model;
 
 import static io.leitstand.commons.UniqueKeyConstraintViolationException.key;
-import static io.leitstand.commons.model.StringUtil.isEmptyString;
 import static io.leitstand.security.accesskeys.event.AccessKeyEvent.newAccessKeyEvent;
 import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.CREATED;
 import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.REVOKED;
 import static io.leitstand.security.accesskeys.model.AccessKey.findByAccessKeyId;
 import static io.leitstand.security.accesskeys.model.AccessKey.findByAccessKeyName;
-import static io.leitstand.security.accesskeys.model.AccessKey.findByNamePattern;
+import static io.leitstand.security.accesskeys.model.AccessKey.findByName;
 import static io.leitstand.security.accesskeys.service.AccessKeyData.newAccessKey;
 import static io.leitstand.security.accesskeys.service.AccessKeyMetaData.newAccessKeyMetaData;
 import static io.leitstand.security.accesskeys.service.ReasonCode.AKY0001E_ACCESS_KEY_NOT_FOUND;
@@ -36,6 +35,7 @@ import io.leitstand.security.auth.UserId;
 import io.leitstand.security.auth.accesskey.AccessKeyId;
 import io.leitstand.security.auth.accesskey.ApiAccessKey;
 import io.leitstand.security.auth.accesskey.ApiAccessKeyEncoder;
+import io.leitstand.security.auth.search.SearchFilter;
 
 @Service
 public class DefaultAccessKeyService implements AccessKeyService{
@@ -105,6 +105,7 @@ public class DefaultAccessKeyService implements AccessKeyService{
 		}
 		
 		repository.add(key);
+		recordAccessKeyChange(key.getAccessKeyId(), CREATED);
 		
 		ApiAccessKey token = newApiAccessKey()
 							 .withId(key.getAccessKeyId())
@@ -125,6 +126,10 @@ public class DefaultAccessKeyService implements AccessKeyService{
 		
 	}
 
+	private void recordAccessKeyChange(AccessKeyId accessKeyId, AccessKeyEvent.Type type) {
+		repository.add(new AccessKeyEventRecord(accessKeyId, type));
+	}
+
 	@Override
 	public void updateAccessKey(AccessKeyId accessKeyId, String description) {
 		AccessKey key = loadAccessKey(accessKeyId);
@@ -136,6 +141,7 @@ public class DefaultAccessKeyService implements AccessKeyService{
 		AccessKey key = repository.execute(findByAccessKeyId(accessKeyId));
 		if(key != null) {
 			repository.remove(key);
+			recordAccessKeyChange(accessKeyId, REVOKED);
 			events.fire(newAccessKeyEvent()
 						.withAccessKeyId(accessKeyId)
 						.withAccessKeyName(key.getAccessKeyName())
@@ -145,14 +151,9 @@ public class DefaultAccessKeyService implements AccessKeyService{
 	}
 
 	@Override
-	public List<AccessKeyMetaData> findAccessKeys(String filter) {
-		String pattern = filter;
-		if(isEmptyString(pattern)) {
-			pattern = ".*";
-		}
-		
+	public List<AccessKeyMetaData> findAccessKeys(SearchFilter filter) {
 		return repository
-			   .execute(findByNamePattern(pattern))
+			   .execute(findByName(filter))
 			   .stream()
 			   .map(key -> newAccessKeyMetaData()
 					   	   .withAccessKeyId(key.getAccessKeyId())
@@ -6,6 +6,7 @@ package io.leitstand.security.accesskeys.rs;
 import static io.leitstand.commons.model.StringUtil.isEmptyString;
 import static io.leitstand.security.auth.Role.ADMINISTRATOR;
 import static io.leitstand.security.auth.Role.SYSTEM;
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
 import static java.lang.String.format;
 import static java.net.URI.create;
 import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
@@ -26,7 +27,6 @@ import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
-import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -45,6 +45,7 @@ import io.leitstand.security.accesskeys.service.AccessKeyMetaData;
 import io.leitstand.security.accesskeys.service.AccessKeyService;
 import io.leitstand.security.auth.accesskey.AccessKeyId;
 import io.leitstand.security.auth.accesskey.ApiAccessKey;
+import io.leitstand.security.auth.search.SearchFilter.MatchMode;
 
 @RequestScoped
 @Path("/accesskeys")
@@ -60,9 +61,17 @@ public class AccessKeyResource {
 	@Inject
 	private Messages messages;
 	
+	/**
+	 * Returns all access keys matching the given filter expression.
+	 * @param filter - the filter expression
+	 * @param match - the match mode of the filter expression, i.e. <code>prefix</code>, <code>contains</code> or <code>regex</code>.
+	 * 				  Defaults to <code>contains</code> if not specified.
+	 * @return all access keys matching the given filter expression or an empty list if no access keys were found.
+	 */
 	@GET
-	public List<AccessKeyMetaData> findAccessKey(@QueryParam("filter") @DefaultValue(".*") String filter){
-		return service.findAccessKeys(filter);
+	public List<AccessKeyMetaData> findAccessKey(@QueryParam("filter") String filter,
+												 @QueryParam("match") MatchMode match){
+		return service.findAccessKeys(searchFilter(filter,match));
 	}
 	
 	@GET
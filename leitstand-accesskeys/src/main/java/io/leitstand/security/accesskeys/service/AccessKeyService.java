@@ -6,6 +6,7 @@ package io.leitstand.security.accesskeys.service;
 import java.util.List;
 
 import io.leitstand.security.auth.accesskey.AccessKeyId;
+import io.leitstand.security.auth.search.SearchFilter;
 
 public interface AccessKeyService {
 
@@ -14,6 +15,6 @@ public interface AccessKeyService {
 	void updateAccessKey(AccessKeyId accessKeyId,
 						 String description);
 	void removeAccessKey(AccessKeyId accessKeyId);
-	List<AccessKeyMetaData> findAccessKeys(String filter);
+	List<AccessKeyMetaData> findAccessKeys(SearchFilter filter);
 	
 }
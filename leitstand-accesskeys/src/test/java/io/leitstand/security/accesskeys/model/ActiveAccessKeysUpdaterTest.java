@@ -0,0 +1,73 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.accesskeys.model;
+
+import static io.leitstand.security.accesskeys.event.AccessKeyEvent.newAccessKeyEvent;
+import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.CREATED;
+import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.REVOKED;
+import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.accesskeys.auth.ActiveAccessKeys;
+import io.leitstand.security.accesskeys.service.AccessKeyName;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+
+public class ActiveAccessKeysUpdaterTest {
+
+	private ActiveAccessKeys activeKeys;
+	private DatabaseService db;
+	private ActiveAccessKeysUpdater updater;
+	
+	@Before
+	public void initUpdater() {
+		activeKeys = mock(ActiveAccessKeys.class);
+		db = mock(DatabaseService.class);
+		updater = new ActiveAccessKeysUpdater(activeKeys, db);
+	}
+	
+	@Test
+	public void activate_created_access_key() {
+		AccessKeyId keyId = randomAccessKeyId();
+		updater.onAccessKeyEvent(newAccessKeyEvent()
+								 .withAccessKeyId(keyId)
+								 .withAccessKeyName(AccessKeyName.valueOf("created"))
+								 .withAccessKeyStatus(CREATED)
+								 .build());
+		verify(activeKeys).activated(keyId);
+		verify(activeKeys,never()).revoked(keyId);
+	}
+	
+	@Test
+	public void revoke_removed_access_key() {
+		AccessKeyId keyId = randomAccessKeyId();
+		updater.onAccessKeyEvent(newAccessKeyEvent()
+								 .withAccessKeyId(keyId)
+								 .withAccessKeyName(AccessKeyName.valueOf("revoked"))
+								 .withAccessKeyStatus(REVOKED)
+								 .build());
+		verify(activeKeys).revoked(keyId);
+		verify(activeKeys,never()).activated(keyId);
+	}
+	
+	@Test
+	public void purge_expired_change_log_records() {
+		updater.purgeExpiredEvents();
+		verify(db).executeUpdate(any());
+	}
+	
+	@Test
+	public void purge_failure_does_not_propagate() {
+		when(db.executeUpdate(any())).thenThrow(new IllegalStateException("Database not available"));
+		updater.purgeExpiredEvents();
+	}
+	
+}
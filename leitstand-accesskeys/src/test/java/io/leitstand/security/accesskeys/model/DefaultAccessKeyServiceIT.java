@@ -13,11 +13,16 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.CREATED;
+import static io.leitstand.security.accesskeys.event.AccessKeyEvent.Type.REVOKED;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Date;
+import java.util.List;
 
 import javax.enterprise.event.Event;
 
@@ -282,6 +287,36 @@ public class DefaultAccessKeyServiceIT extends AccessKeysIT{
 
 	}
 	
+	@Test
+	public void record_access_key_changes_in_change_log() {
+		AccessKeyData key = newAccessKey()
+							.withAccessKeyId(randomAccessKeyId())
+							.withAccessKeyName(AccessKeyName.valueOf("change_log"))
+							.withDescription("Unittest access key")
+							.build();
+		transaction(() -> {
+			service.createAccessKey(key);
+		});
+		transaction(() -> {
+			service.updateAccessKey(key.getAccessKeyId(), "new description");
+		});
+		transaction(() -> {
+			service.removeAccessKey(key.getAccessKeyId());
+		});
+		
+		transaction(() -> {
+			// Description updates do not affect the access key state and are not recorded.
+			List<AccessKeyEvent.Type> changes = getEntityManager()
+												.createQuery("SELECT e FROM AccessKeyEventRecord e ORDER BY e.seq",AccessKeyEventRecord.class)
+												.getResultList()
+												.stream()
+												.filter(e -> key.getAccessKeyId().equals(e.getAccessKeyId()))
+												.map(AccessKeyEventRecord::getType)
+												.collect(toList());
+			assertEquals(asList(CREATED,REVOKED),changes);
+		});
+	}
+	
 	@Test
 	public void removing_an_non_existent_accesskey_creates_no_error() {
 		AccessKeyId keyId = randomAccessKeyId();
@@ -3,7 +3,7 @@
  */
 package io.leitstand.security.auth.accesskey;
 
-import java.util.UUID;
+import static io.leitstand.security.crypto.SecureRandomPool.randomUUID;
 
 import javax.json.bind.annotation.JsonbTypeAdapter;
 
@@ -16,7 +16,7 @@ public class AccessKeyId extends Scalar<String>{
 	private static final long serialVersionUID = 1L;
 
 	public static AccessKeyId randomAccessKeyId() {
-		return valueOf(UUID.randomUUID().toString());
+		return valueOf(randomUUID().toString());
 	}
 	
 	public static AccessKeyId valueOf(String id) {
@@ -5,16 +5,15 @@ package io.leitstand.security.auth.accesskey;
 
 import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
 import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static io.leitstand.security.auth.accesskey.PathMatcher.pathMatcher;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableSet;
+import static java.util.concurrent.TimeUnit.HOURS;
 
 import java.util.Date;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Pattern;
 
 import javax.json.bind.annotation.JsonbProperty;
 import javax.json.bind.annotation.JsonbTypeAdapter;
@@ -22,6 +21,7 @@ import javax.json.bind.annotation.JsonbTypeAdapter;
 import io.leitstand.commons.jsonb.DateToLongAdapter;
 import io.leitstand.commons.model.ValueObject;
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.cache.SegmentedLruCache;
 import io.leitstand.security.auth.http.LeitstandHttpAuthMechanism;
 import io.leitstand.security.auth.jwt.JsonWebToken;
 
@@ -34,7 +34,24 @@ import io.leitstand.security.auth.jwt.JsonWebToken;
  */
 public class ApiAccessKey extends JsonWebToken<ApiAccessKey.Payload> {
 	
-	private static final ConcurrentMap<String,Pattern> PATTERNS = new ConcurrentHashMap<>();
+	static final int MAX_INTERNED_SETS = 1024;
+	private static final SegmentedLruCache<Set<String>,Set<String>> INTERNED_SETS = new SegmentedLruCache<>(MAX_INTERNED_SETS, 1, HOURS);
+	
+	/**
+	 * Returns a shared immutable set with the same elements as the given set.
+	 * Access keys share the method and path sets to reduce memory consumption 
+	 * and to avoid copying the sets for every decoded access key.
+	 * @param set - the set to intern
+	 * @return the shared immutable set
+	 */
+	static Set<String> intern(Set<String> set) {
+		Set<String> interned = INTERNED_SETS.get(set);
+		if(interned != null) {
+			return interned;
+		}
+		Set<String> copy = unmodifiableSet(new TreeSet<>(set));
+		return INTERNED_SETS.putIfAbsent(copy, copy);
+	}
 	
 	/**
 	 * Returns a builder to create a new immutable access token.
@@ -88,22 +105,27 @@ public class ApiAccessKey extends JsonWebToken<ApiAccessKey.Payload> {
 		
 		public Builder withMethods(Set<String> methods) {
 			assertNotInvalidated(getClass(), payload);
-			payload.methods = new TreeSet<>();
 			for(String method : methods) {
-				payload.methods.add(method.toLowerCase());
+				if(!method.equals(method.toLowerCase())) {
+					Set<String> lowerCase = new TreeSet<>();
+					for(String m : methods) {
+						lowerCase.add(m.toLowerCase());
+					}
+					payload.methods = intern(lowerCase);
+					return this;
+				}
 			}
+			payload.methods = intern(methods);
 			return this;
 		}
 		
 		public Builder withPaths(String... paths) {
-			assertNotInvalidated(getClass(), payload);
-			payload.paths = new TreeSet<>(asList(paths));
-			return this;
+			return withPaths(new TreeSet<>(asList(paths)));
 		}
 		
 		public Builder withPaths(Set<String> paths) {
 			assertNotInvalidated(getClass(), payload);
-			payload.paths = new TreeSet<>(paths);
+			payload.paths = intern(paths);
 			return this;
 		}
 		
@@ -127,6 +149,11 @@ public class ApiAccessKey extends JsonWebToken<ApiAccessKey.Payload> {
 		public ApiAccessKey build() {
 			try {
 				assertNotInvalidated(getClass(), payload);
+				// Assign the ID here rather than in the payload field initializer, 
+				// because decoded access keys must not consume random data.
+				if(payload.id == null) {
+					payload.id = randomAccessKeyId();
+				}
 				if(payload.dateCreated == null) {
 					payload.dateCreated = new Date();
 				}
@@ -146,7 +173,7 @@ public class ApiAccessKey extends JsonWebToken<ApiAccessKey.Payload> {
 		// NOTE: Use JWT standard and public claims only to avoid name collision issues.
 		   
 		@JsonbProperty("jti")
-		private AccessKeyId id = randomAccessKeyId();
+		private AccessKeyId id;
 		
 		@JsonbProperty("sub")
 		private UserId userId;
@@ -205,13 +232,7 @@ public class ApiAccessKey extends JsonWebToken<ApiAccessKey.Payload> {
 			if(paths.isEmpty()) {
 				return true;
 			}
-			for(String pattern : paths) {
-				Pattern compiled = PATTERNS.computeIfAbsent(pattern, Pattern::compile);
-				if(compiled.matcher(path).matches()) {
-					return true;
-				}
-			}
-			return false;
+			return pathMatcher(paths).matches(path);
 		}
 		
 		public Set<String> getMethods() {
@@ -0,0 +1,205 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.accesskey;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import io.leitstand.security.auth.cache.SegmentedLruCache;
+
+/**
+ * The <code>PathMatcher</code> tests whether a request path matches any of the path patterns of an {@link ApiAccessKey}.
+ * <p>
+ * All path patterns of an access key are compiled into a single matcher.
+ * The literal prefix of each pattern, i.e. all characters up to the first regular expression meta character,
+ * is added to a trie. 
+ * Patterns without meta characters are matched literally.
+ * The remaining tails of all patterns sharing the same literal prefix are combined into a single regular expression,
+ * which is only evaluated if the request path starts with the literal prefix.
+ * Hence common prefixes like <code>/api/v1/</code> are scanned only once and not for every pattern.
+ * Named groups are turned into non-capturing groups before the tails are combined, 
+ * because group names must be unique in a regular expression.
+ * Patterns are matched one by one if their tails cannot be combined.
+ * <p>
+ * The matcher retains the outcome of the {@value #MAX_DECISIONS} most recent path tests.
+ * Compiled matchers are cached by their path patterns. 
+ * The cache holds at most {@value #MAX_MATCHERS} matchers.
+ */
+final class PathMatcher {
+
+	static final int MAX_MATCHERS = 256;
+	static final int MAX_DECISIONS = 64;
+	
+	private static final String META_CHARACTERS = "\\.[]{}()*+?^$|";
+	private static final String QUANTIFIERS = "*+?{";
+	private static final Pattern GROUP_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+	private static final Pattern NAMED_GROUP = Pattern.compile("(?<!\\\\)\\(\\?<[a-zA-Z][a-zA-Z0-9]*>");
+	
+	private static final SegmentedLruCache<Set<String>,PathMatcher> MATCHERS = new SegmentedLruCache<>(MAX_MATCHERS, 1, HOURS);
+	
+	/**
+	 * Returns the compiled matcher for the given path patterns.
+	 * @param patterns - the path patterns
+	 * @return the compiled path matcher
+	 */
+	static PathMatcher pathMatcher(Set<String> patterns) {
+		PathMatcher matcher = MATCHERS.get(patterns);
+		if(matcher == null) {
+			// Compile outside the cache lock and accept that concurrent threads might compile the same matcher.
+			// Use a private copy of the patterns as cache key.
+			matcher = MATCHERS.putIfAbsent(new TreeSet<>(patterns), new PathMatcher(patterns));
+		}
+		return matcher;
+	}
+	
+	private static final class Node {
+		
+		private final Map<Character,Node> children = new HashMap<>(4);
+		private boolean literal;
+		private Pattern tails;
+		
+		Node child(char c) {
+			return children.computeIfAbsent(c, k -> new Node());
+		}
+		
+	}
+	
+	private final Node root = new Node();
+	private final List<Pattern> standalone;
+	private final SegmentedLruCache<String,Boolean> decisions = new SegmentedLruCache<>(MAX_DECISIONS, 1, HOURS);
+	
+	PathMatcher(Set<String> patterns){
+		Map<String,List<String>> tails = new LinkedHashMap<>();
+		Map<String,List<Pattern>> compiled = new LinkedHashMap<>();
+		List<Pattern> standalone = new ArrayList<>();
+		for(String pattern : patterns) {
+			// Compile every pattern on its own first to report invalid patterns properly.
+			Pattern regex = Pattern.compile(pattern);
+			if(GROUP_REFERENCE.matcher(pattern).find()) {
+				// Group references cannot be combined with other patterns.
+				standalone.add(regex);
+				continue;
+			}
+			int prefix = literalPrefixLength(pattern);
+			if(prefix == pattern.length()) {
+				insert(pattern).literal = true;
+				continue;
+			}
+			String tail = NAMED_GROUP.matcher(pattern.substring(prefix)).replaceAll("(?:");
+			if(!isValid(tail)) {
+				standalone.add(regex);
+				continue;
+			}
+			String literal = pattern.substring(0,prefix);
+			tails.computeIfAbsent(literal, k -> new ArrayList<>())
+				 .add(tail);
+			compiled.computeIfAbsent(literal, k -> new ArrayList<>())
+					.add(regex);
+		}
+		for(Map.Entry<String,List<String>> group : tails.entrySet()) {
+			try {
+				Pattern combined = Pattern.compile(group.getValue()
+														.stream()
+														.map(tail -> "(?:"+tail+")")
+														.collect(joining("|")));
+				insert(group.getKey()).tails = combined;
+			} catch (PatternSyntaxException e) {
+				// Match the patterns one by one if they cannot be combined.
+				standalone.addAll(compiled.get(group.getKey()));
+			}
+		}
+		this.standalone = standalone;
+	}
+	
+	private static boolean isValid(String regex) {
+		try {
+			Pattern.compile(regex);
+			return true;
+		} catch (PatternSyntaxException e) {
+			return false;
+		}
+	}
+	
+	private Node insert(String prefix) {
+		Node node = root;
+		for(int i=0; i < prefix.length(); i++) {
+			node = node.child(prefix.charAt(i));
+		}
+		return node;
+	}
+	
+	static int literalPrefixLength(String pattern) {
+		if(pattern.indexOf('|') >= 0) {
+			// Top-level alternations cannot be split.
+			return 0;
+		}
+		for(int i=0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if(META_CHARACTERS.indexOf(c) >= 0) {
+				if(i > 0 && QUANTIFIERS.indexOf(c) >= 0) {
+					// The quantifier applies to the preceding character.
+					return i-1;
+				}
+				return i;
+			}
+		}
+		return pattern.length();
+	}
+	
+	/**
+	 * Tests whether the given path matches any of the compiled path patterns.
+	 * @param path - the path to test
+	 * @return <code>true</code> if the path matches a path pattern, <code>false</code> otherwise.
+	 */
+	boolean matches(String path) {
+		Boolean decision = decisions.get(path);
+		if(decision == null) {
+			decision = decisions.putIfAbsent(path, evaluate(path));
+		}
+		return decision;
+	}
+	
+	private boolean evaluate(String path) {
+		Node node = root;
+		for(int i=0; node != null; i++) {
+			if(node.tails != null && matchesTail(node.tails, path, i)) {
+				return true;
+			}
+			if(i == path.length()) {
+				if(node.literal) {
+					return true;
+				}
+				break;
+			}
+			node = node.children.get(path.charAt(i));
+		}
+		for(Pattern pattern : standalone) {
+			if(pattern.matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean matchesTail(Pattern tails, String path, int offset) {
+		// Transparent, non-anchoring bounds preserve the semantics of the original pattern, 
+		// i.e. look-behinds see the literal prefix and ^ only matches at the beginning of the path.
+		return tails.matcher(path)
+					.region(offset, path.length())
+					.useTransparentBounds(true)
+					.useAnchoringBounds(false)
+					.matches();
+	}
+	
+}
@@ -0,0 +1,342 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.cache;
+
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.util.Arrays.asList;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A size-bounded cache with a segmented LRU eviction policy and expiry after inactivity.
+ * <p>
+ * The cache is split into stripes to reduce lock contention. Each stripe is guarded by its own lock
+ * and consists of a <em>probation</em> and a <em>protected</em> segment.
+ * New entries are added to the probation segment. 
+ * An entry is promoted to the protected segment when it is accessed again.
+ * The least recently used entry of the protected segment is demoted to the probation segment if the protected segment is full,
+ * and the least recently used entry of the probation segment is evicted if the stripe is full.
+ * Hence entries that were accessed only once are evicted before frequently accessed entries.
+ * <p>
+ * An entry expires if it has not been accessed for the configured expiry time.
+ * Expired entries are removed when accessed and evicted before any other entry.
+ * <p>
+ * The mapping function passed to {@link #computeIfAbsent(Object, Function)} is invoked while holding the stripe lock
+ * and must therefore be cheap.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SegmentedLruCache<K,V> {
+	
+	private static final int PROTECTED_PERCENT = 80;
+
+	private static final class Entry<V> {
+		
+		private final V value;
+		private long lastAccess;
+		
+		Entry(V value, long lastAccess){
+			this.value = value;
+			this.lastAccess = lastAccess;
+		}
+		
+	}
+	
+	private final class Stripe {
+		
+		private final LinkedHashMap<K,Entry<V>> probation = new LinkedHashMap<>(16,0.75f,true);
+		private final LinkedHashMap<K,Entry<V>> protectd = new LinkedHashMap<>(16,0.75f,true);
+		private final int maxSize;
+		private final int maxProtected;
+		
+		Stripe(int maxSize){
+			this.maxSize = maxSize;
+			this.maxProtected = max(1,maxSize * PROTECTED_PERCENT / 100);
+		}
+		
+		synchronized V get(K key, long now) {
+			Entry<V> entry = protectd.get(key);
+			if(entry == null) {
+				entry = probation.remove(key);
+				if(entry == null) {
+					return null;
+				}
+				if(isExpired(entry, now)) {
+					return null;
+				}
+				promote(key, entry);
+			} else if(isExpired(entry, now)) {
+				protectd.remove(key);
+				return null;
+			}
+			entry.lastAccess = now;
+			return entry.value;
+		}
+		
+		synchronized V put(K key, V value, long now) {
+			Entry<V> entry = protectd.get(key);
+			if(entry == null) {
+				entry = probation.get(key);
+			}
+			if(entry != null && !isExpired(entry, now)) {
+				return entry.value;
+			}
+			remove(key);
+			evictIfFull(now);
+			probation.put(key, new Entry<>(value, now));
+			return value;
+		}
+		
+		synchronized boolean remove(K key) {
+			return protectd.remove(key) != null || probation.remove(key) != null;
+		}
+		
+		synchronized int removeIf(Predicate<? super V> filter) {
+			int removed = 0;
+			for(Map<K,Entry<V>> segment : asList(probation, protectd)) {
+				Iterator<Entry<V>> i = segment.values().iterator();
+				while(i.hasNext()) {
+					if(filter.test(i.next().value)) {
+						i.remove();
+						removed++;
+					}
+				}
+			}
+			return removed;
+		}
+		
+		synchronized int size() {
+			return probation.size() + protectd.size();
+		}
+		
+		synchronized void clear() {
+			probation.clear();
+			protectd.clear();
+		}
+		
+		private void promote(K key, Entry<V> entry) {
+			protectd.put(key, entry);
+			if(protectd.size() > maxProtected) {
+				Iterator<Map.Entry<K,Entry<V>>> lru = protectd.entrySet().iterator();
+				Map.Entry<K,Entry<V>> demoted = lru.next();
+				lru.remove();
+				probation.put(demoted.getKey(), demoted.getValue());
+			}
+		}
+		
+		private void evictIfFull(long now) {
+			if(size() < maxSize) {
+				return;
+			}
+			// Remove expired entries from the LRU end first.
+			if(evictExpired(probation, now) + evictExpired(protectd, now) > 0 && size() < maxSize) {
+				return;
+			}
+			Map<K,Entry<V>> victims = probation.isEmpty() ? protectd : probation;
+			Iterator<Map.Entry<K,Entry<V>>> lru = victims.entrySet().iterator();
+			lru.next();
+			lru.remove();
+			evictions.increment();
+		}
+		
+		private int evictExpired(Map<K,Entry<V>> segment, long now) {
+			int expired = 0;
+			Iterator<Entry<V>> i = segment.values().iterator();
+			while(i.hasNext()) {
+				Entry<V> entry = i.next();
+				if(!isExpired(entry, now)) {
+					// Entries are roughly ordered by last access.
+					break;
+				}
+				i.remove();
+				expired++;
+			}
+			return expired;
+		}
+		
+	}
+	
+	private final Stripe[] stripes;
+	private final LongSupplier clock;
+	private final long expiry;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * Creates a <code>SegmentedLruCache</code>.
+	 * @param maxSize - the maximum number of entries
+	 * @param expiry - the time after which an entry expires if it was not accessed
+	 * @param unit - the expiry time unit
+	 */
+	public SegmentedLruCache(int maxSize, long expiry, TimeUnit unit) {
+		this(maxSize, expiry, unit, System::currentTimeMillis);
+	}
+	
+	/**
+	 * Creates a <code>SegmentedLruCache</code> with the given clock.
+	 * @param maxSize - the maximum number of entries
+	 * @param expiry - the time after which an entry expires if it was not accessed
+	 * @param unit - the expiry time unit
+	 * @param clock - the clock in milliseconds
+	 */
+	@SuppressWarnings("unchecked")
+	protected SegmentedLruCache(int maxSize, long expiry, TimeUnit unit, LongSupplier clock) {
+		if(maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive: "+maxSize);
+		}
+		// Use a power of two stripes and retain at least 16 entries per stripe.
+		int count = highestOneBit(max(1, Math.min(4 * getRuntime().availableProcessors(), maxSize / 16)));
+		this.stripes = new SegmentedLruCache.Stripe[count];
+		for(int i=0; i < count; i++) {
+			int stripeSize = maxSize / count + (i < maxSize % count ? 1 : 0);
+			stripes[i] = new Stripe(stripeSize);
+		}
+		this.expiry = unit.toMillis(expiry);
+		this.clock = clock;
+	}
+	
+	private Stripe stripeOf(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return stripes[h & (stripes.length-1)];
+	}
+	
+	private boolean isExpired(Entry<V> entry, long now) {
+		return now - entry.lastAccess >= expiry;
+	}
+	
+	/**
+	 * Returns the cached value of the given key.
+	 * @param key - the key
+	 * @return the cached value or <code>null</code> if no value is cached or the value has expired.
+	 */
+	public V get(K key) {
+		V value = stripeOf(key).get(key, clock.getAsLong());
+		if(value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the cached value of the given key or computes and caches a new value if no value is cached.
+	 * @param key - the key
+	 * @param mappingFunction - the function to compute a new value
+	 * @return the cached or computed value
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		Stripe stripe = stripeOf(key);
+		long now = clock.getAsLong();
+		synchronized(stripe) {
+			V value = stripe.get(key, now);
+			if(value != null) {
+				hits.increment();
+				return value;
+			}
+			misses.increment();
+			return stripe.put(key, mappingFunction.apply(key), now);
+		}
+	}
+	
+	/**
+	 * Adds a value to the cache unless an unexpired value is already cached.
+	 * @param key - the key
+	 * @param value - the value
+	 * @return the cached value
+	 */
+	public V putIfAbsent(K key, V value) {
+		return stripeOf(key).put(key, value, clock.getAsLong());
+	}
+	
+	/**
+	 * Removes the value of the given key.
+	 * @param key - the key
+	 * @return <code>true</code> if a value was removed, <code>false</code> otherwise.
+	 */
+	public boolean remove(K key) {
+		return stripeOf(key).remove(key);
+	}
+	
+	/**
+	 * Removes all values matching the given filter.
+	 * This operation scans all entries and is meant for rare invalidations.
+	 * @param filter - the filter to select the values to be removed
+	 * @return the number of removed values
+	 */
+	public int removeIf(Predicate<? super V> filter) {
+		int removed = 0;
+		for(Stripe stripe : stripes) {
+			removed += stripe.removeIf(filter);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Removes all cached values.
+	 */
+	public void clear() {
+		for(Stripe stripe : stripes) {
+			stripe.clear();
+		}
+	}
+	
+	/**
+	 * Returns the number of cached values, including expired values that have not been removed yet.
+	 * @return the number of cached values.
+	 */
+	public int getSize() {
+		int size = 0;
+		for(Stripe stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns the number of cache hits.
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	/**
+	 * Returns the number of cache misses.
+	 * @return the number of cache misses.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Returns the number of values evicted to make room for new values. Expired values are not counted.
+	 * @return the number of evicted values.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+	
+	/**
+	 * Returns the ratio of cache hits to all cache lookups.
+	 * @return the cache hit rate or <code>0</code> if the cache has not been accessed yet.
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+	
+}
@@ -0,0 +1,7 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+/**
+ * Contains bounded in-memory caches for authentication state.
+ */
+package io.leitstand.security.auth.cache;
@@ -5,10 +5,10 @@ package io.leitstand.security.auth.http;
 
 import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
 import static io.leitstand.commons.model.ObjectUtil.asSet;
+import static io.leitstand.security.crypto.SecureRandomPool.randomUUID;
 import static java.lang.System.currentTimeMillis;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableSet;
-import static java.util.UUID.randomUUID;
 
 import java.util.Date;
 import java.util.Set;
@@ -111,6 +111,9 @@ public class AccessToken extends JsonWebToken<AccessToken.Payload> {
 		public AccessToken build() {
 			try {
 				assertNotInvalidated(getClass(), payload);
+				// Assign the ID here rather than in the payload field initializer, 
+				// because decoded tokens must not consume random data.
+				payload.id = randomUUID().toString();
 				payload.dateCreated = new Date();
 				return new AccessToken(payload);
 			} finally {
@@ -128,7 +131,7 @@ public class AccessToken extends JsonWebToken<AccessToken.Payload> {
 		// NOTE: Use JWT standard and public claims only to avoid name collision issues.
 		   
 		@JsonbProperty("jti")
-		private String id = randomUUID().toString();
+		private String id;
 		
 		@JsonbProperty("sub")
 		private UserId userId;
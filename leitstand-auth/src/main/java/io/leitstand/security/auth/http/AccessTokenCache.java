@@ -0,0 +1,191 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.http;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+
+/**
+ * The <code>AccessTokenCache</code> retains decoded and verified {@link AccessToken}s
+ * to avoid decoding the same access token cookie for every request.
+ * <p>
+ * The cache is keyed by the encoded token and holds the decoded {@link AccessToken} along with the {@link CredentialValidationResult} for the token.
+ * An entry expires before the token enters the refresh interval,
+ * such that the {@link CookieManager} is able to renew the access token cookie as before.
+ * An entry of a token without expiry date expires after the maximum time-to-live.
+ * <p>
+ * The maximum time-to-live of an entry is configured by the <code>rbms.access.token.cache.ttl</code>
+ * system property in seconds and defaults to {@value #DEFAULT_TTL_SECONDS} seconds.
+ * The maximum number of entries is configured by the <code>rbms.access.token.cache.size</code>
+ * system property and defaults to {@value #DEFAULT_MAX_SIZE} entries.
+ * Tokens are not cached if the cache is exhausted.
+ */
+@ApplicationScoped
+public class AccessTokenCache {
+
+	private static final Logger LOG = Logger.getLogger(AccessTokenCache.class.getName());
+	static final long DEFAULT_TTL_SECONDS = 300;
+	static final int DEFAULT_MAX_SIZE = 4096;
+
+	private static final class Entry {
+
+		private final AccessToken token;
+		private final CredentialValidationResult result;
+		private final long expiry;
+
+		Entry(AccessToken token, CredentialValidationResult result, long expiry){
+			this.token = token;
+			this.result = result;
+			this.expiry = expiry;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+
+	}
+
+	private final Map<String,Entry> entries = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final long ttl;
+	private final int maxSize;
+
+	/**
+	 * Creates an <code>AccessTokenCache</code> configured by system properties.
+	 */
+	public AccessTokenCache() {
+		this(parseLong(getSystemProperty("rbms.access.token.cache.ttl",
+										 String.valueOf(DEFAULT_TTL_SECONDS))),
+			 SECONDS,
+			 parseInt(getSystemProperty("rbms.access.token.cache.size",
+										String.valueOf(DEFAULT_MAX_SIZE))));
+	}
+
+	/**
+	 * Creates an <code>AccessTokenCache</code>.
+	 * @param ttl - the maximum time-to-live of a cache entry
+	 * @param unit - the time-to-live unit
+	 * @param maxSize - the maximum number of cache entries
+	 */
+	protected AccessTokenCache(long ttl, TimeUnit unit, int maxSize) {
+		this.ttl = unit.toMillis(ttl);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the cached validation result of the given encoded access token.
+	 * @param jwt - the encoded access token
+	 * @return the cached validation result or <code>null</code> if the token is not cached.
+	 */
+	public CredentialValidationResult get(String jwt) {
+		Entry entry = entry(jwt);
+		if(entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.result;
+	}
+
+	/**
+	 * Returns the cached decoded access token of the given encoded access token.
+	 * @param jwt - the encoded access token
+	 * @return the decoded access token or <code>null</code> if the token is not cached.
+	 */
+	public AccessToken getAccessToken(String jwt) {
+		Entry entry = entry(jwt);
+		if(entry == null) {
+			return null;
+		}
+		return entry.token;
+	}
+
+	private Entry entry(String jwt) {
+		Entry entry = entries.get(jwt);
+		if(entry != null && entry.isExpired(currentTimeMillis())) {
+			entries.remove(jwt, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds a verified access token to the cache.
+	 * The token is not cached if it is about to expire within the refresh interval.
+	 * @param jwt - the encoded access token
+	 * @param token - the decoded access token
+	 * @param result - the validation result of the access token
+	 * @param refreshInterval - the refresh interval of access tokens
+	 */
+	public void put(String jwt,
+					AccessToken token,
+					CredentialValidationResult result,
+					Duration refreshInterval) {
+		long now = currentTimeMillis();
+		long expiry = now + ttl;
+		Date tokenExpiry = token.getDateExpiry();
+		if(tokenExpiry != null) {
+			expiry = Math.min(expiry, tokenExpiry.getTime() - refreshInterval.toMillis());
+		}
+		if(expiry <= now) {
+			return;
+		}
+		if(entries.size() >= maxSize) {
+			entries.values().removeIf(entry -> entry.isExpired(now));
+			if(entries.size() >= maxSize) {
+				LOG.fine("Access token cache exhausted. Token is not cached.");
+				return;
+			}
+		}
+		entries.put(jwt, new Entry(token, result, expiry));
+	}
+
+	/**
+	 * Removes an access token from the cache.
+	 * @param jwt - the encoded access token
+	 */
+	public void remove(String jwt) {
+		entries.remove(jwt);
+	}
+
+	/**
+	 * Returns the number of cached access tokens.
+	 * @return the number of cached access tokens.
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of cache hits.
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of cache misses.
+	 * @return the number of cache misses.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+}
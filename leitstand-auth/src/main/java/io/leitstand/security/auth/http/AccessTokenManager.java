@@ -3,6 +3,9 @@
  */
 package io.leitstand.security.auth.http;
 
+import static java.util.EnumSet.complementOf;
+import static java.util.EnumSet.of;
+
 import java.util.Set;
 
 import javax.security.enterprise.identitystore.CredentialValidationResult;
@@ -17,9 +20,19 @@ import io.leitstand.security.auth.UserId;
  * Leitstand iterates over all existing access token managers until a first authentication manager accepts or declines the current request 
  * or issues an access token respectively.
  * All remaining access token managers which have not yet been invoked will not be called.
+ * A request is only passed to the access token managers that process the {@link CredentialType} of the request.
  */
 public interface AccessTokenManager {
 
+	/**
+	 * Returns the credential types processed by this access token manager.
+	 * By default, an access token manager processes all requests conveying credentials.
+	 * @return the credential types processed by this access token manager.
+	 */
+	default Set<CredentialType> getCredentialTypes(){
+		return complementOf(of(CredentialType.NONE));
+	}
+
 	/**
 	 * Validates the access token of the current request.
 	 * @param request the HTTP request
@@ -17,9 +17,24 @@ import io.leitstand.commons.model.CompositeValue;
 public class Authorization extends CompositeValue {
 
 	public static final String HTTP_AUTHORIZATION_HEADER = "Authorization";
+	private static final String AUTHORIZATION_ATTRIBUTE = Authorization.class.getName();
 	
+	/**
+	 * Returns the <code>Authorization</code> of the given request.
+	 * The header is parsed once per request and retained as request attribute.
+	 * @param request - the HTTP request
+	 * @return the <code>Authorization</code> header or <code>null</code> if the request has no <i>Authorization</i> header.
+	 */
 	public static Authorization valueOf(HttpServletRequest request) {
-		return valueOf(request.getHeader(HTTP_AUTHORIZATION_HEADER));
+		Object parsed = request.getAttribute(AUTHORIZATION_ATTRIBUTE);
+		if(parsed instanceof Authorization) {
+			return (Authorization) parsed;
+		}
+		Authorization auth = valueOf(request.getHeader(HTTP_AUTHORIZATION_HEADER));
+		if(auth != null) {
+			request.setAttribute(AUTHORIZATION_ATTRIBUTE, auth);
+		}
+		return auth;
 	}
 	
 	/**
@@ -43,9 +58,14 @@ public class Authorization extends CompositeValue {
 	 * @param header the Authorization HTTP header value
 	 */
 	public Authorization(String header) {
-		String[] segments = header.split(" ");
-		this.type = segments[0];
-		this.credentials = segments[1];
+		int separator = header.indexOf(' ');
+		if(separator < 0) {
+			this.type = header;
+			this.credentials = "";
+			return;
+		}
+		this.type = header.substring(0, separator);
+		this.credentials = header.substring(separator+1).trim();
 	}
 	
 	/**
@@ -3,8 +3,12 @@
  */
 package io.leitstand.security.auth.http;
 
+import static io.leitstand.security.auth.http.CredentialType.BASIC;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.security.enterprise.credential.UsernamePasswordCredential;
@@ -18,6 +22,9 @@ import javax.servlet.http.HttpServletResponse;
  * by means of
  * decoding the user credentials from the <code>Authorization</code> HTTP header and
  * verification of the user exists and the supplied password is correct.
+ * <p>
+ * Successfully verified credentials are kept in the {@link VerifiedCredentialCache} for a short period of time,
+ * in order to avoid the expensive password verification for every request.
  */
 @Dependent
 public class BasicAuthManager implements AccessTokenManager{
@@ -25,6 +32,28 @@ public class BasicAuthManager implements AccessTokenManager{
 	@Inject
 	private IdentityStore is;
 	
+	@Inject
+	private VerifiedCredentialCache cache;
+	
+	public BasicAuthManager() {
+		// CDI constructor
+	}
+	
+	protected BasicAuthManager(IdentityStore is, 
+							   VerifiedCredentialCache cache) {
+		this.is = is;
+		this.cache = cache;
+	}
+	
+	/**
+	 * Returns the credential types processed by this manager.
+	 * @return <code>BASIC</code>
+	 */
+	@Override
+	public Set<CredentialType> getCredentialTypes() {
+		return EnumSet.of(BASIC);
+	}
+	
 	/**
 	 * 
 	 * @param request
@@ -38,8 +67,10 @@ public class BasicAuthManager implements AccessTokenManager{
 		Authorization auth = Authorization.valueOf(request);
 		if(auth != null && auth.isBasic()) {
 			BasicAuthentication basic = new BasicAuthentication(auth);
-			return is.validate(new UsernamePasswordCredential(basic.getUserId().toString(), 
-														 	  basic.getPassword()));
+			return cache.validate(basic.getUserId(), 
+								  basic.getPassword(), 
+								  () -> is.validate(new UsernamePasswordCredential(basic.getUserId().toString(), 
+								  												   basic.getPassword())));
 		}
 		return NOT_VALIDATED_RESULT;
 	}
@@ -6,6 +6,7 @@ package io.leitstand.security.auth.http;
 import static io.leitstand.commons.etc.Environment.getSystemProperty;
 import static io.leitstand.commons.jsonb.IsoDateAdapter.isoDateFormat;
 import static io.leitstand.security.auth.http.AccessToken.newAccessToken;
+import static io.leitstand.security.auth.http.CredentialType.COOKIE;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
 import static java.util.logging.Level.FINER;
@@ -14,6 +15,7 @@ import static javax.security.enterprise.identitystore.CredentialValidationResult
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
 
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -45,6 +47,9 @@ import io.leitstand.security.auth.user.UserRegistry;
  *  <li>Decoding and verification of an access token restored from the cookie.</li>
  * </ul>
  * The cookie name defaults to <code>rtb-access</code> and can be overriden by specifying the <code>rbms.access.token.cookie.name</code> environment variable.
+ * <p>
+ * Verified access tokens are kept in the {@link AccessTokenCache} until they are due for renewal,
+ * in order to avoid decoding the same cookie for every request.
  */
 @Dependent
 public class CookieManager implements AccessTokenManager{
@@ -86,6 +91,9 @@ public class CookieManager implements AccessTokenManager{
 	@Inject
 	private JsonWebTokenConfig config;
 	
+	@Inject
+	private AccessTokenCache tokens;
+	
 	/**
 	 * Creates an {@link AccessToken} for the given authenticated user with the given roles.
 	 * @param request the HTTP request
@@ -155,6 +163,10 @@ public class CookieManager implements AccessTokenManager{
 	@Override
 	public void invalidateAccessToken(HttpServletRequest request, 
 									  HttpServletResponse response) {
+		Cookie jwt = findAccessToken(request);
+		if(jwt != null) {
+			tokens.remove(jwt.getValue());
+		}
 		Cookie cookie = new Cookie(JWT_COOKIE,"");
 		cookie.setHttpOnly(true);
 		cookie.setSecure(request.isSecure());
@@ -164,6 +176,15 @@ public class CookieManager implements AccessTokenManager{
 	}
 
 
+	/**
+	 * Returns the credential types processed by this manager.
+	 * @return <code>COOKIE</code>
+	 */
+	@Override
+	public Set<CredentialType> getCredentialTypes() {
+		return EnumSet.of(COOKIE);
+	}
+	
 	/**
 	 * Decodes and validates the access token from the cookie.
 	 * @param request the HTTP request
@@ -178,6 +199,10 @@ public class CookieManager implements AccessTokenManager{
 			LOG.fine(() -> format("No %s cookie available.",JWT_COOKIE));
 			return NOT_VALIDATED_RESULT;
 		}
+		CredentialValidationResult cached = tokens.get(jwt.getValue());
+		if(cached != null) {
+			return cached;
+		}
 		try {
 			AccessToken token = decoder.decode(AccessToken.class, 
 											   AccessToken.Payload.class,
@@ -213,10 +238,17 @@ public class CookieManager implements AccessTokenManager{
 							encoder.encode(renewedToken),
 							(int)(expiry.getTime() - currentTimeMillis())/1000);
 				
+				return new CredentialValidationResult(token.getUserId().toString(),
+													  token.getRoles());
 			}
 			
-			return new CredentialValidationResult(token.getUserId().toString(),
-												  token.getRoles());
+			CredentialValidationResult result = new CredentialValidationResult(token.getUserId().toString(),
+												  							   token.getRoles());
+			tokens.put(jwt.getValue(), 
+					   token, 
+					   result, 
+					   config.getRefreshInterval());
+			return result;
 			
 		} catch (JsonWebTokenSignatureException e) {
 			LOG.log(FINER,e.getMessage(),e);
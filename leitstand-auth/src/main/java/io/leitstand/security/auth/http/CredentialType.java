@@ -0,0 +1,51 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.http;
+
+import static io.leitstand.security.auth.http.CookieManager.findAccessToken;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Enumeration of the credential types conveyed by a HTTP request.
+ * <p>
+ * The {@link LeitstandHttpAuthMechanism} determines the credential type of a request once 
+ * and dispatches the request to the {@link AccessTokenManager}s processing this credential type.
+ */
+public enum CredentialType {
+	
+	/** HTTP <i>Authorization</i> header with HTTP Basic Authentication credentials.*/
+	BASIC,
+	/** HTTP <i>Authorization</i> header with a bearer JSON Web Token.*/
+	BEARER_JWT,
+	/** HTTP <i>Authorization</i> header with a bearer API access key.*/
+	BEARER_ACCESS_KEY,
+	/** Access token cookie.*/
+	COOKIE,
+	/** No credentials.*/
+	NONE;
+	
+	/**
+	 * Returns the credential type of the given request.
+	 * The HTTP <i>Authorization</i> header takes precedence over the access token cookie.
+	 * @param request - the HTTP request
+	 * @return the credential type of the request.
+	 */
+	public static CredentialType valueOf(HttpServletRequest request) {
+		Authorization auth = Authorization.valueOf(request);
+		if(auth != null) {
+			if(auth.isBasic()) {
+				return BASIC;
+			}
+			if(auth.isBearerToken()) {
+				return auth.getCredentials().indexOf('.') >= 0 ? BEARER_JWT : BEARER_ACCESS_KEY;
+			}
+		}
+		if(findAccessToken(request) != null) {
+			return COOKIE;
+		}
+		return NONE;
+	}
+	
+}
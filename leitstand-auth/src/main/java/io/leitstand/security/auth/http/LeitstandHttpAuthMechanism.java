@@ -9,10 +9,16 @@ import static javax.security.enterprise.AuthenticationStatus.NOT_DONE;
 import static javax.security.enterprise.AuthenticationStatus.SEND_FAILURE;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.Status.INVALID;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.Status.NOT_VALIDATED;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
@@ -25,6 +31,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
 import io.leitstand.security.auth.user.LoginManager;
 
 
@@ -50,6 +57,14 @@ import io.leitstand.security.auth.user.LoginManager;
  * If a cookie is present, the access token is verified. 
  * </p>
  * If no access information is available, the request is unauthenticated and request processing is rejected.
+ * <p>
+ * The access token managers are resolved once when the mechanism is created.
+ * The {@link CredentialType} of a request is determined once and the request is passed to
+ * the access token managers processing this credential type only.
+ * Requests without credentials are rejected without invoking any access token manager.
+ * <p>
+ * Requests are rejected with <code>503 Service Unavailable</code> and a <code>Retry-After</code> header,
+ * if the credentials cannot be verified because the password hashing capacity is exhausted.
  */
 @ApplicationScoped
 public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
@@ -67,6 +82,21 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 		response.setHeader("Pragma","no-cache");
 		return SEND_FAILURE;
 	}
+	
+	/**
+	 * Rejects a request with <code>503 Service Unavailable</code>, because the credentials cannot be verified at the moment.
+	 * @param response - the HTTP response
+	 * @param e - the reason why the credentials cannot be verified
+	 * @return {@link AuthenticationStatus#SEND_FAILURE}
+	 */
+	static AuthenticationStatus unavailable(HttpServletResponse response, CredentialVerificationRejectedException e) {
+		LOG.fine(() -> format("Credential verification rejected: %s", e.getMessage()));
+		response.setStatus(SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", String.valueOf(e.getRetryAfter()));
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Pragma","no-cache");
+		return SEND_FAILURE;
+	}
 
 	/**
 	 * Returns <code>true</code> if the request is a login request, 
@@ -93,6 +123,32 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 	@Inject
 	private LoginManager loginManager;
 	
+	private List<AccessTokenManager> managers;
+	private Map<CredentialType,List<AccessTokenManager>> dispatchTable;
+	
+	/**
+	 * Resolves all access token managers and creates the credential type dispatch table.
+	 */
+	@PostConstruct
+	protected void initDispatchTable() {
+		List<AccessTokenManager> resolved = new ArrayList<>();
+		Map<CredentialType,List<AccessTokenManager>> table = new EnumMap<>(CredentialType.class);
+		for(CredentialType type : CredentialType.values()) {
+			table.put(type, new ArrayList<>());
+		}
+		for(AccessTokenManager manager : accessTokenManagers) {
+			resolved.add(manager);
+			for(CredentialType type : manager.getCredentialTypes()) {
+				table.get(type).add(manager);
+			}
+		}
+		// Requests without credentials are never passed to any manager.
+		table.get(CredentialType.NONE).clear();
+		this.managers = resolved;
+		this.dispatchTable = table;
+		LOG.fine(() -> format("Access token manager dispatch table: %s", table));
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -102,16 +158,19 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 												HttpMessageContext context) throws AuthenticationException {	
 		
 		if(isApiRequest(request)) {
-			if(isLoginRequest(request)) {
-				return login(request,
-							 response,
-							 context);
+			try {
+				if(isLoginRequest(request)) {
+					return login(request,
+								 response,
+								 context);
+				}
+				
+				return authenticate(request,
+									response,
+									context);
+			} catch (CredentialVerificationRejectedException e) {
+				return unavailable(response, e);
 			}
-			
-			return authenticate(request,
-								response,
-								context);
-			
 		}
 		// Do not authenticate access to static resources
 		return NOT_DONE;
@@ -135,7 +194,7 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 		}
 		
 		// Issue access token to authenticate further requests
-		for(AccessTokenManager manager : accessTokenManagers) {
+		for(AccessTokenManager manager : managers) {
 			if(manager.issueAccessToken(request, 
 										response, 
 										UserId.valueOf(result.getCallerPrincipal()), 
@@ -154,6 +213,7 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 	 * First the HTTP <i>Authorization</i> header is verified, if such a header is present.
 	 * Second the HTTP request is scanned for the <code>rtb-access</code> cookie.
 	 * If a cookie is present, the cookie is verified.
+	 * The request is only passed to the access token managers processing the credential type of the request.
 	 * @param request - the HTTP request
 	 * @param response - the HTTP response
 	 * @param context - the context to be notified about successfully authenticated requests
@@ -164,9 +224,8 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 	protected AuthenticationStatus authenticate(HttpServletRequest request,
 			  									HttpServletResponse response,
 			  									HttpMessageContext context) {
-		
-		
-		for(AccessTokenManager manager : accessTokenManagers) {
+		CredentialType type = CredentialType.valueOf(request);
+		for(AccessTokenManager manager : dispatchTable.get(type)) {
 			CredentialValidationResult result = manager.validateAccessToken(request, response);
 			LOG.fine(() -> format("%s %s: %s", 
 								  request.getRequestURI(), 
@@ -193,7 +252,7 @@ public class LeitstandHttpAuthMechanism implements HttpAuthenticationMechanism{
 	public void cleanSubject(HttpServletRequest request, 
 							 HttpServletResponse response,
 				 			 HttpMessageContext httpMessageContext) {
-		for(AccessTokenManager manager : accessTokenManagers) {
+		for(AccessTokenManager manager : managers) {
 			LOG.fine(() -> format("%s Called %s to invalidate access token", 
 					  			  request.getRequestURI(), 
 					  			  manager.getClass().getSimpleName()));			
@@ -0,0 +1,299 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.http;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.security.crypto.SecureRandomPool.randomBytes;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Base64.getEncoder;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+import static javax.security.enterprise.identitystore.CredentialValidationResult.Status.VALID;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.security.enterprise.credential.Password;
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.UserEvent;
+import io.leitstand.security.crypto.Secret;
+
+/**
+ * The <code>VerifiedCredentialCache</code> remembers successfully verified user credentials
+ * for a short period of time, to avoid running the expensive password hash computation on
+ * every request with HTTP Basic Authentication.
+ * <p>
+ * The cache never stores plaintext passwords.
+ * A cache entry is identified by a HMAC-SHA256 of the user ID and the password.
+ * The HMAC secret is randomly created when the cache is instantiated and never leaves the process.
+ * Concurrent verifications of the same credentials are collapsed into a single verification,
+ * i.e. all concurrent callers wait for the result of the first verification.
+ * Only successful verifications are retained.
+ * All entries of a user are removed as soon as the user's password was changed or reset or
+ * the user was removed.
+ * Every entry records the invalidation generation at the time it was created.
+ * An entry created before the last invalidation of its user is never returned and never retained,
+ * even if the verification was still in progress when the user was invalidated.
+ * An invalidation is discarded once its time-to-live has passed, because all entries created before it have expired by then.
+ * <p>
+ * The time-to-live of an entry is configured by the <code>rbms.basic.auth.cache.ttl</code>
+ * system property in seconds and defaults to {@value #DEFAULT_TTL_SECONDS} seconds.
+ * The maximum number of entries is configured by the <code>rbms.basic.auth.cache.size</code>
+ * system property and defaults to {@value #DEFAULT_MAX_SIZE} entries.
+ * Credentials are verified without being cached if the cache is exhausted.
+ */
+@ApplicationScoped
+public class VerifiedCredentialCache {
+
+	private static final Logger LOG = Logger.getLogger(VerifiedCredentialCache.class.getName());
+	static final long DEFAULT_TTL_SECONDS = 60;
+	static final int DEFAULT_MAX_SIZE = 1024;
+
+	private static final class Entry {
+
+		private final UserId userId;
+		private final long expiry;
+		private final long generation;
+		private final CompletableFuture<CredentialValidationResult> result;
+
+		Entry(UserId userId, long expiry, long generation){
+			this.userId = userId;
+			this.expiry = expiry;
+			this.generation = generation;
+			this.result = new CompletableFuture<>();
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+
+		boolean isOwnedBy(UserId userId) {
+			return this.userId.equals(userId);
+		}
+
+	}
+
+	private static final class Invalidation {
+
+		private final long generation;
+		private final long expiry;
+
+		Invalidation(long generation, long expiry){
+			this.generation = generation;
+			this.expiry = expiry;
+		}
+
+	}
+
+	private final Map<String,Entry> entries = new ConcurrentHashMap<>();
+	private final Map<UserId,Invalidation> invalidations = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final Secret secret;
+	private final long ttl;
+	private final int maxSize;
+
+	/**
+	 * Creates a <code>VerifiedCredentialCache</code> configured by system properties.
+	 */
+	public VerifiedCredentialCache() {
+		this(parseLong(getSystemProperty("rbms.basic.auth.cache.ttl",
+										 String.valueOf(DEFAULT_TTL_SECONDS))),
+			 SECONDS,
+			 parseInt(getSystemProperty("rbms.basic.auth.cache.size",
+									 String.valueOf(DEFAULT_MAX_SIZE))));
+	}
+
+	/**
+	 * Creates a <code>VerifiedCredentialCache</code>.
+	 * @param ttl - the time-to-live of a cache entry
+	 * @param unit - the time-to-live unit
+	 * @param maxSize - the maximum number of cache entries
+	 */
+	protected VerifiedCredentialCache(long ttl, TimeUnit unit, int maxSize) {
+		this.secret = new Secret(randomBytes(32));
+		this.ttl = unit.toMillis(ttl);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Validates the given credentials.
+	 * Returns the cached result if the credentials have been verified recently
+	 * or waits for the result of a verification of the same credentials that is in progress.
+	 * Otherwise the credentials are verified by the given verifier.
+	 * @param userId - the user ID
+	 * @param password - the password
+	 * @param verifier - the verifier to verify the credentials if no cached result exists
+	 * @return the credential validation result
+	 */
+	public CredentialValidationResult validate(UserId userId,
+											   Password password,
+											   Supplier<CredentialValidationResult> verifier) {
+		String key = keyOf(userId, password);
+		long now = currentTimeMillis();
+		Entry entry = entries.get(key);
+		if(entry != null && (entry.isExpired(now) || isInvalidated(entry))) {
+			entries.remove(key, entry);
+			entry = null;
+		}
+		if(entry == null) {
+			if(entries.size() >= maxSize) {
+				evictExpiredEntries(now);
+				if(entries.size() >= maxSize) {
+					LOG.fine(() -> format("Verified credential cache exhausted. Verify credentials of user %s without caching.",
+										  userId));
+					misses.increment();
+					return verifier.get();
+				}
+			}
+			Entry created = new Entry(userId, now+ttl, generation.get());
+			entry = entries.putIfAbsent(key, created);
+			if(entry == null) {
+				misses.increment();
+				return verify(key, created, verifier);
+			}
+		}
+		hits.increment();
+		return awaitResult(entry);
+	}
+
+	private CredentialValidationResult verify(String key,
+											  Entry entry,
+											  Supplier<CredentialValidationResult> verifier) {
+		try {
+			CredentialValidationResult result = verifier.get();
+			if(result.getStatus() != VALID || isInvalidated(entry)) {
+				// Do not retain a result verified against a user account that has been modified meanwhile.
+				entries.remove(key, entry);
+			}
+			entry.result.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			entries.remove(key, entry);
+			entry.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static CredentialValidationResult awaitResult(Entry entry) {
+		try {
+			return entry.result.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private boolean isInvalidated(Entry entry) {
+		Invalidation invalidation = invalidations.get(entry.userId);
+		return invalidation != null && invalidation.generation > entry.generation;
+	}
+
+	private void evictExpiredEntries(long now) {
+		entries.values().removeIf(entry -> entry.isExpired(now));
+		evictExpiredInvalidations(now);
+	}
+
+	private void evictExpiredInvalidations(long now) {
+		// All entries created before an invalidation expired once the invalidation expired.
+		invalidations.values().removeIf(invalidation -> invalidation.expiry <= now);
+	}
+
+	private String keyOf(UserId userId, Password password) {
+		ByteBuffer pass = UTF_8.encode(CharBuffer.wrap(password.getValue()));
+		byte[] user = toUtf8Bytes(userId.toString());
+		byte[] message = new byte[user.length + 1 + pass.remaining()];
+		System.arraycopy(user, 0, message, 0, user.length);
+		pass.get(message, user.length+1, pass.remaining());
+		try {
+			return getEncoder().encodeToString(hmacSha256(secret).sign(message));
+		} finally {
+			Arrays.fill(message, (byte) 0);
+			if(pass.hasArray()) {
+				Arrays.fill(pass.array(), (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached verifications of the given user.
+	 * @param userId - the user ID
+	 */
+	public void invalidate(UserId userId) {
+		long now = currentTimeMillis();
+		// Evict expired invalidations to keep the invalidations bounded by the users modified within the time-to-live.
+		evictExpiredInvalidations(now);
+		// Record the invalidation first, so that a verification in progress cannot add a stale entry.
+		invalidations.put(userId, new Invalidation(generation.incrementAndGet(),
+												   now+ttl));
+		entries.values().removeIf(entry -> entry.isOwnedBy(userId));
+		LOG.fine(() -> format("Removed verified credentials of user %s from cache.", userId));
+	}
+
+	/**
+	 * Removes all cached verifications of a modified user account,
+	 * after the modification has been committed.
+	 * @param event - the user event
+	 */
+	void onUserEvent(@Observes(during=AFTER_SUCCESS) UserEvent event) {
+		invalidate(event.getUserId());
+	}
+
+	/**
+	 * Returns the number of cached verifications.
+	 * @return the number of cached verifications.
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of recorded invalidations.
+	 * @return the number of recorded invalidations.
+	 */
+	int getInvalidationCount() {
+		return invalidations.size();
+	}
+
+	/**
+	 * Returns the number of requests that were served from the cache,
+	 * including requests that waited for a verification in progress.
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of requests that required a credential verification.
+	 * @return the number of cache misses.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+}
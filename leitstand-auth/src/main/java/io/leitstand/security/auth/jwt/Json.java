@@ -5,6 +5,7 @@ package io.leitstand.security.auth.jwt;
 
 import static io.leitstand.commons.model.StringUtil.fromUtf8Bytes;
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.json.bind.JsonbBuilder.create;
 import static javax.json.bind.config.PropertyNamingStrategy.LOWER_CASE_WITH_UNDERSCORES;
 
@@ -79,6 +80,19 @@ class Json {
 		return fromJson(type,fromUtf8Bytes(data));
 	}
 	
+	/**
+	 * Converts a range of the byte array to a string using UTF-8 character encoding and 
+	 * creates the object tree from the JSON structure.
+	 * @param type - the Java type of the object tree root object
+	 * @param data - the byte array containing the JSON data
+	 * @param offset - the offset of the first JSON byte
+	 * @param length - the length of the JSON data in bytes
+	 * @return the object tree root object
+	 */
+	public static <T> T unmarshal(Class<T> type, byte[] data, int offset, int length) {
+		return fromJson(type,new String(data, offset, length, UTF_8));
+	}
+	
 	/**
 	 * Converts a JOSN string to a Java object tree.
 	 * @param type - the Java type of the object tree root object
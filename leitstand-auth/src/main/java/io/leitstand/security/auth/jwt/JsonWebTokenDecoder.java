@@ -3,11 +3,13 @@
  */
 package io.leitstand.security.auth.jwt;
 
-import static io.leitstand.security.auth.jwt.Json.unmarshal;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Arrays.copyOfRange;
 import static java.util.Base64.getDecoder;
 import static java.util.logging.Level.FINER;
 
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
 import java.util.Base64.Decoder;
 import java.util.logging.Logger;
 
@@ -20,11 +22,13 @@ import javax.inject.Inject;
  * <p>
  * Decoding a JSON Web Token (JWT) consists of four steps.
  * <ol>
- * <li>Split the token into three parts: header, payload and signature.</li>
+ * <li>Locate the three parts of the token: header, payload and signature.</li>
  * <li>Validate the token signature</li>
  * <li>Provided that the signature is valid, decode header and payload</li>
  * <li>Parse JSON to restore header and payload java objects</li>.
  * </ol>
+ * A forged token costs a single HMAC computation, because header and payload are not decoded
+ * unless the signature is valid.
  * 
  * @see JsonWebToken <code>JsonWebToken</code>, the base class for JSON Web tokens.
  * @see JsonWebTokenEncoder JsonWebTokenEncoder, the <code>JsonWebToken</code> encoder.
@@ -54,40 +58,71 @@ public class JsonWebTokenDecoder {
 
 	/**
 	 * Decodes a JSON web token.
+	 * <p>
+	 * The token signature is verified before any other token part is decoded.
+	 * The signature is computed over the ASCII bytes of the encoded header and payload 
+	 * and compared with the provided signature in constant time.
+	 * Header and payload are only decoded and parsed if the signature is valid.
 	 * @param tokenType - the <code>JsonWebToken</code> implementation type
 	 * @param payloadType - the payload type
 	 * @param token - the encoded JSON web token.
 	 * @return the <code>JsonWebToken</code> instance
-	 * @throws JsonWebTokenSignatureException if the signature is invalid or HS256 is not used as signature algorithm
+	 * @throws JsonWebTokenSignatureException if the token is malformed, the signature is invalid or HS256 is not used as signature algorithm
 	 */
 	public <T extends JsonWebToken<?>,P> T decode(Class<T> tokenType, Class<P> payloadType, String token) {
-		String[] parts = token.split("\\.");
+		int headEnd = token.indexOf('.');
+		int loadEnd = headEnd > 0 ? token.indexOf('.', headEnd+1) : -1;
+		if(loadEnd < 0 || token.indexOf('.',loadEnd+1) >= 0) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
 		
+		byte[] ascii = token.getBytes(US_ASCII);
 		Decoder base64 = getDecoder();
-		String  head64 = parts[0];
-		String  load64 = parts[1];	
-		String  hash64 = parts[2];
 		
+		if(!signer.isValidSignature(ascii, 
+									loadEnd, 
+									decode(base64, ascii, loadEnd+1, ascii.length))) {
+			throw new JsonWebTokenSignatureException("Signature mismatch");
+		}
+
 		JsonWebToken.Header header = unmarshal(JsonWebToken.Header.class,
-											   base64.decode(head64));
+											   decodeBuffer(base64, ascii, 0, headEnd));
 		assertHS256(header.getAlgorithm());
-			
-		boolean valid  = signer.isValidSignature(hash64, head64, load64);
-		if(valid) {
-			try {
-				P payload = unmarshal(payloadType, 
-									  base64.decode(load64));
-				Constructor<T> ctor = tokenType.getDeclaredConstructor(payloadType);
-				ctor.setAccessible(true);
-				return ctor.newInstance(payload);
-			} catch (Exception e) {
-				LOG.fine(() -> "Cannot instantiate valid JWT: "+e.getMessage());
-				LOG.log(FINER, e.getMessage(), e);
-				throw new IllegalStateException(e);
-			}
-		}
 		
-		throw new JsonWebTokenSignatureException("Signature mismatch");
+		try {
+			P payload = unmarshal(payloadType, 
+								  decodeBuffer(base64, ascii, headEnd+1, loadEnd));
+			Constructor<T> ctor = tokenType.getDeclaredConstructor(payloadType);
+			ctor.setAccessible(true);
+			return ctor.newInstance(payload);
+		} catch (Exception e) {
+			LOG.fine(() -> "Cannot instantiate valid JWT: "+e.getMessage());
+			LOG.log(FINER, e.getMessage(), e);
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static <T> T unmarshal(Class<T> type, ByteBuffer json) {
+		return Json.unmarshal(type,
+							  json.array(),
+							  json.arrayOffset()+json.position(),
+							  json.remaining());
+	}
+	
+	private static byte[] decode(Decoder base64, byte[] ascii, int from, int to) {
+		try {
+			return base64.decode(copyOfRange(ascii, from, to));
+		} catch (IllegalArgumentException e) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
+	}
+	
+	private static ByteBuffer decodeBuffer(Decoder base64, byte[] ascii, int from, int to) {
+		try {
+			return base64.decode(ByteBuffer.wrap(ascii, from, to-from));
+		} catch (IllegalArgumentException e) {
+			throw new JsonWebTokenSignatureException("Malformed token");
+		}
 	}
 
 	private void assertHS256(String algorithmn) {
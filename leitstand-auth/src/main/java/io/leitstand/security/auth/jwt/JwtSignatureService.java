@@ -6,6 +6,8 @@ package io.leitstand.security.auth.jwt;
 import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
 import static java.util.Base64.getEncoder;
 
+import java.security.MessageDigest;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -13,7 +15,7 @@ import javax.inject.Inject;
  * A thread-safe service to compute and validate JWT signatures.
  */
 @ApplicationScoped
-class JwtSignatureService {
+public class JwtSignatureService {
 
 	private JsonWebTokenConfig config;
 	
@@ -39,16 +41,19 @@ class JwtSignatureService {
 	}
 	
 	/**
-	 * Verifies a JWT signature
-	 * @param signature64 - the Base64 encoded token signature
-	 * @param header64 - the Base64 encoded token header
-	 * @param payload64 - the Base64 encoded token payload
+	 * Verifies a JWT signature in constant time.
+	 * The signature is computed over the first <code>length</code> bytes of the given token,
+	 * i.e. over the Base64 encoded header and payload including the separating dot.
+	 * @param token - the ASCII bytes of the encoded token 
+	 * @param length - the length of the signed token part in bytes
+	 * @param signature - the decoded token signature
 	 * @return <code>true</code> if the given token signature is valid, <code>false</code> if not.
 	 */
-	public boolean isValidSignature(String signature64, 
-									String header64, 
-									String payload64) {
-		return signature64.equals(sign64(header64,payload64));
+	public boolean isValidSignature(byte[] token, 
+									int length, 
+									byte[] signature) {
+		return MessageDigest.isEqual(signature, 
+									 hmacSha256(config.getSecret()).sign(token, 0, length));
 	}
 	
 }
\ No newline at end of file
@@ -17,7 +17,8 @@ public class AuthResources implements ApiResourceProvider{
 	@Override
 	public Set<Class<?>> getResources() {
 		return asSet(LoginResource.class, 
-					 LogoutResource.class);
+					 LogoutResource.class,
+					 CredentialVerificationRejectedExceptionMapper.class);
 	}
 
 }
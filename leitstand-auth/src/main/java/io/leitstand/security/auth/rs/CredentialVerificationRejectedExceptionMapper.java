@@ -0,0 +1,28 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.rs;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
+
+/**
+ * Maps a {@link CredentialVerificationRejectedException} to a <code>503 Service Unavailable</code> response
+ * with a <code>Retry-After</code> header.
+ */
+@Provider
+public class CredentialVerificationRejectedExceptionMapper implements ExceptionMapper<CredentialVerificationRejectedException>{
+
+	@Override
+	public Response toResponse(CredentialVerificationRejectedException e) {
+		return Response.status(SERVICE_UNAVAILABLE)
+					   .header("Retry-After", e.getRetryAfter())
+					   .build();
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.search;
+
+import static java.lang.String.format;
+import static java.util.Locale.ROOT;
+
+/**
+ * A text search filter.
+ * <p>
+ * A filter is matched in one of three modes:
+ * <ul>
+ * <li>{@link MatchMode#PREFIX} matches all values starting with the filter text,</li>
+ * <li>{@link MatchMode#CONTAINS} matches all values containing the filter text and</li>
+ * <li>{@link MatchMode#REGEX} matches all values matching the filter as POSIX regular expression.</li>
+ * </ul>
+ * Prefix and substring filters are case-insensitive and translated into a <code>LIKE</code> predicate on the lower-case column value. 
+ * A prefix filter can be answered by a B-tree index on <code>lower(column) text_pattern_ops</code>, 
+ * a substring filter by a trigram index on <code>lower(column)</code>.
+ * A regular expression cannot be answered by a B-tree index and must be requested explicitly.
+ * <p>
+ * Former releases matched all filters as regular expression. 
+ * Filters are now matched as substring unless another match mode is specified.
+ */
+public final class SearchFilter {
+	
+	/**
+	 * The supported match modes.
+	 */
+	public enum MatchMode {
+		/** The value must start with the filter text. */
+		PREFIX,
+		/** The value must contain the filter text. */
+		CONTAINS,
+		/** The value must match the filter as POSIX regular expression. */
+		REGEX;
+		
+		/**
+		 * Parses the match mode name, ignoring case. 
+		 * @param mode - the match mode name
+		 * @return the match mode or <code>null</code> if the mode name is <code>null</code>.
+		 * @throws IllegalArgumentException if the match mode is unknown
+		 */
+		public static MatchMode fromString(String mode) {
+			if(mode == null) {
+				return null;
+			}
+			return valueOf(mode.toUpperCase(ROOT));
+		}
+	}
+	
+	private static final char ESCAPE = '\\';
+	
+	/**
+	 * Creates a substring search filter.
+	 * @param filter - the filter text
+	 * @return the search filter
+	 */
+	public static SearchFilter searchFilter(String filter) {
+		return searchFilter(filter, null);
+	}
+	
+	/**
+	 * Creates a search filter.
+	 * @param filter - the filter text
+	 * @param mode - the match mode. Defaults to {@link MatchMode#CONTAINS} if not specified.
+	 * @return the search filter
+	 */
+	public static SearchFilter searchFilter(String filter, MatchMode mode) {
+		return new SearchFilter(filter != null ? filter : "",
+							    mode != null ? mode : MatchMode.CONTAINS);
+	}
+	
+	private final String filter;
+	private final MatchMode mode;
+	
+	private SearchFilter(String filter, MatchMode mode) {
+		this.filter = filter;
+		this.mode = mode;
+	}
+	
+	/**
+	 * Returns the filter text.
+	 * @return the filter text.
+	 */
+	public String getFilter() {
+		return filter;
+	}
+	
+	/**
+	 * Returns the match mode.
+	 * @return the match mode.
+	 */
+	public MatchMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Returns whether this filter matches all values.
+	 * @return <code>true</code> if the filter text is empty, <code>false</code> otherwise.
+	 */
+	public boolean isEmpty() {
+		return filter.isEmpty();
+	}
+
+	/**
+	 * Returns whether the filter is a POSIX regular expression.
+	 * @return <code>true</code> if the filter is a regular expression, <code>false</code> otherwise.
+	 */
+	public boolean isRegex() {
+		return mode == MatchMode.REGEX;
+	}
+	
+	/**
+	 * Returns the SQL predicate to apply this filter to the given column.
+	 * The predicate has a single parameter, which must be bound to the {@link #toSqlArgument() SQL argument}.
+	 * @param column - the column name
+	 * @return the SQL predicate.
+	 */
+	public String toSqlPredicate(String column) {
+		if(isRegex()) {
+			return format("%s ~ ?",column);
+		}
+		return format("lower(%s) LIKE ? ESCAPE '%c'",column,ESCAPE);
+	}
+	
+	/**
+	 * Returns the argument of the SQL predicate.
+	 * The argument is the regular expression for a regular expression filter and 
+	 * the escaped <code>LIKE</code> pattern for a prefix or substring filter.
+	 * @return the argument of the SQL predicate.
+	 */
+	public String toSqlArgument() {
+		if(isRegex()) {
+			return filter;
+		}
+		String pattern = escape(filter.toLowerCase(ROOT));
+		if(mode == MatchMode.PREFIX) {
+			return pattern+"%";
+		}
+		return "%"+pattern+"%";
+	}
+	
+	private static String escape(String text) {
+		StringBuilder pattern = new StringBuilder(text.length()+2);
+		for(int i=0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '%' || c == '_' || c == ESCAPE) {
+				pattern.append(ESCAPE);
+			}
+			pattern.append(c);
+		}
+		return pattern.toString();
+	}
+	
+	/**
+	 * Returns the filter text.
+	 * @return the filter text.
+	 */
+	@Override
+	public String toString() {
+		return filter;
+	}
+	
+}
@@ -0,0 +1,7 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+/**
+ * Contains the search filter translation into index-friendly SQL predicates.
+ */
+package io.leitstand.security.auth.search;
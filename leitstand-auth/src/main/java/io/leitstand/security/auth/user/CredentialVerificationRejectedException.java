@@ -0,0 +1,36 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.user;
+
+/**
+ * Signals that a password could not be verified or hashed, because the password hashing capacity is exhausted.
+ * <p>
+ * The request shall be rejected with <code>503 Service Unavailable</code> and can be retried 
+ * after the number of seconds reported by {@link #getRetryAfter()}.
+ */
+public class CredentialVerificationRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final int retryAfter;
+	
+	/**
+	 * Creates a <code>CredentialVerificationRejectedException</code>.
+	 * @param message - the error message
+	 * @param retryAfter - the number of seconds after which the request can be retried
+	 */
+	public CredentialVerificationRejectedException(String message, int retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+	
+	/**
+	 * Returns the number of seconds after which the rejected request can be retried.
+	 * @return the number of seconds after which the rejected request can be retried.
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+	
+}
@@ -0,0 +1,43 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.user;
+
+import javax.enterprise.context.RequestScoped;
+
+import io.leitstand.security.auth.UserId;
+
+/**
+ * The <code>LoginContext</code> retains the {@link UserInfo} of the user who logged in with the current request.
+ * <p>
+ * The {@link UserRegistry} records the user info when the credentials were validated successfully.
+ * Token issuance and the login response read the recorded user info, such that a login loads the user only once.
+ * The login context is request-scoped and hence discarded when the login request has been processed.
+ */
+@RequestScoped
+public class LoginContext {
+
+	private UserInfo user;
+	
+	/**
+	 * Records the user info of the authenticated user.
+	 * @param user - the user info
+	 */
+	public void setUserInfo(UserInfo user) {
+		this.user = user;
+	}
+	
+	/**
+	 * Returns the recorded user info of the given user.
+	 * @param userId - the user ID
+	 * @return the recorded user info or <code>null</code> if no user info of the given user was recorded.
+	 */
+	public UserInfo getUserInfo(UserId userId) {
+		UserInfo current = user;
+		if(current != null && current.getUserId().equals(userId)) {
+			return current;
+		}
+		return null;
+	}
+	
+}
@@ -0,0 +1,104 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.user;
+
+import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+
+import io.leitstand.commons.model.CompositeValue;
+import io.leitstand.security.auth.UserId;
+
+/**
+ * A <code>UserEvent</code> notifies about a modification of a user account.
+ * <p>
+ * The user management fires this event whenever the settings or credentials of a user account
+ * were changed or a user account was removed,
+ * in order to allow all components that hold user state to drop the outdated state.
+ */
+public class UserEvent extends CompositeValue {
+
+	/**
+	 * Enumeration of user account modifications.
+	 */
+	public enum Type {
+		/** The user has changed the password.*/
+		PASSWORD_UPDATED,
+		/** An administrator has reset the user's password.*/
+		PASSWORD_RESET,
+		/** The user account settings, including the user's roles, were updated.*/
+		USER_UPDATED,
+		/** The user account was removed.*/
+		USER_REMOVED
+	}
+
+	/**
+	 * Returns a builder to create a new <code>UserEvent</code>.
+	 * @return a builder to create a new <code>UserEvent</code>.
+	 */
+	public static Builder newUserEvent() {
+		return new Builder();
+	}
+
+	/**
+	 * The builder to create an immutable <code>UserEvent</code>.
+	 */
+	public static class Builder {
+
+		private UserEvent event = new UserEvent();
+
+		/**
+		 * Sets the user ID of the modified user account.
+		 * @param userId - the user ID
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withUserId(UserId userId) {
+			assertNotInvalidated(getClass(), event);
+			event.userId = userId;
+			return this;
+		}
+
+		/**
+		 * Sets the kind of modification.
+		 * @param type - the event type
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withEventType(Type type) {
+			assertNotInvalidated(getClass(), event);
+			event.type = type;
+			return this;
+		}
+
+		/**
+		 * Returns the immutable <code>UserEvent</code> and invalidates this builder.
+		 * @return the immutable <code>UserEvent</code>
+		 */
+		public UserEvent build() {
+			try {
+				assertNotInvalidated(getClass(), event);
+				return event;
+			} finally {
+				this.event = null;
+			}
+		}
+	}
+
+	private UserId userId;
+	private Type type;
+
+	/**
+	 * Returns the user ID of the modified user account.
+	 * @return the user ID of the modified user account.
+	 */
+	public UserId getUserId() {
+		return userId;
+	}
+
+	/**
+	 * Returns the kind of modification.
+	 * @return the kind of modification.
+	 */
+	public Type getEventType() {
+		return type;
+	}
+
+}
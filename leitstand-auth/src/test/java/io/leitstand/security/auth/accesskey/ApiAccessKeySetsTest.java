@@ -0,0 +1,32 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.accesskey;
+
+import static io.leitstand.security.auth.accesskey.ApiAccessKey.intern;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class ApiAccessKeySetsTest {
+
+	@Test
+	public void intern_equal_sets() {
+		Set<String> first = intern(new HashSet<>(asList("/foo","/bar")));
+		Set<String> second = intern(new TreeSet<>(asList("/bar","/foo")));
+		assertSame(first,second);
+		assertEquals(new HashSet<>(asList("/foo","/bar")),first);
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void interned_sets_are_immutable() {
+		intern(new HashSet<>(asList("/foo"))).add("/bar");
+	}
+	
+}
@@ -0,0 +1,128 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.accesskey;
+
+import static io.leitstand.security.auth.accesskey.PathMatcher.literalPrefixLength;
+import static io.leitstand.security.auth.accesskey.PathMatcher.pathMatcher;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+public class PathMatcherTest {
+
+	private static PathMatcher matcher(String... patterns) {
+		return new PathMatcher(new TreeSet<>(asList(patterns)));
+	}
+	
+	@Test
+	public void compute_literal_prefix_length() {
+		assertEquals(4,literalPrefixLength("/foo"));
+		assertEquals(8,literalPrefixLength("/api/v1/.*"));
+		assertEquals(7,literalPrefixLength("/api/v1s?"));
+		assertEquals(0,literalPrefixLength("/foo|/bar"));
+		assertEquals(0,literalPrefixLength("^/foo"));
+	}
+	
+	@Test
+	public void match_literal_paths() {
+		PathMatcher matcher = matcher("/foo","/foo/bar");
+		assertTrue(matcher.matches("/foo"));
+		assertTrue(matcher.matches("/foo/bar"));
+		assertFalse(matcher.matches("/fo"));
+		assertFalse(matcher.matches("/foo/"));
+		assertFalse(matcher.matches("/bar"));
+	}
+	
+	@Test
+	public void match_patterns_with_common_prefix() {
+		PathMatcher matcher = matcher("/api/v1/elements/.*",
+									  "/api/v1/pods/[a-z]+",
+									  "/api/v1/users");
+		assertTrue(matcher.matches("/api/v1/elements/foo/bar"));
+		assertTrue(matcher.matches("/api/v1/pods/abc"));
+		assertTrue(matcher.matches("/api/v1/users"));
+		assertFalse(matcher.matches("/api/v1/pods/123"));
+		assertFalse(matcher.matches("/api/v1/users/foo"));
+		assertFalse(matcher.matches("/api/v2/elements/foo"));
+	}
+	
+	@Test
+	public void apply_quantifier_to_last_prefix_character() {
+		PathMatcher matcher = matcher("/api/v1s?");
+		assertTrue(matcher.matches("/api/v1"));
+		assertTrue(matcher.matches("/api/v1s"));
+		assertFalse(matcher.matches("/api/v"));
+	}
+	
+	@Test
+	public void match_alternations() {
+		PathMatcher matcher = matcher("/foo|/bar");
+		assertTrue(matcher.matches("/foo"));
+		assertTrue(matcher.matches("/bar"));
+		assertFalse(matcher.matches("/foobar"));
+	}
+	
+	@Test
+	public void preserve_anchors_and_group_references() {
+		PathMatcher matcher = matcher("/foo/^bar",
+									  "/(a+)/\\1");
+		assertFalse(matcher.matches("/foo/bar"));
+		assertTrue(matcher.matches("/aa/aa"));
+		assertFalse(matcher.matches("/aa/a"));
+	}
+	
+	@Test
+	public void preserve_look_behind_on_literal_prefix() {
+		PathMatcher matcher = matcher("/foo/(?<=o/)bar");
+		assertTrue(matcher.matches("/foo/bar"));
+	}
+	
+	@Test
+	public void combine_patterns_with_same_group_names() {
+		PathMatcher matcher = matcher("/api/(?<id>[a-z]+)/foo",
+									  "/api/(?<id>[0-9]+)/bar");
+		assertTrue(matcher.matches("/api/abc/foo"));
+		assertTrue(matcher.matches("/api/123/bar"));
+		assertFalse(matcher.matches("/api/abc/bar"));
+	}
+	
+	@Test
+	public void preserve_named_group_references() {
+		PathMatcher matcher = matcher("/(?<id>[a-z]+)/\\k<id>",
+									  "/(?<id>[0-9]+)/foo");
+		assertTrue(matcher.matches("/abc/abc"));
+		assertFalse(matcher.matches("/abc/def"));
+		assertTrue(matcher.matches("/123/foo"));
+	}
+	
+	@Test(expected=PatternSyntaxException.class)
+	public void reject_invalid_pattern() {
+		matcher("/foo/[a-z");
+	}
+	
+	@Test
+	public void share_compiled_matcher_for_same_patterns() {
+		Set<String> patterns = new HashSet<>(asList("/foo/.*","/bar"));
+		assertSame(pathMatcher(patterns),pathMatcher(new TreeSet<>(patterns)));
+	}
+	
+	@Test
+	public void repeated_decisions_are_consistent() {
+		PathMatcher matcher = matcher("/foo/.*");
+		assertTrue(matcher.matches("/foo/bar"));
+		assertTrue(matcher.matches("/foo/bar"));
+		assertFalse(matcher.matches("/bar"));
+		assertFalse(matcher.matches("/bar"));
+	}
+	
+}
@@ -0,0 +1,138 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.cache;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedLruCacheTest {
+
+	private AtomicLong clock;
+	private SegmentedLruCache<String,String> cache;
+	
+	@Before
+	public void initCache() {
+		clock = new AtomicLong(1000);
+		cache = new SegmentedLruCache<>(10, 100, MILLISECONDS, clock::get);
+	}
+	
+	@Test
+	public void compute_value_only_once() {
+		String value = cache.computeIfAbsent("key", k -> "value");
+		assertSame(value,cache.computeIfAbsent("key", k -> "other"));
+		assertEquals(1L,cache.getMissCount());
+		assertEquals(1L,cache.getHitCount());
+		assertEquals(0.5,cache.getHitRate(),0.001);
+	}
+	
+	@Test
+	public void expire_inactive_entries() {
+		cache.putIfAbsent("key", "value");
+		clock.addAndGet(50);
+		assertEquals("value",cache.get("key"));
+		clock.addAndGet(50);
+		assertEquals("value",cache.get("key"));
+		clock.addAndGet(100);
+		assertNull(cache.get("key"));
+		assertEquals(0,cache.getSize());
+	}
+	
+	@Test
+	public void remove_entry() {
+		cache.putIfAbsent("key", "value");
+		assertTrue(cache.remove("key"));
+		assertNull(cache.get("key"));
+	}
+	
+	@Test
+	public void remove_matching_entries() {
+		cache.putIfAbsent("a", "remove");
+		cache.putIfAbsent("b", "retain");
+		cache.get("a");
+		assertEquals(1,cache.removeIf("remove"::equals));
+		assertNull(cache.get("a"));
+		assertEquals("retain",cache.get("b"));
+	}
+	
+	@Test
+	public void evict_entries_accessed_once_before_frequently_accessed_entries() {
+		for(int i=0; i < 10; i++) {
+			cache.putIfAbsent("hot"+i, "value");
+		}
+		for(int i=0; i < 5; i++) {
+			cache.get("hot"+i);
+		}
+		for(int i=0; i < 100; i++) {
+			cache.putIfAbsent("cold"+i, "value");
+		}
+		assertEquals(10,cache.getSize());
+		assertEquals(100L,cache.getEvictionCount());
+		for(int i=0; i < 5; i++) {
+			assertNotNull(cache.get("hot"+i));
+		}
+	}
+	
+	@Test
+	public void evict_expired_entries_first() {
+		for(int i=0; i < 10; i++) {
+			cache.putIfAbsent("key"+i, "value");
+		}
+		clock.addAndGet(200);
+		cache.putIfAbsent("new", "value");
+		assertEquals(1,cache.getSize());
+		assertEquals(0L,cache.getEvictionCount());
+	}
+	
+	@Test
+	public void bounded_under_concurrent_access() throws Exception {
+		SegmentedLruCache<Integer,Integer> shared = new SegmentedLruCache<>(1000, 1, MINUTES);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for(int t=0; t < threads; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for(int i=0; i < 50_000; i++) {
+						// 90% of all lookups address 100 hot keys.
+						Integer key = random.nextInt(10) < 9 ? random.nextInt(100) : 100 + random.nextInt(100_000);
+						assertEquals(key,shared.computeIfAbsent(key, k -> k));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for(Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(shared.getSize() <= 1000);
+		assertTrue(shared.getEvictionCount() > 0);
+		assertEquals(threads * 50_000L, shared.getHitCount()+shared.getMissCount());
+		// Hot keys survive the scan of cold keys.
+		assertTrue(shared.getHitRate() > 0.8);
+	}
+	
+}
@@ -0,0 +1,80 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.http;
+
+import static io.leitstand.security.auth.http.AccessToken.newAccessToken;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.ofMinutes;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+
+import org.junit.Test;
+
+import io.leitstand.security.auth.UserId;
+
+public class AccessTokenCacheTest {
+
+	private static final CredentialValidationResult RESULT = new CredentialValidationResult("unittest");
+	
+	private static AccessToken tokenExpiringIn(long millis) {
+		return newAccessToken()
+			   .withUserId(UserId.valueOf("unittest"))
+			   .withRoles("a","b")
+			   .withDateExpiry(new Date(currentTimeMillis()+millis))
+			   .build();
+	}
+	
+	@Test
+	public void return_cached_result() {
+		AccessTokenCache cache = new AccessTokenCache(5, MINUTES, 2);
+		AccessToken token = tokenExpiringIn(MINUTES.toMillis(60));
+		assertNull(cache.get("TOKEN"));
+		cache.put("TOKEN", token, RESULT, ofMinutes(1));
+		assertSame(RESULT,cache.get("TOKEN"));
+		assertSame(token,cache.getAccessToken("TOKEN"));
+		assertEquals(1L,cache.getHitCount());
+		assertEquals(1L,cache.getMissCount());
+	}
+	
+	@Test
+	public void do_not_cache_token_within_refresh_interval() {
+		AccessTokenCache cache = new AccessTokenCache(5, MINUTES, 2);
+		cache.put("TOKEN", tokenExpiringIn(MINUTES.toMillis(1)/2), RESULT, ofMinutes(1));
+		assertNull(cache.get("TOKEN"));
+		assertEquals(0,cache.getSize());
+	}
+	
+	@Test
+	public void expire_entry_after_time_to_live() throws Exception {
+		AccessTokenCache cache = new AccessTokenCache(1, MILLISECONDS, 2);
+		cache.put("TOKEN", tokenExpiringIn(MINUTES.toMillis(60)), RESULT, ofMinutes(1));
+		Thread.sleep(5);
+		assertNull(cache.get("TOKEN"));
+	}
+	
+	@Test
+	public void do_not_cache_token_if_cache_is_exhausted() {
+		AccessTokenCache cache = new AccessTokenCache(5, MINUTES, 1);
+		cache.put("A", tokenExpiringIn(MINUTES.toMillis(60)), RESULT, ofMinutes(1));
+		cache.put("B", tokenExpiringIn(MINUTES.toMillis(60)), RESULT, ofMinutes(1));
+		assertSame(RESULT,cache.get("A"));
+		assertNull(cache.get("B"));
+	}
+	
+	@Test
+	public void remove_token() {
+		AccessTokenCache cache = new AccessTokenCache(5, MINUTES, 2);
+		cache.put("TOKEN", tokenExpiringIn(MINUTES.toMillis(60)), RESULT, ofMinutes(1));
+		cache.remove("TOKEN");
+		assertNull(cache.get("TOKEN"));
+	}
+	
+}
@@ -10,7 +10,10 @@ import static javax.security.enterprise.identitystore.CredentialValidationResult
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentCaptor.forClass;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import javax.security.enterprise.credential.UsernamePasswordCredential;
@@ -19,10 +22,10 @@ import javax.security.enterprise.identitystore.IdentityStore;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -33,8 +36,12 @@ public class BasicAuthManagerTest {
 	@Mock
 	private IdentityStore is;
 	
-	@InjectMocks
-	private BasicAuthManager manager = new BasicAuthManager();
+	private BasicAuthManager manager;
+	
+	@Before
+	public void initManager() {
+		manager = new BasicAuthManager(is, new VerifiedCredentialCache());
+	}
 	
 	@Test
 	public void do_nothing_if_no_authorization_header_is_set() {
@@ -68,4 +75,27 @@ public class BasicAuthManagerTest {
 		assertEquals("user", credentials.getCaller());
 		assertEquals("password",credentials.getPasswordAsString());
 	}
+	
+	@Test
+	public void verify_credentials_once_for_repeated_requests() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader(HTTP_AUTHORIZATION_HEADER)).thenReturn("Basic "+getEncoder().encodeToString(toUtf8Bytes("user:password")));
+		CredentialValidationResult valid = new CredentialValidationResult("user");
+		when(is.validate(any(UsernamePasswordCredential.class))).thenReturn(valid);
+		
+		assertEquals(valid, manager.validateAccessToken(request, mock(HttpServletResponse.class)));
+		assertEquals(valid, manager.validateAccessToken(request, mock(HttpServletResponse.class)));
+		verify(is,times(1)).validate(any(UsernamePasswordCredential.class));
+	}
+	
+	@Test
+	public void verify_invalid_credentials_for_every_request() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader(HTTP_AUTHORIZATION_HEADER)).thenReturn("Basic "+getEncoder().encodeToString(toUtf8Bytes("user:password")));
+		when(is.validate(any(UsernamePasswordCredential.class))).thenReturn(INVALID_RESULT);
+		
+		assertEquals(INVALID_RESULT, manager.validateAccessToken(request, mock(HttpServletResponse.class)));
+		assertEquals(INVALID_RESULT, manager.validateAccessToken(request, mock(HttpServletResponse.class)));
+		verify(is,times(2)).validate(any(UsernamePasswordCredential.class));
+	}
 }
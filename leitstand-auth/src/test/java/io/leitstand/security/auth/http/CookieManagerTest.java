@@ -15,11 +15,17 @@ import static javax.security.enterprise.identitystore.CredentialValidationResult
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentCaptor.forClass;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
+
 import javax.security.enterprise.identitystore.CredentialValidationResult;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -55,6 +61,9 @@ public class CookieManagerTest {
 	@Mock
 	private JsonWebTokenConfig config;
 	
+	@Mock
+	private AccessTokenCache tokens;
+	
 	@InjectMocks
 	private CookieManager manager = new CookieManager();
 	
@@ -181,6 +190,54 @@ public class CookieManagerTest {
 						   	   encoder);
 	}
 	
-
+	@Test
+	public void grant_access_for_cached_access_token() {
+		CredentialValidationResult cached = new CredentialValidationResult("unittest");
+		when(tokens.get("TOKEN")).thenReturn(cached);
+		CredentialValidationResult result = manager.validateAccessToken(cookieAuthenticationRequest(), 
+																 		response);
+		assertEquals(cached,result);
+		verifyZeroInteractions(users,
+							   encoder,
+							   decoder);
+	}
+	
+	@Test
+	public void cache_valid_access_token() {
+		AccessToken token = newAccessToken()
+							.withUserId(UserId.valueOf("unittest"))
+							.withRoles("a","b")
+							.build();
+		when(decoder.decode(AccessToken.class, AccessToken.Payload.class, "TOKEN")).thenReturn(token);
+		CredentialValidationResult result = manager.validateAccessToken(cookieAuthenticationRequest(), 
+																 		response);
+		verify(tokens).put(eq("TOKEN"), 
+						   eq(token), 
+						   eq(result), 
+						   any(Duration.class));
+	}
+	
+	@Test
+	public void do_not_cache_renewed_access_token(){
+		AccessToken token = spy(newAccessToken()
+								.withUserId(UserId.valueOf("unittest"))
+								.withRoles("a","b")
+								.build());		
+		when(token.getUserId()).thenReturn(UserId.valueOf("unittest"));
+		when(token.isExpired()).thenReturn(FALSE);
+		when(token.isExpiringWithin(config.getRefreshInterval())).thenReturn(TRUE);
+		when(users.getUserInfo(UserId.valueOf("unittest"))).thenReturn(newUserInfo()
+																	   .withUserId(UserId.valueOf("unittest"))
+																	   .build());
+		when(decoder.decode(AccessToken.class, AccessToken.Payload.class, "TOKEN")).thenReturn(token);
+		when(encoder.encode(any(AccessToken.class))).thenReturn("NEWTOKEN");
+		
+		manager.validateAccessToken(cookieAuthenticationRequest(), 
+									response);
+		verify(tokens,never()).put(any(String.class), 
+								   any(AccessToken.class), 
+								   any(CredentialValidationResult.class), 
+								   any(Duration.class));
+	}
 	
 }
@@ -4,13 +4,16 @@
 package io.leitstand.security.auth.http;
 
 import static io.leitstand.security.auth.http.HttpServletRequestMother.basicAuthenticationRequest;
+import static io.leitstand.security.auth.http.HttpServletRequestMother.bearerAuthenticationRequest;
 import static io.leitstand.security.auth.http.HttpServletRequestMother.loginRequest;
 import static java.lang.Boolean.TRUE;
 import static java.util.Arrays.asList;
+import static java.util.EnumSet.allOf;
 import static javax.security.enterprise.AuthenticationStatus.SEND_FAILURE;
 import static javax.security.enterprise.AuthenticationStatus.SUCCESS;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
@@ -18,9 +21,11 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.EnumSet;
 import java.util.Set;
 
 import javax.enterprise.inject.Instance;
@@ -40,6 +45,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
 import io.leitstand.security.auth.user.LoginManager;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -76,7 +82,17 @@ public class LeitstandHttpAuthMechanismTest {
 		when(context.notifyContainerAboutLogin(INVALID_RESULT)).thenReturn(SEND_FAILURE);
 		when(accessTokenManagers.iterator()).thenReturn(asList(noopAccessTokenManager,accessTokenManager,neverCalledTokenManager).iterator());
 		when(noopAccessTokenManager.validateAccessToken(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(NOT_VALIDATED_RESULT);
+		when(noopAccessTokenManager.getCredentialTypes()).thenReturn(allOf(CredentialType.class));
+		when(accessTokenManager.getCredentialTypes()).thenReturn(allOf(CredentialType.class));
+		when(neverCalledTokenManager.getCredentialTypes()).thenReturn(allOf(CredentialType.class));
+		auth.initDispatchTable();
+	}
 	
+	private void verifyNoTokenManagerInteractions(AccessTokenManager... managers) {
+		for(AccessTokenManager manager : managers) {
+			verify(manager).getCredentialTypes();
+			verifyNoMoreInteractions(manager);
+		}
 	}
 	
 	
@@ -116,10 +132,10 @@ public class LeitstandHttpAuthMechanismTest {
 		
 		assertEquals(SEND_FAILURE,status);
 		verify(response).setStatus(SC_UNAUTHORIZED);
-		verifyZeroInteractions(context,
-							   noopAccessTokenManager,
-							   accessTokenManager,
-							   neverCalledTokenManager);
+		verifyZeroInteractions(context);
+		verifyNoTokenManagerInteractions(noopAccessTokenManager,
+										 accessTokenManager,
+										 neverCalledTokenManager);
 		
 	}
 	
@@ -165,9 +181,58 @@ public class LeitstandHttpAuthMechanismTest {
 															any(Set.class));
 	}
 	
+	@Test
+	public void deny_access_without_credentials_without_invoking_token_managers() throws AuthenticationException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRequestURI()).thenReturn("/api/v1/foo/bar");
+		
+		AuthenticationStatus status = auth.validateRequest(request, 
+						  	 							   response, 
+						  	 							   context);
+		assertEquals(SEND_FAILURE,status);
+		verify(response).setStatus(SC_UNAUTHORIZED);
+		verifyNoTokenManagerInteractions(noopAccessTokenManager,
+										 accessTokenManager);
+	}
+	
+	@Test
+	public void dispatch_request_to_token_manager_of_credential_type() throws AuthenticationException {
+		AccessTokenManager bearerManager = mock(AccessTokenManager.class);
+		when(bearerManager.getCredentialTypes()).thenReturn(EnumSet.of(CredentialType.BEARER_ACCESS_KEY));
+		when(accessTokenManagers.iterator()).thenReturn(asList(bearerManager).iterator());
+		auth.initDispatchTable();
+		
+		HttpServletRequest request = basicAuthenticationRequest();
+		AuthenticationStatus status = auth.validateRequest(request, 
+						  	 							   response, 
+						  	 							   context);
+		assertEquals(SEND_FAILURE,status);
+		verify(bearerManager,never()).validateAccessToken(request, response);
+		
+		request = bearerAuthenticationRequest();
+		when(bearerManager.validateAccessToken(request, response)).thenReturn(VALID_CREDENTIALS);
+		status = auth.validateRequest(request, 
+				   					  response, 
+				   					  context);
+		assertEquals(SUCCESS,status);
+	}
+	
+	@Test
+	public void send_service_unavailable_when_credential_verification_is_rejected() throws AuthenticationException {
+		HttpServletRequest request = loginRequest();
+		when(loginManager.login(request, response)).thenThrow(new CredentialVerificationRejectedException("junit", 1));
+		AuthenticationStatus status = auth.validateRequest(request, 
+														   response, 
+														   context);
+		assertEquals(SEND_FAILURE,status);
+		verify(response).setStatus(SC_SERVICE_UNAVAILABLE);
+		verify(response).setHeader("Retry-After", "1");
+		verifyZeroInteractions(context);
+	}
+	
 	@After
 	public void never_invoked_never_called_access_token_manager() {
-		verifyZeroInteractions(neverCalledTokenManager);
+		verifyNoTokenManagerInteractions(neverCalledTokenManager);
 	}
 	
 }
@@ -0,0 +1,158 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.http;
+
+import static io.leitstand.security.auth.user.UserEvent.newUserEvent;
+import static io.leitstand.security.auth.user.UserEvent.Type.PASSWORD_UPDATED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.enterprise.credential.Password;
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.security.auth.UserId;
+
+public class VerifiedCredentialCacheTest {
+
+	private static final UserId USER = UserId.valueOf("user");
+	private static final CredentialValidationResult VALID = new CredentialValidationResult("user");
+	
+	private VerifiedCredentialCache cache;
+	private AtomicInteger verifications;
+	
+	@Before
+	public void initCache() {
+		cache = new VerifiedCredentialCache(1, MINUTES, 2);
+		verifications = new AtomicInteger();
+	}
+	
+	private CredentialValidationResult verify(CredentialValidationResult result) {
+		verifications.incrementAndGet();
+		return result;
+	}
+	
+	@Test
+	public void cache_valid_credentials() {
+		assertEquals(VALID,cache.validate(USER, new Password("password"), () -> verify(VALID)));
+		assertEquals(VALID,cache.validate(USER, new Password("password"), () -> verify(VALID)));
+		assertEquals(1,verifications.get());
+		assertEquals(1L,cache.getHitCount());
+		assertEquals(1L,cache.getMissCount());
+	}
+	
+	@Test
+	public void do_not_cache_invalid_credentials() {
+		assertEquals(INVALID_RESULT,cache.validate(USER, new Password("password"), () -> verify(INVALID_RESULT)));
+		assertEquals(INVALID_RESULT,cache.validate(USER, new Password("password"), () -> verify(INVALID_RESULT)));
+		assertEquals(2,verifications.get());
+		assertEquals(0,cache.getSize());
+	}
+	
+	@Test
+	public void different_password_requires_verification() {
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		assertEquals(INVALID_RESULT,cache.validate(USER, new Password("wrong"), () -> verify(INVALID_RESULT)));
+		assertEquals(2,verifications.get());
+	}
+	
+	@Test
+	public void remove_cached_credentials_when_user_was_modified() {
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		cache.onUserEvent(newUserEvent()
+						  .withUserId(USER)
+						  .withEventType(PASSWORD_UPDATED)
+						  .build());
+		assertEquals(0,cache.getSize());
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		assertEquals(2,verifications.get());
+	}
+	
+	@Test
+	public void do_not_cache_credentials_invalidated_during_verification() {
+		assertEquals(VALID,cache.validate(USER, new Password("password"), () -> {
+			cache.invalidate(USER);
+			return verify(VALID);
+		}));
+		assertEquals(0,cache.getSize());
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		assertEquals(2,verifications.get());
+		assertEquals(1,cache.getSize());
+	}
+	
+	@Test
+	public void verify_credentials_without_caching_if_cache_is_exhausted() {
+		cache.validate(UserId.valueOf("a"), new Password("password"), () -> verify(VALID));
+		cache.validate(UserId.valueOf("b"), new Password("password"), () -> verify(VALID));
+		cache.validate(UserId.valueOf("c"), new Password("password"), () -> verify(VALID));
+		cache.validate(UserId.valueOf("c"), new Password("password"), () -> verify(VALID));
+		assertEquals(2,cache.getSize());
+		assertEquals(4,verifications.get());
+	}
+	
+	@Test
+	public void verify_expired_credentials_again() throws Exception {
+		cache = new VerifiedCredentialCache(1, MILLISECONDS, 2);
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		Thread.sleep(5);
+		cache.validate(USER, new Password("password"), () -> verify(VALID));
+		assertEquals(2,verifications.get());
+	}
+	
+	@Test
+	public void evict_expired_invalidations_on_invalidation() throws Exception {
+		cache = new VerifiedCredentialCache(1, MILLISECONDS, 2);
+		cache.invalidate(UserId.valueOf("a"));
+		cache.invalidate(UserId.valueOf("b"));
+		Thread.sleep(5);
+		cache.invalidate(UserId.valueOf("c"));
+		assertEquals(1,cache.getInvalidationCount());
+	}
+	
+	@Test
+	public void collapse_concurrent_verifications_of_same_credentials() throws Exception {
+		int threads = 8;
+		CountDownLatch started = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<CredentialValidationResult>> results = new ArrayList<>();
+			for(int i=0; i < threads; i++) {
+				results.add(executor.submit(() -> cache.validate(USER, 
+																 new Password("password"), 
+																 () -> {
+																	 try {
+																		 started.await(1, SECONDS);
+																	 } catch (InterruptedException e) {
+																		 Thread.currentThread().interrupt();
+																	 }
+																	 return verify(VALID);
+																 })));
+			}
+			Thread.sleep(100);
+			started.countDown();
+			for(Future<CredentialValidationResult> result : results) {
+				assertEquals(VALID,result.get(5, SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1,verifications.get());
+		assertTrue(cache.getHitCount() >= threads - 1);
+	}
+	
+}
@@ -0,0 +1,73 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.jwt;
+
+import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static java.util.Base64.getEncoder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.security.auth.http.AccessToken;
+import io.leitstand.security.crypto.Secret;
+
+public class JsonWebTokenDecoderTest {
+
+	private JwtSignatureService signer;
+	private JsonWebTokenDecoder decoder;
+	
+	@Before
+	public void initDecoder() {
+		JsonWebTokenConfig config = mock(JsonWebTokenConfig.class);
+		when(config.getSecret()).thenReturn(new Secret(toUtf8Bytes("unittest")));
+		signer = new JwtSignatureService(config);
+		decoder = new JsonWebTokenDecoder(signer);
+	}
+	
+	private void assertRejected(String token, String reason) {
+		try {
+			decoder.decode(AccessToken.class, AccessToken.Payload.class, token);
+			fail("JsonWebTokenSignatureException expected");
+		} catch (JsonWebTokenSignatureException e) {
+			assertEquals(reason,e.getMessage());
+		}
+	}
+	
+	@Test
+	public void reject_token_without_signature() {
+		assertRejected("head.load","Malformed token");
+	}
+	
+	@Test
+	public void reject_token_without_header() {
+		assertRejected(".load.sign","Malformed token");
+	}
+	
+	@Test
+	public void reject_token_with_too_many_parts() {
+		assertRejected("head.load.sign.more","Malformed token");
+	}
+	
+	@Test
+	public void reject_token_with_malformed_signature() {
+		assertRejected("head.load.!!!","Malformed token");
+	}
+	
+	@Test
+	public void reject_forged_token_without_decoding_header_and_payload() {
+		String forged = getEncoder().encodeToString(new byte[32]);
+		assertRejected("!!!.!!!."+forged,"Signature mismatch");
+	}
+	
+	@Test
+	public void verify_signature_before_decoding_header_and_payload() {
+		String signature = signer.sign64("!!!", "!!!");
+		assertRejected("!!!.!!!."+signature,"Malformed token");
+	}
+	
+}
@@ -0,0 +1,65 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.auth.search;
+
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
+import static io.leitstand.security.auth.search.SearchFilter.MatchMode.CONTAINS;
+import static io.leitstand.security.auth.search.SearchFilter.MatchMode.PREFIX;
+import static io.leitstand.security.auth.search.SearchFilter.MatchMode.REGEX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.leitstand.security.auth.search.SearchFilter.MatchMode;
+
+public class SearchFilterTest {
+
+	@Test
+	public void translate_prefix_filter_to_like_predicate() {
+		SearchFilter filter = searchFilter("Admin", PREFIX);
+		assertEquals("lower(userid) LIKE ? ESCAPE '\\'", filter.toSqlPredicate("userid"));
+		assertEquals("admin%", filter.toSqlArgument());
+	}
+	
+	@Test
+	public void translate_substring_filter_to_like_predicate() {
+		SearchFilter filter = searchFilter("Admin");
+		assertEquals(CONTAINS, filter.getMode());
+		assertEquals("lower(userid) LIKE ? ESCAPE '\\'", filter.toSqlPredicate("userid"));
+		assertEquals("%admin%", filter.toSqlArgument());
+	}
+	
+	@Test
+	public void escape_like_wildcards() {
+		assertEquals("a\\%b\\_c\\\\d%", searchFilter("a%b_c\\d", PREFIX).toSqlArgument());
+	}
+	
+	@Test
+	public void pass_regular_expression_unchanged() {
+		SearchFilter filter = searchFilter("^adm.*", REGEX);
+		assertEquals("userid ~ ?", filter.toSqlPredicate("userid"));
+		assertEquals("^adm.*", filter.toSqlArgument());
+	}
+	
+	@Test
+	public void missing_filter_matches_all_values() {
+		SearchFilter filter = searchFilter(null);
+		assertTrue(filter.isEmpty());
+		assertEquals("%%", filter.toSqlArgument());
+	}
+	
+	@Test
+	public void parse_match_mode_ignoring_case() {
+		assertEquals(PREFIX, MatchMode.fromString("prefix"));
+		assertEquals(REGEX, MatchMode.fromString("Regex"));
+		assertNull(MatchMode.fromString(null));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void reject_unknown_match_mode() {
+		MatchMode.fromString("glob");
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.crypto;
+
+import static java.lang.Runtime.getRuntime;
+
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+
+/**
+ * A pool of {@link Cipher} instances for a certain transformation.
+ * <p>
+ * The provider lookup is done once, when the engine is created.
+ * Additional <code>Cipher</code> instances are created from the same provider.
+ * If the engine is created with a cipher mode and parameters, all instances are initialized on creation.
+ * A <code>Cipher</code> is reset to its initial state by <code>doFinal</code>,
+ * hence an initialized instance can be reused without initializing it again.
+ * Otherwise the borrower must initialize the instance before usage.
+ * The provider schedules the key once per instance and skips the key setup when an instance is initialized with the same key again.
+ * The pool retains at most twice as many instances as processors are available.
+ * <p>
+ * The <code>CipherEngine</code> is thread-safe, whereas the borrowed <code>Cipher</code> instances are not.
+ * A borrowed <code>Cipher</code> must be used by one thread only and must be returned to the pool after usage.
+ */
+class CipherEngine {
+
+	private static final Logger LOG = Logger.getLogger(CipherEngine.class.getName());
+	private static final int MAX_IDLE = 2 * getRuntime().availableProcessors();
+
+	private final String transformation;
+	private final int mode;
+	private final Key key;
+	private final AlgorithmParameterSpec params;
+	private final Cipher prototype;
+	private final Queue<Cipher> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Creates a <code>CipherEngine</code> for instances initialized by the borrower.
+	 * @param transformation - the cipher transformation
+	 * @throws MasterSecretException if the cipher is not available
+	 */
+	CipherEngine(String transformation){
+		this(transformation,0,null,null);
+	}
+
+	/**
+	 * Creates a <code>CipherEngine</code> for initialized instances.
+	 * @param transformation - the cipher transformation
+	 * @param mode - the cipher mode
+	 * @param key - the cipher key
+	 * @param params - the cipher parameters
+	 * @throws MasterSecretException if the cipher cannot be initialized
+	 */
+	CipherEngine(String transformation, int mode, Key key, AlgorithmParameterSpec params){
+		this.transformation = transformation;
+		this.mode = mode;
+		this.key = key;
+		this.params = params;
+		try {
+			this.prototype = Cipher.getInstance(transformation);
+			init(prototype);
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "An error occured while initializing "+transformation+": "+e.getMessage(), e);
+			throw new MasterSecretException(e);
+		}
+		idle.offer(prototype);
+		idleCount.incrementAndGet();
+	}
+
+	/**
+	 * Borrows a <code>Cipher</code> from the pool.
+	 * Creates a new <code>Cipher</code>, if no idle <code>Cipher</code> is available.
+	 * @return a <code>Cipher</code>
+	 */
+	Cipher borrow() {
+		Cipher cipher = idle.poll();
+		if(cipher != null) {
+			idleCount.decrementAndGet();
+			return cipher;
+		}
+		return newCipher();
+	}
+
+	/**
+	 * Returns the given <code>Cipher</code> to the pool.
+	 * The <code>Cipher</code> must not be returned if an operation failed,
+	 * because the <code>Cipher</code> state is undefined in that case.
+	 * The <code>Cipher</code> is discarded if the pool is already saturated.
+	 * @param cipher - the borrowed <code>Cipher</code>
+	 */
+	void release(Cipher cipher) {
+		if(idleCount.incrementAndGet() <= MAX_IDLE) {
+			idle.offer(cipher);
+			return;
+		}
+		idleCount.decrementAndGet();
+	}
+
+	private Cipher newCipher() {
+		try {
+			Cipher cipher = Cipher.getInstance(transformation, prototype.getProvider());
+			init(cipher);
+			return cipher;
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "An error occured while creating "+transformation+": "+e.getMessage(), e);
+			throw new MasterSecretException(e);
+		}
+	}
+
+	private void init(Cipher cipher) throws Exception {
+		if(key != null) {
+			cipher.init(mode, key, params);
+		}
+	}
+
+}
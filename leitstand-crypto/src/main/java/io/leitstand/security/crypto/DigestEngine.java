@@ -0,0 +1,108 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.crypto;
+
+import static java.lang.Runtime.getRuntime;
+
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of {@link MessageDigest} instances for a certain algorithm.
+ * <p>
+ * The provider lookup is done once, when the engine is created.
+ * Additional <code>MessageDigest</code> instances are cloned from the prototype.
+ * If the provider does not support cloning, new instances are created from the same provider.
+ * The pool retains at most twice as many instances as processors are available, like the other engines of this library.
+ * Instances are not bound to threads, 
+ * hence the number of retained instances does not grow with the number of container threads.
+ * <p>
+ * The <code>DigestEngine</code> is thread-safe, whereas the borrowed <code>MessageDigest</code> instances are not.
+ * A borrowed <code>MessageDigest</code> must be used by one thread only and must be returned to the pool after usage.
+ */
+class DigestEngine {
+
+	private static final Logger LOG = Logger.getLogger(DigestEngine.class.getName());
+	private static final int MAX_IDLE = 2 * getRuntime().availableProcessors();
+
+	private final MessageDigest prototype;
+	private final Queue<MessageDigest> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Creates a <code>DigestEngine</code>.
+	 * @param algorithm - the hash algorithm
+	 * @throws IllegalArgumentException if the hash algorithm is not available
+	 */
+	DigestEngine(String algorithm){
+		try {
+			this.prototype = MessageDigest.getInstance(algorithm);
+		} catch (Exception e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Borrows a <code>MessageDigest</code> from the pool.
+	 * Creates a new <code>MessageDigest</code>, if no idle <code>MessageDigest</code> is available.
+	 * @return a <code>MessageDigest</code>
+	 */
+	MessageDigest borrow() {
+		MessageDigest digest = idle.poll();
+		if(digest != null) {
+			idleCount.decrementAndGet();
+			return digest;
+		}
+		return newDigest();
+	}
+
+	/**
+	 * Resets the given <code>MessageDigest</code> and returns it to the pool.
+	 * The <code>MessageDigest</code> is discarded if the pool is already saturated.
+	 * @param digest - the borrowed <code>MessageDigest</code>
+	 */
+	void release(MessageDigest digest) {
+		digest.reset();
+		if(idleCount.incrementAndGet() <= MAX_IDLE) {
+			idle.offer(digest);
+			return;
+		}
+		idleCount.decrementAndGet();
+	}
+
+	/**
+	 * Returns the hash algorithm name.
+	 * @return the hash algorithm name.
+	 */
+	String getAlgorithm() {
+		return prototype.getAlgorithm();
+	}
+
+	/**
+	 * Returns the length of the hash value in bytes.
+	 * @return the length of the hash value in bytes.
+	 */
+	int getDigestLength() {
+		return prototype.getDigestLength();
+	}
+
+	private MessageDigest newDigest() {
+		try {
+			// The prototype is never used to compute a hash value and remains in its initial state.
+			return (MessageDigest) prototype.clone();
+		} catch (CloneNotSupportedException e) {
+			LOG.log(Level.FINE, "Cannot clone {0}. Create new instance.", prototype.getAlgorithm());
+			try {
+				return MessageDigest.getInstance(prototype.getAlgorithm(), prototype.getProvider());
+			} catch (Exception f) {
+				throw new IllegalArgumentException(f);
+			}
+		}
+	}
+
+}
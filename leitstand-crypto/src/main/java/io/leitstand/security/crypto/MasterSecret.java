@@ -9,16 +9,20 @@ import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
 import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
 import static io.leitstand.security.crypto.SecureHashes.md5;
+import static io.leitstand.security.crypto.SecureRandomPool.nextBytes;
 import static java.lang.System.arraycopy;
 import static java.util.logging.Level.FINER;
 import static javax.crypto.Cipher.DECRYPT_MODE;
 import static javax.crypto.Cipher.ENCRYPT_MODE;
 
+import java.security.GeneralSecurityException;
 import java.util.Properties;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.enterprise.context.ApplicationScoped;
@@ -39,6 +43,21 @@ import io.leitstand.commons.etc.Environment;
  * using the 16 MD5 bytes as key and IV respectively. If no IV is specified, the IV defaults to the MD5 of the secret MD5 hash value.
  * <p>
  * If no secret is specified, the master secret key defaults to <i>changeit</i>.
+ * <p>
+ * Data is encrypted with AES in Galois/Counter Mode (GCM) with a random nonce. 
+ * GCM ciphertexts start with a versioned header, followed by the nonce, the encrypted data and the authentication tag.
+ * Ciphertexts without this header were encrypted with AES in CBC mode and the configured IV, which was the only mode of former releases.
+ * These ciphertexts can still be decrypted. 
+ * A ciphertext with GCM header that fails the GCM authentication is rejected.
+ * A CBC ciphertext starts with the GCM header with a probability of 2^-32 and must be re-encrypted.
+ * Setting the <code>master.cbc.fallback</code> property to <code>true</code> decrypts such a ciphertext in CBC mode instead.
+ * This fallback gives up the integrity protection of GCM for ciphertexts with a length that is a multiple of the AES block size
+ * and must only be enabled to re-encrypt the affected values.
+ * The <code>master.cipher</code> property can be set to <code>CBC</code> to encrypt data in CBC mode 
+ * as long as nodes of former releases must be able to decrypt the data.
+ * <p>
+ * The cipher instances are pooled and the key is set up once. 
+ * The bulk {@link #encrypt(byte[][])} and {@link #decrypt(byte[][])} methods process all values with the same cipher instance.
  */
 @ApplicationScoped
 public class MasterSecret {
@@ -47,11 +66,28 @@ public class MasterSecret {
 	static final String RBMS_MASTER_SECRET_FILE_NAME = "master.secret";
 	static final String RBMS_PROPERTY_MASTER_SECRET  = "master.secret";
 	static final String RBMS_PROPERTY_MASTER_IV	     = "master.iv";
+	static final String RBMS_PROPERTY_MASTER_CIPHER  = "master.cipher";
+	static final String RBMS_PROPERTY_MASTER_CBC_FALLBACK = "master.cbc.fallback";
+	
+	private static final String AES_CBC = "AES/CBC/PKCS5Padding";
+	private static final String AES_GCM = "AES/GCM/NoPadding";
+	// Magic bytes and version of the GCM ciphertext format.
+	// The probability that a CBC ciphertext starts with the same bytes is 2^-32.
+	static final byte[] GCM_HEADER = {'L','S','M',1};
+	private static final int GCM_NONCE_LENGTH = 12;
+	private static final int GCM_TAG_LENGTH = 16;
+	private static final int AES_BLOCK_SIZE = 16;
 
 	private Environment env;
 	
 	private byte[] master;
 	private byte[] iv;
+	private SecretKeySpec key;
+	private CipherEngine cbcEncryptEngine;
+	private CipherEngine cbcDecryptEngine;
+	private CipherEngine gcmEngine;
+	private boolean cbc;
+	private boolean cbcFallback;
 	
 	protected MasterSecret() {
 		// CDI
@@ -117,6 +153,20 @@ public class MasterSecret {
 					  0,
 					  16);
  		}
+ 		
+ 		String cipher = masterSecret.getProperty(RBMS_PROPERTY_MASTER_CIPHER,
+ 												 getSystemProperty(RBMS_PROPERTY_MASTER_CIPHER,"GCM"));
+ 		this.cbc = "CBC".equalsIgnoreCase(cipher);
+ 		this.cbcFallback = Boolean.parseBoolean(masterSecret.getProperty(RBMS_PROPERTY_MASTER_CBC_FALLBACK,
+ 																		 getSystemProperty(RBMS_PROPERTY_MASTER_CBC_FALLBACK,"false")));
+ 		if(cbcFallback) {
+ 			LOG.warning(() -> "CBC fallback for ciphertexts failing GCM authentication is enabled. Re-encrypt the affected values and disable the fallback.");
+ 		}
+ 		
+ 		this.key = new SecretKeySpec(master,"AES");
+ 		this.cbcEncryptEngine = new CipherEngine(AES_CBC, ENCRYPT_MODE, key, new IvParameterSpec(iv));
+ 		this.cbcDecryptEngine = new CipherEngine(AES_CBC, DECRYPT_MODE, key, new IvParameterSpec(iv));
+ 		this.gcmEngine = new CipherEngine(AES_GCM);
 		
 	}
 	
@@ -127,12 +177,61 @@ public class MasterSecret {
 	 * @throws MasterSecretException if decryption fails
 	 */
 	public byte[] decrypt(byte[] ciphertext){
+		return decrypt(new byte[][] {ciphertext})[0];
+	}
+	
+	/**
+	 * Decrypts the specified cipher texts with the same cipher instance.
+	 * @param ciphertexts - the cipher texts to be decrypted
+	 * @return the plain texts in the order of the cipher texts
+	 * @throws MasterSecretException if the decryption of any cipher text fails
+	 */
+	public byte[][] decrypt(byte[][] ciphertexts){
+		Cipher gcm = null;
+		Cipher cbc = null;
 		try{
-			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			cipher.init(DECRYPT_MODE, 
-						new SecretKeySpec(master,"AES"),
-						new IvParameterSpec(iv));
-			return cipher.doFinal(ciphertext);
+			byte[][] plaintexts = new byte[ciphertexts.length][];
+			for(int i=0; i < ciphertexts.length; i++) {
+				if(isGcmCiphertext(ciphertexts[i])) {
+					if(gcm == null) {
+						gcm = gcmEngine.borrow();
+					}
+					try {
+						plaintexts[i] = decryptGcm(gcm, ciphertexts[i]);
+						continue;
+					} catch (AEADBadTagException e) {
+						if(!cbcFallback || !isCbcCiphertext(ciphertexts[i])) {
+							throw e;
+						}
+						// Explicitly enabled fallback for CBC ciphertexts that start with the GCM header by chance.
+						// The GCM cipher is initialized for every ciphertext and can be reused.
+						LOG.warning(() -> "Ciphertext failed GCM authentication and is decrypted in CBC mode.");
+						if(cbc == null) {
+							cbc = cbcDecryptEngine.borrow();
+						}
+						try {
+							plaintexts[i] = cbc.doFinal(ciphertexts[i]);
+							continue;
+						} catch (GeneralSecurityException cbcFailure) {
+							e.addSuppressed(cbcFailure);
+							throw e;
+						}
+					}
+				}
+				if(cbc == null) {
+					cbc = cbcDecryptEngine.borrow();
+				}
+				plaintexts[i] = cbc.doFinal(ciphertexts[i]);
+			}
+			// Ciphers are only returned to the pool on success, 
+			// because the cipher state is undefined after a failure.
+			if(gcm != null) {
+				gcmEngine.release(gcm);
+			}
+			if(cbc != null) {
+				cbcDecryptEngine.release(cbc);
+			}
+			return plaintexts;
 		} catch(Exception e){
 			LOG.fine(() -> "Cannot decrypt ciphertext: "+e.getMessage());
 			LOG.log(FINER, e.getMessage(), e);
@@ -157,12 +256,25 @@ public class MasterSecret {
 	 * @throws MasterSecretException if encryption fails
 	 */
 	public byte[] encrypt(byte[] plaintext) {
+		return encrypt(new byte[][] {plaintext})[0];
+	}
+	
+	/**
+	 * Encrypts the given plain texts with the same cipher instance.
+	 * @param plaintexts - the plain texts to be encrypted
+	 * @return the cipher texts in the order of the plain texts
+	 * @throws MasterSecretException if the encryption of any plain text fails
+	 */
+	public byte[][] encrypt(byte[][] plaintexts) {
+		CipherEngine engine = cbc ? cbcEncryptEngine : gcmEngine;
+		Cipher cipher = engine.borrow();
 		try{
-			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			cipher.init(ENCRYPT_MODE, 
-						new SecretKeySpec(master,"AES"),
-						new IvParameterSpec(iv));
-			return cipher.doFinal(plaintext);
+			byte[][] ciphertexts = new byte[plaintexts.length][];
+			for(int i=0; i < plaintexts.length; i++) {
+				ciphertexts[i] = cbc ? cipher.doFinal(plaintexts[i]) : encryptGcm(cipher, plaintexts[i]);
+			}
+			engine.release(cipher);
+			return ciphertexts;
 		} catch(Exception e){
 			LOG.fine(() -> "Cannot encrypt ciphertext: "+e.getMessage());
 			LOG.log(FINER, e.getMessage(), e);
@@ -170,4 +282,41 @@ public class MasterSecret {
 		}		
 	}
 	
+	private byte[] encryptGcm(Cipher cipher, byte[] plaintext) throws GeneralSecurityException {
+		byte[] nonce = new byte[GCM_NONCE_LENGTH];
+		nextBytes(nonce);
+		cipher.init(ENCRYPT_MODE, key, new GCMParameterSpec(8*GCM_TAG_LENGTH, nonce));
+		// Authenticate the header to protect the format version.
+		cipher.updateAAD(GCM_HEADER);
+		int offset = GCM_HEADER.length + GCM_NONCE_LENGTH;
+		byte[] ciphertext = new byte[offset + cipher.getOutputSize(plaintext.length)];
+		arraycopy(GCM_HEADER, 0, ciphertext, 0, GCM_HEADER.length);
+		arraycopy(nonce, 0, ciphertext, GCM_HEADER.length, GCM_NONCE_LENGTH);
+		cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, offset);
+		return ciphertext;
+	}
+	
+	private byte[] decryptGcm(Cipher cipher, byte[] ciphertext) throws GeneralSecurityException {
+		cipher.init(DECRYPT_MODE, key, new GCMParameterSpec(8*GCM_TAG_LENGTH, ciphertext, GCM_HEADER.length, GCM_NONCE_LENGTH));
+		cipher.updateAAD(ciphertext, 0, GCM_HEADER.length);
+		int offset = GCM_HEADER.length + GCM_NONCE_LENGTH;
+		return cipher.doFinal(ciphertext, offset, ciphertext.length - offset);
+	}
+	
+	private static boolean isCbcCiphertext(byte[] ciphertext) {
+		return ciphertext.length > 0 && ciphertext.length % AES_BLOCK_SIZE == 0;
+	}
+	
+	static boolean isGcmCiphertext(byte[] ciphertext) {
+		if(ciphertext.length < GCM_HEADER.length + GCM_NONCE_LENGTH + GCM_TAG_LENGTH) {
+			return false;
+		}
+		for(int i=0; i < GCM_HEADER.length; i++) {
+			if(ciphertext[i] != GCM_HEADER[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 }
@@ -8,7 +8,6 @@ import static java.util.Arrays.fill;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Objects;
 
 /**
  * A secret for symmetric cryptography such as AES encryption for example.
@@ -49,7 +48,7 @@ public class Secret implements Serializable{
 	 */
 	@Override
 	public int hashCode(){
-		return Objects.hash(value);
+		return Arrays.hashCode(value);
 	}
 	
 	/**
@@ -4,7 +4,15 @@
 package io.leitstand.security.crypto;
 
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static java.lang.Math.min;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 
 /**
@@ -13,19 +21,25 @@ import java.security.MessageDigest;
  * <p>
  * The underlying secure hash function depends on the {@link SecureHashes} factory method that was called to create the <code>SecureHashcode</code> instance.
  * </p>
- * The <code>SecureHashcode</code> implementation is not thread-safe and must not be cached. 
- * Obtain a fresh instance for every hash computation.
+ * Besides byte arrays and strings, the <code>SecureHashFunction</code> computes hash values from streams, buffers and file channel regions. 
+ * Streams and file channels are processed in chunks, i.e. the hash value is computed in constant memory.
+ * <p>
+ * The <code>SecureHashcode</code> implementation is thread-safe and can be cached. 
+ * Every hash computation borrows a {@link MessageDigest} from a pool of initialized digests.
  */
 public class SecureHashFunction {
 
-	private MessageDigest digest;
+	private static final int STREAM_CHUNK_SIZE = 8 * 1024;
+	private static final long MAPPED_CHUNK_SIZE = 8 * 1024 * 1024;
+	
+	private final DigestEngine engine;
 	
 	/**
 	 * Create a <code>SecureHashcode</code> implementation.
-	 * @param digest - the message digest to compute the hash value
+	 * @param engine - the message digest pool to compute the hash value
 	 */
-	SecureHashFunction(MessageDigest digest){
-		this.digest = digest;
+	SecureHashFunction(DigestEngine engine){
+		this.engine = engine;
 	}
 	
 	/**
@@ -34,7 +48,12 @@ public class SecureHashFunction {
 	 * @return the hash value
 	 */
 	public byte[] hash(byte[] data){
-		return digest.digest(data);
+		MessageDigest digest = engine.borrow();
+		try {
+			return digest.digest(data);
+		} finally {
+			engine.release(digest);
+		}
 	}
 	
 	/**
@@ -46,12 +65,87 @@ public class SecureHashFunction {
 		return hash(toUtf8Bytes(text));
 	}
 	
+	/**
+	 * Computes the hash value for the remaining bytes of the specified buffer.
+	 * The buffer position is advanced to the buffer limit.
+	 * @param buffer - the data to compute the hash from
+	 * @return the hash value
+	 */
+	public byte[] hash(ByteBuffer buffer) {
+		MessageDigest digest = engine.borrow();
+		try {
+			digest.update(buffer);
+			return digest.digest();
+		} finally {
+			engine.release(digest);
+		}
+	}
+	
+	/**
+	 * Computes the hash value for all bytes read from the specified stream.
+	 * The stream is read in chunks until the end of the stream is reached. 
+	 * The stream is not closed.
+	 * @param in - the stream to compute the hash from
+	 * @return the hash value
+	 * @throws IOException if the stream cannot be read
+	 */
+	public byte[] hash(InputStream in) throws IOException {
+		MessageDigest digest = engine.borrow();
+		try {
+			byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+			for(int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+				digest.update(chunk, 0, read);
+			}
+			return digest.digest();
+		} finally {
+			engine.release(digest);
+		}
+	}
+	
+	/**
+	 * Computes the hash value for the specified region of a file channel.
+	 * The region is mapped into memory in chunks. 
+	 * The channel position remains unchanged and the channel is not closed.
+	 * @param channel - the file channel to compute the hash from
+	 * @param position - the position of the first byte of the region
+	 * @param size - the size of the region in bytes
+	 * @return the hash value
+	 * @throws IOException if the channel cannot be read
+	 */
+	public byte[] hash(FileChannel channel, long position, long size) throws IOException {
+		MessageDigest digest = engine.borrow();
+		try {
+			long end = position + size;
+			for(long offset = position; offset < end; offset += MAPPED_CHUNK_SIZE) {
+				digest.update(channel.map(READ_ONLY, 
+										  offset, 
+										  min(MAPPED_CHUNK_SIZE, end - offset)));
+			}
+			return digest.digest();
+		} finally {
+			engine.release(digest);
+		}
+	}
+	
+	/**
+	 * Computes the hash value for the content of the specified file.
+	 * @param file - the file to compute the hash from
+	 * @return the hash value
+	 * @throws IOException if the file cannot be read
+	 * @see #hash(FileChannel, long, long)
+	 */
+	public byte[] hash(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, READ)){
+			return hash(channel, 0, channel.size());
+		}
+	}
+	
 	/**
 	 * Returns the name of the underlying hash algorithm.
 	 * @return the name of the underlying hash algorithm.
 	 */
 	public String getAlgorithm() {
-		return digest.getAlgorithm();
+		return engine.getAlgorithm();
 	}
 	
 	/**
@@ -59,7 +153,7 @@ public class SecureHashFunction {
 	 * @return the length of the computed hash value in bytes.
 	 */
 	public int getLengthInBytes() {
-		return digest.getDigestLength();
+		return engine.getDigestLength();
 	}
 	
 }
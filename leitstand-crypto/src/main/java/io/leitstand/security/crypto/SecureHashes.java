@@ -3,47 +3,42 @@
  */
 package io.leitstand.security.crypto;
 
-import java.security.MessageDigest;
-
 /**
  * A factory for {@link SecureHashFunction} instances.
+ * <p>
+ * The factory maintains one pool of initialized message digests per algorithm.
+ * Hence the provider lookup is done once per algorithm and not for every hash computation.
  */
 public final class SecureHashes {
 	
+	private static final SecureHashFunction MD5 = new SecureHashFunction(new DigestEngine("MD5"));
+	private static final SecureHashFunction SHA1 = new SecureHashFunction(new DigestEngine("SHA-1"));
+	private static final SecureHashFunction SHA256 = new SecureHashFunction(new DigestEngine("SHA-256"));
+	
 	/**
-	 * Creates a function to compute MD5 hashes.
+	 * Returns a function to compute MD5 hashes.
 	 * @return a function to compute MD5 hashes.
 	 */
 	public static SecureHashFunction md5(){
-		return new SecureHashFunction(createMessageDigest("MD5"));
+		return MD5;
 	}
 	
 	/**
-	 * Creates a function to compute SHA-1 hashes.
+	 * Returns a function to compute SHA-1 hashes.
 	 * @return a function to compute SHA-1 hashes.
 	 */
 	public static SecureHashFunction sha1() {
-		return new SecureHashFunction(createMessageDigest("SHA-1"));
+		return SHA1;
 	}
 	 
 	/**
-	 * Creates a function to compute SHA-256 hashes.
+	 * Returns a function to compute SHA-256 hashes.
 	 * @return a function to compute SHA-256 hashes.
 	 */
 	public static SecureHashFunction sha256(){
-		return new SecureHashFunction(createMessageDigest("SHA-256"));
-	}
-
-
-	private static MessageDigest createMessageDigest(String algorithm) {
-		try{
-			return MessageDigest.getInstance(algorithm);
-		} catch( Exception e){
-			throw new IllegalArgumentException(e);
-		}
+		return SHA256;
 	}
 	
-	
 	private SecureHashes(){
 		// No instances allowed
 	}
@@ -0,0 +1,172 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.crypto;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.security.crypto.SecureRandomFactory.newSHA1PRNG;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A striped pool of deterministic random bit generators (DRBG) to compute salts, nonces and unique IDs.
+ * <p>
+ * A single <code>SecureRandom</code> instance shared by all threads serializes all callers on one monitor.
+ * The pool therefore maintains at most twice as many generators as processors are available, like the other engines of this library.
+ * The number of generators is a power of two, such that a thread selects its generator by masking its thread ID.
+ * Generators are not bound to threads, hence the pool size does not grow with the number of container threads.
+ * <p>
+ * The pool uses the <code>DRBG</code> algorithm if available and falls back to <code>SHA1PRNG</code> otherwise.
+ * Every generator is seeded from the native non-blocking entropy source, 
+ * or from the platform default <code>SecureRandom</code> if the native non-blocking entropy source is not available, and 
+ * reseeded after it has computed 1 MB of random data or after one hour has elapsed since the last reseed.
+ * The <code>rbms.crypto.random.reseed.bytes</code> and <code>rbms.crypto.random.reseed.interval</code> (in seconds) properties
+ * change these limits.
+ */
+public final class SecureRandomPool {
+
+	private static final Logger LOG = Logger.getLogger(SecureRandomPool.class.getName());
+	private static final int SEED_LENGTH = 55; // 440 bits as recommended by NIST
+	private static final long RESEED_BYTES = parseLong(getSystemProperty("rbms.crypto.random.reseed.bytes","1048576"));
+	private static final long RESEED_NANOS = SECONDS.toNanos(parseLong(getSystemProperty("rbms.crypto.random.reseed.interval","3600")));
+	private static final SecureRandom SEEDS = newSeedGenerator();
+	private static final Stripe[] STRIPES = newStripes(2 * getRuntime().availableProcessors());
+	private static final LongAdder RESEEDS = new LongAdder();
+	
+	private static final class Stripe {
+		
+		private final SecureRandom random;
+		private long bytes;
+		private long lastReseed;
+		
+		Stripe(){
+			this.random = newDRBG();
+			this.lastReseed = nanoTime();
+		}
+		
+		synchronized void nextBytes(byte[] data) {
+			bytes += data.length;
+			if(bytes >= RESEED_BYTES || nanoTime() - lastReseed >= RESEED_NANOS) {
+				random.setSeed(seed());
+				bytes = data.length;
+				lastReseed = nanoTime();
+				RESEEDS.increment();
+			}
+			random.nextBytes(data);
+		}
+		
+	}
+	
+	private static SecureRandom newSeedGenerator() {
+		try {
+			return SecureRandom.getInstance("NativePRNGNonBlocking","SUN");
+		} catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+			// NativePRNGNonBlocking is not available on all platforms, e.g. on Windows.
+			LOG.fine(() -> "NativePRNGNonBlocking not available. Use default SecureRandom to compute seeds instead.");
+			return new SecureRandom();
+		}
+	}
+	
+	private static Stripe[] newStripes(int size) {
+		// Use a power of two to select the stripe by a bit mask.
+		Stripe[] stripes = new Stripe[max(1,highestOneBit(size))];
+		for(int i=0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+		return stripes;
+	}
+	
+	private static SecureRandom newDRBG() {
+		try {
+			SecureRandom drbg = SecureRandom.getInstance("DRBG");
+			drbg.setSeed(seed());
+			return drbg;
+		} catch (NoSuchAlgorithmException e) {
+			LOG.fine(() -> "DRBG not available. Use SHA1PRNG instead.");
+			return newSHA1PRNG();
+		}
+	}
+	
+	private static byte[] seed() {
+		byte[] seed = new byte[SEED_LENGTH];
+		SEEDS.nextBytes(seed);
+		return seed;
+	}
+	
+	private static Stripe stripe() {
+		return STRIPES[(int) Thread.currentThread().getId() & (STRIPES.length - 1)];
+	}
+	
+	/**
+	 * Fills the given array with random bytes.
+	 * @param data - the array to be filled
+	 */
+	public static void nextBytes(byte[] data) {
+		stripe().nextBytes(data);
+	}
+	
+	/**
+	 * Returns an array of random bytes.
+	 * @param length - the number of random bytes
+	 * @return the random bytes
+	 */
+	public static byte[] randomBytes(int length) {
+		byte[] data = new byte[length];
+		nextBytes(data);
+		return data;
+	}
+	
+	/**
+	 * Returns a random version 4 UUID.
+	 * In contrast to {@link UUID#randomUUID()}, the UUID is computed by the striped generators.
+	 * @return a random UUID
+	 */
+	public static UUID randomUUID() {
+		byte[] data = randomBytes(16);
+		data[6] &= 0x0f; // Clear version 
+		data[6] |= 0x40; // Set version 4
+		data[8] &= 0x3f; // Clear variant
+		data[8] |= 0x80; // Set IETF variant
+		long msb = 0;
+		long lsb = 0;
+		for(int i=0; i < 8; i++) {
+			msb = (msb << 8) | (data[i] & 0xff);
+		}
+		for(int i=8; i < 16; i++) {
+			lsb = (lsb << 8) | (data[i] & 0xff);
+		}
+		return new UUID(msb,lsb);
+	}
+	
+	/**
+	 * Returns the number of generators in the pool.
+	 * @return the number of generators in the pool.
+	 */
+	public static int getPoolSize() {
+		return STRIPES.length;
+	}
+	
+	/**
+	 * Returns the number of generator reseeds since the pool was created.
+	 * @return the number of generator reseeds.
+	 */
+	public static long getReseedCount() {
+		return RESEEDS.sum();
+	}
+	
+	private SecureRandomPool() {
+		// No instances allowed
+	}
+	
+}
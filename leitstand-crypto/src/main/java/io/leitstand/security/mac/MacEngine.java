@@ -0,0 +1,116 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.mac;
+
+import static java.lang.Runtime.getRuntime;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.leitstand.security.crypto.Secret;
+
+/**
+ * A pool of initialized {@link Mac} instances for a certain algorithm and secret.
+ * <p>
+ * The provider lookup and the key setup are done once, when the engine is created.
+ * Additional <code>Mac</code> instances are cloned from the initialized prototype.
+ * If the provider does not support cloning, new instances are created from the same provider.
+ * A <code>Mac</code> is reset by <code>doFinal</code> and can be reused afterwards.
+ * The pool retains at most twice as many instances as processors are available.
+ * <p>
+ * The <code>MacEngine</code> is thread-safe, whereas the borrowed <code>Mac</code> instances are not.
+ * A borrowed <code>Mac</code> must be used by one thread only and must be returned to the pool after usage.
+ */
+class MacEngine {
+
+	private static final Logger LOG = Logger.getLogger(MacEngine.class.getName());
+	private static final int MAX_IDLE = 2 * getRuntime().availableProcessors();
+
+	private final SecretKeySpec key;
+	private final Mac prototype;
+	private final Queue<Mac> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Creates a <code>MacEngine</code>.
+	 * @param algorithm - the MAC algorithm
+	 * @param secret - the secret
+	 * @throws MessageAuthenticationCodeException if the MAC cannot be initialized
+	 */
+	MacEngine(String algorithm, Secret secret){
+		try {
+			this.key = new SecretKeySpec(secret.toByteArray(), algorithm);
+			this.prototype = Mac.getInstance(algorithm);
+			this.prototype.init(key);
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "An error occured while initializing "+algorithm+": "+e.getMessage(), e);
+			throw new MessageAuthenticationCodeException(e);
+		}
+	}
+
+	/**
+	 * Borrows an initialized <code>Mac</code> from the pool.
+	 * Creates a new <code>Mac</code>, if no idle <code>Mac</code> is available.
+	 * @return an initialized <code>Mac</code>
+	 */
+	Mac borrow() {
+		Mac mac = idle.poll();
+		if(mac != null) {
+			idleCount.decrementAndGet();
+			return mac;
+		}
+		return newMac();
+	}
+
+	/**
+	 * Resets the given <code>Mac</code> and returns it to the pool.
+	 * The <code>Mac</code> is discarded if the pool is already saturated.
+	 * @param mac - the borrowed <code>Mac</code>
+	 */
+	void release(Mac mac) {
+		mac.reset();
+		if(idleCount.incrementAndGet() <= MAX_IDLE) {
+			idle.offer(mac);
+			return;
+		}
+		idleCount.decrementAndGet();
+	}
+
+	/**
+	 * Returns the MAC algorithm name.
+	 * @return the MAC algorithm name.
+	 */
+	String getAlgorithm() {
+		return prototype.getAlgorithm();
+	}
+
+	private Mac newMac() {
+		try {
+			synchronized(prototype) {
+				return (Mac) prototype.clone();
+			}
+		} catch (CloneNotSupportedException e) {
+			LOG.log(Level.FINE, "Cannot clone {0}. Create new instance.", prototype.getAlgorithm());
+			return newMacInstance();
+		}
+	}
+
+	private Mac newMacInstance() {
+		try {
+			Mac mac = Mac.getInstance(prototype.getAlgorithm(), prototype.getProvider());
+			mac.init(key);
+			return mac;
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "An error occured while creating "+prototype.getAlgorithm()+": "+e.getMessage(), e);
+			throw new MessageAuthenticationCodeException(e);
+		}
+	}
+
+}
@@ -5,7 +5,7 @@ package io.leitstand.security.mac;
 
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
 
-import java.util.Arrays;
+import java.security.MessageDigest;
 
 import javax.crypto.Mac;
 
@@ -13,19 +13,20 @@ import javax.crypto.Mac;
  * A utility to sign a message by computing a message authentication code or
  * to validate a given MAC of a certain message.
  * <p>
- * The <code>MessageAuthenticationCode</code> is not thread-safe.
- * Use {@link MessageAuthenticationCodes} to create <code>MessageAuthenticationCode</code> instances on demand.
+ * The <code>MessageAuthenticationCode</code> is thread-safe.
+ * All computations are run by initialized {@link Mac} instances borrowed from a pool.
+ * Use {@link MessageAuthenticationCodes} to obtain <code>MessageAuthenticationCode</code> instances.
  */
 public class MessageAuthenticationCode {
 
-	private Mac mac;
+	private final MacEngine engine;
 	
 	/**
 	 * Create a <code>MessageAuthenticationCode</code>.
-	 * @param mac - the underlying MAC to do the actual computations
+	 * @param engine - the pool of initialized MACs to do the actual computations
 	 */
-	MessageAuthenticationCode(Mac mac){
-		this.mac = mac;
+	MessageAuthenticationCode(MacEngine engine){
+		this.engine = engine;
 	}
 	
 	/**
@@ -36,7 +37,7 @@ public class MessageAuthenticationCode {
 	 * <code>false</code> otherwise.
 	 */
 	public boolean isValid(byte[] message, byte[] mac) {
-		return Arrays.equals(mac, sign(message));
+		return MessageDigest.isEqual(mac, sign(message));
 	}
 	
 	/**
@@ -49,6 +50,19 @@ public class MessageAuthenticationCode {
 	public boolean isValid(String message, byte[] mac) {
 		return isValid(toUtf8Bytes(message),mac);
 	}
+	
+	/**
+	 * Verifies a given message authentication code for a range of a given byte array in constant time.
+	 * @param message - the byte array containing the message
+	 * @param offset - the offset of the first message byte
+	 * @param length - the length of the message in bytes
+	 * @param mac - the message authentication code.
+	 * @return <code>true</code> if the given MAC is valid, i.e. equal to the computed MAC and 
+	 * <code>false</code> otherwise.
+	 */
+	public boolean isValid(byte[] message, int offset, int length, byte[] mac) {
+		return MessageDigest.isEqual(mac, sign(message, offset, length));
+	}
 
 	/**
 	 * Computes the message authentication code for a given message.
@@ -65,7 +79,24 @@ public class MessageAuthenticationCode {
 	 * @return the message authentication code
 	 */
 	public byte[] sign(byte[] message) {
-		return mac.doFinal(message);
+		return sign(message, 0, message.length);
+	}
+	
+	/**
+	 * Computes the message authentication code for a range of a given byte array.
+	 * @param message - the byte array containing the message
+	 * @param offset - the offset of the first message byte
+	 * @param length - the length of the message in bytes
+	 * @return the message authentication code
+	 */
+	public byte[] sign(byte[] message, int offset, int length) {
+		Mac mac = engine.borrow();
+		try {
+			mac.update(message, offset, length);
+			return mac.doFinal();
+		} finally {
+			engine.release(mac);
+		}
 	}
 	
 	/**
@@ -73,7 +104,7 @@ public class MessageAuthenticationCode {
 	 * @return the MAC algorithm name.
 	 */
 	public String getAlgorithm() {
-		return mac.getAlgorithm();
+		return engine.getAlgorithm();
 	}
 	
 }
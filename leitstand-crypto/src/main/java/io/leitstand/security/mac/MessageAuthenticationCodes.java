@@ -3,39 +3,99 @@
  */
 package io.leitstand.security.mac;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import static java.lang.System.nanoTime;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 import io.leitstand.security.crypto.Secret;
 
 /**
  * The {@link MessageAuthenticationCode} factory.
+ * <p>
+ * The factory maintains a registry of initialized MAC engines per secret.
+ * Hence the provider lookup and the key setup are done once per secret and not for every computation.
+ * The registry holds at most {@value #MAX_ENGINES} secrets and evicts the least recently used secret when this limit is exceeded.
  */
 public class MessageAuthenticationCodes {
 
 	private static final String HMACSHA256 = "HmacSHA256";
 	private static final Logger LOG = Logger.getLogger(MessageAuthenticationCodes.class.getName());
+	static final int MAX_ENGINES = 64;
+	private static final Map<Secret,RegisteredEngine> HMACSHA256_ENGINES = new ConcurrentHashMap<>();
 
 	/**
-	 * Creates a {@link MessageAuthenticationCode} to compute HMAC-SHA256 message authentication codes.
+	 * A registered MAC engine along with the time of its last use.
+	 * The last use is recorded without locking, because the registry only needs an approximate order to select the eviction candidate.
+	 */
+	private static final class RegisteredEngine {
+		private final MessageAuthenticationCode mac;
+		private volatile long lastUse;
+		
+		RegisteredEngine(MessageAuthenticationCode mac){
+			this.mac = mac;
+			this.lastUse = nanoTime();
+		}
+		
+		MessageAuthenticationCode use() {
+			lastUse = nanoTime();
+			return mac;
+		}
+	}
+
+	/**
+	 * Returns a {@link MessageAuthenticationCode} to compute HMAC-SHA256 message authentication codes.
 	 * @param secret - the secret to compute the authentication code
 	 * @return the initialized {@link MessageAuthenticationCode}
 	 */
 	public static MessageAuthenticationCode hmacSha256(Secret secret) {
-		try{
-			Mac hmacSha256 = Mac.getInstance(HMACSHA256);
-			hmacSha256.init(new SecretKeySpec(secret.toByteArray(), HMACSHA256));
-			return new MessageAuthenticationCode(hmacSha256);
-		} catch (Exception e){
-			LOG.log(Level.SEVERE, "An error occured while calculating HmacSHA256: "+e.getMessage(), e);
-			throw new MessageAuthenticationCodeException(e);
+		RegisteredEngine engine = HMACSHA256_ENGINES.get(secret);
+		if(engine != null) {
+			return engine.use();
+		}
+		synchronized(HMACSHA256_ENGINES) {
+			engine = HMACSHA256_ENGINES.get(secret);
+			if(engine != null) {
+				return engine.use();
+			}
+			if(HMACSHA256_ENGINES.size() >= MAX_ENGINES) {
+				evictLeastRecentlyUsedEngine();
+			}
+			// Use a private copy of the secret as registry key,
+			// because the caller might clear the secret afterwards.
+			Secret key = new Secret(secret.toByteArray());
+			engine = new RegisteredEngine(new MessageAuthenticationCode(new MacEngine(HMACSHA256, key)));
+			HMACSHA256_ENGINES.put(key, engine);
+			return engine.mac;
 		}
 	}
 	
-	
+	private static void evictLeastRecentlyUsedEngine() {
+		Secret eldest = null;
+		long eldestUse = Long.MAX_VALUE;
+		for(Map.Entry<Secret,RegisteredEngine> entry : HMACSHA256_ENGINES.entrySet()) {
+			// nanoTime values must be compared by their difference to be overflow-safe.
+			long lastUse = entry.getValue().lastUse;
+			if(eldest == null || lastUse - eldestUse < 0) {
+				eldest = entry.getKey();
+				eldestUse = lastUse;
+			}
+		}
+		if(eldest != null) {
+			HMACSHA256_ENGINES.remove(eldest);
+			LOG.fine(() -> "Too many HmacSHA256 secrets. Evicted least recently used HmacSHA256 engine.");
+		}
+	}
+
+	/**
+	 * Returns the number of registered HMAC-SHA256 engines.
+	 * @return the number of registered engines.
+	 */
+	static int registeredEngines() {
+		return HMACSHA256_ENGINES.size();
+	}
+
 	private MessageAuthenticationCodes() {
 		// No instances allowed.
 	}
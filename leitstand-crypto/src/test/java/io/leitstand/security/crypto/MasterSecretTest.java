@@ -6,18 +6,35 @@ package io.leitstand.security.crypto;
 import static io.leitstand.commons.etc.Environment.emptyEnvironment;
 import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.security.crypto.MasterSecret.GCM_HEADER;
 import static io.leitstand.security.crypto.MasterSecret.RBMS_MASTER_SECRET_FILE_NAME;
+import static io.leitstand.security.crypto.MasterSecret.RBMS_PROPERTY_MASTER_CBC_FALLBACK;
+import static io.leitstand.security.crypto.MasterSecret.RBMS_PROPERTY_MASTER_CIPHER;
 import static io.leitstand.security.crypto.MasterSecret.RBMS_PROPERTY_MASTER_IV;
 import static io.leitstand.security.crypto.MasterSecret.RBMS_PROPERTY_MASTER_SECRET;
+import static io.leitstand.security.crypto.MasterSecret.isGcmCiphertext;
+import static io.leitstand.security.crypto.SecureHashes.md5;
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Properties;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -29,6 +46,7 @@ public class MasterSecretTest {
 	
 	private MasterSecret defaultMaster;
 	private MasterSecret cfgMaster;
+	private MasterSecret cbcMaster;
 	
 	static String base64encoded(String secret) {
 		return encodeBase64String(toUtf8Bytes(secret));
@@ -49,6 +67,14 @@ public class MasterSecretTest {
 		cfgMaster = new MasterSecret(propertiesEnv);
 		cfgMaster.init();
 		
+		Properties cbcProperties = new Properties();
+		cbcProperties.putAll(properties);
+		cbcProperties.put(RBMS_PROPERTY_MASTER_CIPHER, "CBC");
+		Environment cbcEnv = mock(Environment.class);
+		when(cbcEnv.loadFile(eq(RBMS_MASTER_SECRET_FILE_NAME),isA(FileProcessor.class))).thenReturn(cbcProperties);
+		cbcMaster = new MasterSecret(cbcEnv);
+		cbcMaster.init();
+		
 	}
 	
 	@Test
@@ -68,4 +94,85 @@ public class MasterSecretTest {
 		assertArrayEquals(plain,decrypt);
 	}
 	
+	@Test
+	public void encrypt_with_random_nonce_and_versioned_header() {
+		byte[] plain   = toUtf8Bytes("abcdefghijklmnopqrstuvwxyz0123456789");
+		byte[] cipher1 = cfgMaster.encrypt(plain);
+		byte[] cipher2 = cfgMaster.encrypt(plain);
+		assertArrayEquals(GCM_HEADER, copyOf(cipher1, GCM_HEADER.length));
+		assertFalse(Arrays.equals(cipher1, cipher2));
+		assertArrayEquals(plain, cfgMaster.decrypt(cipher2));
+	}
+	
+	@Test
+	public void decrypt_cbc_ciphertext() {
+		byte[] plain   = toUtf8Bytes("abcdefghijklmnopqrstuvwxyz0123456789");
+		byte[] cipher  = cbcMaster.encrypt(plain);
+		assertFalse(isGcmCiphertext(cipher));
+		assertArrayEquals(plain, cfgMaster.decrypt(cipher));
+	}
+	
+	// Crafts a CBC ciphertext of the default master secret, whose first block starts with the GCM header.
+	// Returns the plaintext in the first and the ciphertext in the second element.
+	private static byte[][] cbcCiphertextStartingWithGcmHeader() throws GeneralSecurityException {
+		byte[] key = md5().hash("changeit");
+		byte[] iv = md5().hash(key);
+		SecretKeySpec aes = new SecretKeySpec(key, "AES");
+		byte[] firstBlock = copyOf(GCM_HEADER, 16);
+		Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+		ecb.init(DECRYPT_MODE, aes);
+		byte[] firstPlain = ecb.doFinal(firstBlock);
+		for(int i=0; i < firstPlain.length; i++) {
+			firstPlain[i] ^= iv[i];
+		}
+		byte[] tailPlain = toUtf8Bytes("abcdefghijklmnopqrstuvwxyz0123456789");
+		Cipher cbc = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cbc.init(ENCRYPT_MODE, aes, new IvParameterSpec(firstBlock));
+		byte[] tail = cbc.doFinal(tailPlain);
+		
+		byte[] cipher = copyOf(firstBlock, firstBlock.length + tail.length);
+		arraycopy(tail, 0, cipher, firstBlock.length, tail.length);
+		byte[] plain = copyOf(firstPlain, firstPlain.length + tailPlain.length);
+		arraycopy(tailPlain, 0, plain, firstPlain.length, tailPlain.length);
+		return new byte[][] {plain, cipher};
+	}
+	
+	@Test(expected=MasterSecretException.class)
+	public void reject_cbc_ciphertext_starting_with_gcm_header() throws GeneralSecurityException {
+		byte[][] crafted = cbcCiphertextStartingWithGcmHeader();
+		assertTrue(isGcmCiphertext(crafted[1]));
+		defaultMaster.decrypt(crafted[1]);
+	}
+	
+	@Test
+	public void decrypt_cbc_ciphertext_starting_with_gcm_header_if_fallback_is_enabled() throws GeneralSecurityException {
+		byte[][] crafted = cbcCiphertextStartingWithGcmHeader();
+		Properties properties = new Properties();
+		properties.put(RBMS_PROPERTY_MASTER_CBC_FALLBACK, "true");
+		Environment env = mock(Environment.class);
+		when(env.loadFile(eq(RBMS_MASTER_SECRET_FILE_NAME),isA(FileProcessor.class))).thenReturn(properties);
+		MasterSecret fallbackMaster = new MasterSecret(env);
+		fallbackMaster.init();
+		assertArrayEquals(crafted[0], fallbackMaster.decrypt(crafted[1]));
+	}
+	
+	@Test(expected=MasterSecretException.class)
+	public void reject_modified_gcm_ciphertext() {
+		byte[] cipher = cfgMaster.encrypt(toUtf8Bytes("abcdefghijklmnopqrstuvwxyz0123456789"));
+		cipher[cipher.length-1] ^= 1;
+		cfgMaster.decrypt(cipher);
+	}
+	
+	@Test
+	public void bulk_decryption_of_gcm_and_cbc_ciphertexts_results_in_same_plaintexts() {
+		byte[][] plain = { toUtf8Bytes("first"), new byte[0], toUtf8Bytes("third") };
+		byte[][] cipher = cfgMaster.encrypt(plain);
+		cipher[1] = cbcMaster.encrypt(plain[1]);
+		byte[][] decrypt = cfgMaster.decrypt(cipher);
+		assertTrue(isGcmCiphertext(cipher[0]));
+		for(int i=0; i < plain.length; i++) {
+			assertArrayEquals(plain[i], decrypt[i]);
+		}
+	}
+	
 }
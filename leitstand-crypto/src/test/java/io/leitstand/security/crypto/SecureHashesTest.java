@@ -0,0 +1,92 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.crypto;
+
+import static io.leitstand.security.crypto.SecureHashes.sha256;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SecureHashesTest {
+
+	private byte[] data;
+	private byte[] hash;
+	
+	@Before
+	public void initData() {
+		// Exceeds the stream chunk size
+		data = new byte[100_000];
+		new Random(42).nextBytes(data);
+		hash = sha256().hash(data);
+	}
+	
+	@Test
+	public void hash_stream() throws IOException {
+		assertArrayEquals(hash, sha256().hash(new ByteArrayInputStream(data)));
+	}
+	
+	@Test
+	public void hash_remaining_buffer_bytes() {
+		ByteBuffer buffer = allocateDirect(data.length+10);
+		buffer.position(10);
+		buffer.put(data);
+		buffer.position(10);
+		assertArrayEquals(hash, sha256().hash(buffer));
+		assertFalse(buffer.hasRemaining());
+		assertArrayEquals(hash, sha256().hash(wrap(data)));
+	}
+	
+	@Test
+	public void hash_file_channel_region() throws IOException {
+		Path file = Files.createTempFile("leitstand", ".bin");
+		try {
+			Files.write(file, data);
+			assertArrayEquals(hash, sha256().hash(file));
+			try(FileChannel channel = FileChannel.open(file, READ)){
+				assertArrayEquals(sha256().hash(Arrays.copyOfRange(data, 10, 1010)), 
+								  sha256().hash(channel, 10, 1000));
+				assertEquals(0, channel.position());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void hash_concurrently() throws Exception {
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[]>> hashes = new ArrayList<>();
+			for(int i=0; i < 100; i++) {
+				hashes.add(threads.submit(() -> sha256().hash(data)));
+			}
+			for(Future<byte[]> concurrent : hashes) {
+				assertArrayEquals(hash, concurrent.get());
+			}
+		} finally {
+			threads.shutdown();
+		}
+	}
+	
+}
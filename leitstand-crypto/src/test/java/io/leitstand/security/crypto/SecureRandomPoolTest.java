@@ -0,0 +1,72 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.crypto;
+
+import static io.leitstand.security.crypto.SecureRandomPool.getPoolSize;
+import static io.leitstand.security.crypto.SecureRandomPool.randomBytes;
+import static io.leitstand.security.crypto.SecureRandomPool.randomUUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class SecureRandomPoolTest {
+
+	@Test
+	public void create_version_4_uuid() {
+		UUID uuid = randomUUID();
+		assertEquals(4, uuid.version());
+		assertEquals(2, uuid.variant());
+		assertEquals(uuid, UUID.fromString(uuid.toString()));
+	}
+	
+	@Test
+	public void create_random_bytes() {
+		byte[] first = randomBytes(32);
+		byte[] second = randomBytes(32);
+		assertEquals(32, first.length);
+		assertFalse(Arrays.equals(first, second));
+	}
+	
+	@Test
+	public void pool_size_is_power_of_two() {
+		assertTrue(getPoolSize() > 0);
+		assertEquals(0, getPoolSize() & (getPoolSize() - 1));
+	}
+	
+	@Test
+	public void create_unique_uuids_concurrently() throws Exception {
+		Set<UUID> uuids = ConcurrentHashMap.newKeySet();
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for(int i=0; i < 8; i++) {
+				tasks.add(threads.submit(() -> {
+					for(int j=0; j < 1000; j++) {
+						assertTrue(uuids.add(randomUUID()));
+					}
+					return null;
+				}));
+			}
+			for(Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			threads.shutdown();
+		}
+		assertEquals(8000, uuids.size());
+	}
+	
+}
@@ -4,12 +4,23 @@
 package io.leitstand.security.mac;
 
 import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.MAX_ENGINES;
 import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.registeredEngines;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -44,4 +55,56 @@ public class HmacSHA256Test {
 
 	}
 	
+	@Test
+	public void compute_rfc4231_test_vector() {
+		byte[] expected = new BigInteger("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",16).toByteArray();
+		assertArrayEquals(expected,hmacSha256(new Secret(toUtf8Bytes("Jefe"))).sign("what do ya want for nothing?"));
+	}
+	
+	@Test
+	public void reuse_engine_for_equal_secrets() {
+		assertSame(hmacSha256(secret),hmacSha256(new Secret(secret.toByteArray())));
+	}
+	
+	@Test
+	public void clearing_the_secret_does_not_affect_registered_engine() {
+		Secret copy = new Secret(secret.toByteArray());
+		hmacSha256(copy);
+		copy.clear();
+		assertTrue(hmacSha256(secret).isValid(message, mac));
+	}
+	
+	@Test
+	public void evict_least_recently_used_engine_when_registry_is_full() {
+		MessageAuthenticationCode hot = hmacSha256(secret);
+		for(int i=0; i < 2*MAX_ENGINES; i++) {
+			hmacSha256(new Secret(toUtf8Bytes("secret-"+i)));
+			assertSame(hot,hmacSha256(secret));
+		}
+		assertTrue(registeredEngines() <= MAX_ENGINES);
+	}
+	
+	@Test
+	public void sign_message_range() {
+		byte[] framed = toUtf8Bytes("[message]");
+		assertArrayEquals(mac,hmacSha256(secret).sign(framed,1,framed.length-2));
+	}
+	
+	@Test
+	public void compute_same_mac_concurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<byte[]>> macs = new ArrayList<>();
+			for(int i=0; i < 1000; i++) {
+				macs.add(executor.submit(() -> hmacSha256(secret).sign(message)));
+			}
+			for(Future<byte[]> computed : macs) {
+				assertArrayEquals(mac,computed.get(5,SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals("HmacSHA256",hmacSha256(secret).getAlgorithm());
+	}
+	
 }
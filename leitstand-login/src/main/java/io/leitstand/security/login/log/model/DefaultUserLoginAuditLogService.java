@@ -3,173 +3,80 @@
  */
 package io.leitstand.security.login.log.model;
 
-import static io.leitstand.commons.db.DatabaseService.prepare;
-import static io.leitstand.commons.etc.FileProcessor.properties;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
 import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
-import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
-import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
-import static io.leitstand.security.login.log.model.UserLoginRecord.fetchLastRecord;
 import static io.leitstand.security.login.log.service.ReasonCode.AUT0001E_RECORD_NOT_FOUND;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogCursor.cursor;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogVerifier.isValidRecord;
 import static io.leitstand.security.login.log.service.UserLoginAuditLogRecordData.newUserLoginRecordData;
-import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
-import static java.lang.String.format;
-import static java.lang.System.getProperty;
-import static java.net.InetAddress.getLocalHost;
-import static java.util.Base64.getDecoder;
-import static java.util.Base64.getEncoder;
-import static java.util.logging.Level.FINE;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.min;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.util.Date;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Properties;
-import java.util.logging.Logger;
+import java.util.function.Consumer;
 
-import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
 
 import io.leitstand.commons.EntityNotFoundException;
-import io.leitstand.commons.db.DatabaseService;
-import io.leitstand.commons.etc.Environment;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.commons.model.Service;
 import io.leitstand.security.auth.UserId;
-import io.leitstand.security.crypto.MasterSecret;
-import io.leitstand.security.crypto.Secret;
 import io.leitstand.security.login.log.service.UserLoginAuditLogQuery;
 import io.leitstand.security.login.log.service.UserLoginAuditLogRecordData;
 import io.leitstand.security.login.log.service.UserLoginAuditLogService;
+import io.leitstand.security.login.log.service.UserLoginAuditLogVerificationData;
 import io.leitstand.security.login.log.service.UserLoginState;
 
 /**
  * The stateless transactional {@link UserLoginAuditLogService} default implementation.
  * <p>
  * All log records are written to a database.
- * The secret to sign all log records is read from the <code>login.record.secret</code> property.
- * This property is either specified as system property or read from the <code>/etc/rbms/login-audit-log.properties</code> file,
- * with system property having a precedence over the config file.
- * The property value is Base64 encoded and encrypted with the {@link MasterSecret}.
+ * New log records are signed and written asynchronously by the {@link UserLoginAuditLogWriter}.
+ * The {@link UserLoginAuditLogVerifier} verifies the written records in the background and stores the verification result.
+ * Reading a record only verifies the record, if the record has not been verified yet.
+ * The record is verified in the same way as by the {@link UserLoginAuditLogVerifier}, 
+ * i.e. the record must refer to the record with the next lower ID of the same node and the record signature must be valid.
  */
 @Service
 public class DefaultUserLoginAuditLogService implements UserLoginAuditLogService {
 
-	private static final Logger LOG = Logger.getLogger(DefaultUserLoginAuditLogService.class.getName());
-	private static final String AUDIT_PROPERTIES = "audit.properties";
-	private static final String EMS_PROPERTY_LOG_RECORD_SECRET = "login.record.secret";
-	private String localIp;
-	private Secret secret;
-	
+	private static final int FETCH_SIZE = parseInt(getSystemProperty("rbms.login.audit.fetch.size","500"));
+	private static final String READ_PREDECESSOR = "SELECT MAX(id) FROM auth.user_login_audit_log WHERE localip=? AND id<?";
+
 	@Inject
 	@Login
 	private Repository audit;
 	
-	@Inject
-	private Environment env;
+	@Resource(lookup="java:/jdbc/leitstand")
+	private DataSource ds;
 	
 	@Inject
-	private MasterSecret master;
+	private UserLoginAuditLogWriter writer;
 	
 	@Inject
-	@Login
-	private DatabaseService db;
-	
-	/**
-	 * Determines the IP address of the host that runs this service and
-	 * reads the secret to sign all created login records.
-	 */
-	@PostConstruct
-	protected void readLocalIpAddress() {
-		try {
-			localIp = getLocalHost().getHostAddress();
-		} catch(IOException e) {
-			// If a JVM is not able to determine the local IP-Address, we have an urgent issue.
-			// This should never happen, but if it happens, we have a trace record and convert the IOException
-			// to an unchecked IOException in order to get notified about the problem!
-			LOG.log(FINE,e,()->"Cannot determine local IP address to due IO error: "+e.getMessage());
-			throw new UncheckedIOException(e);
-		}
-		Properties auditLogConfig = env.loadFile(AUDIT_PROPERTIES, 
-												 properties());
-		String secret64 = getProperty(EMS_PROPERTY_LOG_RECORD_SECRET,
-									  auditLogConfig.getProperty(EMS_PROPERTY_LOG_RECORD_SECRET));
-		if(isNonEmptyString(secret64)) {
-			secret = new Secret(master.decrypt(getDecoder().decode(secret64)));
-		} else {
-			secret = new Secret(toUtf8Bytes("lab-environment-login-audit-log"));
-		}
-	}
+	private UserLoginAuditLogVerifier verifier;
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void log(String remoteIp, String userAgent, UserId userId, UserLoginState loginState) {
-		UserLoginRecord previous = audit.execute(fetchLastRecord(localIp));	
-		Date loginDate = new Date();
-		long id = previous != null ? previous.getId()+1 : 1;
-		String rawMessage  = rawMessage(localIp, 
-										id, 
-										remoteIp, 
-										userAgent, 
-										userId, 
-										loginState,
-										previous, 
-										loginDate);
-		
-		String signature   = getEncoder().encodeToString(hmacSha256(secret).sign(rawMessage));
-		
-		
-		UserLoginRecord record = new UserLoginRecord(id,
-													 previous,
-												 	 localIp,
-													 remoteIp,
-													 userId,
-													 userAgent,
-													 loginDate,
-													 loginState,
-													 signature);
-		audit.add(record);
+		writer.append(remoteIp, 
+					  userAgent, 
+					  userId, 
+					  loginState);
 	}
 
-	private static String rawMessage(String localIp,
-							  		 long id,
-							  		 String remoteIp, 
-							  		 String userAgent, 
-							  		 UserId userId, 
-							  		 UserLoginState loginState,
-							  		 UserLoginRecord previous, 
-							  		 Date loginDate) {
-		return rawMessage(localIp,
-						  id,
-						  remoteIp, 
-						  userAgent, 
-						  userId.toString(), 
-						  loginState.name(), 
-						  previous != null ? previous.getId() : 0L, 
-						  loginDate.getTime());
-	}
-	
-	private static String rawMessage(String localIp,
-							  		 long   id,
-							  		 String remoteIp, 
-							  		 String userAgent, 
-							  		 String userId, 
-							  		 String loginState,
-							  		 long   previous, 
-							  		 long   loginDate) {
-		return format("%s:%d:%s:%s:%s:%s:%d:%d",
-					  localIp,
-					  id,
-					  remoteIp,
-					  userAgent,
-					  userId,
-					  loginState,
-					  loginDate,
-					  previous);
-	}
-	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -183,34 +90,46 @@ public class DefaultUserLoginAuditLogService implements UserLoginAuditLogService
 											  id);
 		}
 		
-		boolean validSignature = isValidSignature(record);
+		// Use the stored verification result, if the record has already been verified.
+		boolean valid = record.getValid() != null ? record.getValid() : isValidUserLoginRecord(record);
 		
 		return newUserLoginRecordData()
 			   .withLoginDate(record.getLoginDate())
 			   .withLoginState(record.getState())
 			   .withRemoteIp(record.getRemoteIp())
-			   .withValid(validSignature)
+			   .withValid(valid)
 			   .withUserAgent(record.getUserAgent())
 			   .withUserId(record.getUserId())
 			   .build();
 	}
 
-	private boolean isValidSignature(UserLoginRecord record) {
-		String rawMessage = rawMessage(record.getLocalIp(),
-									   record.getId(),
-									   record.getRemoteIp(), 
-				   					   record.getUserAgent(), 
-				   					   record.getUserId(), 
-				   					   record.getState(), 
-				   					   record.getPreviousLogRecord(),
-				   					   record.getLoginDate());
-		
-		return isValidSignature(rawMessage,
-								record.getSignature());
+	private boolean isValidUserLoginRecord(UserLoginRecord record) {
+		UserLoginRecord previous = record.getPreviousLogRecord();
+		return isValidRecord(writer,
+							 record.getLocalIp(),
+							 record.getId(),
+							 record.getRemoteIp(),
+							 record.getUserAgent(),
+							 record.getUserId() != null ? record.getUserId().toString() : null,
+							 record.getState().name(),
+							 previous != null ? previous.getId() : 0L,
+							 readPredecessor(record.getLocalIp(), record.getId()),
+							 record.getLoginDate().getTime(),
+							 record.getSignature());
 	}
 	
-	private boolean isValidSignature(String rawMessage, byte[] signature) {
-		return hmacSha256(secret).isValid(rawMessage,signature);
+	private long readPredecessor(String localIp, long id) {
+		try(Connection con = ds.getConnection();
+			PreparedStatement stmt = con.prepareStatement(READ_PREDECESSOR)){
+			stmt.setString(1, localIp);
+			stmt.setLong(2, id);
+			try(ResultSet rs = stmt.executeQuery()){
+				// MAX returns NULL, which is read as 0, if the record is the first record of the chain.
+				return rs.next() ? rs.getLong(1) : 0L;
+			}
+		} catch (SQLException e) {
+			throw new PersistenceException(e);
+		}
 	}
 	
 	/**
@@ -218,23 +137,34 @@ public class DefaultUserLoginAuditLogService implements UserLoginAuditLogService
 	 */
 	@Override
 	public List<UserLoginAuditLogRecordData> findUserLoginAuditLogRecords(UserLoginAuditLogQuery query) {
+		List<UserLoginAuditLogRecordData> records = new ArrayList<>(min(query.getLimit(),FETCH_SIZE));
+		processUserLoginAuditLogRecords(query, records::add);
+		return records;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void processUserLoginAuditLogRecords(UserLoginAuditLogQuery query, 
+												Consumer<UserLoginAuditLogRecordData> consumer) {
 
 		List<String> filter = new LinkedList<>();
 		List<Object> args = new LinkedList<>();
 		
 		if(query.getFromLoginDate() != null) {
 			filter.add("l.tslogin >= ?");
-			args.add(query.getFromLoginDate());
+			args.add(new Timestamp(query.getFromLoginDate().getTime()));
 		}
 		
 		if(query.getToLoginDate() != null) {
 			filter.add("l.tslogin <= ?");
-			args.add(query.getToLoginDate());
+			args.add(new Timestamp(query.getToLoginDate().getTime()));
 		}
 		
-		if(query.getUserIdPattern() != null && query.getUserIdPattern().length() > 0) {
-			filter.add("l.userid ~ ?");
-			args.add(query.getUserIdPattern());
+		if(query.getUserIdFilter() != null && !query.getUserIdFilter().isEmpty()) {
+			filter.add(query.getUserIdFilter().toSqlPredicate("l.userid"));
+			args.add(query.getUserIdFilter().toSqlArgument());
 		}
 		
 		if(query.getRemoteIp() != null && query.getRemoteIp().length() > 0) {
@@ -242,6 +172,14 @@ public class DefaultUserLoginAuditLogService implements UserLoginAuditLogService
 			args.add(query.getRemoteIp());
 		}
 		
+		if(query.getAfter() != null && query.getAfter().length() > 0) {
+			UserLoginAuditLogCursor cursor = UserLoginAuditLogCursor.parse(query.getAfter());
+			filter.add("(l.tslogin, l.localip, l.id) < (?, ?, ?)");
+			args.add(cursor.getLoginDate());
+			args.add(cursor.getLocalIp());
+			args.add(cursor.getId());
+		}
+		
 		StringBuilder where = new StringBuilder();
 		if(!filter.isEmpty()) {
 			where.append(" WHERE ")
@@ -254,32 +192,69 @@ public class DefaultUserLoginAuditLogService implements UserLoginAuditLogService
 		}
 		String sql = "SELECT l.localip, l.id, l.remoteip, l.useragent, l.userid, "+
 		                     "l.loginstate, l.previous_user_login_audit_log_id, "+
-		                     "l.tslogin, l.signature, r.id "+
-		              "FROM AUTH.USER_LOGIN_AUDIT_LOG l "+
-		              "LEFT OUTER JOIN AUTH.USER_LOGIN_AUDIT_LOG r "+
-		              "ON l.previous_user_login_audit_log_id = r.id AND l.localip = r.localip ";
+		                     "l.tslogin, l.signature, l.valid, "+
+		                     // Only look up the predecessor of records that have not been verified yet.
+		                     "CASE WHEN l.valid IS NULL THEN "+
+		                     "(SELECT MAX(r.id) FROM AUTH.USER_LOGIN_AUDIT_LOG r "+
+		                     "WHERE r.localip = l.localip AND r.id < l.id) "+
+		                     "END "+
+		              "FROM AUTH.USER_LOGIN_AUDIT_LOG l ";
 
-		 
-		return db.executeQuery(prepare(sql+where+"ORDER BY l.tslogin DESC FETCH FIRST "+query.getLimit()+" ROWS ONLY",args), 
-							   rs -> newUserLoginRecordData()
-							   		 .withLocalIp(rs.getString(1))
-							   		 .withId(rs.getLong(2))
-								     .withRemoteIp(rs.getString(3))
-							   		 .withUserAgent(rs.getString(4))
-							   		 .withUserId(new UserId(rs.getString(5)))
-							   		 .withLoginState(UserLoginState.valueOf(rs.getString(6)))
-							   		 .withLoginDate(rs.getTimestamp(8))
-							   		 .withValid(rs.getLong(7) == rs.getLong(10) && 
-							   		 					 isValidSignature(rawMessage(rs.getString(1),
-							   				 										 rs.getLong(2),
-							   				 										 rs.getString(3),
-							   				 										 rs.getString(4),
-							   				 										 rs.getString(5),
-							   				 										 rs.getString(6),
-							   				 										 rs.getLong(7),
-							   				 										 rs.getTimestamp(8).getTime()), 
-							   				 							  			 decodeBase64String(rs.getString(9))))
-							   		 .build());
+		// Stream the records with a bounded fetch size instead of materializing the entire result set.
+		try(Connection con = ds.getConnection();
+			PreparedStatement stmt = con.prepareStatement(sql+where+"ORDER BY l.tslogin DESC, l.localip DESC, l.id DESC FETCH FIRST "+query.getLimit()+" ROWS ONLY")){
+			stmt.setFetchSize(FETCH_SIZE);
+			int i = 1;
+			for(Object arg : args) {
+				stmt.setObject(i++, arg);
+			}
+			try(ResultSet rs = stmt.executeQuery()){
+				while(rs.next()) {
+					consumer.accept(newUserLoginRecordData()
+									.withLocalIp(rs.getString(1))
+									.withId(rs.getLong(2))
+									.withRemoteIp(rs.getString(3))
+									.withUserAgent(rs.getString(4))
+									.withUserId(new UserId(rs.getString(5)))
+									.withLoginState(UserLoginState.valueOf(rs.getString(6)))
+									.withLoginDate(rs.getTimestamp(8))
+									.withValid(isValidRecord(rs))
+									.withCursor(cursor(rs.getTimestamp(8).getTime(),
+													   rs.getString(1),
+													   rs.getLong(2)))
+									.build());
+				}
+			}
+		} catch (SQLException e) {
+			throw new PersistenceException(e);
+		}
+	}
+	
+	private boolean isValidRecord(ResultSet rs) throws SQLException {
+		boolean valid = rs.getBoolean(10);
+		if(!rs.wasNull()) {
+			// Record has already been verified by the UserLoginAuditLogVerifier.
+			return valid;
+		}
+		return isValidRecord(writer,
+							 rs.getString(1),
+							 rs.getLong(2),
+							 rs.getString(3),
+							 rs.getString(4),
+							 rs.getString(5),
+							 rs.getString(6),
+							 rs.getLong(7),
+							 rs.getLong(11),
+							 rs.getTimestamp(8).getTime(),
+							 decodeBase64String(rs.getString(9)));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public UserLoginAuditLogVerificationData verifyUserLoginAuditLog(String localIp) {
+		return verifier.verifyAll(localIp);
 	}
 	
 	
@@ -0,0 +1,77 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.security.login.log.service.ReasonCode.AUT0002E_INVALID_CURSOR;
+import static java.lang.Long.parseLong;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Base64.getUrlDecoder;
+import static java.util.Base64.getUrlEncoder;
+
+import java.sql.Timestamp;
+
+import io.leitstand.commons.UnprocessableEntityException;
+
+/**
+ * The position of a login audit log record in the query result order.
+ * <p>
+ * Query results are ordered by login timestamp, local IP address and record ID, all in descending order.
+ * The cursor is passed to clients as opaque URL-safe string.
+ */
+final class UserLoginAuditLogCursor {
+
+	/**
+	 * Creates the opaque cursor of a login audit log record.
+	 * @param loginDate - the login timestamp in milliseconds
+	 * @param localIp - the IP address of the node that has written the record
+	 * @param id - the record ID
+	 * @return the opaque cursor
+	 */
+	static String cursor(long loginDate, String localIp, long id) {
+		String cursor = loginDate+":"+id+":"+localIp;
+		return getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(UTF_8));
+	}
+
+	/**
+	 * Parses an opaque cursor.
+	 * @param cursor - the opaque cursor
+	 * @return the parsed cursor
+	 * @throws UnprocessableEntityException if the cursor is invalid
+	 */
+	static UserLoginAuditLogCursor parse(String cursor) {
+		try {
+			// The local IP address is the last field, because IPv6 addresses contain colons.
+			String[] fields = new String(getUrlDecoder().decode(cursor),UTF_8).split(":",3);
+			return new UserLoginAuditLogCursor(parseLong(fields[0]),
+											   fields[2],
+											   parseLong(fields[1]));
+		} catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new UnprocessableEntityException(AUT0002E_INVALID_CURSOR,
+												   cursor);
+		}
+	}
+
+	private final long loginDate;
+	private final String localIp;
+	private final long id;
+
+	private UserLoginAuditLogCursor(long loginDate, String localIp, long id) {
+		this.loginDate = loginDate;
+		this.localIp = localIp;
+		this.id = id;
+	}
+
+	Timestamp getLoginDate() {
+		return new Timestamp(loginDate);
+	}
+
+	String getLocalIp() {
+		return localIp;
+	}
+
+	long getId() {
+		return id;
+	}
+
+}
@@ -0,0 +1,586 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.security.crypto.SecureHashes.sha256;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.rawMessage;
+import static io.leitstand.security.login.log.service.ReasonCode.AUT0003E_VERIFICATION_REJECTED;
+import static io.leitstand.security.login.log.service.UserLoginAuditLogVerificationData.newUserLoginAuditLogVerificationData;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Base64.getDecoder;
+import static java.util.Base64.getEncoder;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import io.leitstand.commons.ConflictException;
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.login.log.service.UserLoginAuditLogVerificationData;
+
+/**
+ * The <code>UserLoginAuditLogVerifier</code> verifies the login audit log records in the background
+ * and stores the verification result for every record.
+ * <p>
+ * A record is valid, if the record signature is valid and the record refers to its predecessor,
+ * i.e. the record with the next lower ID of the same authentication service.
+ * The verifier walks the records of this node in ID order, starting after the last verified record.
+ * The last verified record is tracked by a checkpoint in the <code>auth.user_login_audit_log_checkpoint</code> table.
+ * The checkpoint also stores a hash rolled over the signatures and verification results of all verified records.
+ * The verification results of a batch and the updated checkpoint are stored in a single transaction.
+ * Queries read the stored verification result and only verify records that have not been verified yet.
+ * <p>
+ * The verifier verifies at most {@value #DEFAULT_BATCH_SIZE} records per transaction
+ * and looks for new records every {@value #DEFAULT_INTERVAL_SECONDS} seconds.
+ * The batch size is configured by the <code>rbms.login.audit.verify.batch.size</code> system property
+ * and the interval by the <code>rbms.login.audit.verify.interval</code> system property in seconds.
+ * <p>
+ * The {@link #verifyAll(String)} method re-verifies all records of an authentication service
+ * and validates the stored verification results and checkpoint.
+ * Only one re-verification runs at a time and a re-verification is rejected 
+ * if the previous re-verification finished less than {@value #DEFAULT_VERIFY_ALL_INTERVAL_SECONDS} seconds ago.
+ * The pause between two re-verifications is configured by the <code>rbms.login.audit.verify.all.interval</code> system property in seconds.
+ */
+@ApplicationScoped
+public class UserLoginAuditLogVerifier {
+
+	private static final Logger LOG = Logger.getLogger(UserLoginAuditLogVerifier.class.getName());
+	static final int DEFAULT_BATCH_SIZE = 1000;
+	static final long DEFAULT_INTERVAL_SECONDS = 60;
+	static final long DEFAULT_VERIFY_ALL_INTERVAL_SECONDS = 60;
+	private static final int HASH_LENGTH = 32;
+	private static final String READ_CHECKPOINT = "SELECT id, rolledhash "+
+												  "FROM auth.user_login_audit_log_checkpoint "+
+												  "WHERE localip=?";
+	private static final String READ_RECORDS = "SELECT id, remoteip, useragent, userid, loginstate, "+
+											   "previous_user_login_audit_log_id, tslogin, signature, valid "+
+											   "FROM auth.user_login_audit_log "+
+											   "WHERE localip=? AND id>? "+
+											   "ORDER BY id "+
+											   "FETCH FIRST ? ROWS ONLY";
+	private static final String STORE_RESULT = "UPDATE auth.user_login_audit_log "+
+											   "SET valid=? "+
+											   "WHERE localip=? AND id=?";
+	private static final String STORE_CHECKPOINT = "INSERT INTO auth.user_login_audit_log_checkpoint (localip, id, rolledhash, tsverified) "+
+												   "VALUES (?,?,?,?) "+
+												   "ON CONFLICT (localip) DO UPDATE SET id=EXCLUDED.id, rolledhash=EXCLUDED.rolledhash, tsverified=EXCLUDED.tsverified";
+
+	/**
+	 * The verification state of a log record chain.
+	 */
+	static final class Chain {
+
+		private final UserLoginAuditLogWriter signatures;
+		private long lastId;
+		private byte[] rolledHash;
+
+		Chain(UserLoginAuditLogWriter signatures, long lastId, byte[] rolledHash){
+			this.signatures = signatures;
+			this.lastId = lastId;
+			this.rolledHash = rolledHash;
+		}
+
+		/**
+		 * Verifies the next record of the chain.
+		 * @param localIp - the IP address of the node that has written the record
+		 * @param id - the record ID
+		 * @param remoteIp - the IP address from which the user attempted to login
+		 * @param userAgent - the used client software
+		 * @param userId - the user that attempted to login
+		 * @param loginState - the result of the login attempt
+		 * @param previous - the ID of the previous record or <code>0</code> if the record is the first record of the chain
+		 * @param loginDate - the login timestamp in milliseconds
+		 * @param signature - the record signature
+		 * @return <code>true</code> if the record is valid, <code>false</code> otherwise.
+		 */
+		boolean verify(String localIp,
+					   long id,
+					   String remoteIp,
+					   String userAgent,
+					   String userId,
+					   String loginState,
+					   long previous,
+					   long loginDate,
+					   byte[] signature) {
+			boolean valid = isValidRecord(signatures,
+										  localIp,
+										  id,
+										  remoteIp,
+										  userAgent,
+										  userId,
+										  loginState,
+										  previous,
+										  lastId,
+										  loginDate,
+										  signature);
+			byte[] message = new byte[rolledHash.length + signature.length + 1];
+			System.arraycopy(rolledHash, 0, message, 0, rolledHash.length);
+			System.arraycopy(signature, 0, message, rolledHash.length, signature.length);
+			message[message.length-1] = (byte) (valid ? 1 : 0);
+			rolledHash = sha256().hash(message);
+			lastId = id;
+			return valid;
+		}
+
+		long getLastId() {
+			return lastId;
+		}
+
+		byte[] getRolledHash() {
+			return rolledHash;
+		}
+
+	}
+
+	/**
+	 * Verifies a log record.
+	 * A record is valid, if the record refers to its predecessor and the record signature is valid.
+	 * The background verification, the re-verification and the queries of records that have not been verified yet
+	 * apply this check.
+	 * @param signatures - the audit log writer to verify the record signature
+	 * @param localIp - the IP address of the node that has written the record
+	 * @param id - the record ID
+	 * @param remoteIp - the IP address from which the user attempted to login
+	 * @param userAgent - the used client software
+	 * @param userId - the user that attempted to login
+	 * @param loginState - the result of the login attempt
+	 * @param previous - the ID of the previous record stored in the record or <code>0</code> if the record is the first record of the chain
+	 * @param predecessor - the ID of the record with the next lower ID of the same node or <code>0</code> if no such record exists
+	 * @param loginDate - the login timestamp in milliseconds
+	 * @param signature - the record signature
+	 * @return <code>true</code> if the record is valid, <code>false</code> otherwise.
+	 */
+	static boolean isValidRecord(UserLoginAuditLogWriter signatures,
+								 String localIp,
+								 long id,
+								 String remoteIp,
+								 String userAgent,
+								 String userId,
+								 String loginState,
+								 long previous,
+								 long predecessor,
+								 long loginDate,
+								 byte[] signature) {
+		return previous == predecessor &&
+			   signatures.isValidSignature(rawMessage(localIp,
+					   								  id,
+					   								  remoteIp,
+					   								  userAgent,
+					   								  userId,
+					   								  loginState,
+					   								  previous,
+					   								  loginDate),
+					   					   signature);
+	}
+
+	/**
+	 * A log record read for verification.
+	 */
+	static final class Row {
+
+		private final long id;
+		private final String remoteIp;
+		private final String userAgent;
+		private final String userId;
+		private final String loginState;
+		private final long previous;
+		private final long loginDate;
+		private final byte[] signature;
+		private final Boolean stored;
+
+		Row(long id,
+			String remoteIp,
+			String userAgent,
+			String userId,
+			String loginState,
+			long previous,
+			long loginDate,
+			byte[] signature,
+			Boolean stored){
+			this.id = id;
+			this.remoteIp = remoteIp;
+			this.userAgent = userAgent;
+			this.userId = userId;
+			this.loginState = loginState;
+			this.previous = previous;
+			this.loginDate = loginDate;
+			this.signature = signature;
+			this.stored = stored;
+		}
+
+		static Row readRow(ResultSet rs) throws SQLException {
+			long id = rs.getLong(1);
+			String remoteIp = rs.getString(2);
+			String userAgent = rs.getString(3);
+			String userId = rs.getString(4);
+			String loginState = rs.getString(5);
+			long previous = rs.getLong(6);
+			long loginDate = rs.getTimestamp(7).getTime();
+			byte[] signature = getDecoder().decode(rs.getString(8));
+			boolean stored = rs.getBoolean(9);
+			return new Row(id,
+						   remoteIp,
+						   userAgent,
+						   userId,
+						   loginState,
+						   previous,
+						   loginDate,
+						   signature,
+						   rs.wasNull() ? null : stored);
+		}
+
+	}
+
+	/**
+	 * The verification result of a record.
+	 */
+	private static final class Result {
+
+		private final long id;
+		private final boolean valid;
+		private final Boolean stored;
+
+		Result(long id, boolean valid, Boolean stored){
+			this.id = id;
+			this.valid = valid;
+			this.stored = stored;
+		}
+
+	}
+
+	@Resource(lookup="java:/jdbc/leitstand")
+	private DataSource ds;
+
+	@Inject
+	@Login
+	private DatabaseService db;
+
+	@Inject
+	private UserLoginAuditLogWriter writer;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private final int batchSize;
+	private final long verifyAllInterval;
+	private final LongAdder verified = new LongAdder();
+	private final LongAdder invalid = new LongAdder();
+	private final ReentrantLock verifyingAll = new ReentrantLock();
+	private volatile long lastVerifyAll;
+	private ScheduledFuture<?> verifying;
+
+	/**
+	 * Creates a <code>UserLoginAuditLogVerifier</code> configured by system properties.
+	 */
+	public UserLoginAuditLogVerifier() {
+		this(parseInt(getSystemProperty("rbms.login.audit.verify.batch.size",
+										String.valueOf(DEFAULT_BATCH_SIZE))),
+			 SECONDS.toMillis(parseLong(getSystemProperty("rbms.login.audit.verify.all.interval",
+					 									  String.valueOf(DEFAULT_VERIFY_ALL_INTERVAL_SECONDS)))));
+	}
+
+	/**
+	 * Creates a <code>UserLoginAuditLogVerifier</code>.
+	 * @param batchSize - the maximum number of records verified in a single transaction
+	 * @param verifyAllInterval - the minimum pause between two re-verifications in milliseconds
+	 */
+	protected UserLoginAuditLogVerifier(int batchSize, long verifyAllInterval) {
+		this.batchSize = batchSize;
+		this.verifyAllInterval = verifyAllInterval;
+	}
+
+	/**
+	 * Creates a <code>UserLoginAuditLogVerifier</code>.
+	 * @param ds - the data source
+	 * @param db - the database service
+	 * @param writer - the audit log writer to verify record signatures
+	 * @param batchSize - the maximum number of records verified in a single transaction
+	 */
+	protected UserLoginAuditLogVerifier(DataSource ds, 
+										DatabaseService db, 
+										UserLoginAuditLogWriter writer, 
+										int batchSize) {
+		this(ds, db, writer, batchSize, SECONDS.toMillis(DEFAULT_VERIFY_ALL_INTERVAL_SECONDS));
+	}
+
+	/**
+	 * Creates a <code>UserLoginAuditLogVerifier</code>.
+	 * @param ds - the data source
+	 * @param db - the database service
+	 * @param writer - the audit log writer to verify record signatures
+	 * @param batchSize - the maximum number of records verified in a single transaction
+	 * @param verifyAllInterval - the minimum pause between two re-verifications in milliseconds
+	 */
+	protected UserLoginAuditLogVerifier(DataSource ds, 
+										DatabaseService db, 
+										UserLoginAuditLogWriter writer, 
+										int batchSize,
+										long verifyAllInterval) {
+		this(batchSize, verifyAllInterval);
+		this.ds = ds;
+		this.db = db;
+		this.writer = writer;
+	}
+
+	/**
+	 * Schedules the periodic verification of new records.
+	 */
+	@PostConstruct
+	protected void scheduleVerification() {
+		long interval = parseLong(getSystemProperty("rbms.login.audit.verify.interval",
+													String.valueOf(DEFAULT_INTERVAL_SECONDS)));
+		verifying = scheduler.scheduleWithFixedDelay(this::verifyNewRecords,
+													 interval,
+													 interval,
+													 SECONDS);
+	}
+
+	/**
+	 * Cancels the periodic verification.
+	 */
+	@PreDestroy
+	protected void cancelVerification() {
+		if(verifying != null) {
+			verifying.cancel(false);
+		}
+	}
+
+	/**
+	 * Verifies all records of this node written after the last checkpoint.
+	 */
+	protected void verifyNewRecords() {
+		String localIp = writer.getLocalIp();
+		try {
+			while(verifyNextBatch(localIp) == batchSize) {
+				// Continue with the next batch.
+			}
+		} catch (SQLException e) {
+			LOG.warning(() -> format("Cannot verify login audit log records of %s: %s",localIp,e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Verifies the next batch of records after the last checkpoint,
+	 * stores the verification results and moves the checkpoint forward.
+	 * @param localIp - the IP address of the node that has written the records
+	 * @return the number of verified records
+	 * @throws SQLException if a database access error occurs
+	 */
+	int verifyNextBatch(String localIp) throws SQLException {
+		try(Connection con = ds.getConnection()){
+			con.setAutoCommit(false);
+			try {
+				Chain chain = readCheckpoint(con, localIp);
+				List<Result> results = verify(localIp, chain, readRows(con, localIp, chain.getLastId()), Long.MAX_VALUE);
+				if(results.isEmpty()) {
+					con.rollback();
+					return 0;
+				}
+				storeResults(con, localIp, results);
+				storeCheckpoint(con, localIp, chain);
+				con.commit();
+				long invalidRecords = results.stream().filter(r -> !r.valid).count();
+				verified.add(results.size());
+				invalid.add(invalidRecords);
+				if(invalidRecords > 0) {
+					LOG.warning(() -> format("Found %d invalid login audit log records of %s up to record %d.",
+											 invalidRecords,
+											 localIp,
+											 chain.getLastId()));
+				}
+				return results.size();
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Re-verifies all records of the given node,
+	 * compares the stored verification results with the recomputed results
+	 * and validates the stored checkpoint.
+	 * The stored verification results and checkpoint remain unchanged.
+	 * @param localIp - the IP address of the node that has written the records
+	 * @return the verification report
+	 * @throws ConflictException if another re-verification is running or the previous re-verification finished too recently
+	 */
+	public UserLoginAuditLogVerificationData verifyAll(String localIp) {
+		if(!verifyingAll.tryLock()) {
+			LOG.fine(() -> format("Reject login audit log verification of %s, because another verification is running.",localIp));
+			throw new ConflictException(AUT0003E_VERIFICATION_REJECTED, localIp);
+		}
+		try {
+			if(lastVerifyAll != 0 && currentTimeMillis() - lastVerifyAll < verifyAllInterval) {
+				LOG.fine(() -> format("Reject login audit log verification of %s, because the previous verification finished too recently.",localIp));
+				throw new ConflictException(AUT0003E_VERIFICATION_REJECTED, localIp);
+			}
+			try {
+				return verifyAllRecords(localIp);
+			} finally {
+				lastVerifyAll = currentTimeMillis();
+			}
+		} finally {
+			verifyingAll.unlock();
+		}
+	}
+
+	private UserLoginAuditLogVerificationData verifyAllRecords(String localIp) {
+		List<Chain> checkpoints = db.executeQuery(prepare(READ_CHECKPOINT, localIp),
+												  rs -> new Chain(writer, rs.getLong(1), getDecoder().decode(rs.getString(2))));
+		Chain checkpoint = checkpoints.isEmpty() ? null : checkpoints.get(0);
+		boolean validCheckpoint = checkpoint == null;
+		Chain chain = new Chain(writer, 0, new byte[HASH_LENGTH]);
+		long records = 0;
+		long invalidRecords = 0;
+		long staleRecords = 0;
+		// Walk up to the checkpoint first, to compare the rolled hashes.
+		long limit = checkpoint != null ? checkpoint.getLastId() : Long.MAX_VALUE;
+		while(true) {
+			List<Row> rows = db.executeQuery(prepare(READ_RECORDS, localIp, chain.getLastId(), batchSize),
+											 Row::readRow);
+			List<Result> results = verify(localIp, chain, rows, limit);
+			if(results.isEmpty() && !rows.isEmpty()) {
+				// The checkpoint record does not exist anymore.
+				limit = Long.MAX_VALUE;
+				results = verify(localIp, chain, rows, limit);
+			}
+			if(results.isEmpty()) {
+				break;
+			}
+			for(Result result : results) {
+				records++;
+				if(!result.valid) {
+					invalidRecords++;
+				}
+				if(result.stored != null && result.stored != result.valid) {
+					staleRecords++;
+				}
+			}
+			if(chain.getLastId() == limit) {
+				validCheckpoint = MessageDigest.isEqual(chain.getRolledHash(), checkpoint.getRolledHash());
+				limit = Long.MAX_VALUE;
+			}
+		}
+		return newUserLoginAuditLogVerificationData()
+			   .withLocalIp(localIp)
+			   .withRecords(records)
+			   .withInvalidRecords(invalidRecords)
+			   .withStaleRecords(staleRecords)
+			   .withCheckpointId(checkpoint != null ? checkpoint.getLastId() : null)
+			   .withValidCheckpoint(validCheckpoint)
+			   .build();
+	}
+
+	private Chain readCheckpoint(Connection con, String localIp) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(READ_CHECKPOINT+" FOR UPDATE")){
+			stmt.setString(1, localIp);
+			try(ResultSet rs = stmt.executeQuery()){
+				if(rs.next()) {
+					return new Chain(writer, rs.getLong(1), getDecoder().decode(rs.getString(2)));
+				}
+				return new Chain(writer, 0, new byte[HASH_LENGTH]);
+			}
+		}
+	}
+
+	private List<Row> readRows(Connection con, String localIp, long lastId) throws SQLException {
+		List<Row> rows = new ArrayList<>(batchSize);
+		try(PreparedStatement stmt = con.prepareStatement(READ_RECORDS)){
+			stmt.setString(1, localIp);
+			stmt.setLong(2, lastId);
+			stmt.setInt(3, batchSize);
+			try(ResultSet rs = stmt.executeQuery()){
+				while(rs.next()) {
+					rows.add(Row.readRow(rs));
+				}
+			}
+		}
+		return rows;
+	}
+
+	private static List<Result> verify(String localIp, Chain chain, List<Row> rows, long maxId) {
+		List<Result> results = new ArrayList<>(rows.size());
+		for(Row row : rows) {
+			if(row.id > maxId) {
+				break;
+			}
+			boolean valid = chain.verify(localIp,
+										 row.id,
+										 row.remoteIp,
+										 row.userAgent,
+										 row.userId,
+										 row.loginState,
+										 row.previous,
+										 row.loginDate,
+										 row.signature);
+			results.add(new Result(row.id, valid, row.stored));
+		}
+		return results;
+	}
+
+	private void storeResults(Connection con, String localIp, List<Result> results) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(STORE_RESULT)){
+			for(Result result : results) {
+				stmt.setBoolean(1, result.valid);
+				stmt.setString(2, localIp);
+				stmt.setLong(3, result.id);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	private void storeCheckpoint(Connection con, String localIp, Chain chain) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(STORE_CHECKPOINT)){
+			stmt.setString(1, localIp);
+			stmt.setLong(2, chain.getLastId());
+			stmt.setString(3, getEncoder().encodeToString(chain.getRolledHash()));
+			stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Returns the number of records verified in the background.
+	 * @return the number of records verified in the background.
+	 */
+	public long getVerifiedCount() {
+		return verified.sum();
+	}
+
+	/**
+	 * Returns the number of invalid records found in the background.
+	 * @return the number of invalid records found in the background.
+	 */
+	public long getInvalidCount() {
+		return invalid.sum();
+	}
+
+}
@@ -0,0 +1,825 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.commons.etc.FileProcessor.properties;
+import static io.leitstand.commons.model.StringUtil.isNonEmptyString;
+import static io.leitstand.commons.model.StringUtil.toUtf8Bytes;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.Math.max;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.getProperty;
+import static java.net.InetAddress.getLocalHost;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.SYNC;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.util.Base64.getDecoder;
+import static java.util.Base64.getEncoder;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.FINER;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.etc.Environment;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.crypto.MasterSecret;
+import io.leitstand.security.crypto.Secret;
+import io.leitstand.security.login.log.service.UserLoginState;
+
+/**
+ * The <code>UserLoginAuditLogWriter</code> writes login audit log records asynchronously in batches.
+ * <p>
+ * The writer is the only component that appends records to the log record chain of this node.
+ * Hence the writer keeps the head of the chain, i.e. the ID of the last written record, in memory
+ * and neither reads nor locks the last record for every login.
+ * A login only adds the login attempt to a lock-free queue.
+ * The writer takes the queued login attempts in order, assigns the chain IDs, signs the records
+ * and inserts a batch of records with a single JDBC batch insert.
+ * The record IDs are taken from blocks of {@value #DEFAULT_ID_BLOCK_SIZE} IDs reserved in the 
+ * <code>auth.user_login_audit_log_seq</code> table.
+ * The block size is configured by the <code>rbms.login.audit.id.block.size</code> system property.
+ * Each record refers to its predecessor, i.e. the record with the next lower ID of this node.
+ * <p>
+ * The queue is flushed when {@value #DEFAULT_BATCH_SIZE} records are pending or
+ * {@value #DEFAULT_FLUSH_INTERVAL_MILLIS} milliseconds have elapsed since the last flush.
+ * The batch size and the flush interval are configured by the <code>rbms.login.audit.batch.size</code>
+ * and <code>rbms.login.audit.flush.interval</code> (in milliseconds) system properties.
+ * A batch that cannot be written is retried with every flush and no further login attempts are signed until the batch is written.
+ * Hence the head of the chain never advances past a record that has not been written.
+ * A batch that failed {@value #DEFAULT_MAX_ATTEMPTS} times is reported as severe error.
+ * The number of attempts is configured by the <code>rbms.login.audit.attempts</code> system property.
+ * All pending records are flushed on shutdown.
+ * Records that cannot be written on shutdown are appended to a spool file.
+ * The spool file is replayed on the next startup. 
+ * Spooled records are inserted one by one in chain order if the spooled records cannot be inserted in a single batch.
+ * The replay stops at the first record that cannot be inserted, such that no record is written without its predecessor.
+ * The remaining records stay in the spool file. 
+ * The replay is retried every {@value #DEFAULT_REPORT_INTERVAL_SECONDS} seconds and login attempts are queued 
+ * until all spooled records have been written.
+ * The spool file is configured by the <code>rbms.login.audit.spool</code> system property.
+ * <p>
+ * The queue holds at most {@value #DEFAULT_MAX_QUEUE_SIZE} login attempts.
+ * Login attempts are dropped if the queue is full, which happens if the database is not available for a longer period.
+ * The number of dropped login attempts is exposed as metric and reported as severe error 
+ * at most once every {@value #DEFAULT_REPORT_INTERVAL_SECONDS} seconds.
+ * The queue capacity is configured by the <code>rbms.login.audit.queue.size</code> system property
+ * and the report interval by the <code>rbms.login.audit.report.interval</code> system property in seconds.
+ * <p>
+ * The secret to sign all log records is read from the <code>login.record.secret</code> property.
+ * This property is either specified as system property or read from the <code>/etc/rbms/login-audit-log.properties</code> file,
+ * with system property having a precedence over the config file.
+ * The property value is Base64 encoded and encrypted with the {@link MasterSecret}.
+ */
+@ApplicationScoped
+public class UserLoginAuditLogWriter {
+
+	private static final Logger LOG = Logger.getLogger(UserLoginAuditLogWriter.class.getName());
+	private static final String AUDIT_PROPERTIES = "audit.properties";
+	private static final String EMS_PROPERTY_LOG_RECORD_SECRET = "login.record.secret";
+	static final int DEFAULT_BATCH_SIZE = 64;
+	static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+	static final int DEFAULT_ID_BLOCK_SIZE = 100;
+	static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+	static final int DEFAULT_MAX_ATTEMPTS = 3;
+	static final long DEFAULT_REPORT_INTERVAL_SECONDS = 60;
+	private static final String UNIQUE_VIOLATION = "23505";
+	private static final String INSERT_RECORD = "INSERT INTO auth.user_login_audit_log "+
+												"(id, localip, remoteip, userid, useragent, loginstate, tslogin, signature, previous_user_login_audit_log_id) "+
+												"VALUES (?,?,?,?,?,?,?,?,?)";
+
+	/**
+	 * A login attempt waiting to be written to the audit log.
+	 */
+	static final class LoginAttempt {
+
+		private final String remoteIp;
+		private final String userAgent;
+		private final UserId userId;
+		private final UserLoginState loginState;
+		private final long loginDate;
+
+		LoginAttempt(String remoteIp, String userAgent, UserId userId, UserLoginState loginState, long loginDate){
+			this.remoteIp = remoteIp;
+			this.userAgent = userAgent;
+			this.userId = userId;
+			this.loginState = loginState;
+			this.loginDate = loginDate;
+		}
+
+	}
+
+	/**
+	 * A signed audit log record ready to be inserted.
+	 */
+	static final class SignedRecord {
+
+		private final long id;
+		private final String localIp;
+		private final String remoteIp;
+		private final String userId;
+		private final String userAgent;
+		private final String loginState;
+		private final long loginDate;
+		private final long previous;
+		private final String signature;
+
+		SignedRecord(long id,
+					 String localIp,
+					 String remoteIp,
+					 String userId,
+					 String userAgent,
+					 String loginState,
+					 long loginDate,
+					 long previous,
+					 String signature){
+			this.id = id;
+			this.localIp = localIp;
+			this.remoteIp = remoteIp;
+			this.userId = userId;
+			this.userAgent = userAgent;
+			this.loginState = loginState;
+			this.loginDate = loginDate;
+			this.previous = previous;
+			this.signature = signature;
+		}
+
+		void bind(PreparedStatement stmt) throws SQLException {
+			stmt.setLong(1, id);
+			stmt.setString(2, localIp);
+			stmt.setString(3, remoteIp);
+			stmt.setString(4, userId);
+			stmt.setString(5, userAgent);
+			stmt.setString(6, loginState);
+			stmt.setTimestamp(7, new Timestamp(loginDate));
+			stmt.setString(8, signature);
+			if(previous > 0) {
+				stmt.setLong(9, previous);
+			} else {
+				stmt.setNull(9, Types.BIGINT);
+			}
+		}
+
+		String toSpoolLine() {
+			return String.join(":",
+							   String.valueOf(id),
+							   encode(localIp),
+							   encode(remoteIp),
+							   encode(userId),
+							   encode(userAgent),
+							   loginState,
+							   String.valueOf(loginDate),
+							   String.valueOf(previous),
+							   signature);
+		}
+
+		static SignedRecord fromSpoolLine(String line) {
+			String[] fields = line.split(":",-1);
+			return new SignedRecord(parseLong(fields[0]),
+									decode(fields[1]),
+									decode(fields[2]),
+									decode(fields[3]),
+									decode(fields[4]),
+									fields[5],
+									parseLong(fields[6]),
+									parseLong(fields[7]),
+									fields[8]);
+		}
+
+		private static String encode(String value) {
+			if(value == null) {
+				return "-";
+			}
+			return getEncoder().encodeToString(value.getBytes(UTF_8));
+		}
+
+		private static String decode(String value) {
+			if("-".equals(value)) {
+				return null;
+			}
+			return new String(getDecoder().decode(value),UTF_8);
+		}
+
+	}
+
+	@Resource(lookup="java:/jdbc/leitstand")
+	private DataSource ds;
+
+	@Inject
+	@Login
+	private DatabaseService db;
+
+	@Inject
+	private Environment env;
+
+	@Inject
+	private MasterSecret master;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private final Queue<LoginAttempt> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queueSize = new AtomicInteger();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder spooled = new LongAdder();
+	private final List<SignedRecord> unwritten = new ArrayList<>();
+	private final int batchSize;
+	private final long flushInterval;
+	private final int idBlockSize;
+	private final int maxQueueSize;
+	private final int maxAttempts;
+	private final long reportInterval;
+	private final Path spool;
+	private int attempts;
+	private long reportedDrops;
+	private long lastDropReport;
+	private boolean replayPending;
+	private long lastReplay;
+	private long spoolHead;
+	private String localIp;
+	private Secret secret;
+	private UserLoginRecordIdAllocator ids;
+	private long lastId;
+	private ScheduledFuture<?> flushing;
+
+	/**
+	 * Creates a <code>UserLoginAuditLogWriter</code> configured by system properties.
+	 */
+	public UserLoginAuditLogWriter() {
+		this(parseInt(getSystemProperty("rbms.login.audit.batch.size",
+										String.valueOf(DEFAULT_BATCH_SIZE))),
+			 parseLong(getSystemProperty("rbms.login.audit.flush.interval",
+					 					 String.valueOf(DEFAULT_FLUSH_INTERVAL_MILLIS))),
+			 parseInt(getSystemProperty("rbms.login.audit.id.block.size",
+					 					String.valueOf(DEFAULT_ID_BLOCK_SIZE))),
+			 parseInt(getSystemProperty("rbms.login.audit.queue.size",
+					 					String.valueOf(DEFAULT_MAX_QUEUE_SIZE))),
+			 parseInt(getSystemProperty("rbms.login.audit.attempts",
+					 					String.valueOf(DEFAULT_MAX_ATTEMPTS))),
+			 SECONDS.toMillis(parseLong(getSystemProperty("rbms.login.audit.report.interval",
+					 									  String.valueOf(DEFAULT_REPORT_INTERVAL_SECONDS)))),
+			 Paths.get(getSystemProperty("rbms.login.audit.spool",
+					 					 Paths.get(getProperty("java.io.tmpdir"),"rbms-login-audit.spool").toString())));
+	}
+
+	/**
+	 * Creates a <code>UserLoginAuditLogWriter</code>.
+	 * @param batchSize - the maximum number of records inserted by a single batch insert
+	 * @param flushInterval - the flush interval in milliseconds
+	 * @param idBlockSize - the number of record IDs reserved at once
+	 * @param maxQueueSize - the maximum number of queued login attempts
+	 * @param maxAttempts - the number of attempts to write a batch before the failure is reported as severe error
+	 * @param reportInterval - the interval in milliseconds to report dropped login attempts and to retry the spool file replay
+	 * @param spool - the spool file for records that cannot be written on shutdown
+	 */
+	protected UserLoginAuditLogWriter(int batchSize, 
+									  long flushInterval, 
+									  int idBlockSize, 
+									  int maxQueueSize, 
+									  int maxAttempts, 
+									  long reportInterval,
+									  Path spool) {
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.idBlockSize = idBlockSize;
+		this.maxQueueSize = maxQueueSize;
+		this.maxAttempts = maxAttempts;
+		this.reportInterval = reportInterval;
+		this.spool = spool;
+	}
+
+	/**
+	 * Creates a <code>UserLoginAuditLogWriter</code> for the given data source, local IP address and secret.
+	 * @param ds - the data source
+	 * @param db - the database service
+	 * @param localIp - the local IP address
+	 * @param secret - the secret to sign the log records
+	 * @param scheduler - the scheduler to run flushes
+	 * @param batchSize - the maximum number of records inserted by a single batch insert
+	 * @param spool - the spool file for records that cannot be written on shutdown
+	 */
+	protected UserLoginAuditLogWriter(DataSource ds,
+									  DatabaseService db,
+									  String localIp,
+									  Secret secret,
+									  ManagedScheduledExecutorService scheduler,
+									  int batchSize,
+									  Path spool) {
+		this(ds, 
+			 db, 
+			 localIp, 
+			 secret, 
+			 scheduler, 
+			 batchSize, 
+			 DEFAULT_MAX_QUEUE_SIZE, 
+			 DEFAULT_MAX_ATTEMPTS, 
+			 SECONDS.toMillis(DEFAULT_REPORT_INTERVAL_SECONDS),
+			 spool);
+	}
+	
+	/**
+	 * Creates a <code>UserLoginAuditLogWriter</code> for the given data source, local IP address and secret.
+	 * @param ds - the data source
+	 * @param db - the database service
+	 * @param localIp - the local IP address
+	 * @param secret - the secret to sign the log records
+	 * @param scheduler - the scheduler to run flushes
+	 * @param batchSize - the maximum number of records inserted by a single batch insert
+	 * @param maxQueueSize - the maximum number of queued login attempts
+	 * @param maxAttempts - the number of attempts to write a batch before the failure is reported as severe error
+	 * @param reportInterval - the interval in milliseconds to report dropped login attempts and to retry the spool file replay
+	 * @param spool - the spool file for records that cannot be written on shutdown
+	 */
+	protected UserLoginAuditLogWriter(DataSource ds,
+									  DatabaseService db,
+									  String localIp,
+									  Secret secret,
+									  ManagedScheduledExecutorService scheduler,
+									  int batchSize,
+									  int maxQueueSize,
+									  int maxAttempts,
+									  long reportInterval,
+									  Path spool) {
+		this(batchSize, 
+			 DEFAULT_FLUSH_INTERVAL_MILLIS, 
+			 DEFAULT_ID_BLOCK_SIZE, 
+			 maxQueueSize, 
+			 maxAttempts, 
+			 reportInterval,
+			 spool);
+		this.ds = ds;
+		this.db = db;
+		this.localIp = localIp;
+		this.secret = secret;
+		this.scheduler = scheduler;
+		this.ids = new UserLoginRecordIdAllocator(ds, localIp, idBlockSize);
+	}
+
+	/**
+	 * Determines the IP address of the host that runs this service,
+	 * reads the secret to sign all created login records,
+	 * replays the spool file,
+	 * reads the head of the log record chain
+	 * and schedules the periodic flush.
+	 */
+	@PostConstruct
+	protected void initChainHead() {
+		readLocalIpAddress();
+		readSecret();
+		ids = new UserLoginRecordIdAllocator(ds, localIp, idBlockSize);
+		replaySpool();
+		readLastId();
+		flushing = scheduler.scheduleWithFixedDelay(this::flush,
+												    flushInterval,
+												    flushInterval,
+												    MILLISECONDS);
+	}
+
+	private void readLocalIpAddress() {
+		try {
+			localIp = getLocalHost().getHostAddress();
+		} catch(IOException e) {
+			// If a JVM is not able to determine the local IP-Address, we have an urgent issue.
+			// This should never happen, but if it happens, we have a trace record and convert the IOException
+			// to an unchecked IOException in order to get notified about the problem!
+			LOG.log(FINE,e,()->"Cannot determine local IP address to due IO error: "+e.getMessage());
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void readSecret() {
+		Properties auditLogConfig = env.loadFile(AUDIT_PROPERTIES,
+												 properties());
+		String secret64 = getProperty(EMS_PROPERTY_LOG_RECORD_SECRET,
+									  auditLogConfig.getProperty(EMS_PROPERTY_LOG_RECORD_SECRET));
+		if(isNonEmptyString(secret64)) {
+			secret = new Secret(master.decrypt(getDecoder().decode(secret64)));
+		} else {
+			secret = new Secret(toUtf8Bytes("lab-environment-login-audit-log"));
+		}
+	}
+
+	/**
+	 * Reads the ID of the last record of the log record chain of this node, 
+	 * which is the predecessor of the next written record.
+	 */
+	protected void readLastId() {
+		List<Long> last = db.executeQuery(prepare("SELECT COALESCE(MAX(id),0) FROM auth.user_login_audit_log WHERE localip=?",
+												  localIp),
+										  rs -> rs.getLong(1));
+		if(!last.isEmpty()) {
+			// The head of the chain never moves backwards.
+			lastId = max(lastId, last.get(0));
+		}
+		LOG.fine(() -> format("Continue login audit log chain of %s after record %d.",localIp, lastId));
+	}
+
+	/**
+	 * Inserts all records from the spool file and removes the spool file afterwards.
+	 * The records are inserted one by one in chain order if they cannot be inserted in a single batch.
+	 * The replay stops at the first record that cannot be inserted and the remaining records stay in the spool file.
+	 * A record that already exists is considered replayed.
+	 * The head of the log record chain only advances to inserted records.
+	 * @return <code>true</code> if all spooled records have been inserted, <code>false</code> otherwise.
+	 */
+	protected synchronized boolean replaySpool() {
+		lastReplay = currentTimeMillis();
+		if(!Files.exists(spool)) {
+			replayPending = false;
+			return true;
+		}
+		try {
+			List<SignedRecord> records = new ArrayList<>();
+			for(String line : Files.readAllLines(spool, UTF_8)) {
+				if(!line.isEmpty()) {
+					records.add(SignedRecord.fromSpoolLine(line));
+				}
+			}
+			int replayed = 0;
+			try {
+				insert(records);
+				replayed = records.size();
+			} catch (SQLException e) {
+				LOG.fine(() -> format("Cannot replay login audit log spool file %s in a single batch: %s",spool,e.getMessage()));
+				LOG.log(FINER, e.getMessage(), e);
+				// Stop at the first record that cannot be inserted, 
+				// because the subsequent records refer to this record.
+				for(SignedRecord record : records) {
+					try {
+						insert(singletonList(record));
+					} catch (SQLException f) {
+						if(!UNIQUE_VIOLATION.equals(f.getSQLState())) {
+							LOG.log(FINER, f.getMessage(), f);
+							break;
+						}
+					}
+					replayed++;
+				}
+			}
+			for(SignedRecord record : records.subList(0, replayed)) {
+				if(localIp.equals(record.localIp)) {
+					lastId = max(lastId, record.id);
+				}
+			}
+			int inserted = replayed;
+			if(inserted == records.size()) {
+				Files.delete(spool);
+				replayPending = false;
+				LOG.info(() -> format("Replayed %d login audit log records from %s.",inserted,spool));
+				return true;
+			}
+			List<String> lines = new ArrayList<>();
+			for(SignedRecord record : records.subList(replayed, records.size())) {
+				lines.add(record.toSpoolLine());
+				spoolHead = max(spoolHead, record.id);
+			}
+			Files.write(spool, lines, UTF_8, TRUNCATE_EXISTING, SYNC);
+			replayPending = true;
+			LOG.severe(() -> format("Cannot replay %d login audit log records from spool file %s. Login attempts are queued until the spool file has been replayed.",
+									lines.size(),
+									spool));
+			return false;
+		} catch (IOException e) {
+			replayPending = true;
+			LOG.severe(() -> format("Cannot replay login audit log spool file %s: %s",spool,e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Flushes all pending records and spools the records that cannot be written.
+	 */
+	@PreDestroy
+	protected synchronized void shutdown() {
+		if(flushing != null) {
+			flushing.cancel(false);
+		}
+		flush();
+		if(unwritten.isEmpty() && queue.isEmpty()) {
+			return;
+		}
+		if(replayPending) {
+			// Continue the chain after the records that remain in the spool file.
+			lastId = max(lastId, spoolHead);
+		}
+		try {
+			signPendingAttempts(Integer.MAX_VALUE);
+		} catch (SQLException e) {
+			LOG.severe(() -> format("Cannot assign IDs to %d login audit log records: %s",queueSize.get(),e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+		spoolUnwrittenRecords();
+	}
+	
+	private void spoolUnwrittenRecords() {
+		try(BufferedWriter writer = Files.newBufferedWriter(spool, UTF_8, CREATE, APPEND, SYNC)){
+			for(SignedRecord record : unwritten) {
+				writer.write(record.toSpoolLine());
+				writer.newLine();
+			}
+			LOG.warning(() -> format("Spooled %d login audit log records to %s.",unwritten.size(),spool));
+			spooled.add(unwritten.size());
+			unwritten.clear();
+		} catch (IOException e) {
+			LOG.severe(() -> format("Cannot spool %d login audit log records to %s: %s",unwritten.size(),spool,e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Adds a login attempt to the audit log.
+	 * The login attempt is written asynchronously.
+	 * The login attempt is dropped if the queue is full.
+	 * @param remoteIp - the IP address from which the user attempted to login
+	 * @param userAgent - the used client software
+	 * @param userId - the user that attempted to login
+	 * @param loginState - the result of the login attempt
+	 */
+	public void append(String remoteIp, String userAgent, UserId userId, UserLoginState loginState) {
+		int size = queueSize.incrementAndGet();
+		if(size > maxQueueSize) {
+			queueSize.decrementAndGet();
+			dropped.increment();
+			return;
+		}
+		queue.offer(new LoginAttempt(remoteIp,
+									 userAgent,
+									 userId,
+									 loginState,
+									 currentTimeMillis()));
+		if(size >= batchSize && flushRequested.compareAndSet(false, true)) {
+			// Flush immediately instead of waiting for the next scheduled flush.
+			scheduler.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Writes all pending records in batches.
+	 * A batch that cannot be written is retried with the next flush
+	 * and no further login attempts are signed until the batch has been written.
+	 * No login attempts are signed as long as the spool file has not been replayed.
+	 */
+	protected synchronized void flush() {
+		flushRequested.set(false);
+		reportDroppedAttempts();
+		if(replayPending) {
+			if(currentTimeMillis() - lastReplay < reportInterval || !replaySpool()) {
+				return;
+			}
+			readLastId();
+		}
+		try {
+			while(true) {
+				if(unwritten.isEmpty()) {
+					signPendingAttempts(batchSize);
+				}
+				if(unwritten.isEmpty()) {
+					return;
+				}
+				insert(unwritten);
+				written.add(unwritten.size());
+				flushes.increment();
+				unwritten.clear();
+				attempts = 0;
+			}
+		} catch (SQLException e) {
+			failures.increment();
+			LOG.log(FINER, e.getMessage(), e);
+			if(unwritten.isEmpty()) {
+				LOG.warning(() -> format("Cannot assign login audit log record IDs: %s",e.getMessage()));
+				return;
+			}
+			int attempt = ++attempts;
+			if(attempt == maxAttempts) {
+				LOG.severe(() -> format("Cannot write %d login audit log records after %d attempts: %s. Login attempts are queued until the records have been written.",
+										unwritten.size(),
+										attempt,
+										e.getMessage()));
+			} else if (attempt < maxAttempts) {
+				LOG.warning(() -> format("Cannot write %d login audit log records: %s",unwritten.size(),e.getMessage()));
+			}
+		}
+	}
+	
+	private void reportDroppedAttempts() {
+		long drops = dropped.sum();
+		long now = currentTimeMillis();
+		if(drops > reportedDrops && now - lastDropReport >= reportInterval) {
+			long since = drops - reportedDrops;
+			LOG.severe(() -> format("Dropped %d login attempts, because the login audit log queue is full.",since));
+			reportedDrops = drops;
+			lastDropReport = now;
+		}
+	}
+
+	private void signPendingAttempts(int limit) throws SQLException {
+		// The writer is the only consumer of the queue. 
+		// Hence the peeked attempt is polled once an ID has been assigned.
+		LoginAttempt attempt = queue.peek();
+		while(attempt != null) {
+			long id = ids.nextId();
+			long previous = lastId;
+			queue.poll();
+			queueSize.decrementAndGet();
+			lastId = id;
+			String userId = attempt.userId != null ? attempt.userId.toString() : null;
+			String raw = rawMessage(localIp,
+									id,
+									attempt.remoteIp,
+									attempt.userAgent,
+									userId,
+									attempt.loginState.name(),
+									previous,
+									attempt.loginDate);
+			unwritten.add(new SignedRecord(id,
+										   localIp,
+										   attempt.remoteIp,
+										   userId,
+										   attempt.userAgent,
+										   attempt.loginState.name(),
+										   attempt.loginDate,
+										   previous,
+										   getEncoder().encodeToString(hmacSha256(secret).sign(raw))));
+			if(unwritten.size() >= limit) {
+				return;
+			}
+			attempt = queue.peek();
+		}
+	}
+
+	private void insert(List<SignedRecord> records) throws SQLException {
+		try(Connection con = ds.getConnection()){
+			// Insert all records of a batch or none of them.
+			con.setAutoCommit(false);
+			try(PreparedStatement stmt = con.prepareStatement(INSERT_RECORD)){
+				for(SignedRecord record : records) {
+					record.bind(stmt);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				con.commit();
+			} catch (SQLException e) {
+				try {
+					con.rollback();
+				} catch (SQLException f) {
+					e.addSuppressed(f);
+				}
+				throw e;
+			} finally {
+				// Return the connection in autocommit mode to the pool.
+				con.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * Creates the raw message of a log record, which is the input to compute the log record signature.
+	 * @param localIp - the IP address of the node that wrote the record
+	 * @param id - the record ID
+	 * @param remoteIp - the IP address from which the user attempted to login
+	 * @param userAgent - the used client software
+	 * @param userId - the user that attempted to login
+	 * @param loginState - the result of the login attempt
+	 * @param previous - the ID of the previous record or <code>0</code> if the record is the first record of the chain
+	 * @param loginDate - the login timestamp in milliseconds
+	 * @return the raw message of the log record
+	 */
+	static String rawMessage(String localIp,
+							 long   id,
+							 String remoteIp,
+							 String userAgent,
+							 String userId,
+							 String loginState,
+							 long   previous,
+							 long   loginDate) {
+		return new StringBuilder(128)
+			   .append(localIp).append(':')
+			   .append(id).append(':')
+			   .append(remoteIp).append(':')
+			   .append(userAgent).append(':')
+			   .append(userId).append(':')
+			   .append(loginState).append(':')
+			   .append(loginDate).append(':')
+			   .append(previous)
+			   .toString();
+	}
+
+	/**
+	 * Verifies the signature of a log record.
+	 * @param rawMessage - the raw message of the log record
+	 * @param signature - the log record signature
+	 * @return <code>true</code> if the signature is valid, <code>false</code> otherwise.
+	 */
+	boolean isValidSignature(String rawMessage, byte[] signature) {
+		return hmacSha256(secret).isValid(rawMessage,signature);
+	}
+
+	/**
+	 * Returns the IP address of this node.
+	 * @return the IP address of this node.
+	 */
+	String getLocalIp() {
+		return localIp;
+	}
+
+	/**
+	 * Returns the number of login attempts waiting to be written.
+	 * @return the number of login attempts waiting to be written.
+	 */
+	public int getQueueSize() {
+		return queueSize.get();
+	}
+
+	/**
+	 * Returns the number of written records.
+	 * @return the number of written records.
+	 */
+	public long getWrittenCount() {
+		return written.sum();
+	}
+
+	/**
+	 * Returns the number of executed batch inserts.
+	 * @return the number of executed batch inserts.
+	 */
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	/**
+	 * Returns the number of reserved record ID blocks.
+	 * @return the number of reserved record ID blocks.
+	 */
+	public long getIdReservationCount() {
+		return ids.getReservationCount();
+	}
+
+	/**
+	 * Returns the number of login attempts dropped because the queue was full.
+	 * @return the number of dropped login attempts.
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the number of records appended to the spool file.
+	 * @return the number of spooled records.
+	 */
+	public long getSpooledCount() {
+		return spooled.sum();
+	}
+
+	/**
+	 * Returns the number of failed batch inserts.
+	 * @return the number of failed batch inserts.
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+}
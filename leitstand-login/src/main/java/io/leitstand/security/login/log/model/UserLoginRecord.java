@@ -5,7 +5,6 @@ package io.leitstand.security.login.log.model;
 
 import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
 import static javax.persistence.EnumType.STRING;
-import static javax.persistence.LockModeType.PESSIMISTIC_WRITE;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
 import java.util.Date;
@@ -18,12 +17,10 @@ import javax.persistence.Id;
 import javax.persistence.IdClass;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
-import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 
-import io.leitstand.commons.model.Query;
 import io.leitstand.security.auth.UserId;
 import io.leitstand.security.auth.jpa.UserIdConverter;
 import io.leitstand.security.login.log.service.UserLoginState;
@@ -34,19 +31,8 @@ import io.leitstand.security.login.log.service.UserLoginState;
 @Entity
 @IdClass(UserLoginRecordPK.class)
 @Table(schema="auth", name="user_login_audit_log")
-@NamedQuery(name="UserLoginRecord.findLastRecord",
-		    query="SELECT r FROM UserLoginRecord r WHERE r.localIp=:localIp AND r.id=(SELECT MAX(r.id) FROM UserLoginRecord r WHERE r.localIp=:localIp) ")
 public class UserLoginRecord {
 	
-	public static Query<UserLoginRecord> fetchLastRecord(String localIp){
-		return em -> em.createNamedQuery("UserLoginRecord.findLastRecord",UserLoginRecord.class)
-					   .setParameter("localIp",localIp)
-					   .setLockMode(PESSIMISTIC_WRITE)
-					   .getSingleResult();
-		
-	}
-	
-
 	@OneToOne
 	@JoinColumns({
 			@JoinColumn(name="previous_user_login_audit_log_id", referencedColumnName="id", nullable=true, updatable=false, insertable=false),
@@ -75,6 +61,9 @@ public class UserLoginRecord {
 	@Enumerated(STRING)
 	private UserLoginState loginState;
 
+	@Column(name="valid", updatable=false, insertable=false)
+	private Boolean valid;
+	
 	@Column(name="tslogin")
 	@Temporal(TIMESTAMP)
 	private Date 	loginDate;
@@ -193,6 +182,16 @@ public class UserLoginRecord {
 		return loginState;
 	}
 
+	/**
+	 * Returns the stored verification result of this record.
+	 * @return <code>true</code> if this record is valid, <code>false</code> if this record is invalid
+	 * and <code>null</code> if this record has not been verified yet.
+	 * @see UserLoginAuditLogVerifier
+	 */
+	public Boolean getValid() {
+		return valid;
+	}
+	
 	/**
 	 * Returns the previous log record of the log record chain.
 	 * @return the previous log record or <code>null</code> if this record is the first chain record.
@@ -0,0 +1,138 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static java.lang.String.format;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Allocates the IDs of the login audit log records of a node.
+ * <p>
+ * The allocator reserves blocks of IDs from the <code>auth.user_login_audit_log_seq</code> table,
+ * which stores the next unreserved ID per node.
+ * The IDs of a reserved block are handed out without any database access.
+ * IDs of a block that are not used before the node is stopped are skipped,
+ * i.e. the IDs of a node are strictly increasing but not necessarily consecutive.
+ * The sequence of a node is initialised with the successor of the greatest existing record ID of that node.
+ */
+public class UserLoginRecordIdAllocator {
+
+	private static final Logger LOG = Logger.getLogger(UserLoginRecordIdAllocator.class.getName());
+	private static final String RESERVE_BLOCK = "UPDATE auth.user_login_audit_log_seq "+
+											    "SET next_id = next_id + ? "+
+											    "WHERE localip = ? "+
+											    "RETURNING next_id";
+	private static final String CREATE_SEQUENCE = "INSERT INTO auth.user_login_audit_log_seq (localip, next_id) "+
+												  "SELECT ?, COALESCE(MAX(id),0)+1 FROM auth.user_login_audit_log WHERE localip = ? "+
+												  "ON CONFLICT (localip) DO NOTHING";
+
+	/**
+	 * A block of reserved IDs.
+	 */
+	private static final class Block {
+
+		private final AtomicLong next;
+		private final long end;
+
+		Block(long start, long end){
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+
+	}
+
+	private final DataSource ds;
+	private final String localIp;
+	private final int blockSize;
+	private final LongAdder reservations = new LongAdder();
+	private volatile Block block = new Block(0,0);
+
+	/**
+	 * Creates a <code>UserLoginRecordIdAllocator</code>.
+	 * @param ds - the data source
+	 * @param localIp - the IP address of this node
+	 * @param blockSize - the number of IDs reserved at once
+	 */
+	public UserLoginRecordIdAllocator(DataSource ds, String localIp, int blockSize) {
+		this.ds = ds;
+		this.localIp = localIp;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Returns the next record ID.
+	 * @return the next record ID.
+	 * @throws SQLException if a new block of IDs cannot be reserved.
+	 */
+	public long nextId() throws SQLException {
+		while(true) {
+			Block current = block;
+			long id = current.next.getAndIncrement();
+			if(id < current.end) {
+				return id;
+			}
+			synchronized(this) {
+				if(block == current) {
+					block = reserveBlock();
+				}
+			}
+		}
+	}
+
+	private Block reserveBlock() throws SQLException {
+		try(Connection con = ds.getConnection()){
+			Long next = reserveBlock(con);
+			if(next == null) {
+				createSequence(con);
+				next = reserveBlock(con);
+			}
+			if(next == null) {
+				throw new SQLException(format("Cannot reserve login audit log record IDs for %s.",localIp));
+			}
+			long end = next;
+			reservations.increment();
+			LOG.fine(() -> format("Reserved login audit log record IDs %d to %d for %s.",end-blockSize,end-1,localIp));
+			return new Block(end-blockSize,end);
+		}
+	}
+
+	private Long reserveBlock(Connection con) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(RESERVE_BLOCK)){
+			stmt.setInt(1, blockSize);
+			stmt.setString(2, localIp);
+			try(ResultSet rs = stmt.executeQuery()){
+				if(rs.next()) {
+					return rs.getLong(1);
+				}
+				return null;
+			}
+		}
+	}
+
+	private void createSequence(Connection con) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(CREATE_SEQUENCE)){
+			stmt.setString(1, localIp);
+			stmt.setString(2, localIp);
+			stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Returns the number of reserved ID blocks.
+	 * @return the number of reserved ID blocks.
+	 */
+	long getReservationCount() {
+		return reservations.sum();
+	}
+
+}
@@ -5,23 +5,43 @@ package io.leitstand.security.login.log.rs;
 
 import static io.leitstand.commons.rs.ResourceUtil.tryParseDate;
 import static io.leitstand.commons.rs.ResourceUtil.tryParseInt;
+import static io.leitstand.security.auth.Role.ADMINISTRATOR;
+import static io.leitstand.security.auth.Role.SYSTEM;
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
 import static io.leitstand.security.login.log.service.UserLoginAuditLogQuery.newUserLoginAuditLogQuery;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.json.bind.JsonbBuilder.create;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
+import javax.annotation.security.RolesAllowed;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.json.bind.Jsonb;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
 
+import io.leitstand.security.auth.search.SearchFilter.MatchMode;
 import io.leitstand.security.login.log.service.UserLoginAuditLogQuery;
 import io.leitstand.security.login.log.service.UserLoginAuditLogRecordData;
 import io.leitstand.security.login.log.service.UserLoginAuditLogService;
+import io.leitstand.security.login.log.service.UserLoginAuditLogVerificationData;
 
 /**
  * The REST resource to query user login audit log records.
@@ -31,9 +51,17 @@ import io.leitstand.security.login.log.service.UserLoginAuditLogService;
 @Produces(APPLICATION_JSON)
 public class UserLoginAuditLogResource {
 
+	static final String APPLICATION_NDJSON = "application/x-ndjson";
+	
+	// Jsonb is thread-safe
+	private static final Jsonb JSONB = create();
+	
 	@Inject
 	private UserLoginAuditLogService service;
 	
+	@Context
+	private Providers providers;
+	
 	/**
 	 * Returns a single user login audit log record.
 	 * @param localIp - the IP address of the service that has written the log record
@@ -52,7 +80,9 @@ public class UserLoginAuditLogResource {
 	 * @param from - the from timestamp in ISO date format. Records must be written after this timestamp, if specified
 	 * @param to - the to timestamp in ISO date format. Records must be written before this timstemp, if specified.
 	 * @param remoteIp - the IP address from which the login was attempted, if specified.
-	 * @param userId - the user ID pattern as POSIX regular expression the user ID in the record must match, if specified
+	 * @param userId - the user ID filter the user ID in the record must match, if specified
+	 * @param match - the match mode of the user ID filter, i.e. <code>prefix</code>, <code>contains</code> or <code>regex</code>. Defaults to <code>contains</code>.
+	 * @param after - the cursor of the last record of the previous page, if specified.
 	 * @param limit - the maximum number of returned items. Defaults to 100 if not specified.
 	 * @return a list of matching user login audit log records or an empty list if no matching records were found.
 	 */
@@ -62,17 +92,146 @@ public class UserLoginAuditLogResource {
 														    @QueryParam("to") String to,
 														    @QueryParam("remote_ip") String remoteIp,
 														    @QueryParam("user_id") String userId,
+														    @QueryParam("match") MatchMode match,
+														    @QueryParam("after") String after,
 														    @QueryParam("limit") @DefaultValue("100") String limit) {
 		
 		UserLoginAuditLogQuery query = newUserLoginAuditLogQuery()
 									   .withFromLoginDate(tryParseDate(from))
 									   .withToLoginDate(tryParseDate(to))
 									   .withRemoteIp(remoteIp)
-									   .withUserIdPattern(userId)
+									   .withUserIdFilter(searchFilter(userId,match))
+									   .withAfter(after)
 									   .withLimit(tryParseInt(limit,100))
 									   .build();
 		
 		return service.findUserLoginAuditLogRecords(query);
 	}
 	
+	/**
+	 * Exports user audit login records as JSON array. All query parameters are optional.
+	 * The records are streamed from the database and not collected in memory.
+	 * @param from - the from timestamp in ISO date format. Records must be written after this timestamp, if specified
+	 * @param to - the to timestamp in ISO date format. Records must be written before this timstemp, if specified.
+	 * @param remoteIp - the IP address from which the login was attempted, if specified.
+	 * @param userId - the user ID filter the user ID in the record must match, if specified
+	 * @param match - the match mode of the user ID filter, i.e. <code>prefix</code>, <code>contains</code> or <code>regex</code>. Defaults to <code>contains</code>.
+	 * @param after - the cursor of the last record of the previous export, if specified.
+	 * @param limit - the maximum number of exported items. All matching records are exported if not specified.
+	 * @return the streamed JSON array of matching user login audit log records.
+	 */
+	@GET
+	@Path("/records/_export")
+	@Produces(APPLICATION_JSON)
+	public StreamingOutput exportLogRecords(@QueryParam("from") String from,
+											@QueryParam("to") String to,
+											@QueryParam("remote_ip") String remoteIp,
+											@QueryParam("user_id") String userId,
+											@QueryParam("match") MatchMode match,
+											@QueryParam("after") String after,
+											@QueryParam("limit") String limit) {
+		UserLoginAuditLogQuery query = exportQuery(from, to, remoteIp, userId, match, after, limit);
+		return out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out,UTF_8));
+			writer.write('[');
+			export(query, writer, ",");
+			writer.write(']');
+			writer.flush();
+		};
+	}
+	
+	/**
+	 * Exports user audit login records as newline delimited JSON, i.e. one record per line. All query parameters are optional.
+	 * The records are streamed from the database and not collected in memory.
+	 * @param from - the from timestamp in ISO date format. Records must be written after this timestamp, if specified
+	 * @param to - the to timestamp in ISO date format. Records must be written before this timstemp, if specified.
+	 * @param remoteIp - the IP address from which the login was attempted, if specified.
+	 * @param userId - the user ID filter the user ID in the record must match, if specified
+	 * @param match - the match mode of the user ID filter, i.e. <code>prefix</code>, <code>contains</code> or <code>regex</code>. Defaults to <code>contains</code>.
+	 * @param after - the cursor of the last record of the previous export, if specified.
+	 * @param limit - the maximum number of exported items. All matching records are exported if not specified.
+	 * @return the streamed matching user login audit log records.
+	 */
+	@GET
+	@Path("/records/_export")
+	@Produces(APPLICATION_NDJSON)
+	public StreamingOutput exportLogRecordsAsNdjson(@QueryParam("from") String from,
+													@QueryParam("to") String to,
+													@QueryParam("remote_ip") String remoteIp,
+													@QueryParam("user_id") String userId,
+													@QueryParam("match") MatchMode match,
+													@QueryParam("after") String after,
+													@QueryParam("limit") String limit) {
+		UserLoginAuditLogQuery query = exportQuery(from, to, remoteIp, userId, match, after, limit);
+		return out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out,UTF_8));
+			export(query, writer, "\n");
+			writer.write('\n');
+			writer.flush();
+		};
+	}
+	
+	private static UserLoginAuditLogQuery exportQuery(String from, 
+													  String to, 
+													  String remoteIp, 
+													  String userId, 
+													  MatchMode match,
+													  String after, 
+													  String limit) {
+		return newUserLoginAuditLogQuery()
+			   .withFromLoginDate(tryParseDate(from))
+			   .withToLoginDate(tryParseDate(to))
+			   .withRemoteIp(remoteIp)
+			   .withUserIdFilter(searchFilter(userId,match))
+			   .withAfter(after)
+			   .withLimit(tryParseInt(limit,Integer.MAX_VALUE))
+			   .build();
+	}
+	
+	private void export(UserLoginAuditLogQuery query, Writer writer, String delimiter) throws IOException {
+		Jsonb jsonb = jsonb();
+		boolean[] first = {true};
+		try {
+			service.processUserLoginAuditLogRecords(query, record -> {
+				try {
+					if(!first[0]) {
+						writer.write(delimiter);
+					}
+					first[0] = false;
+					writer.write(jsonb.toJson(record));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	private Jsonb jsonb() {
+		// Use the JSON-B configuration of the REST API, if available.
+		ContextResolver<Jsonb> resolver = providers.getContextResolver(Jsonb.class, APPLICATION_JSON_TYPE);
+		if(resolver != null) {
+			Jsonb jsonb = resolver.getContext(UserLoginAuditLogRecordData.class);
+			if(jsonb != null) {
+				return jsonb;
+			}
+		}
+		return JSONB;
+	}
+	
+	/**
+	 * Re-verifies all user login audit log records written by an authentication service.
+	 * Only one re-verification runs at a time. 
+	 * A request is rejected with <code>409 Conflict</code> if another re-verification is running or has just finished.
+	 * @param localIp - the IP address of the service that has written the log records
+	 * @return the verification report
+	 */
+	@POST
+	@Path("/records/{localip}/_verify")
+	@RolesAllowed({ADMINISTRATOR,SYSTEM})
+	public UserLoginAuditLogVerificationData verifyLogRecords(@PathParam("localip") String localIp) {
+		return service.verifyUserLoginAuditLog(localIp);
+	}
+	
 }
@@ -15,7 +15,13 @@ import io.leitstand.commons.Reason;
 public enum ReasonCode implements Reason{
 	
 	/** Login audit log record not found.*/
-	AUT0001E_RECORD_NOT_FOUND;
+	AUT0001E_RECORD_NOT_FOUND,
+	
+	/** Invalid login audit log query cursor.*/
+	AUT0002E_INVALID_CURSOR,
+	
+	/** Login audit log verification rejected, because another verification is running or has just finished.*/
+	AUT0003E_VERIFICATION_REJECTED;
 	
 	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("AuditLogMessages");
 	
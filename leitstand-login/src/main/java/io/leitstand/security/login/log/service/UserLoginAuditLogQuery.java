@@ -8,6 +8,7 @@ import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
 import java.util.Date;
 
 import io.leitstand.commons.model.ValueObject;
+import io.leitstand.security.auth.search.SearchFilter;
 
 /**
  * An immutable query for login audit log records.
@@ -32,13 +33,13 @@ public class UserLoginAuditLogQuery extends ValueObject{
 		private UserLoginAuditLogQuery query = new UserLoginAuditLogQuery();
 		
 		/**
-		 * Sets the optional user ID pattern the record's user ID must match.
-		 * @param userIdPattern
+		 * Sets the optional user ID filter the record's user ID must match.
+		 * @param userIdFilter - the user ID filter
 		 * @return a reference to this builder to continue with object creation
 		 */
-		public Builder withUserIdPattern(String userIdPattern) {
+		public Builder withUserIdFilter(SearchFilter userIdFilter) {
 			assertNotInvalidated(getClass(), query);
-			query.userIdPattern = userIdPattern;
+			query.userIdFilter = userIdFilter;
 			return this;
 		}
 		
@@ -79,6 +80,19 @@ public class UserLoginAuditLogQuery extends ValueObject{
 			return this;
 		}
 		
+		/**
+		 * Sets the optional cursor of the last record of the previous page.
+		 * The query returns the records following the record of the cursor.
+		 * @param cursor - the opaque cursor of the last record of the previous page
+		 * @return a reference to this builder to continue object creation
+		 * @see UserLoginAuditLogRecordData#getCursor()
+		 */
+		public Builder withAfter(String cursor) {
+			assertNotInvalidated(getClass(), query);
+			query.after = cursor;
+			return this;
+		}
+		
 		/**
 		 * Sets the optional limit of records returned by this query.
 		 * The default limit is {@value #DEFAULT_LIMIT} records.
@@ -112,9 +126,10 @@ public class UserLoginAuditLogQuery extends ValueObject{
 	
 	private Date fromLoginDate;
 	private Date toLoginDate;
-	private String userIdPattern;
+	private SearchFilter userIdFilter;
 	private String remoteIp;
 	private int limit = Builder.DEFAULT_LIMIT;
+	private String after;
 	
 	/**
 	 * Returns the remote IP address from which the login attempt must have been made or
@@ -147,13 +162,23 @@ public class UserLoginAuditLogQuery extends ValueObject{
 	}
 	
 	/**
-	 * Returns the user ID pattern the log record's user ID must match or
-	 * <code>null</code> if no such pattern was specified.
-	 * @return the user ID pattern the log record's user ID must match or
-	 * <code>null</code> if no such pattern was specified.
+	 * Returns the user ID filter the log record's user ID must match or
+	 * <code>null</code> if no such filter was specified.
+	 * @return the user ID filter the log record's user ID must match or
+	 * <code>null</code> if no such filter was specified.
+	 */
+	public SearchFilter getUserIdFilter() {
+		return userIdFilter;
+	}
+	
+	/**
+	 * Returns the cursor of the last record of the previous page or 
+	 * <code>null</code> if the first page is requested.
+	 * @return the cursor of the last record of the previous page or 
+	 * <code>null</code> if the first page is requested.
 	 */
-	public String getUserIdPattern() {
-		return userIdPattern;
+	public String getAfter() {
+		return after;
 	}
 	
 	/**
@@ -115,6 +115,17 @@ public class UserLoginAuditLogRecordData extends ValueObject {
 			return this;
 		}
 		
+		/**
+		 * Sets the opaque cursor to continue a query after this record.
+		 * @param cursor - the opaque cursor
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withCursor(String cursor) {
+			assertNotInvalidated(getClass(), instance);
+			instance.cursor = cursor;
+			return this;
+		}
+		
 		/**
 		 * Sets the timestamp of the login.
 		 * @param loginDate - the login timestamp
@@ -152,6 +163,7 @@ public class UserLoginAuditLogRecordData extends ValueObject {
 	private Date loginDate;
 	private boolean valid;
 	private String userAgent;
+	private String cursor;
 	
 	/**
 	 * Returns the login audit log record sequence number.
@@ -209,6 +221,16 @@ public class UserLoginAuditLogRecordData extends ValueObject {
 		return userAgent;
 	}
 	
+	/**
+	 * Returns the opaque cursor to continue a query after this record.
+	 * Records are ordered by descending login timestamp.
+	 * @return the opaque cursor to continue a query after this record.
+	 * @see UserLoginAuditLogQuery#getAfter()
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+	
 	/**
 	 * Returns whether this login audit log record is valid.
 	 * A record is valid, if the signature is valid and the referenced previous log record exists.
@@ -4,6 +4,7 @@
 package io.leitstand.security.login.log.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import io.leitstand.security.auth.UserId;
 
@@ -42,9 +43,27 @@ public interface UserLoginAuditLogService {
 	
 	/**
 	 * Executes a query for login audit log records. 
+	 * Records are ordered by descending login timestamp.
 	 * @param query - the login audit log query 
 	 * @return a list of matching records or an empty list if not records were found
 	 */
 	List<UserLoginAuditLogRecordData> findUserLoginAuditLogRecords(UserLoginAuditLogQuery query);
 	
+	/**
+	 * Executes a query for login audit log records and passes all matching records to the given consumer.
+	 * Records are ordered by descending login timestamp.
+	 * The records are fetched from the database in chunks and are not collected in memory.
+	 * @param query - the login audit log query
+	 * @param consumer - the consumer of the matching records
+	 */
+	void processUserLoginAuditLogRecords(UserLoginAuditLogQuery query, 
+										 Consumer<UserLoginAuditLogRecordData> consumer);
+	
+	/**
+	 * Re-verifies all login audit log records written by an authentication service.
+	 * @param localIp - the IP address of the authentication service that has written the records
+	 * @return the verification report
+	 */
+	UserLoginAuditLogVerificationData verifyUserLoginAuditLog(String localIp);
+	
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.service;
+
+import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+
+import io.leitstand.commons.model.ValueObject;
+
+/**
+ * An immutable report of a full login audit log verification.
+ * <p>
+ * The report covers all records of the log record chain of a single authentication service.
+ */
+public class UserLoginAuditLogVerificationData extends ValueObject {
+
+	/**
+	 * Returns a builder to create an immutable login audit log verification report.
+	 * @return a builder to create an immutable login audit log verification report.
+	 */
+	public static Builder newUserLoginAuditLogVerificationData() {
+		return new Builder();
+	}
+
+	/**
+	 * The builder to create an immutable login audit log verification report.
+	 * The builder gets invalidated when calling the {@link #build()} and
+	 * must not be used after the <code>build()</code> method invocation anymore.
+	 */
+	public static class Builder {
+
+		private UserLoginAuditLogVerificationData instance = new UserLoginAuditLogVerificationData();
+
+		/**
+		 * Sets the IP address of the authentication service that has written the verified records.
+		 * @param localIp - the authentication service IP address
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withLocalIp(String localIp) {
+			assertNotInvalidated(getClass(), instance);
+			instance.localIp = localIp;
+			return this;
+		}
+
+		/**
+		 * Sets the number of verified records.
+		 * @param records - the number of verified records
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withRecords(long records) {
+			assertNotInvalidated(getClass(), instance);
+			instance.records = records;
+			return this;
+		}
+
+		/**
+		 * Sets the number of invalid records.
+		 * @param invalidRecords - the number of invalid records
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withInvalidRecords(long invalidRecords) {
+			assertNotInvalidated(getClass(), instance);
+			instance.invalidRecords = invalidRecords;
+			return this;
+		}
+
+		/**
+		 * Sets the number of records whose stored verification result differs from the recomputed result.
+		 * @param staleRecords - the number of records with a stale verification result
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withStaleRecords(long staleRecords) {
+			assertNotInvalidated(getClass(), instance);
+			instance.staleRecords = staleRecords;
+			return this;
+		}
+
+		/**
+		 * Sets the ID of the last record covered by the stored verification checkpoint.
+		 * @param checkpointId - the ID of the last record covered by the checkpoint
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withCheckpointId(Long checkpointId) {
+			assertNotInvalidated(getClass(), instance);
+			instance.checkpointId = checkpointId;
+			return this;
+		}
+
+		/**
+		 * Sets whether the stored verification checkpoint matches the recomputed checkpoint.
+		 * @param validCheckpoint - <code>true</code> if the checkpoint matches, <code>false</code> otherwise.
+		 * @return a reference to this builder to continue with object creation
+		 */
+		public Builder withValidCheckpoint(boolean validCheckpoint) {
+			assertNotInvalidated(getClass(), instance);
+			instance.validCheckpoint = validCheckpoint;
+			return this;
+		}
+
+		/**
+		 * Returns an immutable verification report and invalidates this builder.
+		 * Subsequent invocations of any method of this builder fail and raise an exception.
+		 * Hence the builder must not be used after calling the <code>build()</code> method anymore.
+		 * @return the immutable verification report
+		 */
+		public UserLoginAuditLogVerificationData build() {
+			try {
+				assertNotInvalidated(getClass(), instance);
+				return instance;
+			} finally {
+				this.instance = null;
+			}
+		}
+
+	}
+
+	private String localIp;
+	private long records;
+	private long invalidRecords;
+	private long staleRecords;
+	private Long checkpointId;
+	private boolean validCheckpoint;
+
+	/**
+	 * Returns the IP address of the authentication service that has written the verified records.
+	 * @return the IP address of the authentication service.
+	 */
+	public String getLocalIp() {
+		return localIp;
+	}
+
+	/**
+	 * Returns the number of verified records.
+	 * @return the number of verified records.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the number of invalid records.
+	 * A record is invalid, if the signature is invalid or the record does not refer to its predecessor.
+	 * @return the number of invalid records.
+	 */
+	public long getInvalidRecords() {
+		return invalidRecords;
+	}
+
+	/**
+	 * Returns the number of records whose stored verification result differs from the recomputed result.
+	 * @return the number of records with a stale verification result.
+	 */
+	public long getStaleRecords() {
+		return staleRecords;
+	}
+
+	/**
+	 * Returns the ID of the last record covered by the stored verification checkpoint.
+	 * @return the ID of the last record covered by the checkpoint or <code>null</code> if no checkpoint exists.
+	 */
+	public Long getCheckpointId() {
+		return checkpointId;
+	}
+
+	/**
+	 * Returns whether the stored verification checkpoint matches the recomputed checkpoint.
+	 * A mismatch indicates that records covered by the checkpoint were modified, removed or inserted afterwards.
+	 * @return <code>true</code> if the checkpoint matches or no checkpoint exists, <code>false</code> otherwise.
+	 */
+	public boolean isValidCheckpoint() {
+		return validCheckpoint;
+	}
+
+}
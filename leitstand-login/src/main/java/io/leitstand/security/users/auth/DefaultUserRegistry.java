@@ -6,6 +6,9 @@ package io.leitstand.security.users.auth;
 import static io.leitstand.security.auth.user.UserInfo.newUserInfo;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
 
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ContextNotActiveException;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.security.enterprise.credential.Password;
@@ -14,38 +17,85 @@ import javax.security.enterprise.identitystore.CredentialValidationResult;
 
 import io.leitstand.commons.EntityNotFoundException;
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.LoginContext;
 import io.leitstand.security.auth.user.UserInfo;
 import io.leitstand.security.auth.user.UserRegistry;
 import io.leitstand.security.users.service.UserService;
 import io.leitstand.security.users.service.UserSettings;
 
+/**
+ * The <code>DefaultUserRegistry</code> reads users from the built-in identity management.
+ * <p>
+ * The user info of a successfully authenticated user is recorded in the {@link LoginContext}.
+ * Subsequent lookups of the same user in the login request are served from the login context
+ * and do not load the user again.
+ * All other lookups are served by the {@link UserInfoCache}.
+ */
 @Dependent
 public class DefaultUserRegistry implements UserRegistry{
 
+	private static final Logger LOG = Logger.getLogger(DefaultUserRegistry.class.getName());
+	
 	@Inject
 	private UserService users;
 	
+	@Inject
+	private LoginContext login;
+	
+	@Inject
+	private UserInfoCache cache;
+	
 	@Override
 	public UserInfo getUserInfo(UserId userId) {
+		UserInfo recorded = recordedUserInfo(userId);
+		if(recorded != null) {
+			return recorded;
+		}
+		return cache.getUserInfo(userId, this::loadUserInfo);
+	}
+	
+	private UserInfo loadUserInfo(UserId userId) {
 		try {
-			UserSettings user = users.getUser(userId);
-			return newUserInfo()
-				   .withUserId(user.getUserId())
-				   .withRoles(user.getRoles())
-				   .withAccessTokenTtl(user.getAccessTokenTtl(), 
-						   		   	   user.getAccessTokenTtlUnit())
-				   .build();
+			return userInfoOf(users.getUser(userId));
 		} catch(EntityNotFoundException e) {
 			return null;
 		}
 	}
+	
+	private static UserInfo userInfoOf(UserSettings user) {
+		return newUserInfo()
+			   .withUserId(user.getUserId())
+			   .withRoles(user.getRoles())
+			   .withAccessTokenTtl(user.getAccessTokenTtl(), 
+					   		   	   user.getAccessTokenTtlUnit())
+			   .build();
+	}
+	
+	private UserInfo recordedUserInfo(UserId userId) {
+		try {
+			return login.getUserInfo(userId);
+		} catch (ContextNotActiveException e) {
+			LOG.finer(() -> "No active request. Load user "+userId);
+			return null;
+		}
+	}
+	
+	private void recordUserInfo(UserInfo user) {
+		try {
+			login.setUserInfo(user);
+		} catch (ContextNotActiveException e) {
+			LOG.finer(() -> "No active request. Login context not updated for user "+user.getUserId());
+		}
+	}
 
 	@Override
 	public CredentialValidationResult validateCredentials(UsernamePasswordCredential credentials) {
 		UserId   userId = UserId.valueOf(credentials.getCaller());
 		Password passwd = credentials.getPassword(); 
-		if(users.isValidPassword(userId,passwd)){
-			UserInfo user = getUserInfo(userId);
+		UserSettings settings = users.authenticate(userId, passwd);
+		if(settings != null){
+			UserInfo user = userInfoOf(settings);
+			recordUserInfo(user);
 			return new CredentialValidationResult(userId.toString(),user.getRoles());
 		}
 		return INVALID_RESULT;
@@ -0,0 +1,417 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.auth;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.cache.SegmentedLruCache;
+import io.leitstand.security.auth.user.UserEvent;
+import io.leitstand.security.auth.user.UserInfo;
+import io.leitstand.security.users.model.IdentityManagement;
+
+/**
+ * The <code>UserInfoCache</code> is a size-bounded read-through cache of {@link UserInfo} objects.
+ * <p>
+ * A cached user info is removed as soon as a {@link UserEvent} reports that the user account was updated or removed.
+ * A user info loaded while the user was modified is not cached,
+ * because the loaded user info might reflect the state before the modification.
+ * Unknown users are not cached.
+ * <p>
+ * Modifications on other nodes are read from the <code>auth.userdata_event</code> change log,
+ * if change log polling is enabled.
+ * The polling interval is configured by the <code>rbms.user.event.interval</code> system property in seconds.
+ * Polling is disabled by default, which is sufficient for a single node installation.
+ * In a cluster, cached user info is otherwise only refreshed when the entry expires.
+ * A gap in the sequence numbers is either caused by a change that has not been committed yet or by a change that will never be committed.
+ * Hence the poller removes the users of the changes after the gap, but continues to poll after the last change before the gap,
+ * such that the missing change is applied once it has been committed.
+ * All cached users are removed and the gap is skipped if the gap persists for longer than the commit timeout.
+ * The commit timeout is configured by the <code>rbms.user.event.commit.timeout</code> system property in seconds
+ * and defaults to {@value #DEFAULT_COMMIT_TIMEOUT_SECONDS} seconds.
+ * <p>
+ * Every node periodically deletes change log records that are older than the retention period. 
+ * The most recent record is always retained to preserve the change log position.
+ * The retention period is configured by the <code>rbms.user.event.retention</code> system property in seconds
+ * and defaults to {@value #DEFAULT_EVENT_RETENTION_SECONDS} seconds.
+ * The retention period must exceed the polling interval.
+ * <p>
+ * The maximum number of cached users is configured by the <code>rbms.user.cache.size</code> system property
+ * and defaults to {@value #DEFAULT_MAX_SIZE} entries.
+ * An entry expires after the time configured by the <code>rbms.user.cache.ttl</code> system property in seconds, 
+ * which defaults to {@value #DEFAULT_TTL_SECONDS} seconds, regardless of how often the entry is accessed.
+ * Hence modifications on other nodes are visible after the expiry time at the latest, even if polling is disabled.
+ */
+@ApplicationScoped
+public class UserInfoCache {
+
+	private static final Logger LOG = Logger.getLogger(UserInfoCache.class.getName());
+	static final int DEFAULT_MAX_SIZE = 1024;
+	static final long DEFAULT_TTL_SECONDS = 300;
+	static final long DEFAULT_EVENT_RETENTION_SECONDS = 3600;
+	static final long DEFAULT_COMMIT_TIMEOUT_SECONDS = 300;
+
+	/**
+	 * A user account change read from the change log.
+	 */
+	static final class UserChange {
+
+		private final long seq;
+		private final UserId userId;
+
+		UserChange(long seq, UserId userId){
+			this.seq = seq;
+			this.userId = userId;
+		}
+
+	}
+
+	/**
+	 * A cached user info along with its expiry time.
+	 */
+	private static final class CachedUser {
+		
+		private final UserInfo user;
+		private final long expiry;
+		
+		CachedUser(UserInfo user, long expiry){
+			this.user = user;
+			this.expiry = expiry;
+		}
+		
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+		
+	}
+
+	@Inject
+	@IdentityManagement
+	private DatabaseService db;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private final SegmentedLruCache<UserId,CachedUser> users;
+	private final AtomicLong invalidations = new AtomicLong();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadTime = new LongAdder();
+	private final long ttl;
+	private final LongSupplier clock;
+	private long retention = SECONDS.toMillis(DEFAULT_EVENT_RETENTION_SECONDS);
+	private long commitTimeout = SECONDS.toMillis(DEFAULT_COMMIT_TIMEOUT_SECONDS);
+	private volatile long lastEvent;
+	private long gapSince;
+	private ScheduledFuture<?> polling;
+	private ScheduledFuture<?> purge;
+
+	/**
+	 * Creates a <code>UserInfoCache</code> configured by system properties.
+	 */
+	public UserInfoCache() {
+		this(parseInt(getSystemProperty("rbms.user.cache.size",
+										String.valueOf(DEFAULT_MAX_SIZE))),
+			 parseLong(getSystemProperty("rbms.user.cache.ttl",
+					 					 String.valueOf(DEFAULT_TTL_SECONDS))),
+			 SECONDS);
+	}
+
+	/**
+	 * Creates a <code>UserInfoCache</code>.
+	 * @param maxSize - the maximum number of cached users
+	 * @param ttl - the expiry time of an entry
+	 * @param unit - the expiry time unit
+	 */
+	protected UserInfoCache(int maxSize, long ttl, TimeUnit unit) {
+		this(maxSize, ttl, unit, System::currentTimeMillis);
+	}
+
+	/**
+	 * Creates a <code>UserInfoCache</code> with the given clock.
+	 * @param maxSize - the maximum number of cached users
+	 * @param ttl - the expiry time of an entry
+	 * @param unit - the expiry time unit
+	 * @param clock - the clock in milliseconds
+	 */
+	protected UserInfoCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock) {
+		this.users = new SegmentedLruCache<>(maxSize, ttl, unit);
+		this.ttl = unit.toMillis(ttl);
+		this.clock = clock;
+	}
+
+	/**
+	 * Creates a <code>UserInfoCache</code> that polls the given database for changes.
+	 * @param maxSize - the maximum number of cached users
+	 * @param ttl - the expiry time of an entry
+	 * @param unit - the expiry time unit
+	 * @param db - the identity management database
+	 */
+	protected UserInfoCache(int maxSize, long ttl, TimeUnit unit, DatabaseService db) {
+		this(maxSize, ttl, unit);
+		this.db = db;
+	}
+
+	/**
+	 * Creates a <code>UserInfoCache</code> that polls the given database for changes and uses the given clock.
+	 * @param maxSize - the maximum number of cached users
+	 * @param ttl - the expiry time of an entry
+	 * @param unit - the expiry time unit
+	 * @param db - the identity management database
+	 * @param clock - the clock in milliseconds
+	 */
+	protected UserInfoCache(int maxSize, long ttl, TimeUnit unit, DatabaseService db, LongSupplier clock) {
+		this(maxSize, ttl, unit, clock);
+		this.db = db;
+	}
+
+	/**
+	 * Schedules the periodic removal of expired change log records 
+	 * and the change log polling, if polling is enabled.
+	 */
+	@PostConstruct
+	protected void schedulePolling() {
+		long retentionSeconds = parseLong(getSystemProperty("rbms.user.event.retention",
+															String.valueOf(DEFAULT_EVENT_RETENTION_SECONDS)));
+		retention = SECONDS.toMillis(retentionSeconds);
+		purge = scheduler.scheduleWithFixedDelay(this::purgeExpiredEvents,
+												 retentionSeconds,
+												 retentionSeconds,
+												 SECONDS);
+		long interval = parseLong(getSystemProperty("rbms.user.event.interval","0"));
+		if(interval <= 0) {
+			LOG.fine("User change log polling disabled.");
+			return;
+		}
+		commitTimeout = SECONDS.toMillis(parseLong(getSystemProperty("rbms.user.event.commit.timeout",
+																	 String.valueOf(DEFAULT_COMMIT_TIMEOUT_SECONDS))));
+		lastEvent = readLastEvent();
+		polling = scheduler.scheduleWithFixedDelay(this::pollEvents,
+												   interval,
+												   interval,
+												   SECONDS);
+	}
+
+	/**
+	 * Cancels the change log polling and the removal of expired change log records.
+	 */
+	@PreDestroy
+	protected void cancelPolling() {
+		if(polling != null) {
+			polling.cancel(false);
+		}
+		if(purge != null) {
+			purge.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns the cached user info or loads the user info by the given loader if the user info is not cached.
+	 * @param userId - the user ID
+	 * @param loader - the loader to load the user info
+	 * @return the user info or <code>null</code> if the user does not exist.
+	 */
+	public UserInfo getUserInfo(UserId userId, Function<UserId,UserInfo> loader) {
+		CachedUser cached = users.get(userId);
+		if(cached != null) {
+			if(!cached.isExpired(clock.getAsLong())) {
+				return cached.user;
+			}
+			users.remove(userId);
+		}
+		long generation = invalidations.get();
+		long started = nanoTime();
+		UserInfo user = loader.apply(userId);
+		loadTime.add(nanoTime() - started);
+		loads.increment();
+		if(user == null) {
+			return null;
+		}
+		if(generation != invalidations.get()) {
+			// User modified while loading the user info.
+			return user;
+		}
+		return users.putIfAbsent(userId, new CachedUser(user, clock.getAsLong() + ttl)).user;
+	}
+
+	/**
+	 * Removes the cached user info of the given user.
+	 * @param userId - the user ID
+	 */
+	public void invalidate(UserId userId) {
+		invalidations.incrementAndGet();
+		users.remove(userId);
+		LOG.fine(() -> format("Removed user %s from user info cache.", userId));
+	}
+
+	/**
+	 * Removes all cached user infos.
+	 */
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		int removed = users.removeIf(user -> true);
+		LOG.fine(() -> format("Removed %d users from user info cache.", removed));
+	}
+
+	/**
+	 * Removes the cached user info of a modified user account,
+	 * after the modification has been committed.
+	 * @param event - the user event
+	 */
+	void onUserEvent(@Observes(during=AFTER_SUCCESS) UserEvent event) {
+		invalidate(event.getUserId());
+	}
+
+	private long readLastEvent() {
+		List<Long> last = db.executeQuery(prepare("SELECT COALESCE(MAX(seq),0) FROM auth.userdata_event"),
+										  rs -> rs.getLong(1));
+		return last.isEmpty() ? 0L : last.get(0);
+	}
+
+	/**
+	 * Reads all user account changes from the <code>auth.userdata_event</code> change log
+	 * that have not been processed yet and removes the modified users from the cache.
+	 * The position is not advanced past a gap in the sequence numbers, unless the gap persists for longer than the commit timeout.
+	 * All users are removed from the cache if a gap is skipped.
+	 */
+	protected void pollEvents() {
+		try {
+			long from = lastEvent;
+			List<UserChange> changes = db.executeQuery(prepare("SELECT seq, userid FROM auth.userdata_event WHERE seq > ? ORDER BY seq",
+															   from),
+													   rs -> new UserChange(rs.getLong(1),
+															   				UserId.valueOf(rs.getString(2))));
+			if(changes.isEmpty()) {
+				gapSince = 0;
+				return;
+			}
+			long position = lastContiguousEvent(from, changes);
+			long last = changes.get(changes.size()-1).seq;
+			if(position == last) {
+				gapSince = 0;
+			} else {
+				long now = clock.getAsLong();
+				if(gapSince == 0 || position > from) {
+					gapSince = now;
+				}
+				if(now - gapSince >= commitTimeout) {
+					LOG.fine(() -> format("User change log has a gap after sequence number %d for more than %d seconds. Remove all cached users.", 
+										  position, 
+										  MILLISECONDS.toSeconds(commitTimeout)));
+					invalidateAll();
+					lastEvent = last;
+					gapSince = 0;
+					return;
+				}
+				LOG.fine(() -> format("User change log has a gap after sequence number %d. Wait for the missing changes to be committed.", position));
+			}
+			for(UserChange change : changes) {
+				invalidate(change.userId);
+			}
+			lastEvent = position;
+			LOG.fine(() -> format("Applied %d user changes.", changes.size()));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Cannot read user changes: %s", e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Deletes all change log records older than the retention period, except for the most recent record.
+	 */
+	protected void purgeExpiredEvents() {
+		try {
+			int purged = db.executeUpdate(prepare("DELETE FROM auth.userdata_event WHERE tsevent < ? AND seq < (SELECT MAX(seq) FROM auth.userdata_event)",
+												  new Timestamp(clock.getAsLong() - retention)));
+			LOG.fine(() -> format("Removed %d expired user change log records.", purged));
+		} catch (Exception e) {
+			LOG.warning(() -> format("Cannot remove expired user change log records: %s", e.getMessage()));
+			LOG.log(FINER, e.getMessage(), e);
+		}
+	}
+
+	private static long lastContiguousEvent(long from, List<UserChange> changes) {
+		long position = from;
+		for(UserChange change : changes) {
+			if(change.seq != position + 1) {
+				break;
+			}
+			position = change.seq;
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the number of cached users.
+	 * @return the number of cached users.
+	 */
+	public int getSize() {
+		return users.getSize();
+	}
+
+	/**
+	 * Returns the ratio of lookups served from the cache.
+	 * @return the cache hit rate between 0 and 1.
+	 */
+	public double getHitRate() {
+		return users.getHitRate();
+	}
+
+	/**
+	 * Returns the number of loaded users.
+	 * @return the number of loaded users.
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	/**
+	 * Returns the average time to load a user in microseconds.
+	 * @return the average time to load a user in microseconds or <code>0</code> if no user was loaded yet.
+	 */
+	public long getAverageLoadTime() {
+		long count = loads.sum();
+		if(count == 0) {
+			return 0;
+		}
+		return NANOSECONDS.toMicros(loadTime.sum() / count);
+	}
+
+	/**
+	 * Returns the number of evicted users.
+	 * @return the number of evicted users.
+	 */
+	public long getEvictionCount() {
+		return users.getEvictionCount();
+	}
+
+}
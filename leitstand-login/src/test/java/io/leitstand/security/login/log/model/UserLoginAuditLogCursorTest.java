@@ -0,0 +1,45 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.security.login.log.model.UserLoginAuditLogCursor.cursor;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogCursor.parse;
+import static io.leitstand.security.login.log.service.ReasonCode.AUT0002E_INVALID_CURSOR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+import io.leitstand.commons.UnprocessableEntityException;
+
+public class UserLoginAuditLogCursorTest {
+
+	@Test
+	public void parse_cursor_of_ipv4_node() {
+		UserLoginAuditLogCursor cursor = parse(cursor(1000L, "10.0.0.1", 42L));
+		assertEquals(new Timestamp(1000L), cursor.getLoginDate());
+		assertEquals("10.0.0.1", cursor.getLocalIp());
+		assertEquals(42L, cursor.getId());
+	}
+
+	@Test
+	public void parse_cursor_of_ipv6_node() {
+		UserLoginAuditLogCursor cursor = parse(cursor(1000L, "fe80::1", 42L));
+		assertEquals("fe80::1", cursor.getLocalIp());
+		assertEquals(42L, cursor.getId());
+	}
+
+	@Test
+	public void reject_invalid_cursor() {
+		try {
+			parse("not-a-cursor");
+			fail("Exception expected");
+		} catch(UnprocessableEntityException e) {
+			assertEquals(AUT0002E_INVALID_CURSOR, e.getReason());
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.security.login.log.model.UserLoginAuditLogVerifier.isValidRecord;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.rawMessage;
+import static io.leitstand.security.login.log.service.ReasonCode.AUT0003E_VERIFICATION_REJECTED;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.ConflictException;
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.crypto.Secret;
+import io.leitstand.security.login.log.model.UserLoginAuditLogVerifier.Chain;
+import io.leitstand.security.login.log.model.UserLoginAuditLogVerifier.Row;
+import io.leitstand.security.login.log.service.UserLoginAuditLogVerificationData;
+
+public class UserLoginAuditLogVerifierTest {
+
+	private static final String LOCAL_IP = "10.0.0.1";
+	private static final Secret SECRET = new Secret("unittest".getBytes(UTF_8));
+
+	private UserLoginAuditLogWriter writer;
+	private DatabaseService db;
+	private UserLoginAuditLogVerifier verifier;
+
+	@Before
+	public void initVerifier() {
+		writer = new UserLoginAuditLogWriter(mock(DataSource.class),
+											 mock(DatabaseService.class),
+											 LOCAL_IP,
+											 SECRET,
+											 mock(ManagedScheduledExecutorService.class),
+											 64,
+											 Paths.get("unittest.spool"));
+		db = mock(DatabaseService.class);
+		verifier = new UserLoginAuditLogVerifier(mock(DataSource.class), db, writer, 100);
+	}
+
+	private static byte[] sign(long id, long previous) {
+		return hmacSha256(SECRET).sign(rawMessage(LOCAL_IP, id, "10.0.0.2", "curl", "unittest", "AUTHENTICATED", previous, 1000L*id));
+	}
+
+	// All records are signed for the unittest user. Any other user ID simulates a modified record.
+	private static Row row(long id, long previous, String userId, Boolean stored) {
+		return new Row(id, "10.0.0.2", "curl", userId, "AUTHENTICATED", previous, 1000L*id, sign(id, previous), stored);
+	}
+
+	private boolean verify(Chain chain, long id, long previous, String userId) {
+		return chain.verify(LOCAL_IP, id, "10.0.0.2", "curl", userId, "AUTHENTICATED", previous, 1000L*id, sign(id, previous));
+	}
+
+	private void mockQueries(List<?>... results) {
+		Iterator<List<?>> i = asList(results).iterator();
+		when(db.executeQuery(any(), any())).thenAnswer(invocation -> i.next());
+	}
+
+	@Test
+	public void accept_record_referring_to_predecessor() {
+		Chain chain = new Chain(writer, 0, new byte[32]);
+		assertTrue(verify(chain, 1, 0, "unittest"));
+		// IDs of an unused block are skipped.
+		assertTrue(verify(chain, 101, 1, "unittest"));
+		assertEquals(101, chain.getLastId());
+	}
+
+	@Test
+	public void reject_record_not_referring_to_predecessor() {
+		Chain chain = new Chain(writer, 0, new byte[32]);
+		assertTrue(verify(chain, 1, 0, "unittest"));
+		assertFalse(verify(chain, 3, 2, "unittest"));
+	}
+
+	@Test
+	public void reject_record_whose_previous_record_exists_but_is_not_the_predecessor() {
+		// Record 2 exists, but record 3 refers to record 1.
+		assertTrue(isValidRecord(writer, LOCAL_IP, 3, "10.0.0.2", "curl", "unittest", "AUTHENTICATED", 2, 2, 3000L, sign(3, 2)));
+		assertFalse(isValidRecord(writer, LOCAL_IP, 3, "10.0.0.2", "curl", "unittest", "AUTHENTICATED", 1, 2, 3000L, sign(3, 1)));
+	}
+
+	@Test
+	public void reject_modified_record() {
+		Chain chain = new Chain(writer, 0, new byte[32]);
+		assertFalse(verify(chain, 1, 0, "admin"));
+	}
+
+	@Test
+	public void roll_hash_over_all_verified_records() {
+		Chain original = new Chain(writer, 0, new byte[32]);
+		verify(original, 1, 0, "unittest");
+		verify(original, 2, 1, "unittest");
+
+		Chain same = new Chain(writer, 0, new byte[32]);
+		verify(same, 1, 0, "unittest");
+		verify(same, 2, 1, "unittest");
+		assertArrayEquals(original.getRolledHash(), same.getRolledHash());
+
+		Chain modified = new Chain(writer, 0, new byte[32]);
+		verify(modified, 1, 0, "admin");
+		verify(modified, 2, 1, "unittest");
+		assertFalse(Arrays.equals(original.getRolledHash(), modified.getRolledHash()));
+	}
+
+	@Test
+	public void report_valid_records_and_checkpoint() {
+		Chain checkpoint = new Chain(writer, 0, new byte[32]);
+		verify(checkpoint, 1, 0, "unittest");
+		mockQueries(asList(checkpoint),
+					asList(row(1, 0, "unittest", true), row(2, 1, "unittest", null)),
+					asList(row(2, 1, "unittest", null)),
+					emptyList());
+
+		UserLoginAuditLogVerificationData report = verifier.verifyAll(LOCAL_IP);
+
+		assertEquals(LOCAL_IP, report.getLocalIp());
+		assertEquals(2, report.getRecords());
+		assertEquals(0, report.getInvalidRecords());
+		assertEquals(0, report.getStaleRecords());
+		assertEquals(Long.valueOf(1), report.getCheckpointId());
+		assertTrue(report.isValidCheckpoint());
+	}
+
+	@Test
+	public void report_modified_record_covered_by_checkpoint() {
+		Chain checkpoint = new Chain(writer, 0, new byte[32]);
+		verify(checkpoint, 1, 0, "unittest");
+		mockQueries(asList(checkpoint),
+					asList(row(1, 0, "admin", true)),
+					emptyList());
+
+		UserLoginAuditLogVerificationData report = verifier.verifyAll(LOCAL_IP);
+
+		assertEquals(1, report.getRecords());
+		assertEquals(1, report.getInvalidRecords());
+		assertEquals(1, report.getStaleRecords());
+		assertFalse(report.isValidCheckpoint());
+	}
+
+	@Test
+	public void report_removed_checkpoint_record() {
+		Chain checkpoint = new Chain(writer, 0, new byte[32]);
+		verify(checkpoint, 1, 0, "unittest");
+		verify(checkpoint, 2, 1, "unittest");
+		mockQueries(asList(checkpoint),
+					asList(row(1, 0, "unittest", true), row(3, 2, "unittest", null)),
+					asList(row(3, 2, "unittest", null)),
+					emptyList());
+
+		UserLoginAuditLogVerificationData report = verifier.verifyAll(LOCAL_IP);
+
+		assertEquals(2, report.getRecords());
+		assertEquals(1, report.getInvalidRecords());
+		assertFalse(report.isValidCheckpoint());
+	}
+
+	@Test
+	public void report_log_without_checkpoint() {
+		mockQueries(emptyList(),
+					asList(row(1, 0, "unittest", null)),
+					emptyList());
+
+		UserLoginAuditLogVerificationData report = verifier.verifyAll(LOCAL_IP);
+
+		assertEquals(1, report.getRecords());
+		assertNull(report.getCheckpointId());
+		assertTrue(report.isValidCheckpoint());
+	}
+
+	@Test
+	public void reject_verification_shortly_after_previous_verification() {
+		mockQueries(emptyList(),
+					emptyList());
+		verifier.verifyAll(LOCAL_IP);
+		try {
+			verifier.verifyAll(LOCAL_IP);
+			fail("Exception expected");
+		} catch (ConflictException e) {
+			assertEquals(AUT0003E_VERIFICATION_REJECTED, e.getReason());
+		}
+	}
+
+	@Test
+	public void accept_verification_after_pause() {
+		verifier = new UserLoginAuditLogVerifier(mock(DataSource.class), db, writer, 100, 0);
+		mockQueries(emptyList(),
+					emptyList(),
+					emptyList(),
+					emptyList());
+		verifier.verifyAll(LOCAL_IP);
+		assertEquals(0, verifier.verifyAll(LOCAL_IP).getRecords());
+	}
+
+}
@@ -0,0 +1,348 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.DEFAULT_ID_BLOCK_SIZE;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.DEFAULT_MAX_ATTEMPTS;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.DEFAULT_MAX_QUEUE_SIZE;
+import static io.leitstand.security.login.log.model.UserLoginAuditLogWriter.rawMessage;
+import static io.leitstand.security.login.log.service.UserLoginState.AUTHENTICATED;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Base64.getDecoder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.crypto.Secret;
+
+public class UserLoginAuditLogWriterTest {
+
+	private static final String LOCAL_IP = "10.0.0.1";
+	private static final UserId USER_ID = UserId.valueOf("unittest");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DataSource ds;
+	private Connection con;
+	private PreparedStatement stmt;
+	private ResultSet seq;
+	private Path spool;
+	private ManagedScheduledExecutorService scheduler;
+
+	@Before
+	public void initDataSource() throws SQLException {
+		ds = mock(DataSource.class);
+		con = mock(Connection.class);
+		stmt = mock(PreparedStatement.class);
+		when(ds.getConnection()).thenReturn(con);
+		when(con.prepareStatement(anyString())).thenReturn(stmt);
+		PreparedStatement reserve = mock(PreparedStatement.class);
+		seq = mock(ResultSet.class);
+		when(con.prepareStatement(startsWith("UPDATE auth.user_login_audit_log_seq"))).thenReturn(reserve);
+		when(reserve.executeQuery()).thenReturn(seq);
+		when(seq.next()).thenReturn(true);
+		reserveIds(1);
+		spool = folder.getRoot().toPath().resolve("login-audit.spool");
+		scheduler = mock(ManagedScheduledExecutorService.class);
+	}
+
+	private void reserveIds(long start) throws SQLException {
+		when(seq.getLong(1)).thenReturn(start+DEFAULT_ID_BLOCK_SIZE);
+	}
+
+	private UserLoginAuditLogWriter writer(int batchSize) {
+		return new UserLoginAuditLogWriter(ds,
+										   mock(DatabaseService.class),
+										   LOCAL_IP,
+										   new Secret("unittest".getBytes(UTF_8)),
+										   scheduler,
+										   batchSize,
+										   spool);
+	}
+
+	private UserLoginAuditLogWriter writer(int maxQueueSize, int maxAttempts, long reportInterval) {
+		return new UserLoginAuditLogWriter(ds,
+										   mock(DatabaseService.class),
+										   LOCAL_IP,
+										   new Secret("unittest".getBytes(UTF_8)),
+										   scheduler,
+										   64,
+										   maxQueueSize,
+										   maxAttempts,
+										   reportInterval,
+										   spool);
+	}
+
+	@Test
+	public void sign_login_attempts_in_chain_order_and_insert_single_batch() throws SQLException {
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		assertEquals(2, writer.getQueueSize());
+
+		writer.flush();
+
+		verify(stmt).setLong(1, 1L);
+		verify(stmt).setLong(1, 2L);
+		verify(stmt).setNull(9, Types.BIGINT);
+		verify(stmt).setLong(9, 1L);
+		verify(stmt,times(2)).addBatch();
+		verify(stmt).executeBatch();
+		verify(con).setAutoCommit(false);
+		verify(con).commit();
+		assertEquals(0, writer.getQueueSize());
+		assertEquals(2, writer.getWrittenCount());
+		assertEquals(1, writer.getFlushCount());
+	}
+
+	@Test
+	public void write_verifiable_signature() throws SQLException {
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+
+		ArgumentCaptor<Timestamp> loginDate = ArgumentCaptor.forClass(Timestamp.class);
+		ArgumentCaptor<String> signature = ArgumentCaptor.forClass(String.class);
+		verify(stmt).setTimestamp(eq(7), loginDate.capture());
+		verify(stmt).setString(eq(8), signature.capture());
+
+		String raw = rawMessage(LOCAL_IP, 1L, "10.0.0.2", "curl", "unittest", "AUTHENTICATED", 0L, loginDate.getValue().getTime());
+		assertTrue(writer.isValidSignature(raw, getDecoder().decode(signature.getValue())));
+		assertFalse(writer.isValidSignature(raw+":tampered", getDecoder().decode(signature.getValue())));
+	}
+
+	@Test
+	public void split_pending_login_attempts_in_batches() throws SQLException {
+		UserLoginAuditLogWriter writer = writer(2);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+
+		writer.flush();
+
+		verify(scheduler).execute(any(Runnable.class));
+		verify(stmt,times(2)).executeBatch();
+		assertEquals(3, writer.getWrittenCount());
+		assertEquals(2, writer.getFlushCount());
+	}
+
+	@Test
+	public void retry_failed_batch_with_next_flush() throws SQLException {
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"))
+								 .thenReturn(new int[] {1});
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+
+		writer.flush();
+		assertEquals(1, writer.getFailureCount());
+		assertEquals(0, writer.getWrittenCount());
+		verify(con).rollback();
+
+		writer.flush();
+		// The retry writes the already signed record again.
+		verify(stmt,times(2)).setLong(1, 1L);
+		assertEquals(1, writer.getWrittenCount());
+	}
+
+	@Test
+	public void spool_unwritten_records_on_shutdown_and_insert_them_on_startup() throws Exception {
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"));
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.3", null, USER_ID, AUTHENTICATED);
+
+		writer.shutdown();
+		assertEquals(2, Files.readAllLines(spool, UTF_8).size());
+
+		initDataSource();
+		reserveIds(3);
+		UserLoginAuditLogWriter restarted = writer(64);
+		restarted.replaySpool();
+
+		assertFalse(Files.exists(spool));
+		verify(stmt).setString(5, null);
+		verify(stmt).executeBatch();
+
+		// The chain continues after the spooled records.
+		restarted.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		restarted.flush();
+		verify(stmt).setLong(1, 3L);
+		verify(stmt).setLong(9, 2L);
+	}
+
+	@Test
+	public void keep_spool_file_if_replay_fails() throws Exception {
+		Files.write(spool, "1:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:0:c2ln\n".getBytes(UTF_8));
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"));
+		reserveIds(2);
+
+		UserLoginAuditLogWriter writer = writer(64);
+		assertFalse(writer.replaySpool());
+
+		assertTrue(Files.exists(spool));
+		// The login attempt is queued, because the spooled record was not replayed.
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+		assertEquals(1, writer.getQueueSize());
+		verify(stmt,never()).setLong(1, 2L);
+	}
+
+	@Test
+	public void retry_spool_file_replay_before_writing_new_records() throws Exception {
+		Files.write(spool, "1:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:0:c2ln\n".getBytes(UTF_8));
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"))
+								 .thenThrow(new SQLException("unittest"))
+								 .thenReturn(new int[] {1});
+		reserveIds(2);
+
+		UserLoginAuditLogWriter writer = writer(DEFAULT_MAX_QUEUE_SIZE, DEFAULT_MAX_ATTEMPTS, 0);
+		assertFalse(writer.replaySpool());
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+
+		// The chain continues after the replayed record.
+		assertFalse(Files.exists(spool));
+		assertEquals(0, writer.getQueueSize());
+		verify(stmt).setLong(1, 2L);
+		verify(stmt).setLong(9, 1L);
+	}
+
+	@Test
+	public void replay_spooled_records_one_by_one_if_batch_fails() throws Exception {
+		Files.write(spool, ("1:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:0:c2ln\n"+
+							"2:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:1:c2ln\n").getBytes(UTF_8));
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"))
+								 .thenReturn(new int[] {1})
+								 .thenThrow(new SQLException("unittest"));
+
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.replaySpool();
+
+		List<String> remaining = Files.readAllLines(spool, UTF_8);
+		assertEquals(1, remaining.size());
+		assertTrue(remaining.get(0).startsWith("2:"));
+	}
+
+	@Test
+	public void stop_replay_at_first_record_that_cannot_be_inserted() throws Exception {
+		Files.write(spool, ("1:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:0:c2ln\n"+
+							"2:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:1:c2ln\n").getBytes(UTF_8));
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"));
+
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.replaySpool();
+
+		// The second record is not inserted without its predecessor.
+		verify(stmt,times(2)).executeBatch();
+		assertEquals(2, Files.readAllLines(spool, UTF_8).size());
+	}
+
+	@Test
+	public void consider_existing_spooled_record_replayed() throws Exception {
+		Files.write(spool, ("1:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:0:c2ln\n"+
+							"2:MTAuMC4wLjE=:MTAuMC4wLjI=:dW5pdHRlc3Q=:-:AUTHENTICATED:0:1:c2ln\n").getBytes(UTF_8));
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest","23505"))
+								 .thenThrow(new SQLException("unittest","23505"))
+								 .thenReturn(new int[] {1});
+
+		UserLoginAuditLogWriter writer = writer(64);
+		assertTrue(writer.replaySpool());
+		assertFalse(Files.exists(spool));
+	}
+
+	@Test
+	public void drop_login_attempts_if_queue_is_full() {
+		UserLoginAuditLogWriter writer = writer(2, DEFAULT_MAX_ATTEMPTS, 0);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+
+		assertEquals(2, writer.getQueueSize());
+		assertEquals(1, writer.getDroppedCount());
+	}
+
+	@Test
+	public void retry_batch_after_max_attempts_without_signing_new_attempts() throws Exception {
+		when(stmt.executeBatch()).thenThrow(new SQLException("unittest"));
+		UserLoginAuditLogWriter writer = writer(DEFAULT_MAX_QUEUE_SIZE, 2, 0);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+
+		writer.flush();
+		writer.flush();
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+
+		// The batch is neither spooled nor extended by the new login attempt.
+		assertFalse(Files.exists(spool));
+		assertEquals(0, writer.getSpooledCount());
+		assertEquals(1, writer.getQueueSize());
+		verify(stmt,times(3)).executeBatch();
+		verify(stmt,never()).setLong(1, 2L);
+	}
+
+	@Test
+	public void refer_to_predecessor_across_id_blocks() throws SQLException {
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+		
+		// Another node instance reserved the IDs in between.
+		reserveIds(1001);
+		for(int i=1; i < DEFAULT_ID_BLOCK_SIZE; i++) {
+			writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		}
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+		writer.flush();
+
+		verify(stmt).setLong(1, (long) DEFAULT_ID_BLOCK_SIZE);
+		verify(stmt).setLong(1, 1001L);
+		verify(stmt).setLong(9, (long) DEFAULT_ID_BLOCK_SIZE);
+		assertEquals(2, writer.getIdReservationCount());
+	}
+
+	@Test
+	public void keep_login_attempt_queued_if_no_id_can_be_reserved() throws SQLException {
+		when(seq.next()).thenReturn(false);
+		UserLoginAuditLogWriter writer = writer(64);
+		writer.append("10.0.0.2", "curl", USER_ID, AUTHENTICATED);
+
+		writer.flush();
+
+		assertEquals(1, writer.getQueueSize());
+		assertEquals(1, writer.getFailureCount());
+		verify(stmt,never()).executeBatch();
+	}
+
+}
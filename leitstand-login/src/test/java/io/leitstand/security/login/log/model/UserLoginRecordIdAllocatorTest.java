@@ -0,0 +1,127 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.login.log.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserLoginRecordIdAllocatorTest {
+
+	private DataSource ds;
+	private PreparedStatement reserve;
+	private PreparedStatement create;
+	private ResultSet rs;
+
+	@Before
+	public void initDataSource() throws SQLException {
+		ds = mock(DataSource.class);
+		Connection con = mock(Connection.class);
+		reserve = mock(PreparedStatement.class);
+		create = mock(PreparedStatement.class);
+		rs = mock(ResultSet.class);
+		when(ds.getConnection()).thenReturn(con);
+		when(con.prepareStatement(startsWith("UPDATE"))).thenReturn(reserve);
+		when(con.prepareStatement(startsWith("INSERT"))).thenReturn(create);
+		when(reserve.executeQuery()).thenReturn(rs);
+	}
+
+	@Test
+	public void hand_out_ids_of_reserved_block() throws SQLException {
+		when(rs.next()).thenReturn(true);
+		when(rs.getLong(1)).thenReturn(11L);
+		UserLoginRecordIdAllocator ids = new UserLoginRecordIdAllocator(ds, "10.0.0.1", 10);
+
+		for(long i=1; i <= 10; i++) {
+			assertEquals(i, ids.nextId());
+		}
+		assertEquals(1, ids.getReservationCount());
+		verify(create,never()).executeUpdate();
+	}
+
+	@Test
+	public void reserve_next_block_when_block_is_exhausted() throws SQLException {
+		when(rs.next()).thenReturn(true);
+		when(rs.getLong(1)).thenReturn(3L)
+						   .thenReturn(25L);
+		UserLoginRecordIdAllocator ids = new UserLoginRecordIdAllocator(ds, "10.0.0.1", 2);
+
+		assertEquals(1, ids.nextId());
+		assertEquals(2, ids.nextId());
+		assertEquals(23, ids.nextId());
+		assertEquals(2, ids.getReservationCount());
+	}
+
+	@Test
+	public void create_sequence_of_new_node() throws SQLException {
+		when(rs.next()).thenReturn(false)
+					   .thenReturn(true);
+		when(rs.getLong(1)).thenReturn(11L);
+		UserLoginRecordIdAllocator ids = new UserLoginRecordIdAllocator(ds, "10.0.0.1", 10);
+
+		assertEquals(1, ids.nextId());
+		verify(create).setString(1, "10.0.0.1");
+		verify(create).executeUpdate();
+	}
+
+	@Test(expected=SQLException.class)
+	public void report_sequence_that_cannot_be_created() throws SQLException {
+		when(rs.next()).thenReturn(false);
+		UserLoginRecordIdAllocator ids = new UserLoginRecordIdAllocator(ds, "10.0.0.1", 10);
+
+		ids.nextId();
+	}
+
+	@Test
+	public void allocate_unique_ids_concurrently() throws Exception {
+		AtomicLong sequence = new AtomicLong(1);
+		when(rs.next()).thenReturn(true);
+		when(rs.getLong(1)).thenAnswer(invocation -> sequence.addAndGet(10));
+		UserLoginRecordIdAllocator ids = new UserLoginRecordIdAllocator(ds, "10.0.0.1", 10);
+
+		Set<Long> allocated = ConcurrentHashMap.newKeySet();
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for(int i=0; i < 4; i++) {
+				tasks.add(threads.submit(() -> {
+					for(int j=0; j < 250; j++) {
+						assertTrue(allocated.add(ids.nextId()));
+					}
+					return null;
+				}));
+			}
+			for(Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			threads.shutdown();
+		}
+		assertEquals(1000, allocated.size());
+		assertEquals(100, ids.getReservationCount());
+	}
+
+}
@@ -5,39 +5,66 @@ package io.leitstand.security.users.auth;
 
 import static io.leitstand.security.users.service.ReasonCode.IDM0004E_USER_NOT_FOUND;
 import static io.leitstand.security.users.service.UserSettings.newUserSettings;
-import static java.lang.Boolean.FALSE;
-import static java.lang.Boolean.TRUE;
+import static io.leitstand.security.auth.user.UserInfo.newUserInfo;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.function.Function;
+
+import javax.enterprise.context.ContextNotActiveException;
+
 import javax.security.enterprise.credential.Password;
 import javax.security.enterprise.credential.UsernamePasswordCredential;
 import javax.security.enterprise.identitystore.CredentialValidationResult;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import io.leitstand.commons.EntityNotFoundException;
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.LoginContext;
 import io.leitstand.security.auth.user.UserInfo;
 import io.leitstand.security.users.service.UserService;
 import io.leitstand.security.users.service.UserSettings;
 
+@SuppressWarnings("unchecked")
 @RunWith(MockitoJUnitRunner.class)
 public class DefaultUserRegistryTest {
 
 	@Mock
 	private UserService users;
 	
+	@Mock
+	private LoginContext login;
+	
+	@Mock
+	private UserInfoCache cache;
+	
 	@InjectMocks
 	private DefaultUserRegistry registry = new DefaultUserRegistry();
 	
+	@Before
+	public void readThroughCache() {
+		when(cache.getUserInfo(any(UserId.class), any(Function.class))).thenAnswer(invocation -> {
+			Object[] args = invocation.getArguments();
+			return ((Function<UserId,UserInfo>) args[1]).apply((UserId) args[0]);
+		});
+	}
+	
 	@Test
 	public void return_null_when_user_does_not_exist() {
 		UserId userId = UserId.valueOf("UnitTest");
@@ -63,8 +90,9 @@ public class DefaultUserRegistryTest {
 	public void reject_login_attempt_with_invalid_credentials() {
 		UserId 	 userId = UserId.valueOf("UnitTest");
 		Password passwd = new Password("password");
-		when(users.isValidPassword(userId, passwd)).thenReturn(FALSE);
+		when(users.authenticate(userId, passwd)).thenReturn(null);
 		assertEquals(INVALID_RESULT,registry.validateCredentials(new UsernamePasswordCredential("UnitTest", passwd)));
+		verify(login,never()).setUserInfo(any(UserInfo.class));
 	}
 	
 	@Test
@@ -75,12 +103,52 @@ public class DefaultUserRegistryTest {
 								.withRoles("Administrator","Operator")
 								.build();
 		Password passwd = new Password("password");
-		when(users.getUser(userId)).thenReturn(settings);		
-		when(users.isValidPassword(userId, passwd)).thenReturn(TRUE);
+		when(users.authenticate(userId, passwd)).thenReturn(settings);
 		CredentialValidationResult result = registry.validateCredentials(new UsernamePasswordCredential("UnitTest", passwd));
 		assertEquals("UnitTest",result.getCallerPrincipal().getName());
 		assertTrue(result.getCallerGroups().contains("Administrator"));
 		assertTrue(result.getCallerGroups().contains("Operator"));
+		verify(users,never()).getUser(userId);
+		ArgumentCaptor<UserInfo> recorded = ArgumentCaptor.forClass(UserInfo.class);
+		verify(login).setUserInfo(recorded.capture());
+		assertEquals(userId,recorded.getValue().getUserId());
+	}
+	
+	@Test
+	public void return_user_info_from_login_context_without_loading_user() {
+		UserId userId = UserId.valueOf("UnitTest");
+		UserInfo userInfo = newUserInfo()
+							.withUserId(userId)
+							.withRoles("Operator")
+							.build();
+		when(login.getUserInfo(userId)).thenReturn(userInfo);
+		assertSame(userInfo,registry.getUserInfo(userId));
+		verify(users,never()).getUser(userId);
+		verifyZeroInteractions(cache);
+	}
+	
+	@Test
+	public void return_user_info_from_cache_without_loading_user() {
+		UserId userId = UserId.valueOf("UnitTest");
+		UserInfo userInfo = newUserInfo()
+							.withUserId(userId)
+							.withRoles("Operator")
+							.build();
+		when(cache.getUserInfo(eq(userId), any(Function.class))).thenReturn(userInfo);
+		assertSame(userInfo,registry.getUserInfo(userId));
+		verify(users,never()).getUser(userId);
+	}
+	
+	@Test
+	public void load_user_info_when_no_request_is_active() {
+		UserId userId = UserId.valueOf("UnitTest");
+		UserSettings settings = newUserSettings()
+								.withUserId(userId)
+								.withRoles("Operator")
+								.build();
+		when(login.getUserInfo(userId)).thenThrow(new ContextNotActiveException());
+		when(users.getUser(userId)).thenReturn(settings);
+		assertEquals(userId,registry.getUserInfo(userId).getUserId());
 	}
 	
 }
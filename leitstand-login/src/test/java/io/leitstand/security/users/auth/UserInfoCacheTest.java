@@ -0,0 +1,166 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.auth;
+
+import static io.leitstand.security.auth.user.UserEvent.newUserEvent;
+import static io.leitstand.security.auth.user.UserEvent.Type.USER_UPDATED;
+import static io.leitstand.security.auth.user.UserInfo.newUserInfo;
+import static io.leitstand.security.users.auth.UserInfoCache.DEFAULT_COMMIT_TIMEOUT_SECONDS;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.UserInfo;
+import io.leitstand.security.users.auth.UserInfoCache.UserChange;
+
+public class UserInfoCacheTest {
+
+	private static final UserId USER_ID = UserId.valueOf("unittest");
+	
+	private DatabaseService db;
+	private UserInfoCache cache;
+	private AtomicInteger loads;
+	
+	@Before
+	public void initCache() {
+		db = mock(DatabaseService.class);
+		cache = new UserInfoCache(16, 5, MINUTES, db);
+		loads = new AtomicInteger();
+	}
+	
+	private UserInfo load(UserId userId) {
+		loads.incrementAndGet();
+		return newUserInfo()
+			   .withUserId(userId)
+			   .withRoles("Operator")
+			   .build();
+	}
+	
+	@Test
+	public void load_user_once() {
+		UserInfo user = cache.getUserInfo(USER_ID, this::load);
+		assertSame(user, cache.getUserInfo(USER_ID, this::load));
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getLoadCount());
+		assertEquals(1, cache.getSize());
+		assertEquals(0.5, cache.getHitRate(), 0.01);
+	}
+	
+	@Test
+	public void do_not_cache_unknown_user() {
+		assertNull(cache.getUserInfo(USER_ID, userId -> null));
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void reload_user_after_user_event() {
+		cache.getUserInfo(USER_ID, this::load);
+		cache.onUserEvent(newUserEvent()
+						  .withUserId(USER_ID)
+						  .withEventType(USER_UPDATED)
+						  .build());
+		assertEquals(0, cache.getSize());
+		cache.getUserInfo(USER_ID, this::load);
+		assertEquals(2, loads.get());
+	}
+	
+	@Test
+	public void do_not_cache_user_modified_while_loading() {
+		UserInfo user = cache.getUserInfo(USER_ID, userId -> {
+			UserInfo loaded = load(userId);
+			cache.invalidate(userId);
+			return loaded;
+		});
+		assertEquals(USER_ID, user.getUserId());
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void remove_users_modified_on_other_nodes() {
+		cache.getUserInfo(USER_ID, this::load);
+		when(db.executeQuery(any(), any())).thenReturn(asList(new UserChange(1, USER_ID)));
+		cache.pollEvents();
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void expire_frequently_accessed_user() {
+		AtomicLong clock = new AtomicLong(1000);
+		cache = new UserInfoCache(16, 50, MILLISECONDS, db, clock::get);
+		for(int i=0; i < 3; i++) {
+			cache.getUserInfo(USER_ID, this::load);
+			clock.addAndGet(20);
+		}
+		assertEquals(1, loads.get());
+		cache.getUserInfo(USER_ID, this::load);
+		assertEquals(2, loads.get());
+	}
+	
+	@Test
+	public void wait_for_missing_change_on_change_log_gap() {
+		UserId other = UserId.valueOf("other");
+		cache.getUserInfo(USER_ID, this::load);
+		cache.getUserInfo(other, this::load);
+		when(db.executeQuery(any(), any())).thenReturn(asList(new UserChange(2, USER_ID)))
+										   .thenReturn(asList(new UserChange(1, other), 
+												   			  new UserChange(2, USER_ID)));
+		cache.pollEvents();
+		assertEquals(1, cache.getSize());
+		cache.pollEvents();
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void remove_all_users_if_change_log_gap_exceeds_commit_timeout() {
+		AtomicLong clock = new AtomicLong(1000);
+		cache = new UserInfoCache(16, 1, DAYS, db, clock::get);
+		UserId other = UserId.valueOf("other");
+		cache.getUserInfo(USER_ID, this::load);
+		cache.getUserInfo(other, this::load);
+		when(db.executeQuery(any(), any())).thenReturn(asList(new UserChange(2, USER_ID)));
+		cache.pollEvents();
+		assertEquals(1, cache.getSize());
+		clock.addAndGet(SECONDS.toMillis(DEFAULT_COMMIT_TIMEOUT_SECONDS));
+		cache.pollEvents();
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void purge_expired_change_log_records() {
+		cache.purgeExpiredEvents();
+		verify(db).executeUpdate(any());
+	}
+	
+	@Test
+	public void purge_failure_does_not_propagate() {
+		when(db.executeUpdate(any())).thenThrow(new IllegalStateException("Database not available"));
+		cache.purgeExpiredEvents();
+	}
+	
+	@Test
+	public void retain_users_if_polling_fails() {
+		cache.getUserInfo(USER_ID, this::load);
+		when(db.executeQuery(any(), any())).thenThrow(new IllegalStateException("Database not available"));
+		cache.pollEvents();
+		assertEquals(1, cache.getSize());
+	}
+	
+}
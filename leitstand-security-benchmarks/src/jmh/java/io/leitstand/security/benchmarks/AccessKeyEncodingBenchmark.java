@@ -0,0 +1,116 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
+import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
+import static io.leitstand.commons.model.ObjectUtil.isDifferent;
+import static io.leitstand.commons.model.StringUtil.fromUtf8Bytes;
+import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static io.leitstand.security.auth.accesskey.ApiAccessKey.newApiAccessKey;
+import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Long.parseLong;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.stream;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Date;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.accesskeys.auth.AccessKeyEncodingService;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+import io.leitstand.security.auth.accesskey.ApiAccessKey;
+import io.leitstand.security.auth.jwt.JsonWebTokenConfig;
+import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
+import io.leitstand.security.crypto.Secret;
+
+/**
+ * Measures the throughput of encoding and decoding API access keys.
+ * <p>
+ * The <code>baseline_decode</code> benchmark runs the former decoder, 
+ * which converted the token to a string, compared the Base64-encoded signature and split the token data with regular expressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class AccessKeyEncodingBenchmark {
+
+	private Secret secret;
+	private AccessKeyEncodingService service;
+	private ApiAccessKey accessKey;
+	private String encoded;
+
+	@Setup
+	public void initAccessKeyEncodingService() {
+		secret = new Secret("benchmark".getBytes(UTF_8));
+		JsonWebTokenConfig config = new JsonWebTokenConfig() {
+			@Override
+			public Secret getSecret() {
+				return secret;
+			}
+		};
+		service = new AccessKeyEncodingService(config);
+		accessKey = newApiAccessKey()
+					.withId(randomAccessKeyId())
+					.withUserId(UserId.valueOf("benchmark"))
+					.withMethods("GET","POST")
+					.withDateCreated(new Date())
+					.build();
+		encoded = service.encode(accessKey);
+	}
+
+	@Benchmark
+	public String encode() {
+		return service.encode(accessKey);
+	}
+
+	@Benchmark
+	public ApiAccessKey decode() {
+		return service.decode(encoded);
+	}
+
+	@Benchmark
+	public ApiAccessKey baseline_decode() {
+		String token = fromUtf8Bytes(decodeBase64String(encoded));
+		int    lastColon  = token.lastIndexOf(':');
+		String tokenData  = token.substring(0, lastColon);
+		String signature  = token.substring(lastColon+1);
+		if(isDifferent(signature, encodeBase64String(hmacSha256(secret).sign(tokenData)))) {
+			throw new JsonWebTokenSignatureException("Signature mismatch!");
+		}
+		String[] segments = tokenData.split(":");
+		Set<String> methods = stream(segments[2].split(","))
+							  .filter(s -> s.length() > 0)
+							  .collect(toSet());
+		Set<String> paths = stream(segments[3].split(","))
+							.filter(s -> s.length() > 0)
+							.collect(toSet());
+		return newApiAccessKey()
+			   .withId(AccessKeyId.valueOf(segments[0]))
+			   .withUserId(UserId.valueOf(segments[1]))
+			   .withMethods(methods)
+			   .withPaths(paths)
+			   .withTemporaryAccess(parseBoolean(segments[4]))
+			   .withDateCreated(new Date(parseLong(segments[5])))
+			   .build();
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static java.lang.System.getProperty;
+import static java.lang.reflect.Proxy.newProxyInstance;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * The PostgreSQL database of the database benchmarks.
+ * <p>
+ * The database is set by the <code>benchmark.jdbc.url</code>, <code>benchmark.jdbc.user</code> and <code>benchmark.jdbc.password</code> system properties.
+ * The benchmarks create their tables on demand and must be run against a scratch database.
+ * <p>
+ * The {@link #getDataSource() data source} binds one connection to every benchmark thread.
+ * Closing a connection obtained from the data source has no effect.
+ * All connections are closed when the database is closed.
+ * Hence a benchmark measures the statements and not the connection setup.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+
+	/**
+	 * Connects to the benchmark database.
+	 * @return the benchmark database
+	 * @throws IllegalStateException if the <code>benchmark.jdbc.url</code> system property is not set.
+	 */
+	public static BenchmarkDatabase connect() {
+		String url = getProperty("benchmark.jdbc.url");
+		if(url == null) {
+			throw new IllegalStateException("Database benchmarks require a PostgreSQL database. Set the benchmark.jdbc.url property.");
+		}
+		return new BenchmarkDatabase(url,
+									 getProperty("benchmark.jdbc.user"),
+									 getProperty("benchmark.jdbc.password"));
+	}
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final List<Connection> connections = new ArrayList<>();
+	private final ThreadLocal<Connection> threadConnection = new ThreadLocal<>();
+	private final DataSource ds = new ThreadBoundDataSource();
+
+	private BenchmarkDatabase(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Returns the data source with one connection per thread.
+	 * @return the data source with one connection per thread.
+	 */
+	public DataSource getDataSource() {
+		return ds;
+	}
+
+	/**
+	 * Executes the given statements in the given order.
+	 * @param statements - the SQL statements
+	 * @throws SQLException if a statement fails
+	 */
+	public void execute(String... statements) throws SQLException {
+		try(Connection con = ds.getConnection();
+			Statement stmt = con.createStatement()){
+			for(String sql : statements) {
+				stmt.execute(sql);
+			}
+		}
+	}
+
+	/**
+	 * Closes all connections.
+	 */
+	@Override
+	public synchronized void close() throws SQLException {
+		for(Connection con : connections) {
+			con.close();
+		}
+		connections.clear();
+	}
+
+	private Connection threadConnection() throws SQLException {
+		Connection con = threadConnection.get();
+		if(con == null) {
+			Connection physical = DriverManager.getConnection(url, user, password);
+			synchronized(this) {
+				connections.add(physical);
+			}
+			con = (Connection) newProxyInstance(Connection.class.getClassLoader(),
+												new Class<?>[] {Connection.class},
+												(proxy, method, args) -> {
+													if(method.getName().equals("close")) {
+														// Keep the connection open for the next statement of this thread.
+														return null;
+													}
+													try {
+														return method.invoke(physical, args);
+													} catch (InvocationTargetException e) {
+														throw e.getCause();
+													}
+												});
+			threadConnection.set(con);
+		}
+		return con;
+	}
+
+	private final class ThreadBoundDataSource implements DataSource {
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return threadConnection();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			return threadConnection();
+		}
+
+		@Override
+		public PrintWriter getLogWriter() {
+			return null;
+		}
+
+		@Override
+		public void setLogWriter(PrintWriter out) {
+			// Not supported
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) {
+			// Not supported
+		}
+
+		@Override
+		public int getLoginTimeout() {
+			return 0;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+
+		@Override
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			throw new SQLException("Not a wrapper");
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.security.auth.http.AccessToken.newAccessToken;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Date;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.http.AccessToken;
+import io.leitstand.security.auth.jwt.JsonWebTokenConfig;
+import io.leitstand.security.auth.jwt.JsonWebTokenDecoder;
+import io.leitstand.security.auth.jwt.JsonWebTokenEncoder;
+import io.leitstand.security.auth.jwt.JwtSignatureService;
+import io.leitstand.security.crypto.Secret;
+
+/**
+ * Measures the throughput of encoding and decoding signed access tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class JsonWebTokenBenchmark {
+
+	private JsonWebTokenEncoder encoder;
+	private JsonWebTokenDecoder decoder;
+	private AccessToken token;
+	private String jwt;
+
+	@Setup
+	public void initTokenServices() {
+		JsonWebTokenConfig config = new JsonWebTokenConfig() {
+			@Override
+			public Secret getSecret() {
+				return new Secret("benchmark".getBytes(UTF_8));
+			}
+		};
+		JwtSignatureService signer = new JwtSignatureService(config);
+		encoder = new JsonWebTokenEncoder(signer);
+		decoder = new JsonWebTokenDecoder(signer);
+		token = newAccessToken()
+				.withUserId(UserId.valueOf("benchmark"))
+				.withRoles("Operator","Administrator")
+				.withDateExpiry(new Date(currentTimeMillis()+3600000L))
+				.build();
+		jwt = encoder.encode(token);
+	}
+
+	@Benchmark
+	public String encode() {
+		return encoder.encode(token);
+	}
+
+	@Benchmark
+	public AccessToken decode() {
+		return decoder.decode(AccessToken.class, AccessToken.Payload.class, jwt);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.commons.etc.Environment.emptyEnvironment;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.crypto.MasterSecret;
+
+/**
+ * Measures the throughput of encrypting and decrypting secrets with the {@link MasterSecret}.
+ * <p>
+ * The legacy benchmark decrypts a CBC ciphertext created with <code>master.cipher=CBC</code>.
+ * The bulk benchmarks process 16 secrets per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class MasterSecretBenchmark {
+
+	private static final int BULK_SIZE = 16;
+
+	@Param({"32","1024"})
+	private int length;
+
+	private MasterSecret master;
+	private byte[] plaintext;
+	private byte[] ciphertext;
+	private byte[] legacyCiphertext;
+	private byte[][] plaintexts;
+	private byte[][] ciphertexts;
+
+	@Setup
+	public void initMasterSecret() {
+		System.setProperty("master.cipher", "CBC");
+		try {
+			MasterSecret legacy = new MasterSecret(emptyEnvironment());
+			legacy.init();
+			plaintext = new byte[length];
+			legacyCiphertext = legacy.encrypt(plaintext);
+		} finally {
+			System.clearProperty("master.cipher");
+		}
+
+		master = new MasterSecret(emptyEnvironment());
+		master.init();
+		ciphertext = master.encrypt(plaintext);
+		plaintexts = new byte[BULK_SIZE][];
+		for(int i=0; i < BULK_SIZE; i++) {
+			plaintexts[i] = plaintext;
+		}
+		ciphertexts = master.encrypt(plaintexts);
+	}
+
+	@Benchmark
+	public byte[] encrypt() {
+		return master.encrypt(plaintext);
+	}
+
+	@Benchmark
+	public byte[] decrypt() {
+		return master.decrypt(ciphertext);
+	}
+
+	@Benchmark
+	public byte[] decrypt_legacy() {
+		return master.decrypt(legacyCiphertext);
+	}
+
+	@Benchmark
+	public byte[][] encrypt_bulk() {
+		return master.encrypt(plaintexts);
+	}
+
+	@Benchmark
+	public byte[][] decrypt_bulk() {
+		return master.decrypt(ciphertexts);
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.security.mac.MessageAuthenticationCodes.hmacSha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.crypto.Secret;
+import io.leitstand.security.mac.MessageAuthenticationCode;
+
+/**
+ * Measures the throughput of signing and verifying messages with HMAC-SHA256.
+ * <p>
+ * The message length is varied to separate the per-call overhead from the per-byte cost.
+ * The <code>baseline</code> benchmarks look up and initialize a new {@link Mac} for every computation,
+ * as <code>MessageAuthenticationCodes</code> did before it reused initialized MAC engines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class MessageAuthenticationCodeBenchmark {
+
+	private static final String HMACSHA256 = "HmacSHA256";
+
+	@Param({"64","1024"})
+	private int length;
+
+	private MessageAuthenticationCode hmac;
+	private byte[] secret;
+	private byte[] message;
+	private byte[] mac;
+
+	@Setup
+	public void initMessageAuthenticationCode() {
+		secret = "benchmark".getBytes(UTF_8);
+		hmac = hmacSha256(new Secret(secret));
+		message = new byte[length];
+		mac = hmac.sign(message);
+	}
+
+	@Benchmark
+	public byte[] sign() {
+		return hmac.sign(message);
+	}
+
+	@Benchmark
+	public boolean verify() {
+		return hmac.isValid(message, mac);
+	}
+
+	@Benchmark
+	public byte[] create_and_sign() {
+		// Token services create the MAC per request.
+		return hmacSha256(new Secret("benchmark".getBytes(UTF_8))).sign(message);
+	}
+
+	@Benchmark
+	public byte[] baseline_sign() throws GeneralSecurityException {
+		Mac engine = Mac.getInstance(HMACSHA256);
+		engine.init(new SecretKeySpec(secret, HMACSHA256));
+		return engine.doFinal(message);
+	}
+
+	@Benchmark
+	public boolean baseline_verify() throws GeneralSecurityException {
+		Mac engine = Mac.getInstance(HMACSHA256);
+		engine.init(new SecretKeySpec(secret, HMACSHA256));
+		return MessageDigest.isEqual(mac, engine.doFinal(message));
+	}
+
+}
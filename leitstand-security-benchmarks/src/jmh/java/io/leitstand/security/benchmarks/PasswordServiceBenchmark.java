@@ -0,0 +1,54 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.users.model.PasswordService;
+
+/**
+ * Measures the throughput of computing password hashes at different iteration counts.
+ * <p>
+ * The password is copied for every call, because the <code>PasswordService</code> clears the password after computing the hash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=2, time=5)
+@Measurement(iterations=3, time=5)
+@Fork(1)
+public class PasswordServiceBenchmark {
+
+	private static final char[] PASSWORD = "benchmark-password".toCharArray();
+
+	@Param({"1000","10000","100000"})
+	private int iterations;
+
+	private PasswordService service;
+	private byte[] salt;
+
+	@Setup
+	public void initPasswordService() {
+		service = new PasswordService();
+		salt = service.salt();
+	}
+
+	@Benchmark
+	public byte[] hash() {
+		return service.hash(PASSWORD.clone(), salt, iterations);
+	}
+
+}
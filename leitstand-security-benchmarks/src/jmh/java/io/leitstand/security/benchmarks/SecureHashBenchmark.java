@@ -0,0 +1,57 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.security.crypto.SecureHashes.sha256;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.nio.ByteBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of computing SHA-256 hashes from byte arrays and direct buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class SecureHashBenchmark {
+
+	@Param({"64","65536"})
+	private int length;
+
+	private byte[] data;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void initData() {
+		data = new byte[length];
+		buffer = ByteBuffer.allocateDirect(length);
+	}
+
+	@Benchmark
+	public byte[] hash_array() {
+		return sha256().hash(data);
+	}
+
+	@Benchmark
+	public byte[] hash_buffer() {
+		// Use a duplicate to leave the position of the shared buffer unchanged.
+		return sha256().hash(buffer.duplicate());
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.crypto.SecureRandomPool;
+
+/**
+ * Compares the {@link SecureRandomPool} with a single shared <code>SecureRandom</code> and <code>UUID.randomUUID()</code>.
+ * <p>
+ * The difference only shows when the benchmark runs with multiple threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class SecureRandomBenchmark {
+
+	private SecureRandom shared;
+
+	@Setup
+	public void initSharedRandom() throws NoSuchAlgorithmException {
+		shared = SecureRandom.getInstance("SHA1PRNG");
+	}
+
+	@Benchmark
+	public byte[] salt_shared() {
+		byte[] salt = new byte[16];
+		shared.nextBytes(salt);
+		return salt;
+	}
+
+	@Benchmark
+	public byte[] salt_pool() {
+		return SecureRandomPool.randomBytes(16);
+	}
+
+	@Benchmark
+	public UUID uuid_jdk() {
+		return UUID.randomUUID();
+	}
+
+	@Benchmark
+	public UUID uuid_pool() {
+		return SecureRandomPool.randomUUID();
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.openjdk.jmh.annotations.AuxCounters.Type.EVENTS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.login.log.model.UserLoginRecordIdAllocator;
+
+/**
+ * Measures the throughput of writing login audit log records with concurrently allocated record IDs.
+ * <p>
+ * A block size of 0 selects the previous allocation, which reads the greatest record ID of the node
+ * and inserts the record with the successor ID in the same transaction.
+ * Concurrent writers read the same ID and all but one fail with a unique key violation.
+ * The failed writers retry and the retries are reported by the <code>conflicts</code> counter.
+ * A positive block size selects the {@link UserLoginRecordIdAllocator} with the given block size.
+ * <p>
+ * Every benchmark trial writes records of its own node and removes them afterwards.
+ * The benchmark requires a PostgreSQL database, see {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=2, time=5)
+@Measurement(iterations=3, time=10)
+@Fork(1)
+public class UserLoginRecordIdDatabaseBenchmark {
+
+	private static final String UNIQUE_VIOLATION = "23505";
+	private static final String SELECT_MAX = "SELECT COALESCE(MAX(id),0) FROM auth.user_login_audit_log WHERE localip = ?";
+	private static final String INSERT_RECORD = "INSERT INTO auth.user_login_audit_log "+
+												"(id, localip, remoteip, userid, useragent, loginstate, tslogin, signature, previous_user_login_audit_log_id) "+
+												"VALUES (?,?,'127.0.0.1','benchmark','jmh','AUTHENTICATED',?,'signature',?)";
+
+	/**
+	 * Counts the retried inserts of the previous allocation.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(EVENTS)
+	public static class Conflicts {
+
+		public long conflicts;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			conflicts = 0;
+		}
+	}
+
+	@Param({"0","1","100"})
+	private int blockSize;
+
+	private BenchmarkDatabase db;
+	private String localIp;
+	private UserLoginRecordIdAllocator ids;
+
+	@Setup
+	public void initDatabase() throws SQLException {
+		db = BenchmarkDatabase.connect();
+		db.execute("CREATE SCHEMA IF NOT EXISTS auth",
+				   "CREATE TABLE IF NOT EXISTS auth.user_login_audit_log ("+
+				   "id BIGINT NOT NULL, "+
+				   "localip VARCHAR(64) NOT NULL, "+
+				   "remoteip VARCHAR(64), "+
+				   "userid VARCHAR(64), "+
+				   "useragent VARCHAR(256), "+
+				   "loginstate VARCHAR(32), "+
+				   "tslogin TIMESTAMP, "+
+				   "signature VARCHAR(128), "+
+				   "previous_user_login_audit_log_id BIGINT, "+
+				   "valid BOOLEAN, "+
+				   "CONSTRAINT user_login_audit_log_pk PRIMARY KEY (id, localip))",
+				   "CREATE TABLE IF NOT EXISTS auth.user_login_audit_log_seq ("+
+				   "localip VARCHAR(64) NOT NULL, "+
+				   "next_id BIGINT NOT NULL, "+
+				   "CONSTRAINT user_login_audit_log_seq_pk PRIMARY KEY (localip))");
+		localIp = format("benchmark-%x",nanoTime());
+		if(blockSize > 0) {
+			ids = new UserLoginRecordIdAllocator(db.getDataSource(), localIp, blockSize);
+		}
+	}
+
+	@TearDown
+	public void removeRecords() throws SQLException {
+		try {
+			db.execute(format("DELETE FROM auth.user_login_audit_log WHERE localip = '%s'",localIp),
+					   format("DELETE FROM auth.user_login_audit_log_seq WHERE localip = '%s'",localIp));
+		} finally {
+			db.close();
+		}
+	}
+
+	@Benchmark
+	public long writeRecord(Conflicts conflicts) throws SQLException {
+		if(blockSize == 0) {
+			return writeRecordWithMaxId(conflicts);
+		}
+		long id = ids.nextId();
+		try(Connection con = db.getDataSource().getConnection()){
+			insert(con, id);
+		}
+		return id;
+	}
+
+	private long writeRecordWithMaxId(Conflicts conflicts) throws SQLException {
+		try(Connection con = db.getDataSource().getConnection()){
+			con.setAutoCommit(false);
+			try {
+				while(true) {
+					try {
+						long id = selectMaxId(con) + 1;
+						insert(con, id);
+						con.commit();
+						return id;
+					} catch (SQLException e) {
+						con.rollback();
+						if(!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+							throw e;
+						}
+						conflicts.conflicts++;
+					}
+				}
+			} finally {
+				con.setAutoCommit(true);
+			}
+		}
+	}
+
+	private long selectMaxId(Connection con) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(SELECT_MAX)){
+			stmt.setString(1, localIp);
+			try(ResultSet rs = stmt.executeQuery()){
+				rs.next();
+				return rs.getLong(1);
+			}
+		}
+	}
+
+	private void insert(Connection con, long id) throws SQLException {
+		try(PreparedStatement stmt = con.prepareStatement(INSERT_RECORD)){
+			stmt.setLong(1, id);
+			stmt.setString(2, localIp);
+			stmt.setTimestamp(3, new Timestamp(currentTimeMillis()));
+			stmt.setLong(4, id-1);
+			stmt.executeUpdate();
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks;
+
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.leitstand.security.auth.search.SearchFilter;
+import io.leitstand.security.auth.search.SearchFilter.MatchMode;
+
+/**
+ * Measures the throughput of the user search on a table with one million users.
+ * <p>
+ * The benchmark runs the query of the <code>DefaultUserService</code> against the <code>benchmark.userdata</code> table,
+ * which has the columns of the <code>auth.userdata</code> table read by the user search.
+ * The user IDs are <code>user0000001</code> to <code>user1000000</code> and the benchmark searches for <code>user01234</code>.
+ * Hence prefix, substring and regular expression searches find the same 100 users.
+ * The <code>index</code> parameter selects the indexes of the trial:
+ * <ul>
+ * <li><code>none</code> drops all indexes,</li>
+ * <li><code>prefix</code> creates the B-tree indexes for prefix searches and</li>
+ * <li><code>trigram</code> creates the trigram indexes for substring searches, which requires the <code>pg_trgm</code> extension.</li>
+ * </ul>
+ * The table is populated once and kept for subsequent runs.
+ * The benchmark requires a PostgreSQL database, see {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations=2, time=5)
+@Measurement(iterations=3, time=10)
+@Fork(1)
+public class UserSearchDatabaseBenchmark {
+
+	private static final String FILTER = "user01234";
+	private static final String FIND_USERS = "SELECT uuid, userid, email, givenname, surname FROM benchmark.userdata WHERE (%s OR %s) ORDER BY surname,givenname,userid";
+
+	@Param({"1000000"})
+	private int users;
+
+	@Param({"none","prefix","trigram"})
+	private String index;
+
+	@Param({"PREFIX","CONTAINS","REGEX"})
+	private MatchMode match;
+
+	private BenchmarkDatabase db;
+	private SearchFilter filter;
+	private String sql;
+
+	@Setup
+	public void initDatabase() throws SQLException {
+		db = BenchmarkDatabase.connect();
+		db.execute("CREATE SCHEMA IF NOT EXISTS benchmark",
+				   "CREATE TABLE IF NOT EXISTS benchmark.userdata ("+
+				   "uuid VARCHAR(36) NOT NULL, "+
+				   "userid VARCHAR(64) NOT NULL, "+
+				   "email VARCHAR(128), "+
+				   "givenname VARCHAR(64), "+
+				   "surname VARCHAR(64), "+
+				   "CONSTRAINT userdata_pk PRIMARY KEY (uuid))");
+		if(countUsers() != users) {
+			db.execute("TRUNCATE benchmark.userdata",
+					   format("INSERT INTO benchmark.userdata (uuid, userid, email, givenname, surname) "+
+							  "SELECT md5(n::text), "+
+							  "'user' || lpad(n::text,7,'0'), "+
+							  "'user' || n || '@example.com', "+
+							  "'Given' || (n %% 1000), "+
+							  "initcap(substr(md5((n*7)::text),1,10)) "+
+							  "FROM generate_series(1,%d) AS n",users));
+		}
+		db.execute("DROP INDEX IF EXISTS benchmark.userdata_userid_prefix_idx",
+				   "DROP INDEX IF EXISTS benchmark.userdata_surname_prefix_idx",
+				   "DROP INDEX IF EXISTS benchmark.userdata_userid_trgm_idx",
+				   "DROP INDEX IF EXISTS benchmark.userdata_surname_trgm_idx");
+		if("prefix".equals(index)) {
+			db.execute("CREATE INDEX userdata_userid_prefix_idx ON benchmark.userdata (lower(userid) text_pattern_ops)",
+					   "CREATE INDEX userdata_surname_prefix_idx ON benchmark.userdata (lower(surname) text_pattern_ops)");
+		} else if("trigram".equals(index)) {
+			db.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm",
+					   "CREATE INDEX userdata_userid_trgm_idx ON benchmark.userdata USING gin (lower(userid) gin_trgm_ops)",
+					   "CREATE INDEX userdata_surname_trgm_idx ON benchmark.userdata USING gin (lower(surname) gin_trgm_ops)");
+		}
+		db.execute("ANALYZE benchmark.userdata");
+		filter = searchFilter(FILTER, match);
+		sql = format(FIND_USERS,
+					 filter.toSqlPredicate("surname"),
+					 filter.toSqlPredicate("userid"));
+	}
+
+	@TearDown
+	public void closeDatabase() throws SQLException {
+		db.close();
+	}
+
+	private long countUsers() throws SQLException {
+		try(Connection con = db.getDataSource().getConnection();
+			Statement stmt = con.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM benchmark.userdata")){
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	@Benchmark
+	public int findUsers() throws SQLException {
+		try(Connection con = db.getDataSource().getConnection();
+			PreparedStatement stmt = con.prepareStatement(sql)){
+			stmt.setString(1, filter.toSqlArgument());
+			stmt.setString(2, filter.toSqlArgument());
+			int found = 0;
+			try(ResultSet rs = stmt.executeQuery()){
+				while(rs.next()) {
+					found++;
+				}
+			}
+			return found;
+		}
+	}
+
+}
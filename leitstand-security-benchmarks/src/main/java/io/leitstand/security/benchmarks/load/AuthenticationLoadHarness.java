@@ -0,0 +1,334 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.security.benchmarks.load.TrafficMix.trafficMix;
+import static java.lang.Integer.parseInt;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.json.stream.JsonGenerator.PRETTY_PRINTING;
+import static javax.security.enterprise.AuthenticationStatus.SEND_FAILURE;
+import static javax.security.enterprise.AuthenticationStatus.SUCCESS;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.security.enterprise.AuthenticationException;
+import javax.security.enterprise.AuthenticationStatus;
+import javax.servlet.http.HttpServletRequest;
+
+import com.sun.management.ThreadMXBean;
+
+import io.leitstand.security.users.model.PasswordService;
+
+/**
+ * Drives a configurable mix of cookie, HTTP Basic, bearer access key, bearer authorization code and invalid traffic
+ * through the {@link AuthenticationPipeline} from many threads.
+ * <p>
+ * The harness reports the throughput, the mean, p50, p99 and p99.9 latency and the allocated bytes per request for each traffic type.
+ * The report is printed and written as JSON file, so that runs can be compared.
+ * <p>
+ * The harness is configured by <code>setting=value</code> arguments:
+ * <ul>
+ * <li><code>threads</code> - the number of load generating threads, defaults to four times the number of processors</li>
+ * <li><code>warmup</code> - the warmup time in seconds, defaults to {@value #DEFAULT_WARMUP_SECONDS} seconds</li>
+ * <li><code>duration</code> - the measurement time in seconds, defaults to {@value #DEFAULT_DURATION_SECONDS} seconds</li>
+ * <li><code>mix</code> - the {@link TrafficMix}, defaults to <code>{@value #DEFAULT_MIX}</code></li>
+ * <li><code>users</code> - the number of users, defaults to {@value #DEFAULT_USERS}</li>
+ * <li><code>keys</code> - the number of API access keys, defaults to {@value #DEFAULT_ACCESS_KEYS}</li>
+ * <li><code>iterations</code> - the number of iterations to hash passwords, defaults to {@value PasswordService#ITERATIONS}</li>
+ * <li><code>output</code> - the JSON report file, defaults to <code>{@value #DEFAULT_OUTPUT}</code></li>
+ * </ul>
+ * Latencies are measured around the authentication mechanism invocation only. 
+ * The creation of the request and response objects is not measured.
+ * Allocations are measured by the per-thread allocation counter of the JVM and are not reported if the JVM does not support this counter.
+ */
+public final class AuthenticationLoadHarness {
+
+	private static final Logger LOG = Logger.getLogger(AuthenticationLoadHarness.class.getName());
+	static final int DEFAULT_WARMUP_SECONDS = 20;
+	static final int DEFAULT_DURATION_SECONDS = 60;
+	static final String DEFAULT_MIX = "cookie=60,basic=15,accesskey=15,code=5,invalid=5";
+	static final int DEFAULT_USERS = 100;
+	static final int DEFAULT_ACCESS_KEYS = 100;
+	static final String DEFAULT_OUTPUT = "auth-load.json";
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Runs the load harness.
+	 * @param args - the harness settings as <code>setting=value</code> pairs
+	 * @throws Exception if the load test failed
+	 */
+	public static void main(String[] args) throws Exception {
+		Properties settings = new Properties();
+		for(String arg : args) {
+			int separator = arg.indexOf('=');
+			if(separator < 0) {
+				throw new IllegalArgumentException(format("Invalid setting %s. Expected setting=value.", arg));
+			}
+			settings.setProperty(arg.substring(0, separator), arg.substring(separator+1));
+		}
+		new AuthenticationLoadHarness(settings).run();
+	}
+
+	private static boolean isExpected(TrafficType type, AuthenticationStatus status) {
+		return type.isValid() ? status == SUCCESS : status == SEND_FAILURE;
+	}
+
+	private static long allocatedBytes(long threadId) {
+		return THREADS.getThreadAllocatedBytes(threadId);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 10) / 10.0;
+	}
+
+	private static double micros(double nanos) {
+		return round(nanos / 1000);
+	}
+
+	/**
+	 * A load generating thread. 
+	 * Every worker records into its own statistics to avoid contention between the workers.
+	 */
+	private final class Worker extends Thread {
+
+		private final TrafficStatistics[] statistics = new TrafficStatistics[TrafficType.values().length];
+
+		Worker(int index){
+			super(format("loadtest-%d", index));
+			for(int i=0; i < statistics.length; i++) {
+				statistics[i] = new TrafficStatistics();
+			}
+		}
+
+		@Override
+		public void run() {
+			Random random = ThreadLocalRandom.current();
+			long threadId = currentThread().getId();
+			long overhead = allocationOverhead(threadId);
+			while(!stopped) {
+				TrafficType type = mix.next(random);
+				HttpServletRequest request = pipeline.newRequest(type, random);
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				long bytes = allocationCounter ? allocatedBytes(threadId) : 0;
+				long start = nanoTime();
+				AuthenticationStatus status;
+				try {
+					status = pipeline.authenticate(request, response);
+				} catch (AuthenticationException e) {
+					LOG.fine(() -> format("Authentication failed: %s", e.getMessage()));
+					status = SEND_FAILURE;
+				}
+				long nanos = nanoTime() - start;
+				if(allocationCounter) {
+					bytes = allocatedBytes(threadId) - bytes - overhead;
+				}
+				if(measuring) {
+					statistics[type.ordinal()].record(nanos, bytes, status, isExpected(type, status));
+				}
+			}
+		}
+
+		private long allocationOverhead(long threadId) {
+			if(!allocationCounter) {
+				return 0;
+			}
+			// Some JVMs allocate when reading the allocation counter.
+			long overhead = Long.MAX_VALUE;
+			for(int i=0; i < 1000; i++) {
+				long before = allocatedBytes(threadId);
+				overhead = Math.min(overhead, allocatedBytes(threadId) - before);
+			}
+			return overhead;
+		}
+
+		TrafficStatistics getStatistics(TrafficType type) {
+			return statistics[type.ordinal()];
+		}
+
+	}
+
+	private final int threads;
+	private final int warmup;
+	private final int duration;
+	private final TrafficMix mix;
+	private final int users;
+	private final int accessKeys;
+	private final int iterations;
+	private final Path output;
+	private final boolean allocationCounter;
+	private AuthenticationPipeline pipeline;
+	private volatile boolean measuring;
+	private volatile boolean stopped;
+
+	AuthenticationLoadHarness(Properties settings) {
+		this.threads = parseInt(settings.getProperty("threads", String.valueOf(4 * getRuntime().availableProcessors())));
+		this.warmup = parseInt(settings.getProperty("warmup", String.valueOf(DEFAULT_WARMUP_SECONDS)));
+		this.duration = parseInt(settings.getProperty("duration", String.valueOf(DEFAULT_DURATION_SECONDS)));
+		this.mix = trafficMix(settings.getProperty("mix", DEFAULT_MIX));
+		this.users = parseInt(settings.getProperty("users", String.valueOf(DEFAULT_USERS)));
+		this.accessKeys = parseInt(settings.getProperty("keys", String.valueOf(DEFAULT_ACCESS_KEYS)));
+		this.iterations = parseInt(settings.getProperty("iterations", String.valueOf(PasswordService.ITERATIONS)));
+		this.output = Paths.get(settings.getProperty("output", DEFAULT_OUTPUT));
+		this.allocationCounter = THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Runs the load test and writes the report.
+	 * @throws Exception if the load test failed or the report cannot be written
+	 */
+	void run() throws Exception {
+		LOG.info(() -> format("Creating authentication pipeline with %d users and %d access keys.", users, accessKeys));
+		pipeline = new AuthenticationPipeline(users, accessKeys, iterations);
+
+		ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "loadtest-codes");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(pipeline::refreshAuthorizationCodes, 30, 30, SECONDS);
+
+		Worker[] workers = new Worker[threads];
+		for(int i=0; i < threads; i++) {
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+		LOG.info(() -> format("Warming up %d threads with %s for %d seconds.", threads, mix, warmup));
+		SECONDS.sleep(warmup);
+		long start = nanoTime();
+		measuring = true;
+		LOG.info(() -> format("Measuring for %d seconds.", duration));
+		SECONDS.sleep(duration);
+		measuring = false;
+		long elapsed = nanoTime() - start;
+		stopped = true;
+		for(Worker worker : workers) {
+			worker.join();
+		}
+		scheduler.shutdownNow();
+
+		JsonObject report = report(workers, elapsed);
+		Path parent = output.toAbsolutePath().getParent();
+		if(parent != null) {
+			Files.createDirectories(parent);
+		}
+		try(Writer writer = Files.newBufferedWriter(output, UTF_8);
+			JsonWriter json = Json.createWriterFactory(Collections.singletonMap(PRETTY_PRINTING, true))
+								  .createWriter(writer)){
+			json.writeObject(report);
+		}
+		print(report);
+		LOG.info(() -> format("Report written to %s.", output.toAbsolutePath()));
+	}
+
+	private JsonObject report(Worker[] workers, long elapsed) {
+		double seconds = (double) elapsed / NANOSECONDS.convert(1, SECONDS);
+		TrafficStatistics total = new TrafficStatistics();
+		JsonObjectBuilder results = Json.createObjectBuilder();
+		for(TrafficType type : TrafficType.values()) {
+			if(!mix.contains(type)) {
+				continue;
+			}
+			TrafficStatistics statistics = new TrafficStatistics();
+			for(Worker worker : workers) {
+				statistics.merge(worker.getStatistics(type));
+			}
+			total.merge(statistics);
+			results.add(type.getName(), result(statistics, seconds));
+		}
+		results.add("total", result(total, seconds));
+
+		JsonObjectBuilder weights = Json.createObjectBuilder();
+		for(Map.Entry<TrafficType,Integer> weight : mix.getWeights().entrySet()) {
+			weights.add(weight.getKey().getName(), weight.getValue());
+		}
+
+		return Json.createObjectBuilder()
+				   .add("date", Instant.now().toString())
+				   .add("environment", Json.createObjectBuilder()
+						   				   .add("processors", getRuntime().availableProcessors())
+						   				   .add("max_heap_bytes", getRuntime().maxMemory())
+						   				   .add("java_version", System.getProperty("java.version"))
+						   				   .add("java_vm", System.getProperty("java.vm.name"))
+						   				   .add("os", System.getProperty("os.name")+" "+System.getProperty("os.version")))
+				   .add("settings", Json.createObjectBuilder()
+						   				.add("threads", threads)
+						   				.add("warmup_seconds", warmup)
+						   				.add("duration_seconds", round(seconds))
+						   				.add("users", users)
+						   				.add("access_keys", accessKeys)
+						   				.add("iterations", iterations)
+						   				.add("mix", weights))
+				   .add("results", results)
+				   .build();
+	}
+
+	private JsonObjectBuilder result(TrafficStatistics statistics, double seconds) {
+		LatencyHistogram latencies = statistics.getLatencies();
+		JsonObjectBuilder outcomes = Json.createObjectBuilder();
+		for(Map.Entry<AuthenticationStatus,Long> outcome : statistics.getOutcomes().entrySet()) {
+			outcomes.add(outcome.getKey().name(), outcome.getValue());
+		}
+		JsonObjectBuilder result = Json.createObjectBuilder()
+									   .add("requests", statistics.getRequests())
+									   .add("throughput", round(statistics.getRequests() / seconds))
+									   .add("latency_us", Json.createObjectBuilder()
+											   				  .add("mean", micros(latencies.getMean()))
+											   				  .add("p50", micros(latencies.getPercentile(50)))
+											   				  .add("p99", micros(latencies.getPercentile(99)))
+											   				  .add("p999", micros(latencies.getPercentile(99.9)))
+											   				  .add("max", micros(latencies.getMax())));
+		if(allocationCounter) {
+			result.add("allocated_bytes_per_request", round(statistics.getAllocatedBytesPerRequest()));
+		} else {
+			result.addNull("allocated_bytes_per_request");
+		}
+		return result.add("outcomes", outcomes)
+					 .add("unexpected_outcomes", statistics.getUnexpectedOutcomes());
+	}
+
+	private void print(JsonObject report) {
+		System.out.printf("%-10s %10s %12s %10s %10s %10s %10s %12s %10s%n",
+						  "type", "requests", "req/s", "mean us", "p50 us", "p99 us", "p99.9 us", "bytes/req", "unexpected");
+		JsonObject results = report.getJsonObject("results");
+		for(String type : results.keySet()) {
+			JsonObject result = results.getJsonObject(type);
+			JsonObject latency = result.getJsonObject("latency_us");
+			System.out.printf("%-10s %10d %12.1f %10.1f %10.1f %10.1f %10.1f %12s %10d%n",
+							  type,
+							  result.getJsonNumber("requests").longValue(),
+							  result.getJsonNumber("throughput").doubleValue(),
+							  latency.getJsonNumber("mean").doubleValue(),
+							  latency.getJsonNumber("p50").doubleValue(),
+							  latency.getJsonNumber("p99").doubleValue(),
+							  latency.getJsonNumber("p999").doubleValue(),
+							  result.isNull("allocated_bytes_per_request") ? "n/a" : result.get("allocated_bytes_per_request").toString(),
+							  result.getJsonNumber("unexpected_outcomes").longValue());
+		}
+	}
+
+}
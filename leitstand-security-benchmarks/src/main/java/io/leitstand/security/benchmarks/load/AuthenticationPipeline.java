@@ -0,0 +1,314 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.security.auth.accesskey.AccessKeyId.randomAccessKeyId;
+import static io.leitstand.security.auth.accesskey.ApiAccessKey.newApiAccessKey;
+import static io.leitstand.security.auth.http.AccessToken.newAccessToken;
+import static io.leitstand.security.benchmarks.load.Components.inject;
+import static io.leitstand.security.benchmarks.load.Components.invoke;
+import static io.leitstand.security.benchmarks.load.Components.newComponent;
+import static io.leitstand.security.benchmarks.load.MockHttpServletRequest.withAuthorization;
+import static io.leitstand.security.benchmarks.load.MockHttpServletRequest.withCookie;
+import static io.leitstand.security.benchmarks.load.MockHttpServletRequest.withoutCredentials;
+import static io.leitstand.security.benchmarks.load.Stubs.stub;
+import static io.leitstand.security.benchmarks.load.Stubs.unsupported;
+import static io.leitstand.security.crypto.SecureRandomPool.randomBytes;
+import static io.leitstand.security.sso.oauth2.AuthorizationCode.newAuthorizationCode;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Base64.getEncoder;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static javax.security.enterprise.AuthenticationStatus.SUCCESS;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import javax.enterprise.inject.Instance;
+import javax.security.enterprise.AuthenticationException;
+import javax.security.enterprise.AuthenticationStatus;
+import javax.security.enterprise.authentication.mechanism.http.HttpMessageContext;
+import javax.security.enterprise.credential.Credential;
+import javax.security.enterprise.credential.UsernamePasswordCredential;
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+import javax.security.enterprise.identitystore.IdentityStore;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.accesskeys.auth.AccessKeyAuthenticator;
+import io.leitstand.security.accesskeys.auth.AccessKeyEncodingService;
+import io.leitstand.security.accesskeys.auth.ActiveAccessKeys;
+import io.leitstand.security.accesskeys.auth.ApiAccessKeyManager;
+import io.leitstand.security.accesskeys.auth.DecodedAccessKeyCache;
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+import io.leitstand.security.auth.accesskey.ApiAccessKey;
+import io.leitstand.security.auth.accesskey.ApiAccessKeyDecoder;
+import io.leitstand.security.auth.http.AccessTokenCache;
+import io.leitstand.security.auth.http.AccessTokenManager;
+import io.leitstand.security.auth.http.BasicAuthManager;
+import io.leitstand.security.auth.http.CookieManager;
+import io.leitstand.security.auth.http.LeitstandHttpAuthMechanism;
+import io.leitstand.security.auth.http.VerifiedCredentialCache;
+import io.leitstand.security.auth.jwt.JsonWebTokenConfig;
+import io.leitstand.security.auth.jwt.JsonWebTokenDecoder;
+import io.leitstand.security.auth.jwt.JsonWebTokenEncoder;
+import io.leitstand.security.auth.jwt.JwtSignatureService;
+import io.leitstand.security.auth.user.UserRegistry;
+import io.leitstand.security.crypto.Secret;
+import io.leitstand.security.sso.oauth2.AuthorizationCodeManager;
+
+/**
+ * The authentication pipeline under test and the credentials presented to it.
+ * <p>
+ * The pipeline consists of the {@link LeitstandHttpAuthMechanism} and the 
+ * {@link CookieManager}, {@link BasicAuthManager}, {@link ApiAccessKeyManager} and {@link AuthorizationCodeManager}
+ * access token managers including their caches.
+ * The user registry is replaced by the {@link InMemoryUserRegistry} 
+ * and the access key tables are stored in the {@link InMemoryDatabase}.
+ * <p>
+ * The pipeline creates a pool of valid credentials for every traffic type.
+ * Access tokens expire after one day and access keys were created one day ago, 
+ * so that neither access token renewals nor database lookups of recently created access keys distort the measurement.
+ * Authorization codes expire after 60 seconds and must be refreshed periodically by {@link #refreshAuthorizationCodes()}.
+ * <p>
+ * Invalid traffic is evenly distributed among 
+ * cookies with a forged signature, 
+ * Basic credentials with a wrong password,
+ * access keys with a forged signature and
+ * requests without any credentials.
+ */
+final class AuthenticationPipeline {
+
+	private static final String ACCESS_TOKEN_COOKIE = getSystemProperty("rbms.access.token.cookie","rtb-access");
+	private static final String URI = "/api/v1/users";
+	private static final String[] ROLES = {"Operator","Administrator"};
+
+	private static JsonWebTokenConfig jwtConfig(Secret secret) {
+		return new JsonWebTokenConfig() {
+			@Override
+			public Secret getSecret() {
+				return secret;
+			}
+
+			@Override
+			public Duration getTimeToLive() {
+				return Duration.ofHours(1);
+			}
+
+			@Override
+			public Duration getRefreshInterval() {
+				return Duration.ofSeconds(60);
+			}
+		};
+	}
+
+	private static String basic(UserId userId, String password) {
+		return "Basic "+getEncoder().encodeToString((userId+":"+password).getBytes(UTF_8));
+	}
+
+	private static String bearer(String token) {
+		return "Bearer "+token;
+	}
+
+	private static <T> T pick(T[] values, Random random) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private final LeitstandHttpAuthMechanism mechanism;
+	private final HttpMessageContext context;
+	private final JsonWebTokenEncoder encoder;
+	private final UserId[] users;
+	private final String[] cookies;
+	private final String[] basics;
+	private final String[] accessKeys;
+	private final String[] forgedCookies;
+	private final String[] wrongPasswords;
+	private final String[] forgedAccessKeys;
+	private volatile String[] authorizationCodes;
+
+	/**
+	 * Creates the authentication pipeline.
+	 * @param userCount - the number of users
+	 * @param accessKeyCount - the number of API access keys
+	 * @param iterations - the number of iterations to hash passwords
+	 * @throws SQLException if the access key tables cannot be created
+	 */
+	AuthenticationPipeline(int userCount, int accessKeyCount, int iterations) throws SQLException {
+		JsonWebTokenConfig config = jwtConfig(new Secret(randomBytes(32)));
+		JsonWebTokenConfig forgedConfig = jwtConfig(new Secret(randomBytes(32)));
+		this.encoder = new JsonWebTokenEncoder(new JwtSignatureService(config));
+		JsonWebTokenDecoder decoder = new JsonWebTokenDecoder(new JwtSignatureService(config));
+
+		// Users and cookies
+		InMemoryUserRegistry registry = new InMemoryUserRegistry(iterations);
+		JsonWebTokenEncoder forgedEncoder = new JsonWebTokenEncoder(new JwtSignatureService(forgedConfig));
+		Date expiry = new Date(currentTimeMillis()+DAYS.toMillis(1));
+		this.users = new UserId[userCount];
+		this.cookies = new String[userCount];
+		this.basics = new String[userCount];
+		this.forgedCookies = new String[userCount];
+		this.wrongPasswords = new String[userCount];
+		for(int i=0; i < userCount; i++) {
+			UserId userId = UserId.valueOf(format("loadtest%05d",i));
+			String password = format("password-%05d",i);
+			registry.addUser(userId, password, ROLES);
+			users[i] = userId;
+			basics[i] = basic(userId, password);
+			wrongPasswords[i] = basic(userId, "wrong-"+password);
+			cookies[i] = encoder.encode(newAccessToken()
+										.withUserId(userId)
+										.withRoles(ROLES)
+										.withDateExpiry(expiry)
+										.build());
+			forgedCookies[i] = forgedEncoder.encode(newAccessToken()
+											  		.withUserId(userId)
+											  		.withRoles(ROLES)
+											  		.withDateExpiry(expiry)
+											  		.build());
+		}
+
+		CookieManager cookieManager = new CookieManager();
+		inject(cookieManager, JsonWebTokenDecoder.class, decoder);
+		inject(cookieManager, JsonWebTokenEncoder.class, encoder);
+		inject(cookieManager, UserRegistry.class, registry);
+		inject(cookieManager, JsonWebTokenConfig.class, config);
+		inject(cookieManager, AccessTokenCache.class, new AccessTokenCache());
+
+		IdentityStore identityStore = new IdentityStore() {
+			@Override
+			public CredentialValidationResult validate(Credential credential) {
+				return registry.validateCredentials((UsernamePasswordCredential) credential);
+			}
+		};
+		BasicAuthManager basicManager = newComponent(BasicAuthManager.class, 
+													 identityStore, 
+													 new VerifiedCredentialCache());
+
+		// API access keys
+		AccessKeyEncodingService keyEncoder = new AccessKeyEncodingService(config);
+		AccessKeyEncodingService forgedKeyEncoder = new AccessKeyEncodingService(forgedConfig);
+		Date dateCreated = new Date(currentTimeMillis()-DAYS.toMillis(1));
+		List<AccessKeyId> keyIds = new ArrayList<>(accessKeyCount);
+		this.accessKeys = new String[accessKeyCount];
+		this.forgedAccessKeys = new String[accessKeyCount];
+		for(int i=0; i < accessKeyCount; i++) {
+			ApiAccessKey key = newApiAccessKey()
+							   .withId(randomAccessKeyId())
+							   .withUserId(UserId.valueOf(format("loadtest-key%05d",i)))
+							   .withMethods("GET")
+							   .withDateCreated(dateCreated)
+							   .build();
+			keyIds.add(key.getId());
+			accessKeys[i] = bearer(keyEncoder.encode(key));
+			forgedAccessKeys[i] = bearer(forgedKeyEncoder.encode(key));
+		}
+		InMemoryDatabase database = new InMemoryDatabase("loadtest");
+		database.addAccessKeys(keyIds);
+		DatabaseService db = database.getDatabaseService();
+		DecodedAccessKeyCache decodedKeys = new DecodedAccessKeyCache();
+		ActiveAccessKeys activeKeys = newComponent(ActiveAccessKeys.class, db, decodedKeys);
+		invoke(activeKeys, "refreshSnapshot");
+		AccessKeyAuthenticator authenticator = new AccessKeyAuthenticator();
+		inject(authenticator, DatabaseService.class, db);
+		inject(authenticator, ActiveAccessKeys.class, activeKeys);
+		invoke(authenticator, "initStateCheckCache");
+
+		ApiAccessKeyManager accessKeyManager = new ApiAccessKeyManager();
+		inject(accessKeyManager, ApiAccessKeyDecoder.class, keyEncoder);
+		inject(accessKeyManager, AccessKeyAuthenticator.class, authenticator);
+		inject(accessKeyManager, DecodedAccessKeyCache.class, decodedKeys);
+
+		// Authorization codes
+		AuthorizationCodeManager codeManager = new AuthorizationCodeManager();
+		inject(codeManager, JsonWebTokenDecoder.class, decoder);
+		refreshAuthorizationCodes();
+
+		// Authentication mechanism
+		List<AccessTokenManager> managers = asList(cookieManager, 
+												   basicManager, 
+												   accessKeyManager, 
+												   codeManager);
+		this.mechanism = new LeitstandHttpAuthMechanism();
+		inject(mechanism, Instance.class, stub(Instance.class, (method, args) -> {
+			if("iterator".equals(method)) {
+				return managers.iterator();
+			}
+			throw unsupported(Instance.class, method, args);
+		}));
+		invoke(mechanism, "initDispatchTable");
+		this.context = stub(HttpMessageContext.class, (method, args) -> {
+			if("notifyContainerAboutLogin".equals(method)) {
+				return SUCCESS;
+			}
+			throw unsupported(HttpMessageContext.class, method, args);
+		});
+	}
+
+	/**
+	 * Replaces all authorization codes by new codes, because authorization codes expire after 60 seconds.
+	 */
+	void refreshAuthorizationCodes() {
+		String[] codes = new String[users.length];
+		for(int i=0; i < users.length; i++) {
+			codes[i] = bearer(encoder.encode(newAuthorizationCode()
+											 .withUserId(users[i])
+											 .withClientId("loadtest")
+											 .build()));
+		}
+		this.authorizationCodes = codes;
+	}
+
+	/**
+	 * Creates a request of the given traffic type with credentials randomly selected from the credential pool.
+	 * @param type - the traffic type
+	 * @param random - the random number generator of the calling thread
+	 * @return the HTTP request
+	 */
+	HttpServletRequest newRequest(TrafficType type, Random random) {
+		switch(type) {
+			case COOKIE: 
+				return withCookie(URI, new Cookie(ACCESS_TOKEN_COOKIE, pick(cookies, random)));
+			case BASIC: 
+				return withAuthorization(URI, pick(basics, random));
+			case ACCESS_KEY: 
+				return withAuthorization(URI, pick(accessKeys, random));
+			case AUTHORIZATION_CODE: 
+				return withAuthorization(URI, pick(authorizationCodes, random));
+			case INVALID:
+			default:
+				switch(random.nextInt(4)) {
+					case 0: 
+						return withCookie(URI, new Cookie(ACCESS_TOKEN_COOKIE, pick(forgedCookies, random)));
+					case 1: 
+						return withAuthorization(URI, pick(wrongPasswords, random));
+					case 2: 
+						return withAuthorization(URI, pick(forgedAccessKeys, random));
+					default: 
+						return withoutCredentials(URI);
+				}
+		}
+	}
+
+	/**
+	 * Passes the given request to the authentication mechanism.
+	 * @param request - the HTTP request
+	 * @param response - the HTTP response
+	 * @return the authentication status
+	 * @throws AuthenticationException if the authentication mechanism failed
+	 */
+	AuthenticationStatus authenticate(HttpServletRequest request, HttpServletResponse response) throws AuthenticationException {
+		return mechanism.validateRequest(request, response, context);
+	}
+
+}
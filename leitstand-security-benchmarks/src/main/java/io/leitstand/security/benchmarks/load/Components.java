@@ -0,0 +1,129 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static java.lang.String.format;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Wires the CDI components of the authentication pipeline without a CDI container.
+ * <p>
+ * The load harness creates the components the same way as the unit tests do with Mockito's <code>@InjectMocks</code>:
+ * dependencies are assigned to the injection points by reflection and 
+ * life cycle methods are invoked explicitly.
+ */
+final class Components {
+
+	/**
+	 * Creates a component by means of a constructor with the given arguments.
+	 * The constructor can be non-public.
+	 * @param type - the component type
+	 * @param args - the constructor arguments
+	 * @return the created component
+	 * @throws IllegalStateException if no matching constructor exists or the constructor failed
+	 */
+	static <T> T newComponent(Class<T> type, Object... args) {
+		for(Constructor<?> constructor : type.getDeclaredConstructors()) {
+			if(accepts(constructor.getParameterTypes(), args)) {
+				try {
+					constructor.setAccessible(true);
+					return type.cast(constructor.newInstance(args));
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(format("Cannot create %s: %s", type.getName(), e.getMessage()), e);
+				}
+			}
+		}
+		throw new IllegalStateException(format("No matching constructor for %s", type.getName()));
+	}
+
+	/**
+	 * Assigns the given dependency to all fields of the given type declared by the component or its superclasses.
+	 * @param component - the component
+	 * @param type - the declared type of the injection point
+	 * @param dependency - the dependency
+	 * @return the component
+	 * @throws IllegalStateException if the component does not declare an injection point of the given type
+	 */
+	static <T> T inject(T component, Class<?> type, Object dependency) {
+		boolean injected = false;
+		for(Class<?> c = component.getClass(); c != Object.class; c = c.getSuperclass()) {
+			for(Field field : c.getDeclaredFields()) {
+				if(field.getType() == type) {
+					try {
+						field.setAccessible(true);
+						field.set(component, dependency);
+						injected = true;
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException(format("Cannot inject %s: %s", field, e.getMessage()), e);
+					}
+				}
+			}
+		}
+		if(!injected) {
+			throw new IllegalStateException(format("%s has no %s injection point", 
+												   component.getClass().getName(), 
+												   type.getName()));
+		}
+		return component;
+	}
+
+	/**
+	 * Invokes a life cycle method without parameters, e.g. a <code>@PostConstruct</code> method.
+	 * The method can be non-public.
+	 * @param component - the component
+	 * @param name - the method name
+	 * @throws IllegalStateException if the method does not exist or failed
+	 */
+	static void invoke(Object component, String name) {
+		for(Class<?> c = component.getClass(); c != Object.class; c = c.getSuperclass()) {
+			try {
+				Method method = c.getDeclaredMethod(name);
+				method.setAccessible(true);
+				method.invoke(component);
+				return;
+			} catch (NoSuchMethodException e) {
+				// Continue with superclass.
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(format("Cannot invoke %s.%s: %s", 
+													   c.getName(), 
+													   name, 
+													   e.getMessage()), e);
+			}
+		}
+		throw new IllegalStateException(format("%s has no %s method", component.getClass().getName(), name));
+	}
+
+	private static boolean accepts(Class<?>[] parameters, Object[] args) {
+		if(parameters.length != args.length) {
+			return false;
+		}
+		for(int i=0; i < parameters.length; i++) {
+			if(!wrap(parameters[i]).isInstance(args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Class<?> wrap(Class<?> type){
+		if(type == int.class) {
+			return Integer.class;
+		}
+		if(type == long.class) {
+			return Long.class;
+		}
+		if(type == boolean.class) {
+			return Boolean.class;
+		}
+		return type;
+	}
+
+	private Components() {
+		// No instances allowed
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.security.auth.accesskey.AccessKeyId;
+
+/**
+ * An in-memory H2 database with the access key tables read by the access key validation.
+ * <p>
+ * The database stands in for the PostgreSQL database.
+ * Only the columns queried by the access key validation are created.
+ */
+final class InMemoryDatabase {
+
+	private final JdbcDataSource ds;
+
+	/**
+	 * Creates an in-memory database and the access key tables.
+	 * @param name - the database name
+	 * @throws SQLException if the tables cannot be created
+	 */
+	InMemoryDatabase(String name) throws SQLException {
+		ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:"+name+";DB_CLOSE_DELAY=-1");
+		try(Connection c = ds.getConnection();
+			Statement stmt = c.createStatement()){
+			stmt.execute("CREATE SCHEMA auth");
+			stmt.execute("CREATE TABLE auth.accesskey (uuid CHARACTER VARYING(36) PRIMARY KEY)");
+			stmt.execute("CREATE TABLE auth.accesskey_event (seq BIGINT AUTO_INCREMENT PRIMARY KEY, "+
+														   "uuid CHARACTER VARYING(36) NOT NULL, "+
+														   "type CHARACTER VARYING(16) NOT NULL, "+
+														   "tsevent TIMESTAMP NOT NULL)");
+		}
+	}
+
+	/**
+	 * Adds the given access keys to the <code>auth.accesskey</code> table.
+	 * @param keys - the IDs of the access keys to be added
+	 * @throws SQLException if the access keys cannot be added
+	 */
+	void addAccessKeys(Collection<AccessKeyId> keys) throws SQLException {
+		try(Connection c = ds.getConnection();
+			PreparedStatement stmt = c.prepareStatement("INSERT INTO auth.accesskey (uuid) VALUES (?)")){
+			for(AccessKeyId key : keys) {
+				stmt.setString(1, key.toString());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Returns a <code>DatabaseService</code> for this database.
+	 * @return a <code>DatabaseService</code> for this database.
+	 */
+	DatabaseService getDatabaseService() {
+		return new DatabaseService(ds);
+	}
+
+}
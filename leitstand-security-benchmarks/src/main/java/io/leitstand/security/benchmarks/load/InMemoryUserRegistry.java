@@ -0,0 +1,94 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.security.auth.user.UserInfo.newUserInfo;
+import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.enterprise.credential.Password;
+import javax.security.enterprise.credential.UsernamePasswordCredential;
+import javax.security.enterprise.identitystore.CredentialValidationResult;
+
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.UserInfo;
+import io.leitstand.security.auth.user.UserRegistry;
+import io.leitstand.security.users.model.PasswordService;
+
+/**
+ * A {@link UserRegistry} that keeps all users in memory.
+ * <p>
+ * The registry stands in for the database-backed user registry. 
+ * Passwords are stored as salted hashes and verified by the {@link PasswordService}, 
+ * such that the password verification costs the same as in production.
+ */
+final class InMemoryUserRegistry implements UserRegistry {
+
+	private static final class User {
+
+		private final UserInfo info;
+		private final byte[] salt;
+		private final byte[] hash;
+
+		User(UserInfo info, byte[] salt, byte[] hash){
+			this.info = info;
+			this.salt = salt;
+			this.hash = hash;
+		}
+
+	}
+
+	private final PasswordService passwords = new PasswordService();
+	private final Map<UserId,User> users = new ConcurrentHashMap<>();
+	private final int iterations;
+
+	/**
+	 * Creates an <code>InMemoryUserRegistry</code>.
+	 * @param iterations - the number of iterations to hash passwords
+	 */
+	InMemoryUserRegistry(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Adds a user to the registry.
+	 * @param userId - the user ID
+	 * @param password - the user's password
+	 * @param roles - the user's roles
+	 */
+	void addUser(UserId userId, String password, String... roles) {
+		byte[] salt = passwords.salt();
+		byte[] hash = passwords.hash(password.toCharArray(), salt, iterations);
+		users.put(userId, new User(newUserInfo()
+								   .withUserId(userId)
+								   .withRoles(roles)
+								   .build(),
+								   salt,
+								   hash));
+	}
+
+	@Override
+	public UserInfo getUserInfo(UserId userId) {
+		User user = users.get(userId);
+		return user != null ? user.info : null;
+	}
+
+	@Override
+	public CredentialValidationResult validateCredentials(UsernamePasswordCredential credentials) {
+		UserId userId = UserId.valueOf(credentials.getCaller());
+		Password password = credentials.getPassword();
+		User user = users.get(userId);
+		if(user == null) {
+			password.clear();
+			return INVALID_RESULT;
+		}
+		if(passwords.isExpectedPassword(password, user.salt, user.hash, iterations)) {
+			return new CredentialValidationResult(userId.toString(), user.info.getRoles());
+		}
+		return INVALID_RESULT;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.ceil;
+import static java.lang.Math.min;
+
+/**
+ * A histogram of latencies in nanoseconds.
+ * <p>
+ * Values below {@value #SUB_BUCKETS} are recorded exactly.
+ * Larger values are recorded in buckets of increasing width, 
+ * such that the relative error of a reported percentile is less than <code>1/{@value #SUB_BUCKETS}</code>.
+ * The histogram has a fixed size and recording a value does not allocate memory.
+ * <p>
+ * The <code>LatencyHistogram</code> is not thread-safe. 
+ * Every load generating thread records into its own histogram and the histograms are merged when the load test is completed.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	static int indexOf(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long highestValueOf(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long mantissa = SUB_BUCKETS + index % SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+	private long count;
+	private long sum;
+	private long max;
+
+	/**
+	 * Records a latency.
+	 * @param nanos - the latency in nanoseconds
+	 */
+	void record(long nanos) {
+		long value = nanos < 0 ? 0 : nanos;
+		counts[indexOf(value)]++;
+		count++;
+		sum += value;
+		if(value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all latencies recorded by the given histogram to this histogram.
+	 * @param other - the histogram to be merged
+	 */
+	void merge(LatencyHistogram other) {
+		for(int i=0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 * @return the number of recorded latencies.
+	 */
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean latency in nanoseconds.
+	 * @return the mean latency or <code>0</code> if no latency was recorded.
+	 */
+	double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Returns the maximum latency in nanoseconds.
+	 * @return the maximum latency or <code>0</code> if no latency was recorded.
+	 */
+	long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the latency in nanoseconds that is not exceeded by the given fraction of all recorded latencies.
+	 * @param percentile - the percentile between 0 and 100, e.g. <code>99.9</code>
+	 * @return the latency at the given percentile or <code>0</code> if no latency was recorded.
+	 */
+	long getPercentile(double percentile) {
+		if(count == 0) {
+			return 0;
+		}
+		long rank = (long) ceil(percentile / 100 * count);
+		long seen = 0;
+		for(int i=0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen >= rank && seen > 0) {
+				return min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.security.benchmarks.load.Stubs.unsupported;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * A HTTP request conveying the credentials generated by the load harness.
+ * <p>
+ * The request implements the methods used by the authentication mechanism and rejects all other invocations.
+ * A new request is created for every authentication attempt, 
+ * because the authentication mechanism stores the parsed <i>Authorization</i> header in the request attributes.
+ */
+final class MockHttpServletRequest extends HttpServletRequestWrapper {
+
+	private static final HttpServletRequest UNSUPPORTED = unsupported(HttpServletRequest.class);
+
+	/**
+	 * Creates a <code>GET</code> request with the given <i>Authorization</i> header.
+	 * @param uri - the request URI
+	 * @param authorization - the <i>Authorization</i> header
+	 * @return the HTTP request
+	 */
+	static MockHttpServletRequest withAuthorization(String uri, String authorization) {
+		return new MockHttpServletRequest(uri, authorization, null);
+	}
+
+	/**
+	 * Creates a <code>GET</code> request with the given cookie.
+	 * @param uri - the request URI
+	 * @param cookie - the cookie
+	 * @return the HTTP request
+	 */
+	static MockHttpServletRequest withCookie(String uri, Cookie cookie) {
+		return new MockHttpServletRequest(uri, null, new Cookie[] {cookie});
+	}
+
+	/**
+	 * Creates a <code>GET</code> request without any credentials.
+	 * @param uri - the request URI
+	 * @return the HTTP request
+	 */
+	static MockHttpServletRequest withoutCredentials(String uri) {
+		return new MockHttpServletRequest(uri, null, null);
+	}
+
+	private final String uri;
+	private final String authorization;
+	private final Cookie[] cookies;
+	private Map<String,Object> attributes;
+
+	private MockHttpServletRequest(String uri, String authorization, Cookie[] cookies) {
+		super(UNSUPPORTED);
+		this.uri = uri;
+		this.authorization = authorization;
+		this.cookies = cookies;
+	}
+
+	@Override
+	public String getMethod() {
+		return "GET";
+	}
+
+	@Override
+	public String getRequestURI() {
+		return uri;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		if("Authorization".equalsIgnoreCase(name)) {
+			return authorization;
+		}
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return cookies;
+	}
+
+	@Override
+	public boolean isSecure() {
+		return true;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes == null ? null : attributes.get(name);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if(attributes == null) {
+			attributes = new HashMap<>();
+		}
+		attributes.put(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		if(attributes != null) {
+			attributes.remove(name);
+		}
+	}
+
+}
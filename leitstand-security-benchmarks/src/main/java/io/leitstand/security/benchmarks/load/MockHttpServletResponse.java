@@ -0,0 +1,54 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.security.benchmarks.load.Stubs.unsupported;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A HTTP response to record the outcome of an authentication attempt.
+ * <p>
+ * The response implements the methods used by the authentication mechanism and rejects all other invocations.
+ * Headers and cookies are discarded.
+ */
+final class MockHttpServletResponse extends HttpServletResponseWrapper {
+
+	private static final HttpServletResponse UNSUPPORTED = unsupported(HttpServletResponse.class);
+
+	private int status = SC_OK;
+
+	MockHttpServletResponse() {
+		super(UNSUPPORTED);
+	}
+
+	@Override
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		// Headers are not evaluated by the load harness.
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		// Headers are not evaluated by the load harness.
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		// Cookies are not evaluated by the load harness.
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static java.lang.String.format;
+
+import java.lang.reflect.Proxy;
+import java.util.StringJoiner;
+import java.util.function.BiFunction;
+
+/**
+ * Creates stubs of interfaces that are too large to be implemented by the load harness.
+ * <p>
+ * A stub forwards all invocations to a function, which is called with the method name and the method arguments.
+ * The function returns the invocation result or throws an {@link UnsupportedOperationException} naming the refused invocation.
+ * Stubs are meant for rarely invoked methods only, because every invocation allocates the argument array.
+ */
+final class Stubs {
+
+	/**
+	 * Creates a stub that rejects all invocations.
+	 * @param type - the interface type
+	 * @return a stub of the interface
+	 */
+	static <T> T unsupported(Class<T> type) {
+		return stub(type, (method, args) -> {
+			throw unsupported(type, method, args);
+		});
+	}
+
+	/**
+	 * Creates the exception to reject an unsupported invocation.
+	 * The exception message names the refused invocation, 
+	 * e.g. <code>javax.servlet.http.HttpServletRequest.getSession(Boolean)</code>,
+	 * to tell which call of the authentication pipeline is not covered by the load harness.
+	 * @param type - the interface type
+	 * @param method - the method name
+	 * @param args - the method arguments or <code>null</code> if the method has no arguments
+	 * @return the exception to be thrown
+	 */
+	static UnsupportedOperationException unsupported(Class<?> type, String method, Object[] args) {
+		StringJoiner arguments = new StringJoiner(",");
+		if(args != null) {
+			for(Object arg : args) {
+				arguments.add(arg != null ? arg.getClass().getSimpleName() : "null");
+			}
+		}
+		return new UnsupportedOperationException(format("%s.%s(%s) is not supported by the load harness",
+													    type.getName(),
+													    method,
+													    arguments));
+	}
+
+	/**
+	 * Creates a stub that forwards all invocations to the given function.
+	 * @param type - the interface type
+	 * @param invocations - the function to process invocations
+	 * @return a stub of the interface
+	 */
+	static <T> T stub(Class<T> type, BiFunction<String,Object[],Object> invocations) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), 
+												new Class<?>[] {type}, 
+												(proxy, method, args) -> {
+													switch(method.getName()) {
+														case "toString": return type.getSimpleName()+" stub";
+														case "hashCode": return System.identityHashCode(proxy);
+														case "equals": return proxy == args[0];
+														default: return invocations.apply(method.getName(), args);
+													}
+												}));
+	}
+
+	private Stubs() {
+		// No instances allowed
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static io.leitstand.security.benchmarks.load.TrafficType.trafficType;
+import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The weighted mix of traffic types.
+ * <p>
+ * A mix is specified as comma-separated list of <code>type=weight</code> pairs, 
+ * e.g. <code>cookie=60,basic=20,accesskey=15,invalid=5</code>.
+ * The probability of a traffic type is its weight divided by the sum of all weights.
+ */
+final class TrafficMix {
+
+	/**
+	 * Parses a traffic mix.
+	 * @param mix - the traffic mix
+	 * @return the parsed traffic mix
+	 * @throws IllegalArgumentException if the traffic mix is invalid
+	 */
+	static TrafficMix trafficMix(String mix) {
+		Map<TrafficType,Integer> weights = new EnumMap<>(TrafficType.class);
+		for(String entry : mix.split(",")) {
+			String[] pair = entry.split("=");
+			if(pair.length != 2) {
+				throw new IllegalArgumentException(format("Invalid traffic mix entry %s", entry));
+			}
+			int weight = parseInt(pair[1].trim());
+			if(weight < 0) {
+				throw new IllegalArgumentException(format("Negative weight for traffic type %s", pair[0]));
+			}
+			weights.put(trafficType(pair[0]), weight);
+		}
+		return new TrafficMix(weights);
+	}
+
+	private final Map<TrafficType,Integer> weights;
+	private final TrafficType[] types;
+	private final int[] thresholds;
+	private final int total;
+
+	private TrafficMix(Map<TrafficType,Integer> weights) {
+		this.weights = weights;
+		this.types = new TrafficType[weights.size()];
+		this.thresholds = new int[weights.size()];
+		int sum = 0;
+		int i = 0;
+		for(Map.Entry<TrafficType,Integer> weight : weights.entrySet()) {
+			sum += weight.getValue();
+			types[i] = weight.getKey();
+			thresholds[i++] = sum;
+		}
+		if(sum == 0) {
+			throw new IllegalArgumentException("Traffic mix without traffic");
+		}
+		this.total = sum;
+	}
+
+	/**
+	 * Selects the traffic type of the next request.
+	 * @param random - the random number generator of the calling thread
+	 * @return the traffic type of the next request
+	 */
+	TrafficType next(Random random) {
+		int value = random.nextInt(total);
+		for(int i=0; i < thresholds.length; i++) {
+			if(value < thresholds[i]) {
+				return types[i];
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Returns whether the mix contains requests of the given traffic type.
+	 * @param type - the traffic type
+	 * @return <code>true</code> if the traffic type has a positive weight
+	 */
+	boolean contains(TrafficType type) {
+		Integer weight = weights.get(type);
+		return weight != null && weight > 0;
+	}
+
+	/**
+	 * Returns the weights of all traffic types in the mix.
+	 * @return the traffic type weights
+	 */
+	Map<TrafficType,Integer> getWeights() {
+		return weights;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder mix = new StringBuilder();
+		for(Map.Entry<TrafficType,Integer> weight : weights.entrySet()) {
+			if(mix.length() > 0) {
+				mix.append(',');
+			}
+			mix.append(weight.getKey().getName())
+			   .append('=')
+			   .append(weight.getValue());
+		}
+		return mix.toString();
+	}
+
+}
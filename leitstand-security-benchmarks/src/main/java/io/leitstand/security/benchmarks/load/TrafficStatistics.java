@@ -0,0 +1,92 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.security.enterprise.AuthenticationStatus;
+
+/**
+ * The statistics of all requests of a certain traffic type.
+ * <p>
+ * The statistics consist of the latency histogram, the number of allocated bytes, 
+ * the number of requests per {@link AuthenticationStatus} and the number of unexpected outcomes,
+ * i.e. rejected requests with valid credentials and accepted requests with invalid credentials.
+ * <p>
+ * The <code>TrafficStatistics</code> are not thread-safe. 
+ * Every load generating thread records into its own statistics, which are merged when the load test is completed.
+ */
+final class TrafficStatistics {
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final long[] outcomes = new long[AuthenticationStatus.values().length];
+	private long allocatedBytes;
+	private long unexpected;
+
+	/**
+	 * Records a processed request.
+	 * @param nanos - the processing time in nanoseconds
+	 * @param bytes - the number of bytes allocated while processing the request
+	 * @param status - the authentication status
+	 * @param expected - whether the authentication status matches the conveyed credentials
+	 */
+	void record(long nanos, long bytes, AuthenticationStatus status, boolean expected) {
+		latencies.record(nanos);
+		allocatedBytes += bytes;
+		outcomes[status.ordinal()]++;
+		if(!expected) {
+			unexpected++;
+		}
+	}
+
+	/**
+	 * Adds all requests recorded by the given statistics to this statistics.
+	 * @param other - the statistics to be merged
+	 */
+	void merge(TrafficStatistics other) {
+		latencies.merge(other.latencies);
+		allocatedBytes += other.allocatedBytes;
+		unexpected += other.unexpected;
+		for(int i=0; i < outcomes.length; i++) {
+			outcomes[i] += other.outcomes[i];
+		}
+	}
+
+	LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	long getRequests() {
+		return latencies.getCount();
+	}
+
+	/**
+	 * Returns the average number of bytes allocated per request.
+	 * @return the allocated bytes per request or <code>0</code> if no request was recorded.
+	 */
+	double getAllocatedBytesPerRequest() {
+		long requests = getRequests();
+		return requests == 0 ? 0 : (double) allocatedBytes / requests;
+	}
+
+	/**
+	 * Returns the number of requests per authentication status.
+	 * @return the number of requests per authentication status
+	 */
+	Map<AuthenticationStatus,Long> getOutcomes() {
+		Map<AuthenticationStatus,Long> outcomes = new EnumMap<>(AuthenticationStatus.class);
+		for(AuthenticationStatus status : AuthenticationStatus.values()) {
+			if(this.outcomes[status.ordinal()] > 0) {
+				outcomes.put(status, this.outcomes[status.ordinal()]);
+			}
+		}
+		return outcomes;
+	}
+
+	long getUnexpectedOutcomes() {
+		return unexpected;
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.benchmarks.load;
+
+import static java.lang.String.format;
+
+/**
+ * Enumeration of the traffic types generated by the {@link AuthenticationLoadHarness}.
+ */
+enum TrafficType {
+
+	/** Requests with a valid access token cookie.*/
+	COOKIE("cookie"),
+	/** Requests with valid HTTP Basic Authentication credentials.*/
+	BASIC("basic"),
+	/** Requests with a valid bearer API access key.*/
+	ACCESS_KEY("accesskey"),
+	/** Requests with a valid bearer authorization code.*/
+	AUTHORIZATION_CODE("code"),
+	/** Requests with forged, wrong or missing credentials.*/
+	INVALID("invalid");
+
+	/**
+	 * Returns the traffic type with the given name.
+	 * @param name - the traffic type name
+	 * @return the traffic type
+	 * @throws IllegalArgumentException if the traffic type does not exist
+	 */
+	static TrafficType trafficType(String name) {
+		for(TrafficType type : values()) {
+			if(type.name.equalsIgnoreCase(name.trim())) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException(format("Unknown traffic type %s", name));
+	}
+
+	private final String name;
+
+	private TrafficType(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of this traffic type as used in the traffic mix and the report.
+	 * @return the traffic type name
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns whether requests of this traffic type are expected to be authenticated.
+	 * @return <code>true</code> if requests of this type convey valid credentials
+	 */
+	boolean isValid() {
+		return this != INVALID;
+	}
+
+}
@@ -3,12 +3,15 @@
  */
 package io.leitstand.security.sso.oauth2;
 
+import static io.leitstand.security.auth.http.CredentialType.BEARER_JWT;
 import static java.util.Collections.emptySet;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Level.FINE;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.INVALID_RESULT;
 import static javax.security.enterprise.identitystore.CredentialValidationResult.NOT_VALIDATED_RESULT;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.Dependent;
@@ -19,6 +22,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import io.leitstand.security.auth.http.AccessTokenManager;
 import io.leitstand.security.auth.http.Authorization;
+import io.leitstand.security.auth.http.CredentialType;
 import io.leitstand.security.auth.jwt.JsonWebTokenDecoder;
 import io.leitstand.security.auth.jwt.JsonWebTokenSignatureException;
 
@@ -30,6 +34,15 @@ public class AuthorizationCodeManager implements AccessTokenManager{
 	@Inject
 	private JsonWebTokenDecoder jwtDecoder;
 
+	/**
+	 * Returns the credential types processed by this manager.
+	 * @return <code>BEARER_JWT</code>
+	 */
+	@Override
+	public Set<CredentialType> getCredentialTypes() {
+		return EnumSet.of(BEARER_JWT);
+	}
+	
 	@Override
 	public CredentialValidationResult validateAccessToken(HttpServletRequest request, 
 														  HttpServletResponse response) {
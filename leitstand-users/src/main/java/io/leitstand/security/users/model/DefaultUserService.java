@@ -6,7 +6,11 @@ package io.leitstand.security.users.model;
 import static io.leitstand.commons.db.DatabaseService.prepare;
 import static io.leitstand.commons.messages.MessageFactory.createMessage;
 import static io.leitstand.security.auth.Role.ADMINISTRATOR;
-import static io.leitstand.security.users.model.PasswordService.ITERATIONS;
+import static io.leitstand.security.auth.user.UserEvent.newUserEvent;
+import static io.leitstand.security.auth.user.UserEvent.Type.PASSWORD_RESET;
+import static io.leitstand.security.auth.user.UserEvent.Type.PASSWORD_UPDATED;
+import static io.leitstand.security.auth.user.UserEvent.Type.USER_REMOVED;
+import static io.leitstand.security.auth.user.UserEvent.Type.USER_UPDATED;
 import static io.leitstand.security.users.model.Role.findRoleByName;
 import static io.leitstand.security.users.model.User.findUserByUserId;
 import static io.leitstand.security.users.model.User.findUserByUuid;
@@ -31,6 +35,7 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.RequestScoped;
+import javax.enterprise.event.Event;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import javax.security.enterprise.credential.Password;
@@ -45,6 +50,8 @@ import io.leitstand.commons.model.Repository;
 import io.leitstand.commons.model.Service;
 import io.leitstand.security.auth.Authenticated;
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.search.SearchFilter;
+import io.leitstand.security.auth.user.UserEvent;
 import io.leitstand.security.users.service.EmailAddress;
 import io.leitstand.security.users.service.UserReference;
 import io.leitstand.security.users.service.UserService;
@@ -76,6 +83,12 @@ public class DefaultUserService implements UserService {
 	@Inject
 	private HttpServletRequest context;
 	
+	@Inject
+	private Event<UserEvent> userEvent;
+	
+	@Inject
+	private PasswordRehashQueue rehashQueue;
+	
 	public DefaultUserService() {
 		// CDI constructor
 	}
@@ -84,19 +97,23 @@ public class DefaultUserService implements UserService {
 								 DatabaseService db,
 								 PasswordService hashing,
 								 Messages messages,
-								 HttpServletRequest context) {
+								 HttpServletRequest context,
+								 Event<UserEvent> userEvent,
+								 PasswordRehashQueue rehashQueue) {
 		this.repository = repository;
 		this.db = db;
 		this.messages = messages;
 		this.hashing = hashing;
 		this.context = context;
+		this.userEvent = userEvent;
+		this.rehashQueue = rehashQueue;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<UserReference> findUsers(String filter) {
+	public List<UserReference> findUsers(SearchFilter filter) {
 		
 		if(filter == null || filter.isEmpty()) {
 			return db.executeQuery(prepare("SELECT uuid, userid, email, givenname, surname FROM auth.userdata ORDER BY surname,givenname,userid"), 
@@ -109,9 +126,11 @@ public class DefaultUserService implements UserService {
 						    	   		 .build());
 		}
 
-		return db.executeQuery(prepare("SELECT uuid, userid, email, givenname, surname FROM auth.userdata WHERE (SURNAME ~ ? OR USERID ~ ? ) ORDER BY surname,givenname,userid",
-									   filter,
-									   filter), 
+		return db.executeQuery(prepare(format("SELECT uuid, userid, email, givenname, surname FROM auth.userdata WHERE (%s OR %s) ORDER BY surname,givenname,userid",
+											  filter.toSqlPredicate("surname"),
+											  filter.toSqlPredicate("userid")),
+									   filter.toSqlArgument(),
+									   filter.toSqlArgument()), 
 					    	   rs -> newUserReference()
 					    	   		 .withUuid(rs.getString(1))
 					    	   		 .withUserId(UserId.valueOf(rs.getString(2)))
@@ -128,6 +147,8 @@ public class DefaultUserService implements UserService {
 	public void storeUserSettings(UserSettings settings) {
 		User user = findUser(settings.getUuid());
 		if(context.isUserInRole(ADMINISTRATOR) || user.getUserId().equals(UserId.valueOf(context.getUserPrincipal()))) {
+			// Notify about the previous user ID, because the user ID might be changed.
+			fireUserEvent(user, USER_UPDATED);
 			user.setUserId(settings.getUserId());
 			user.setGivenName(settings.getGivenName());
 			user.setSurname(settings.getSurname());
@@ -258,15 +279,17 @@ public class DefaultUserService implements UserService {
 
 			
 			// Compute salt for new password hash
+			int    iterations = hashing.getIterations();
 			byte[] salt = hashing.salt();
 			byte[] hash = hashing.hash(newPassword, 
 									   salt, 
-									   ITERATIONS);
+									   iterations);
 			user.setPassword(hash, 
 							 salt, 
-							 ITERATIONS);
+							 iterations);
 			messages.add(createMessage(IDM0003I_PASSWORD_UPDATED,
 									   user.getUserId()));
+			fireUserEvent(user, PASSWORD_UPDATED);
 			return;
 		}
 		
@@ -318,18 +341,20 @@ public class DefaultUserService implements UserService {
 			throw new UnprocessableEntityException(IDM0008E_PASSWORD_MISMATCH, 
 												   context);
 		}
+		int    iterations = hashing.getIterations();
 		byte[] salt    = hashing.salt();
 		byte[] hash    = hashing.hash(newPassword, 
 									  salt, 
-									  ITERATIONS);
+									  iterations);
 		user.setPassword(hash, 
 						 salt, 
-						 ITERATIONS);
+						 iterations);
 		LOG.info(() -> format("%s - Password reset for %s",
 				IDM0002I_PASSWORD_RESET.getReasonCode(),
 				user.getUserId()));
 		messages.add(createMessage(IDM0002I_PASSWORD_RESET,
 								   user.getUserId()));
+		fireUserEvent(user, PASSWORD_RESET);
 	}
 
 	/**
@@ -337,24 +362,57 @@ public class DefaultUserService implements UserService {
 	 */
 	@Override
 	public boolean isValidPassword(UserId userId, Password password) {
+		return findUserWithValidPassword(userId, password) != null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public UserSettings authenticate(UserId userId, Password password) {
+		User user = findUserWithValidPassword(userId, password);
+		if(user == null) {
+			return null;
+		}
+		return settingsOf(user);
+	}
+	
+	private User findUserWithValidPassword(UserId userId, Password password) {
 		try {
 			User user = findUser(userId);
-			boolean valid = hashing.isExpectedPassword(password, 
-													   user.getSalt(), 
-											  		   user.getPasswordHash(),
-											  		   user.getIterations());
-			if(valid) {
-				LOG.finer(() -> format("Valid password verified for user %s",userId));
-			} else {
+			// Retain a copy of the password to rehash outdated password hashes.
+			// Only hashes below the minimum number of iterations are outdated, 
+			// because the calibrated number of iterations can differ between nodes.
+			char[] rehash = user.getIterations() < hashing.getMinimumIterations() ? password.getValue().clone() : null;
+			try {
+				boolean valid = hashing.isExpectedPassword(password, 
+														   user.getSalt(), 
+												  		   user.getPasswordHash(),
+												  		   user.getIterations());
+				if(valid) {
+					LOG.finer(() -> format("Valid password verified for user %s",userId));
+					if(rehash != null) {
+						// The rehash queue takes ownership of the password copy.
+						rehashQueue.schedule(userId, 
+											 user.getPasswordHash(), 
+											 rehash);
+						rehash = null;
+					}
+					return user;
+				} 
 				LOG.finer(() -> format("Invalid password for user %s detected",userId));
+				return null;
+			} finally {
+				if(rehash != null) {
+					Arrays.fill(rehash, (char)0);
+				}
 			}
-			return valid;
 		} catch (EntityNotFoundException e) {
 			LOG.fine(() -> e.getMessage());
 			LOG.log(FINER,
 					e.getMessage(),
 					e);
-			return false;
+			return null;
 		}
 	}
 
@@ -392,13 +450,14 @@ public class DefaultUserService implements UserService {
 		List<Role> roles = loadRoles(submission.getRoles());
 		user.setRoles(roles);
 		
+		int    iterations = hashing.getIterations();
 		byte[] salt = hashing.salt();
 		byte[] hash = hashing.hash(submission.getPassword(), 
 								   salt, 
-								   ITERATIONS);
+								   iterations);
 		user.setPassword(hash, 
 						 salt, 
-						 ITERATIONS);
+						 iterations);
 		repository.add(user);
 		LOG.info(()->format("%s: User %s created.",
 							IDM0001I_USER_STORED.getReasonCode(),
@@ -446,6 +505,17 @@ public class DefaultUserService implements UserService {
 		messages.add(createMessage(IDM0009I_USER_REMOVED,
 								   user.getUserId(),
 								   user.getUuid()));
+		fireUserEvent(user, USER_REMOVED);
+	}
+	
+	private void fireUserEvent(User user, UserEvent.Type type) {
+		// Record the modification in the change log to notify other nodes.
+		repository.add(new UserEventRecord(user.getUserId(), 
+										   type));
+		userEvent.fire(newUserEvent()
+					   .withUserId(user.getUserId())
+					   .withEventType(type)
+					   .build());
 	}
 
 }
@@ -0,0 +1,235 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
+
+/**
+ * The <code>PasswordHashExecutor</code> computes password hashes on a dedicated, bounded thread pool.
+ * <p>
+ * Password hashing is deliberately expensive.
+ * Running the hash computation on the request threads allows a login storm to occupy all request threads
+ * and to starve all other requests.
+ * The <code>PasswordHashExecutor</code> limits the number of concurrent hash computations to the number of
+ * threads of the pool and the number of pending hash computations to the capacity of the queue.
+ * A hash computation is rejected with a {@link CredentialVerificationRejectedException} if the queue is full
+ * or if the hash was not computed within the configured timeout.
+ * A timed out computation is cancelled and removed from the queue, such that it neither occupies a thread nor a queue slot.
+ * The rejected request is answered with <code>503 Service Unavailable</code> immediately.
+ * <p>
+ * The number of threads is configured by the <code>rbms.password.hash.threads</code> system property and
+ * defaults to the number of available processors.
+ * The queue capacity is configured by the <code>rbms.password.hash.queue.size</code> system property and
+ * defaults to {@value #DEFAULT_QUEUE_SIZE_PER_THREAD} pending computations per thread.
+ * The timeout is configured by the <code>rbms.password.hash.timeout</code> system property in milliseconds and
+ * defaults to {@value #DEFAULT_TIMEOUT_MILLIS} milliseconds.
+ */
+@ApplicationScoped
+public class PasswordHashExecutor {
+
+	private static final Logger LOG = Logger.getLogger(PasswordHashExecutor.class.getName());
+	static final int DEFAULT_QUEUE_SIZE_PER_THREAD = 8;
+	static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+	static final int RETRY_AFTER_SECONDS = 1;
+
+	@Resource
+	private ManagedThreadFactory threadFactory;
+
+	private final int threads;
+	private final int queueSize;
+	private final long timeout;
+	private final LongAdder computations = new LongAdder();
+	private final LongAdder computationTime = new LongAdder();
+	private final LongAdder waitTime = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Creates a <code>PasswordHashExecutor</code> configured by system properties.
+	 */
+	public PasswordHashExecutor() {
+		this(parseInt(getSystemProperty("rbms.password.hash.threads",
+										String.valueOf(getRuntime().availableProcessors()))),
+			 parseInt(getSystemProperty("rbms.password.hash.queue.size",
+					 					String.valueOf(DEFAULT_QUEUE_SIZE_PER_THREAD * getRuntime().availableProcessors()))),
+			 parseLong(getSystemProperty("rbms.password.hash.timeout",
+					 					 String.valueOf(DEFAULT_TIMEOUT_MILLIS))),
+			 MILLISECONDS);
+	}
+
+	/**
+	 * Creates a <code>PasswordHashExecutor</code>.
+	 * @param threads - the number of threads
+	 * @param queueSize - the maximum number of pending hash computations
+	 * @param timeout - the maximum time to wait for a hash computation
+	 * @param unit - the timeout unit
+	 */
+	protected PasswordHashExecutor(int threads, int queueSize, long timeout, TimeUnit unit) {
+		this.threads = threads;
+		this.queueSize = queueSize;
+		this.timeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Starts the thread pool.
+	 */
+	@PostConstruct
+	protected void startThreadPool() {
+		ThreadFactory factory = threadFactory != null ? threadFactory : Executors.defaultThreadFactory();
+		executor = new ThreadPoolExecutor(threads,
+										  threads,
+										  0,
+										  SECONDS,
+										  new ArrayBlockingQueue<>(queueSize),
+										  factory);
+		LOG.fine(() -> format("Started password hash executor with %d threads and %d queue slots.",threads,queueSize));
+	}
+
+	/**
+	 * Stops the thread pool.
+	 */
+	@PreDestroy
+	protected void stopThreadPool() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the given hash computation on the thread pool and waits for the result.
+	 * @param computation - the hash computation
+	 * @return the computed result
+	 * @throws CredentialVerificationRejectedException if the hash computation was rejected or timed out.
+	 */
+	public <T> T execute(Supplier<T> computation) {
+		long submitted = nanoTime();
+		Future<T> result;
+		try {
+			result = executor.submit(() -> {
+				long started = nanoTime();
+				waitTime.add(started - submitted);
+				try {
+					return computation.get();
+				} finally {
+					computationTime.add(nanoTime() - started);
+					computations.increment();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejections.increment();
+			throw new CredentialVerificationRejectedException("Password hash queue exhausted.",
+															  RETRY_AFTER_SECONDS);
+		}
+		try {
+			return result.get(timeout, NANOSECONDS);
+		} catch (TimeoutException e) {
+			cancel(result);
+			rejections.increment();
+			throw new CredentialVerificationRejectedException("Password hash computation timed out.",
+															  RETRY_AFTER_SECONDS);
+		} catch (InterruptedException e) {
+			cancel(result);
+			Thread.currentThread().interrupt();
+			throw new CredentialVerificationRejectedException("Password hash computation interrupted.",
+															  RETRY_AFTER_SECONDS);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void cancel(Future<?> computation) {
+		computation.cancel(true);
+		// A cancelled computation remains in the queue until a thread takes it.
+		executor.remove((Runnable) computation);
+	}
+
+	/**
+	 * Returns the number of pending hash computations.
+	 * @return the number of pending hash computations.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of running hash computations.
+	 * @return the number of running hash computations.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of completed hash computations.
+	 * @return the number of completed hash computations.
+	 */
+	public long getComputationCount() {
+		return computations.sum();
+	}
+
+	/**
+	 * Returns the number of rejected hash computations.
+	 * @return the number of rejected hash computations.
+	 */
+	public long getRejectionCount() {
+		return rejections.sum();
+	}
+
+	/**
+	 * Returns the average time of a hash computation in microseconds.
+	 * @return the average time of a hash computation in microseconds or <code>0</code> if no hash has been computed yet.
+	 */
+	public long getAverageComputationTime() {
+		return average(computationTime);
+	}
+
+	/**
+	 * Returns the average time a hash computation waited in the queue in microseconds.
+	 * @return the average queue wait time in microseconds or <code>0</code> if no hash has been computed yet.
+	 */
+	public long getAverageWaitTime() {
+		return average(waitTime);
+	}
+
+	private long average(LongAdder time) {
+		long count = computations.sum();
+		if(count == 0) {
+			return 0;
+		}
+		return NANOSECONDS.toMicros(time.sum() / count);
+	}
+
+}
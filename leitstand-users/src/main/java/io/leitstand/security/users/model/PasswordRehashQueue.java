@@ -0,0 +1,274 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import io.leitstand.security.auth.UserId;
+
+/**
+ * The <code>PasswordRehashQueue</code> renews password hashes computed with an outdated number of iterations.
+ * <p>
+ * A password can only be rehashed when the plaintext password is known, i.e. after a successful login.
+ * The login schedules the rehash and returns without waiting for it.
+ * The queue computes the new password hashes in the background and stores them in batches,
+ * provided that the password was not changed in the meantime.
+ * Pending passwords are held in memory only and are cleared as soon as the password was rehashed.
+ * <p>
+ * The queue holds at most {@value #DEFAULT_MAX_SIZE} pending passwords by default.
+ * Further rehash requests are dropped until the queue has been processed and are repeated with the next login.
+ * The queue size is configured by the <code>rbms.password.rehash.queue.size</code> system property,
+ * the batch size by the <code>rbms.password.rehash.batch.size</code> system property,
+ * and the processing interval by the <code>rbms.password.rehash.interval</code> system property in seconds.
+ */
+@ApplicationScoped
+public class PasswordRehashQueue {
+
+	private static final Logger LOG = Logger.getLogger(PasswordRehashQueue.class.getName());
+	static final int DEFAULT_MAX_SIZE = 1024;
+	static final int DEFAULT_BATCH_SIZE = 32;
+	static final long DEFAULT_INTERVAL_SECONDS = 10;
+
+	/**
+	 * A pending password rehash.
+	 */
+	static final class PendingRehash {
+
+		private final UserId userId;
+		private final byte[] currentHash;
+		private final char[] password;
+
+		PendingRehash(UserId userId, byte[] currentHash, char[] password){
+			this.userId = userId;
+			this.currentHash = currentHash;
+			this.password = password;
+		}
+
+		void clear() {
+			Arrays.fill(password, (char)0);
+		}
+
+	}
+
+	/**
+	 * A renewed password hash.
+	 */
+	static final class RenewedHash {
+
+		private final UserId userId;
+		private final byte[] currentHash;
+		private final byte[] salt;
+		private final byte[] hash;
+		private final int iterations;
+
+		RenewedHash(UserId userId, byte[] currentHash, byte[] salt, byte[] hash, int iterations){
+			this.userId = userId;
+			this.currentHash = currentHash;
+			this.salt = salt;
+			this.hash = hash;
+			this.iterations = iterations;
+		}
+
+		UserId getUserId() {
+			return userId;
+		}
+
+		boolean isOutdated(User user) {
+			return !Arrays.equals(currentHash, user.getPasswordHash());
+		}
+
+		void apply(User user) {
+			user.setPassword(hash, salt, iterations);
+		}
+
+	}
+
+	@Inject
+	private PasswordService hashing;
+
+	@Inject
+	private PasswordRehashService store;
+
+	@Resource
+	private ManagedScheduledExecutorService scheduler;
+
+	private final Map<UserId,PendingRehash> pending = new LinkedHashMap<>();
+	private final LongAdder rehashed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final int maxSize;
+	private final int batchSize;
+	private ScheduledFuture<?> processing;
+
+	/**
+	 * Creates a <code>PasswordRehashQueue</code> configured by system properties.
+	 */
+	public PasswordRehashQueue() {
+		this(parseInt(getSystemProperty("rbms.password.rehash.queue.size",
+										String.valueOf(DEFAULT_MAX_SIZE))),
+			 parseInt(getSystemProperty("rbms.password.rehash.batch.size",
+					 					String.valueOf(DEFAULT_BATCH_SIZE))));
+	}
+
+	/**
+	 * Creates a <code>PasswordRehashQueue</code>.
+	 * @param maxSize - the maximum number of pending passwords
+	 * @param batchSize - the maximum number of passwords stored in one transaction
+	 */
+	protected PasswordRehashQueue(int maxSize, int batchSize) {
+		this.maxSize = maxSize;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Creates a <code>PasswordRehashQueue</code>.
+	 * @param hashing - the password service
+	 * @param store - the service to store renewed password hashes
+	 * @param maxSize - the maximum number of pending passwords
+	 * @param batchSize - the maximum number of passwords stored in one transaction
+	 */
+	protected PasswordRehashQueue(PasswordService hashing, PasswordRehashService store, int maxSize, int batchSize) {
+		this(maxSize, batchSize);
+		this.hashing = hashing;
+		this.store = store;
+	}
+
+	/**
+	 * Schedules the periodic processing of pending passwords.
+	 */
+	@PostConstruct
+	protected void scheduleProcessing() {
+		long interval = parseLong(getSystemProperty("rbms.password.rehash.interval",
+													String.valueOf(DEFAULT_INTERVAL_SECONDS)));
+		processing = scheduler.scheduleWithFixedDelay(this::processPendingRehashes,
+													  interval,
+													  interval,
+													  SECONDS);
+	}
+
+	/**
+	 * Cancels the periodic processing and clears all pending passwords.
+	 */
+	@PreDestroy
+	protected void cancelProcessing() {
+		if(processing != null) {
+			processing.cancel(false);
+		}
+		synchronized(pending) {
+			pending.values().forEach(PendingRehash::clear);
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Schedules a password rehash.
+	 * The queue takes ownership of the given password and clears it after the rehash.
+	 * @param userId - the user ID
+	 * @param currentHash - the current password hash
+	 * @param password - the verified plaintext password
+	 */
+	public void schedule(UserId userId, byte[] currentHash, char[] password) {
+		PendingRehash rehash = new PendingRehash(userId, currentHash, password);
+		synchronized(pending) {
+			if(pending.size() < maxSize || pending.containsKey(userId)) {
+				PendingRehash previous = pending.put(userId, rehash);
+				if(previous != null) {
+					previous.clear();
+				}
+				return;
+			}
+		}
+		rehash.clear();
+		dropped.increment();
+		LOG.fine(() -> format("Password rehash queue exhausted. Rehash of %s password dropped.",userId));
+	}
+
+	/**
+	 * Rehashes all pending passwords and stores the renewed password hashes in batches.
+	 */
+	protected void processPendingRehashes() {
+		List<PendingRehash> batch = nextBatch();
+		while(!batch.isEmpty()) {
+			try {
+				List<RenewedHash> renewed = new ArrayList<>(batch.size());
+				int iterations = hashing.getIterations();
+				for(PendingRehash rehash : batch) {
+					byte[] salt = hashing.salt();
+					// The hash method clears the password.
+					byte[] hash = hashing.hash(rehash.password, salt, iterations);
+					renewed.add(new RenewedHash(rehash.userId, rehash.currentHash, salt, hash, iterations));
+				}
+				int stored = store.storeRenewedHashes(renewed);
+				rehashed.add(stored);
+				LOG.fine(() -> format("Rehashed %d passwords with %d iterations.", stored, iterations));
+			} catch (Exception e) {
+				LOG.warning(() -> format("Cannot rehash passwords: %s", e.getMessage()));
+				LOG.log(FINER, e.getMessage(), e);
+			} finally {
+				batch.forEach(PendingRehash::clear);
+			}
+			batch = nextBatch();
+		}
+	}
+
+	private List<PendingRehash> nextBatch() {
+		List<PendingRehash> batch = new ArrayList<>(batchSize);
+		synchronized(pending) {
+			Iterator<PendingRehash> i = pending.values().iterator();
+			while(i.hasNext() && batch.size() < batchSize) {
+				batch.add(i.next());
+				i.remove();
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Returns the number of pending passwords.
+	 * @return the number of pending passwords.
+	 */
+	public int getSize() {
+		synchronized(pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Returns the number of rehashed passwords.
+	 * @return the number of rehashed passwords.
+	 */
+	public long getRehashCount() {
+		return rehashed.sum();
+	}
+
+	/**
+	 * Returns the number of dropped rehash requests.
+	 * @return the number of dropped rehash requests.
+	 */
+	public long getDropCount() {
+		return dropped.sum();
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.security.users.model.User.findUserByUserId;
+import static java.lang.String.format;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+
+import io.leitstand.commons.model.Repository;
+import io.leitstand.commons.model.Service;
+import io.leitstand.security.users.model.PasswordRehashQueue.RenewedHash;
+
+/**
+ * Stores renewed password hashes computed by the {@link PasswordRehashQueue}.
+ * <p>
+ * All renewed password hashes of a batch are stored in a single transaction.
+ * A renewed password hash is discarded if the password was changed after the renewed hash was computed.
+ */
+@Service
+public class PasswordRehashService {
+
+	private static final Logger LOG = Logger.getLogger(PasswordRehashService.class.getName());
+
+	@Inject
+	@IdentityManagement
+	private Repository repository;
+
+	public PasswordRehashService() {
+		// CDI constructor
+	}
+
+	protected PasswordRehashService(Repository repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * Stores the given renewed password hashes.
+	 * @param renewed - the renewed password hashes
+	 * @return the number of stored password hashes
+	 */
+	public int storeRenewedHashes(List<RenewedHash> renewed) {
+		int stored = 0;
+		for(RenewedHash hash : renewed) {
+			User user = repository.execute(findUserByUserId(hash.getUserId()));
+			if(user == null || hash.isOutdated(user)) {
+				LOG.fine(() -> format("Password of user %s changed. Discard renewed password hash.", hash.getUserId()));
+				continue;
+			}
+			hash.apply(user);
+			stored++;
+		}
+		return stored;
+	}
+
+}
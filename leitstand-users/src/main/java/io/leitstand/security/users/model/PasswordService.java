@@ -3,11 +3,10 @@
  */
 package io.leitstand.security.users.model;
 
-import static io.leitstand.security.crypto.SecureRandomFactory.newSHA1PRNG;
+import static io.leitstand.security.crypto.SecureRandomPool.nextBytes;
 import static java.lang.String.format;
 
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 import java.util.logging.Logger;
@@ -15,8 +14,11 @@ import java.util.logging.Logger;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
 import javax.security.enterprise.credential.Password;
 
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
+
 /**
  * A service to computes the password hash value.
  * <p>
@@ -26,33 +28,43 @@ import javax.security.enterprise.credential.Password;
  * All password hashes are computed with <a href="https://en.wikipedia.org/wiki/PBKDF2">PBKDF2</a> 
  * and <a href="https://en.wikipedia.org/wiki/HMAC">HMAC-SHA256</a> as pseudo random function.
  * The salt values are computed with a cryptographically secure pseudorandom number generator.
- * The number of iterations is {@value #ITERATIONS}.
+ * The number of iterations is determined by the {@link PasswordWorkFactor} and is at least {@value #ITERATIONS}.
  * The hash value length in bytes is {@value #HASHBYTES}.
  * <p>
  * The number of iterations enables to adjust the cost of the hash computation. 
  * Thus the number of iterations shall be stored along with the computed password hash and salt values 
  * in order to be able to adjust the number of iterations in the future. 
  * During credentials verification the password hash is computed with the same number of iterations as
- * the stored password hash. If the password is valid, i.e. the password hashes match, then
+ * the stored password hash. If the password is valid, i.e. the password hashes match, and the stored password hash
+ * was computed with less than the {@link #getMinimumIterations() minimum number of iterations}, then
  * a new password hash with a new salt value and the new number of iterations is computed and the password record gets updated.
  * By that all password hashes can be renewed incrementally.
  * </p>
+ * <p>
+ * Password hashes are computed by the {@link PasswordHashExecutor}, 
+ * which bounds the number of concurrent and pending hash computations.
+ * A <code>PasswordService</code> created outside of a CDI container, for example by a command line tool,
+ * computes the password hash on the calling thread.
+ * </p>
  */
 @Dependent
 public class PasswordService {
 	private static final Logger LOG = Logger.getLogger(PasswordService.class.getName());
 	
-	/** The number of iterations to compute the password hash value ({@value #ITERATIONS}). */
+	/** The minimum number of iterations to compute the password hash value ({@value #ITERATIONS}). */
 	public static final int ITERATIONS = 10000;
 	
 	/** The length of the computed hash value in bytes.*/
 	public static final int HASHBYTES  = 64;
 	
-	/** The cryptographically secure pseudorandom number generator*/
-	private static final SecureRandom PRNG = newSHA1PRNG();
-
 	private SecretKeyFactory factory;
 	
+	@Inject
+	private PasswordHashExecutor executor;
+	
+	@Inject
+	private PasswordWorkFactor workFactor;
+	
 	/**
 	 * Create a <code>PasswordService</code> instance.
 	 */
@@ -64,6 +76,29 @@ public class PasswordService {
 		}
 	}
 
+	/**
+	 * Returns the number of iterations to hash new passwords.
+	 * @return the number of iterations to hash new passwords.
+	 */
+	public int getIterations() {
+		if(workFactor == null) {
+			return ITERATIONS;
+		}
+		return workFactor.getIterations();
+	}
+	
+	/**
+	 * Returns the minimum number of iterations.
+	 * Password hashes computed with fewer iterations are outdated and shall be rehashed.
+	 * @return the minimum number of iterations.
+	 */
+	public int getMinimumIterations() {
+		if(workFactor == null) {
+			return ITERATIONS;
+		}
+		return workFactor.getMinimumIterations();
+	}
+	
 	/**
 	 * Computes the hash value for the given password.
 	 * The password is cleared after the computation is done 
@@ -89,8 +124,28 @@ public class PasswordService {
 	 * @param salt - the computed salt value
 	 * @param iterations - the number of iterations 
 	 * @return the computed hash value
+	 * @throws CredentialVerificationRejectedException if the password hash computation was rejected due to overload.
 	 */
 	public byte[] hash(char[] password, byte[] salt, int iterations){
+		if(executor == null) {
+			return computeHash(password, salt, iterations);
+		}
+		// The computation works on a private copy of the password,
+		// because the caller's password is cleared when this method returns, 
+		// even if a timed out computation is still running.
+		char[] copy = password.clone();
+		try {
+			return executor.execute(() -> computeHash(copy, salt, iterations));
+		} catch (CredentialVerificationRejectedException e) {
+			// Clear the copy if the computation was rejected. The result of a timed out computation is discarded anyway.
+			Arrays.fill(copy,(char)0);
+			throw e;
+		} finally {
+			Arrays.fill(password,(char)0);
+		}
+	}
+	
+	private byte[] computeHash(char[] password, byte[] salt, int iterations) {
 		PBEKeySpec spec = new PBEKeySpec(password,salt,iterations,8*HASHBYTES);
 		Arrays.fill(password, Character.MIN_VALUE);
 		try{
@@ -110,7 +165,7 @@ public class PasswordService {
 	 */
 	public byte[] salt(){
 		byte[] salt = new byte[HASHBYTES];
-		PRNG.nextBytes(salt);
+		nextBytes(salt);
 		return salt;
 	}
 	
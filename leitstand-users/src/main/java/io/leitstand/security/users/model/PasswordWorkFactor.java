@@ -0,0 +1,132 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.commons.etc.Environment.getSystemProperty;
+import static io.leitstand.security.users.model.PasswordService.ITERATIONS;
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * The <code>PasswordWorkFactor</code> determines the number of PBKDF2 iterations to hash new passwords.
+ * <p>
+ * The number of iterations is calibrated on startup.
+ * The calibration measures the PBKDF2 throughput of the actual hardware and selects the number of iterations
+ * that complies with both a latency target for a single hash computation and the expected login rate.
+ * The latency target is configured by the <code>rbms.password.hash.latency</code> system property in milliseconds
+ * and defaults to {@value #DEFAULT_LATENCY_MILLIS} milliseconds.
+ * The expected login rate is configured by the <code>rbms.password.login.rate</code> system property in logins per second
+ * and defaults to {@value #DEFAULT_LOGIN_RATE} logins per second.
+ * The expected logins shall occupy at most half of the password hashing threads.
+ * <p>
+ * The calibrated number of iterations is rounded down to full thousands and never falls below {@link PasswordService#ITERATIONS}.
+ * The calibration is skipped if the <code>rbms.password.iterations</code> system property sets the number of iterations explicitly.
+ * <p>
+ * The calibrated number of iterations differs between nodes with different hardware.
+ * Hence passwords are only rehashed after the next successful login if they were hashed with fewer iterations than the 
+ * minimum number of iterations, which is the same on all nodes.
+ * The minimum number of iterations is configured by the <code>rbms.password.iterations.min</code> system property 
+ * and defaults to {@link PasswordService#ITERATIONS}. 
+ * The explicitly configured number of iterations is also the minimum number of iterations.
+ * New passwords are never hashed with less than the minimum number of iterations.
+ * @see PasswordRehashQueue
+ */
+@ApplicationScoped
+public class PasswordWorkFactor {
+
+	private static final Logger LOG = Logger.getLogger(PasswordWorkFactor.class.getName());
+	static final long DEFAULT_LATENCY_MILLIS = 100;
+	static final double DEFAULT_LOGIN_RATE = 10;
+	static final double MAX_UTILIZATION = 0.5;
+	private static final int CALIBRATION_ITERATIONS = 10000;
+	private static final int CALIBRATION_RUNS = 3;
+
+	private volatile int iterations = ITERATIONS;
+	private volatile int minimumIterations = ITERATIONS;
+
+	/**
+	 * Calibrates the number of iterations, unless the number of iterations is configured explicitly.
+	 */
+	@PostConstruct
+	protected void calibrate() {
+		minimumIterations = max(ITERATIONS, parseInt(getSystemProperty("rbms.password.iterations.min",
+																	   String.valueOf(ITERATIONS))));
+		String configured = getSystemProperty("rbms.password.iterations",null);
+		if(configured != null) {
+			iterations = max(minimumIterations, parseInt(configured));
+			minimumIterations = iterations;
+			LOG.info(() -> format("Hash passwords with %d configured PBKDF2 iterations.", iterations));
+			return;
+		}
+		long latency = parseLong(getSystemProperty("rbms.password.hash.latency",
+												   String.valueOf(DEFAULT_LATENCY_MILLIS)));
+		double loginRate = parseDouble(getSystemProperty("rbms.password.login.rate",
+														 String.valueOf(DEFAULT_LOGIN_RATE)));
+		int threads = parseInt(getSystemProperty("rbms.password.hash.threads",
+				 								 String.valueOf(getRuntime().availableProcessors())));
+		iterations = max(minimumIterations, iterations(measureIterationsPerMilli(), latency, loginRate, threads));
+		LOG.info(() -> format("Hash passwords with %d calibrated PBKDF2 iterations.", iterations));
+	}
+
+	/**
+	 * Computes the number of iterations for the given PBKDF2 throughput, latency target and login rate.
+	 * @param iterationsPerMilli - the measured number of iterations per millisecond of a single thread
+	 * @param latency - the latency target in milliseconds
+	 * @param loginRate - the expected number of logins per second
+	 * @param threads - the number of password hashing threads
+	 * @return the number of iterations
+	 */
+	static int iterations(double iterationsPerMilli, long latency, double loginRate, int threads) {
+		double budget = latency;
+		if(loginRate > 0) {
+			budget = min(budget, threads * 1000 * MAX_UTILIZATION / loginRate);
+		}
+		long calibrated = (long) (budget * iterationsPerMilli) / 1000 * 1000;
+		return (int) max(ITERATIONS, min(calibrated, Integer.MAX_VALUE));
+	}
+
+	private static double measureIterationsPerMilli() {
+		PasswordService hashing = new PasswordService();
+		byte[] salt = hashing.salt();
+		// Warm-up
+		hashing.hash("calibration".toCharArray(), salt, CALIBRATION_ITERATIONS);
+		long fastest = Long.MAX_VALUE;
+		for(int i=0; i < CALIBRATION_RUNS; i++) {
+			long started = nanoTime();
+			hashing.hash("calibration".toCharArray(), salt, CALIBRATION_ITERATIONS);
+			fastest = min(fastest, nanoTime() - started);
+		}
+		return CALIBRATION_ITERATIONS / (fastest / (double) MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * Returns the number of iterations to hash new passwords.
+	 * @return the number of iterations to hash new passwords.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns the minimum number of iterations. 
+	 * Passwords hashed with fewer iterations are rehashed.
+	 * @return the minimum number of iterations.
+	 */
+	public int getMinimumIterations() {
+		return minimumIterations;
+	}
+
+}
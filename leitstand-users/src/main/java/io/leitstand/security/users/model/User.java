@@ -6,8 +6,8 @@ package io.leitstand.security.users.model;
 import static io.leitstand.commons.model.ByteArrayUtil.decodeBase64String;
 import static io.leitstand.commons.model.ByteArrayUtil.encodeBase64String;
 import static io.leitstand.commons.model.StringUtil.isEmptyString;
+import static io.leitstand.security.crypto.SecureRandomPool.randomUUID;
 import static java.util.Collections.unmodifiableSet;
-import static java.util.UUID.randomUUID;
 import static java.util.stream.Collectors.toSet;
 import static javax.persistence.EnumType.STRING;
 
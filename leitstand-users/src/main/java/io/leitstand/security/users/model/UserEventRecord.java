@@ -0,0 +1,103 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static javax.persistence.EnumType.STRING;
+import static javax.persistence.GenerationType.IDENTITY;
+import static javax.persistence.TemporalType.TIMESTAMP;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+
+import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.jpa.UserIdConverter;
+import io.leitstand.security.auth.user.UserEvent;
+
+/**
+ * A user account change log record entity.
+ * <p>
+ * The change log records all modified and removed user accounts.
+ * The sequence number is assigned by an identity column, which means that sequence numbers ascend, but can have gaps.
+ * Other nodes poll the change log by sequence number to drop outdated cached user information.
+ */
+@Entity
+@Table(schema="auth", name="userdata_event")
+public class UserEventRecord {
+
+	@Id
+	@GeneratedValue(strategy=IDENTITY)
+	@Column(name="seq")
+	private Long seq;
+	
+	@Convert(converter=UserIdConverter.class)
+	@Column(name="userid")
+	private UserId userId;
+	
+	@Enumerated(STRING)
+	@Column(name="type")
+	private UserEvent.Type type;
+	
+	@Temporal(TIMESTAMP)
+	@Column(name="tsevent")
+	private Date dateCreated;
+	
+	/**
+	 * JPA constructor
+	 */
+	protected UserEventRecord() {
+		// JPA constructor
+	}
+	
+	/**
+	 * Creates a <code>UserEventRecord</code>.
+	 * @param userId the user ID
+	 * @param type the user account modification
+	 */
+	protected UserEventRecord(UserId userId, UserEvent.Type type) {
+		this.userId = userId;
+		this.type = type;
+		this.dateCreated = new Date();
+	}
+	
+	/**
+	 * Returns the change log sequence number.
+	 * @return the change log sequence number.
+	 */
+	public Long getSequence() {
+		return seq;
+	}
+	
+	/**
+	 * Returns the user ID.
+	 * @return the user ID.
+	 */
+	public UserId getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * Returns the user account modification.
+	 * @return the user account modification.
+	 */
+	public UserEvent.Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the timestamp of the user account modification.
+	 * @return the timestamp of the user account modification.
+	 */
+	public Date getDateCreated() {
+		return new Date(dateCreated.getTime());
+	}
+	
+}
@@ -5,6 +5,7 @@ package io.leitstand.security.users.rs;
 
 import static io.leitstand.security.auth.Role.ADMINISTRATOR;
 import static io.leitstand.security.auth.Role.SYSTEM;
+import static io.leitstand.security.auth.search.SearchFilter.searchFilter;
 import static java.lang.String.format;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.Response.created;
@@ -24,6 +25,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import io.leitstand.commons.messages.Messages;
+import io.leitstand.security.auth.search.SearchFilter.MatchMode;
 import io.leitstand.security.users.service.UserReference;
 import io.leitstand.security.users.service.UserService;
 import io.leitstand.security.users.service.UserSubmission;
@@ -44,15 +46,18 @@ public class UsersResource {
 	
 	/**
 	 * Returns all users matching the given filter expression.
-	 * @param filter - the POSIX filter expression
+	 * @param filter - the filter expression
+	 * @param match - the match mode of the filter expression, i.e. <code>prefix</code>, <code>contains</code> or <code>regex</code>.
+	 * 				  Defaults to <code>contains</code> if not specified.
 	 * @return all users matching the given filter expression or an empty list if no users were found.
 	 */
 	@GET
 	@Path("/")
 	@Produces(APPLICATION_JSON)
 	@RolesAllowed({ADMINISTRATOR,SYSTEM})
-	public List<UserReference> findUsers(@QueryParam("filter") String filter){
-		return service.findUsers(filter);
+	public List<UserReference> findUsers(@QueryParam("filter") String filter,
+										 @QueryParam("match") MatchMode match){
+		return service.findUsers(searchFilter(filter,match));
 	}
 
 	/**
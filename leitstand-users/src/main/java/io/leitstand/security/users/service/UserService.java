@@ -8,6 +8,7 @@ import java.util.List;
 import javax.security.enterprise.credential.Password;
 
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.search.SearchFilter;
 
 /**
  * Service to maintain users in the leitstand built-in Identity Management.
@@ -20,11 +21,11 @@ public interface UserService {
 	 */
 	public void addUser(UserSubmission user);
 	/**
-	 * Returns a list of users matching the given filter string.
-	 * @param filter a POSIX regular expression to filter for user ID and surname
+	 * Returns a list of users whose user ID or surname match the given filter.
+	 * @param filter the filter for user ID and surname
 	 * @return a list of matching users or an empty list of no matches exist.
 	 */
-	public List<UserReference> findUsers(String filter);
+	public List<UserReference> findUsers(SearchFilter filter);
 	
 	/**
 	 * Returns the settings of the authenticated user.
@@ -57,6 +58,16 @@ public interface UserService {
 	public boolean isValidPassword(UserId userId, 
 								   Password password);
 	
+	/**
+	 * Validates user credentials and returns the account settings of the authenticated user.
+	 * The user account is loaded only once to verify the password and to read the account settings.
+	 * @param userId the user id
+	 * @param password the user's password
+	 * @return the account settings if the password is correct, <code>null</code> otherwise.
+	 */
+	public UserSettings authenticate(UserId userId, 
+									 Password password);
+	
 	/**
 	 * Removes the user account with the given UUID.
 	 * Returns no error if the account does not exist.
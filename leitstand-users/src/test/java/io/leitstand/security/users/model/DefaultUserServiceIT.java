@@ -17,6 +17,7 @@ import static org.mockito.Mockito.when;
 
 import java.security.Principal;
 
+import javax.enterprise.event.Event;
 import javax.security.enterprise.credential.Password;
 import javax.servlet.http.HttpServletRequest;
 
@@ -51,7 +52,7 @@ public class DefaultUserServiceIT extends UsersIT {
 		doNothing().when(messages).add(message.capture());
 		PasswordService hashing = new PasswordService();
 		context = mock(HttpServletRequest.class);
-		service = new DefaultUserService(repository,db,hashing,messages,context);
+		service = new DefaultUserService(repository,db,hashing,messages,context,mock(Event.class),mock(PasswordRehashQueue.class));
 		
 		transaction(()->{
 			repository.merge(new Role(1L,"Administrator"));
@@ -13,6 +13,7 @@ import static java.lang.Boolean.TRUE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -26,9 +27,11 @@ import static org.mockito.Mockito.when;
 
 import java.security.Principal;
 
+import javax.enterprise.event.Event;
 import javax.security.enterprise.credential.Password;
 import javax.servlet.http.HttpServletRequest;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -42,6 +45,7 @@ import io.leitstand.commons.messages.Messages;
 import io.leitstand.commons.model.Query;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.security.auth.UserId;
+import io.leitstand.security.auth.user.UserEvent;
 import io.leitstand.security.users.service.UserSettings;
 import io.leitstand.security.users.service.UserSubmission;
 
@@ -60,9 +64,21 @@ public class DefaultUserServiceTest {
 	@Mock
 	private PasswordService hashing;
 	
+	@Mock
+	private Event<UserEvent> userEvent;
+	
+	@Mock
+	private PasswordRehashQueue rehashQueue;
+	
 	@InjectMocks
 	private DefaultUserService service = new DefaultUserService();
 	
+	@Before
+	public void defaultIterations() {
+		when(hashing.getIterations()).thenReturn(ITERATIONS);
+		when(hashing.getMinimumIterations()).thenReturn(ITERATIONS);
+	}
+	
 	private static final Principal AUTHENTICATED = new Principal() {
 
 		@Override
@@ -163,6 +179,7 @@ public class DefaultUserServiceTest {
 			assertEquals(IDM0008E_PASSWORD_MISMATCH,e.getReason());
 		}
 		verify(user,never()).setPassword(any(byte[].class), any(byte[].class), anyInt());
+		verify(userEvent,never()).fire(any(UserEvent.class));
 	}
 	
 	@Test
@@ -215,7 +232,7 @@ public class DefaultUserServiceTest {
 		service.setPassword(userId, current, newpass, confirm);
 		
 		verify(user).setPassword(newhash,salt,ITERATIONS);
-		
+		verify(userEvent).fire(any(UserEvent.class));
 	}
 	
 	@Test
@@ -248,5 +265,111 @@ public class DefaultUserServiceTest {
 		.thenReturn(TRUE);
 		assertTrue(service.isValidPassword(userId,password));
 	}
+	
+	@Test
+	public void authenticate_returns_null_for_invalid_password() {
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		assertNull(service.authenticate(userId,password));
+	}
+	
+	@Test
+	public void authenticate_returns_settings_of_user_with_valid_password() {
+		byte[] salt = new byte[0];
+		byte[] hash = new byte[0];
+
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		when(user.getUserId()).thenReturn(userId);
+		when(user.getSalt()).thenReturn(salt);
+		when(user.getPasswordHash()).thenReturn(hash);
+		when(user.getIterations()).thenReturn(ITERATIONS);
+		when(hashing.isExpectedPassword(password, 
+										salt, 
+										hash, 
+										ITERATIONS))
+		.thenReturn(TRUE);
+		UserSettings settings = service.authenticate(userId,password);
+		assertEquals(userId,settings.getUserId());
+		verify(repository).execute(any(Query.class));
+	}
+	
+	@Test
+	public void rehash_outdated_password_hash_after_successful_verification() {
+		byte[] salt = new byte[0];
+		byte[] hash = new byte[0];
+
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		when(user.getSalt()).thenReturn(salt);
+		when(user.getPasswordHash()).thenReturn(hash);
+		when(user.getIterations()).thenReturn(1000);
+		when(hashing.isExpectedPassword(password, 
+										salt, 
+										hash, 
+										1000))
+		.thenReturn(TRUE);
+		assertTrue(service.isValidPassword(userId,password));
+		verify(rehashQueue).schedule(eq(userId), eq(hash), any(char[].class));
+	}
+	
+	@Test
+	public void do_not_rehash_current_password_hash() {
+		byte[] salt = new byte[0];
+		byte[] hash = new byte[0];
+
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		when(user.getSalt()).thenReturn(salt);
+		when(user.getPasswordHash()).thenReturn(hash);
+		when(user.getIterations()).thenReturn(ITERATIONS);
+		when(hashing.isExpectedPassword(password, 
+										salt, 
+										hash, 
+										ITERATIONS))
+		.thenReturn(TRUE);
+		assertTrue(service.isValidPassword(userId,password));
+		verify(rehashQueue,never()).schedule(any(UserId.class), any(byte[].class), any(char[].class));
+	}
+	
+	@Test
+	public void do_not_rehash_password_hash_with_more_iterations() {
+		byte[] salt = new byte[0];
+		byte[] hash = new byte[0];
+
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		when(user.getSalt()).thenReturn(salt);
+		when(user.getPasswordHash()).thenReturn(hash);
+		when(user.getIterations()).thenReturn(2*ITERATIONS);
+		when(hashing.isExpectedPassword(password, 
+										salt, 
+										hash, 
+										2*ITERATIONS))
+		.thenReturn(TRUE);
+		assertTrue(service.isValidPassword(userId,password));
+		verify(rehashQueue,never()).schedule(any(UserId.class), any(byte[].class), any(char[].class));
+	}
+	
+	@Test
+	public void do_not_rehash_invalid_password() {
+		Password password = new Password("secret");
+		UserId userId = UserId.valueOf("unittest");
+		User user = mock(User.class);
+		when(repository.execute(any(Query.class))).thenReturn(user);
+		when(user.getIterations()).thenReturn(1000);
+		assertFalse(service.isValidPassword(userId,password));
+		verify(rehashQueue,never()).schedule(any(UserId.class), any(byte[].class), any(char[].class));
+	}
 
 }
@@ -0,0 +1,142 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.leitstand.security.auth.user.CredentialVerificationRejectedException;
+
+public class PasswordHashExecutorTest {
+
+	private PasswordHashExecutor executor;
+	private CountDownLatch release = new CountDownLatch(1);
+	
+	@After
+	public void stopExecutor() {
+		release.countDown();
+		executor.stopThreadPool();
+	}
+	
+	private PasswordHashExecutor startExecutor(int threads, int queueSize, long timeout) {
+		executor = new PasswordHashExecutor(threads, queueSize, timeout, MILLISECONDS);
+		executor.startThreadPool();
+		return executor;
+	}
+	
+	private Void blockUninterruptibly() {
+		boolean interrupted = false;
+		while(release.getCount() > 0) {
+			try {
+				release.await(10, SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+	
+	private Void block() {
+		try {
+			release.await(10, SECONDS);
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	@Test
+	public void run_hash_computation_on_thread_pool() {
+		startExecutor(1, 1, 1000);
+		Thread caller = Thread.currentThread();
+		assertEquals(Boolean.TRUE, executor.execute(() -> Thread.currentThread() != caller));
+		assertEquals(1, executor.getComputationCount());
+		assertEquals(0, executor.getRejectionCount());
+	}
+	
+	@Test
+	public void propagate_computation_failure() {
+		startExecutor(1, 1, 1000);
+		try {
+			executor.execute(() -> {throw new IllegalStateException("junit");});
+			fail("Exception expected");
+		} catch (IllegalStateException e) {
+			assertEquals("junit", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void reject_computation_when_queue_is_full() throws Exception {
+		startExecutor(1, 1, 10000);
+		Thread running = new Thread(() -> executor.execute(this::block));
+		Thread queued  = new Thread(() -> executor.execute(this::block));
+		running.start();
+		while(executor.getActiveCount() == 0) {
+			Thread.sleep(1);
+		}
+		queued.start();
+		while(executor.getQueueDepth() == 0) {
+			Thread.sleep(1);
+		}
+		try {
+			executor.execute(this::block);
+			fail("Exception expected");
+		} catch (CredentialVerificationRejectedException e) {
+			assertEquals(PasswordHashExecutor.RETRY_AFTER_SECONDS, e.getRetryAfter());
+			assertEquals(1, executor.getRejectionCount());
+		} finally {
+			release.countDown();
+			running.join();
+			queued.join();
+		}
+	}
+	
+	@Test
+	public void reject_computation_on_timeout() {
+		startExecutor(1, 1, 10);
+		try {
+			executor.execute(this::block);
+			fail("Exception expected");
+		} catch (CredentialVerificationRejectedException e) {
+			assertEquals(1, executor.getRejectionCount());
+		}
+	}
+	
+	@Test
+	public void remove_timed_out_computation_from_queue() throws Exception {
+		startExecutor(1, 1, 50);
+		Thread running = new Thread(() -> {
+			try {
+				executor.execute(this::blockUninterruptibly);
+			} catch (CredentialVerificationRejectedException e) {
+				// Expected
+			}
+		});
+		running.start();
+		while(executor.getActiveCount() == 0) {
+			Thread.sleep(1);
+		}
+		try {
+			executor.execute(this::block);
+			fail("Exception expected");
+		} catch (CredentialVerificationRejectedException e) {
+			assertEquals(0, executor.getQueueDepth());
+		} finally {
+			release.countDown();
+			running.join();
+		}
+	}
+	
+}
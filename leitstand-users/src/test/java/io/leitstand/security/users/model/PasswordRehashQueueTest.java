@@ -0,0 +1,87 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.security.users.model.PasswordService.ITERATIONS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.leitstand.security.auth.UserId;
+
+public class PasswordRehashQueueTest {
+
+	private PasswordService hashing;
+	private PasswordRehashService store;
+	private PasswordRehashQueue queue;
+	
+	@Before
+	public void initQueue() {
+		hashing = mock(PasswordService.class);
+		store = mock(PasswordRehashService.class);
+		when(hashing.getIterations()).thenReturn(ITERATIONS);
+		when(hashing.salt()).thenReturn(new byte[] {1});
+		when(hashing.hash(any(char[].class), any(byte[].class), anyInt())).thenReturn(new byte[] {2});
+		when(store.storeRenewedHashes(any(List.class))).thenAnswer(invocation -> ((List<?>)invocation.getArguments()[0]).size());
+		queue = new PasswordRehashQueue(hashing, store, 2, 1);
+	}
+	
+	@Test
+	public void drop_rehash_if_queue_is_full() {
+		char[] dropped = "secret".toCharArray();
+		queue.schedule(UserId.valueOf("a"), new byte[0], "secret".toCharArray());
+		queue.schedule(UserId.valueOf("b"), new byte[0], "secret".toCharArray());
+		queue.schedule(UserId.valueOf("c"), new byte[0], dropped);
+		assertEquals(2, queue.getSize());
+		assertEquals(1, queue.getDropCount());
+		assertArrayEquals(new char[6], dropped);
+	}
+	
+	@Test
+	public void replace_pending_rehash_of_same_user() {
+		char[] replaced = "secret".toCharArray();
+		queue.schedule(UserId.valueOf("a"), new byte[0], replaced);
+		queue.schedule(UserId.valueOf("a"), new byte[0], "secret".toCharArray());
+		assertEquals(1, queue.getSize());
+		assertArrayEquals(new char[6], replaced);
+	}
+	
+	@Test
+	public void store_rehashed_passwords_in_batches() {
+		char[] password = "secret".toCharArray();
+		queue.schedule(UserId.valueOf("a"), new byte[0], password);
+		queue.schedule(UserId.valueOf("b"), new byte[0], "secret".toCharArray());
+		queue.processPendingRehashes();
+		verify(store,times(2)).storeRenewedHashes(any(List.class));
+		assertEquals(0, queue.getSize());
+		assertEquals(2, queue.getRehashCount());
+		assertArrayEquals(new char[6], password);
+	}
+	
+	@Test
+	public void store_hash_computed_with_current_iterations() {
+		queue.schedule(UserId.valueOf("a"), new byte[] {3}, "secret".toCharArray());
+		queue.processPendingRehashes();
+		ArgumentCaptor<List> renewed = ArgumentCaptor.forClass(List.class);
+		verify(store).storeRenewedHashes(renewed.capture());
+		User user = mock(User.class);
+		when(user.getPasswordHash()).thenReturn(new byte[] {3});
+		PasswordRehashQueue.RenewedHash hash = (PasswordRehashQueue.RenewedHash) renewed.getValue().get(0);
+		assertEquals(false, hash.isOutdated(user));
+		hash.apply(user);
+		verify(user).setPassword(new byte[] {2}, new byte[] {1}, ITERATIONS);
+	}
+	
+}
@@ -0,0 +1,36 @@
+/*
+ * (c) RtBrick, Inc - All rights reserved, 2015 - 2019
+ */
+package io.leitstand.security.users.model;
+
+import static io.leitstand.security.users.model.PasswordService.ITERATIONS;
+import static io.leitstand.security.users.model.PasswordWorkFactor.iterations;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PasswordWorkFactorTest {
+
+	@Test
+	public void select_iterations_for_latency_target() {
+		// 1000 iterations per ms, 100ms latency target, 1 login per second on 4 threads
+		assertEquals(100000, iterations(1000, 100, 1, 4));
+	}
+	
+	@Test
+	public void select_iterations_for_login_rate() {
+		// 1000 iterations per ms, 100ms latency target, 40 logins per second on 4 threads: 50ms per login
+		assertEquals(50000, iterations(1000, 100, 40, 4));
+	}
+	
+	@Test
+	public void round_down_iterations_to_thousands() {
+		assertEquals(12000, iterations(123.4, 100, 0, 4));
+	}
+	
+	@Test
+	public void never_fall_below_minimum_iterations() {
+		assertEquals(ITERATIONS, iterations(10, 100, 1, 1));
+	}
+	
+}